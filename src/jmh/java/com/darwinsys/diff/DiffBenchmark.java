@@ -0,0 +1,193 @@
+package com.darwinsys.diff;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the speed of the DiffStrategy implementations on two kinds
+ * of text, each edited the same way every time:
+ * <ul>
+ * <li>source: this project's own Java sources (padded out with
+ * made-up Java to at least 20,000 lines), with blocks
+ * of lines moved about as well as lines changed, added and removed;
+ * <li>log: 100,000 lines of made-up server log, in which a few
+ * messages and stack traces are repeated over and over, with bursts
+ * of lines added and removed.
+ * </ul>
+ * Only the comparison is timed; the lines are numbered in setup.
+ * The counts of lines changed by each strategy are printed in setup,
+ * as the strategies trade minimal diffs for speed and readability.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffBenchmark {
+
+	@Param({ "source", "log" })
+	String corpus;
+
+	@Param({ "myers", "patience", "histogram", "auto" })
+	String strategy;
+
+	int[] a, b;
+	DiffStrategy diff;
+
+	@Setup
+	public void setUp() throws IOException {
+		Random r = new Random(42);
+		List<String> old = corpus.equals("log") ? createLog(r) : readSources(r);
+		List<String> edited = corpus.equals("log") ? editLog(old, r) : editSource(old, r);
+		Map<String,Integer> codes = new HashMap<>();
+		a = number(old, codes);
+		b = number(edited, codes);
+		switch (strategy) {
+		case "myers": diff = Diff.MYERS; break;
+		case "patience": diff = Diff.PATIENCE; break;
+		case "histogram": diff = Diff.HISTOGRAM; break;
+		default: diff = Diff.AUTO; break;
+		}
+		int changed = 0;
+		for (Diff.Item item : diff.diff(a, b)) {
+			changed += item.deletedA + item.insertedB;
+		}
+		System.out.printf("%n%s/%s: %d and %d lines, %d deleted or inserted%n",
+			corpus, strategy, a.length, b.length, changed);
+	}
+
+	@Benchmark
+	public Diff.Item[] diff() {
+		return diff.diff(a, b);
+	}
+
+	static int[] number(List<String> lines, Map<String,Integer> codes) {
+		int[] ret = new int[lines.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = codes.computeIfAbsent(lines.get(i), k -> codes.size() + 1);
+		}
+		return ret;
+	}
+
+	/** All the lines of the Java sources of this project */
+	static List<String> readSources(Random r) throws IOException {
+		Path dir = Paths.get("src/main/java");
+		List<String> lines = new ArrayList<>();
+		if (Files.isDirectory(dir)) {
+			List<Path> files;
+			try (Stream<Path> s = Files.walk(dir)) {
+				files = s.filter(p -> p.toString().endsWith(".java")).sorted()
+					.collect(Collectors.toList());
+			}
+			for (Path p : files) {
+				lines.addAll(Files.readAllLines(p));
+			}
+		}
+		for (int n = 0; lines.size() < 20_000; n++) {
+			lines.add("public class C" + n + " {");
+			lines.add("");
+			for (int m = r.nextInt(10); m >= 0; m--) {
+				lines.add("\tpublic int method" + m + "(int x) {");
+				lines.add("\t\treturn x * " + r.nextInt(100) + ";");
+				lines.add("\t}");
+				lines.add("");
+			}
+			lines.add("}");
+		}
+		return lines;
+	}
+
+	/** Move some blocks of lines, and change, add and remove a few */
+	static List<String> editSource(List<String> old, Random r) {
+		List<String> lines = new ArrayList<>(old);
+		for (int n = 0; n < 50; n++) {
+			int len = 10 + r.nextInt(60);
+			int from = r.nextInt(lines.size() - len);
+			List<String> block = new ArrayList<>(lines.subList(from, from + len));
+			lines.subList(from, from + len).clear();
+			lines.addAll(r.nextInt(lines.size()), block);
+		}
+		for (int n = lines.size() / 100; n > 0; n--) {
+			int i = r.nextInt(lines.size());
+			switch (r.nextInt(3)) {
+			case 0: lines.set(i, lines.get(i) + " // changed"); break;
+			case 1: lines.add(i, "\t\tlog.debug(\"added " + n + "\");"); break;
+			default: lines.remove(i); break;
+			}
+		}
+		return lines;
+	}
+
+	static final String[] MESSAGES = {
+		"INFO  [main] com.example.Server - Heartbeat OK",
+		"INFO  [pool-1] com.example.Handler - Request handled",
+		"DEBUG [pool-2] com.example.Cache - Cache miss",
+		"WARN  [pool-1] com.example.Handler - Slow response",
+	};
+
+	static final String[] TRACE = {
+		"ERROR [pool-3] com.example.Handler - Request failed",
+		"java.lang.IllegalStateException: Connection closed",
+		"\tat com.example.db.Pool.get(Pool.java:88)",
+		"\tat com.example.Handler.handle(Handler.java:41)",
+		"\tat java.base/java.lang.Thread.run(Thread.java:829)",
+	};
+
+	/** Repetitive log lines, with the odd line that's unique */
+	static List<String> createLog(Random r) {
+		List<String> lines = new ArrayList<>();
+		while (lines.size() < 100_000) {
+			int k = r.nextInt(100);
+			if (k < 2) {
+				for (String s : TRACE) {
+					lines.add(s);
+				}
+			} else if (k < 10) {
+				lines.add("INFO  [pool-1] com.example.Handler - User " + r.nextInt(5000) + " logged in");
+			} else {
+				lines.add(MESSAGES[k % MESSAGES.length]);
+			}
+		}
+		return lines;
+	}
+
+	/** Cut out and insert bursts of lines, as a restarted server would */
+	static List<String> editLog(List<String> old, Random r) {
+		List<String> lines = new ArrayList<>(old);
+		for (int n = 0; n < 100; n++) {
+			int i = r.nextInt(lines.size() - 200);
+			if (r.nextBoolean()) {
+				lines.subList(i, i + r.nextInt(200)).clear();
+			} else {
+				for (int m = r.nextInt(50); m >= 0; m--) {
+					lines.add(i, r.nextBoolean() ? MESSAGES[r.nextInt(MESSAGES.length)] :
+						"INFO  [main] com.example.Server - Restarted " + n + "." + m);
+				}
+			}
+		}
+		return lines;
+	}
+}
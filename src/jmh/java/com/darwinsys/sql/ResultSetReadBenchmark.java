@@ -0,0 +1,51 @@
+package com.darwinsys.sql;
+
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The baseline for ResultsDecoratorBenchmark: read every column of
+ * the same rows as a String and throw it away, to show how much of
+ * each decorator's time and allocation is the ResultSet's.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultSetReadBenchmark {
+
+	ResultSet rs;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		rs = ResultsDecoratorBenchmark.createData();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ResultsDecoratorBenchmark.ROWS)
+	public void read(Blackhole bh) throws Exception {
+		rs.beforeFirst();
+		int cols = rs.getMetaData().getColumnCount();
+		while (rs.next()) {
+			for (int i = 1; i <= cols; i++) {
+				bh.consume(rs.getString(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.darwinsys.sql;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.darwinsys.util.Verbosity;
+
+/**
+ * Measure how fast each ResultsDecorator writes rows, and (with
+ * -prof gc, as the jmh profile in the pom does by default) how much
+ * it allocates per row, so changes to the output paths can be checked
+ * for regressions. The rows come from an in-memory ResultSet with a
+ * mix of column types, short and long strings, and nulls, and the
+ * output goes nowhere. ResultSetReadBenchmark shows how much of the
+ * time is spent in the ResultSet itself.
+ * <p>Run with mvn -Pjmh -DskipTests verify; the scores are rows per
+ * second, and gc.alloc.rate.norm is bytes per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultsDecoratorBenchmark {
+
+	static final int ROWS = 10_000;
+
+	/** The OutputMode names of the decorators to measure */
+	@Param({ "t", "aligned", "h", "s", "x", "xmlrows", "csv", "tsv", "json", "ndjson" })
+	String mode;
+
+	ResultSet rs;
+	ResultsDecorator decorator;
+
+	/** Make the test data: ROWS rows of mixed types, the same every time */
+	static ResultSet createData() throws Exception {
+		String[] names = { "id", "code", "amount", "ratio", "name",
+			"notes", "born", "updated", "active" };
+		int[] types = { Types.INTEGER, Types.BIGINT, Types.DECIMAL, Types.DOUBLE, Types.VARCHAR,
+			Types.VARCHAR, Types.DATE, Types.TIMESTAMP, Types.BOOLEAN };
+		Random r = new Random(42);
+		StringBuilder notes = new StringBuilder();
+		Object[][] rows = new Object[ROWS][];
+		for (int i = 0; i < ROWS; i++) {
+			notes.setLength(0);
+			int words = r.nextInt(40);
+			for (int w = 0; w < words; w++) {
+				notes.append(w == 0 ? "" : " ").append(Long.toString(r.nextLong() >>> 40, 36));
+			}
+			rows[i] = new Object[] {
+				i,
+				r.nextLong(),
+				BigDecimal.valueOf(r.nextInt(10_000_000), 2),
+				r.nextDouble() * 1000,
+				// Some names need quoting or escaping in one format or another
+				i % 7 == 0 ? "O'Brien & \"Sons\", <Ltd>" : "Name " + i,
+				i % 4 == 0 ? null : notes.toString(),
+				new Date(r.nextInt(20_000) * 86_400_000L),
+				new Timestamp(1_600_000_000_000L + r.nextInt(1_000_000_000)),
+				r.nextBoolean(),
+			};
+		}
+		return MockResultSets.create("bench", names, types, rows);
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		rs = createData();
+		PrintWriter out = new PrintWriter(Writer.nullWriter());
+		switch (OutputMode.valueOf(mode)) {
+		case t:
+			decorator = new ResultsDecoratorText(out, Verbosity.QUIET);
+			break;
+		case aligned:
+			decorator = new ResultsDecoratorAligned(out, Verbosity.QUIET);
+			break;
+		case h:
+			decorator = new ResultsDecoratorHTML(out, Verbosity.QUIET);
+			break;
+		case s:
+			decorator = new ResultsDecoratorSQL(out, Verbosity.QUIET);
+			break;
+		case x:
+			decorator = new ResultsDecoratorXML(out, Verbosity.QUIET);
+			break;
+		case xmlrows:
+			decorator = new ResultsDecoratorXML(out, Verbosity.QUIET,
+				ResultsDecoratorXML.Layout.ELEMENTS);
+			break;
+		case csv:
+			decorator = new ResultsDecoratorCSV(out, Verbosity.QUIET, ',');
+			break;
+		case tsv:
+			decorator = new ResultsDecoratorCSV(out, Verbosity.QUIET, '\t');
+			break;
+		case json:
+			decorator = new ResultsDecoratorJSON(out, Verbosity.QUIET, false);
+			break;
+		case ndjson:
+			decorator = new ResultsDecoratorJSON(out, Verbosity.QUIET, true);
+			break;
+		default:
+			throw new IllegalArgumentException("Can't benchmark mode " + mode);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public int write() throws Exception {
+		rs.beforeFirst();
+		int n = decorator.write(rs);
+		decorator.flush();
+		return n;
+	}
+}
@@ -8,43 +8,94 @@ public class CSVExport {
         return toString(data, ',');
     }
 
+	/**
+	 * Format one line, quoting fields as toRFC4180() does, except that
+	 * a value which already starts with a double quote is taken to be
+	 * quoted by the caller and is used as is, and a null becomes "".
+	 * @param data The fields
+	 * @param delim The field delimiter
+	 * @return The line, without a line terminator
+	 */
 	public static String toString(List data, char delim) {
 
         StringBuilder sb = new StringBuilder();
+        boolean first = true;
 
 		for (Object o : data) {
 
-			if (sb.length() > 0) {
+			if (!first) {
 				sb.append(delim);
 			}
+			first = false;
             if (o == null) {
                 sb.append("\"\"");
                 continue;
             }
 			String val = o.toString();
-            try {
-                Double.parseDouble(val);
-                sb.append(val);
-                continue;
-            } catch (NumberFormatException e) {
-                // Nothing to do; it's just not numeric
-            }
-            boolean isQuoted = val.startsWith("\"");
-            boolean mustQuote = false;
-            boolean hasSpecial = val.indexOf(',') != -1 ||
-            	val.indexOf('\n') != -1;
-            if (hasSpecial && !isQuoted) {
-                mustQuote = true;
-            }
-            if (mustQuote) {
-            	sb.append('"').append(val).append('"');
-            } else {
+            if (val.startsWith("\"")) {
             	sb.append(val);
+            } else {
+            	appendField(sb, val, delim);
             }
 		}
         return sb.toString();
 	}
 
+	/**
+	 * Format one line in strict RFC 4180 style: a field is quoted only if it
+	 * contains the delimiter, a double quote, CR or LF, and any double quotes
+	 * inside it are doubled. Nulls become empty fields.
+	 * Unlike toString(), values that already start with a quote get no special treatment.
+	 * @param data The fields
+	 * @param delim The field delimiter
+	 * @return The line, without a line terminator
+	 */
+	public static String toRFC4180(List<?> data, char delim) {
+		StringBuilder sb = new StringBuilder();
+		boolean first = true;
+		for (Object o : data) {
+			if (!first) {
+				sb.append(delim);
+			}
+			first = false;
+			if (o != null) {
+				appendField(sb, o.toString(), delim);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Append one field to a line, quoting it per RFC 4180 if needed.
+	 * @param sb The line being built
+	 * @param val The field's value, not null
+	 * @param delim The field delimiter
+	 */
+	public static void appendField(StringBuilder sb, CharSequence val, char delim) {
+		final int len = val.length();
+		boolean mustQuote = false;
+		for (int i = 0; i < len; i++) {
+			char c = val.charAt(i);
+			if (c == delim || c == '"' || c == '\n' || c == '\r') {
+				mustQuote = true;
+				break;
+			}
+		}
+		if (!mustQuote) {
+			sb.append(val);
+			return;
+		}
+		sb.append('"');
+		for (int i = 0; i < len; i++) {
+			char c = val.charAt(i);
+			if (c == '"') {
+				sb.append('"');
+			}
+			sb.append(c);
+		}
+		sb.append('"');
+	}
+
 	public static String toCSV(Object data, char delim) {
 		return null;
 	}
@@ -0,0 +1,92 @@
+package com.darwinsys.diff;
+
+import java.util.ArrayDeque;
+
+/**
+ * The common part of the diff strategies that work by finding a few
+ * lines which surely match (the "anchors"), then doing the same again
+ * in each of the gaps between them. Gaps in which no anchor can be
+ * found are handed to Myers' algorithm, Diff.LCS(). Keeps the state of
+ * one comparison in fields, so an instance may not be used by two
+ * threads at once; the Diff constants make a new one per call.
+ * @author Ian Darwin
+ */
+abstract class AnchoredDiff implements DiffStrategy {
+
+	/** The numbers being compared */
+	protected int[] a, b;
+	/** The largest number in a or b */
+	protected int maxCode;
+	private Diff.DiffData dataA, dataB;
+	/** The DownVector and UpVector for Diff.LCSPart() */
+	private int[][] vectors;
+	/** The gaps still to compare, as {lowA, highA, lowB, highB} */
+	private final ArrayDeque<int[]> todo = new ArrayDeque<>();
+
+	@Override
+	public Diff.Item[] diff(int[] arrayA, int[] arrayB) {
+		int[][] codes = Diff.denseCodes(arrayA, arrayB);
+		a = codes[0];
+		b = codes[1];
+		maxCode = a.length + b.length;
+		dataA = new Diff.DiffData(a);
+		dataB = new Diff.DiffData(b);
+		vectors = new int[2][];
+		prepare();
+		push(0, a.length, 0, b.length);
+		int[] gap;
+		while ((gap = todo.poll()) != null) {
+			compare(gap[0], gap[1], gap[2], gap[3]);
+		}
+		Diff.Item[] ret = Diff.finish(dataA, dataB);
+		a = b = null;
+		dataA = dataB = null;
+		vectors = null;
+		return ret;
+	}
+
+	private void compare(int lowA, int highA, int lowB, int highB) {
+		while (lowA < highA && lowB < highB && a[lowA] == b[lowB]) {
+			++lowA;
+			++lowB;
+		}
+		while (lowA < highA && lowB < highB && a[highA - 1] == b[highB - 1]) {
+			--highA;
+			--highB;
+		}
+		if (lowA == highA) {
+			while (lowB < highB) {
+				dataB.modified[lowB++] = true;
+			}
+		} else if (lowB == highB) {
+			while (lowA < highA) {
+				dataA.modified[lowA++] = true;
+			}
+		} else if (!split(lowA, highA, lowB, highB)) {
+			Diff.LCSPart(dataA, lowA, highA, dataB, lowB, highB, vectors);
+		}
+	}
+
+	/**
+	 * Queue a gap between anchors for comparison.
+	 */
+	protected void push(int lowA, int highA, int lowB, int highB) {
+		if (lowA < highA || lowB < highB) {
+			todo.push(new int[] { lowA, highA, lowB, highB });
+		}
+	}
+
+	/**
+	 * Set up any work space; called at the start of each comparison,
+	 * after a, b and maxCode are set.
+	 */
+	abstract void prepare();
+
+	/**
+	 * Find anchors in a gap, and push() the gaps between them;
+	 * lines not pushed are taken to match.
+	 * The gap has no equal lines at either end, and neither side is empty.
+	 * @return False if no anchor was found
+	 */
+	abstract boolean split(int lowA, int highA, int lowB, int highB);
+}
@@ -1,7 +1,13 @@
 package com.darwinsys.diff;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * BSD-licensed Java implementation of "An O(ND) Difference Algorithm 
@@ -91,6 +97,120 @@ public class Diff {
       public int insertedB;
     }
 
+    /**
+     * Myers' algorithm as a DiffStrategy. In minimal mode (the default) it finds
+     * a shortest edit script however long that takes, which on two large files
+     * with little in common can be minutes. Given a cost limit, SMS gives up
+     * searching for the middle snake after that many edit steps (D), and splits
+     * the box at the furthest point that either its forward or reverse search
+     * has reached, as GNU diff does unless given --minimal, and as git does
+     * always; the result is still a correct diff, but perhaps not a minimal one.
+     * Counts how often that happened, over all the calls to diff().
+    */
+    public static class Myers implements DiffStrategy {
+      /** Cost limit for no limit: minimal mode */
+      public static final int MINIMAL = 0;
+      /** Cost limit for fast mode, with the limit chosen from the sizes of the inputs */
+      public static final int FAST = -1;
+      /** In fast mode, the limit is the square root of the number of lines, but at least this */
+      public static final int MIN_COST_LIMIT = 256;
+
+      private final int costLimit;
+      private final AtomicLong searches = new AtomicLong(), cutoffs = new AtomicLong();
+
+      /** Construct a Myers in minimal mode */
+      public Myers() {
+        this(MINIMAL);
+      }
+
+      /**
+       * Construct a Myers with a cost limit.
+       * @param costLimit MINIMAL, FAST, or the most steps SMS may take in one search
+      */
+      public Myers(int costLimit) {
+        if (costLimit < FAST)
+          throw new IllegalArgumentException("Invalid cost limit " + costLimit);
+        this.costLimit = costLimit;
+      }
+
+      public Item[] diff(int[] a, int[] b) {
+        int limit = costLimit;
+        if (limit == FAST)
+          limit = Math.max(MIN_COST_LIMIT, (int) Math.sqrt(a.length + b.length));
+        Cost cost = new Cost(limit == MINIMAL ? Integer.MAX_VALUE : limit);
+        Item[] ret = diffCodes(new DiffData(a), new DiffData(b), cost);
+        searches.addAndGet(cost.searches);
+        cutoffs.addAndGet(cost.cutoffs);
+        return ret;
+      }
+
+      /** @return The cost limit given to the constructor */
+      public int getCostLimit() {
+        return costLimit;
+      }
+
+      /** @return How many middle snakes have been looked for */
+      public long getSearches() {
+        return searches.get();
+      }
+
+      /** @return How many of those searches gave up at the cost limit */
+      public long getCutoffs() {
+        return cutoffs.get();
+      }
+
+      @Override
+      public String toString() {
+        return "Myers[" + (costLimit == MINIMAL ? "minimal" : costLimit == FAST ? "fast" : costLimit) +
+          ", " + getCutoffs() + " cutoffs in " + getSearches() + " searches]";
+      }
+    }
+
+    /** The original algorithm, giving a minimal diff */
+    public static final Myers MYERS = new Myers();
+
+    /** The original algorithm with a cost limit, for large or very different inputs */
+    public static final Myers MYERS_FAST = new Myers(Myers.FAST);
+
+    /** Patience diff; see PatienceDiff */
+    public static final DiffStrategy PATIENCE = new DiffStrategy() {
+      public Item[] diff(int[] a, int[] b) {
+        return new PatienceDiff().diff(a, b);
+      }
+    };
+
+    /** Histogram diff; see HistogramDiff */
+    public static final DiffStrategy HISTOGRAM = new DiffStrategy() {
+      public Item[] diff(int[] a, int[] b) {
+        return new HistogramDiff().diff(a, b);
+      }
+    };
+
+    /** Myers' algorithm on all CPUs, for very large inputs; see ParallelDiff */
+    public static final DiffStrategy PARALLEL = new ParallelDiff();
+
+    /** Whichever strategy choose() picks for the input */
+    public static final DiffStrategy AUTO = new DiffStrategy() {
+      public Item[] diff(int[] a, int[] b) {
+        return choose(a, b).diff(a, b);
+      }
+    };
+
+    /** Inputs with no more lines than this, between them, are left to Myers in choose() */
+    public static final int AUTO_MYERS_LINES = 10000;
+
+    /**
+     * The cost limit for one diff, and counts of how it worked out.
+    */
+    static class Cost {
+      final int limit;
+      int searches, cutoffs;
+
+      Cost(int limit) {
+        this.limit = limit;
+      }
+    }
+
     /**
      * Shortest Middle Snake Return Data
     */
@@ -124,29 +244,206 @@ public class Diff {
      * @return Returns a array of Items that describe the differences.
     */
     public static Item[] diffText(String TextA, String TextB, boolean trimSpace, boolean ignoreSpace, boolean ignoreCase) {
+      return diffText(TextA, TextB, trimSpace, ignoreSpace, ignoreCase, MYERS);
+    }
+
+
+    /**
+     * Find the difference in 2 text documents, comparing by textlines, with a given algorithm.
+     * @param TextA A-version of the text (usualy the old one)
+     * @param TextB B-version of the text (usualy the new one)
+     * @param trimSpace When set to true, all leading and trailing whitespace characters are stripped out before the comparation is done.
+     * @param ignoreSpace When set to true, all whitespace characters are converted to a single space character before the comparation is done.
+     * @param ignoreCase When set to true, all characters are converted to their lowercase equivivalence before the comparation is done.
+     * @param strategy The algorithm, such as MYERS, MYERS_FAST, PATIENCE, HISTOGRAM, PARALLEL or AUTO
+     * @return Returns a array of Items that describe the differences.
+    */
+    public static Item[] diffText(String TextA, String TextB, boolean trimSpace, boolean ignoreSpace, boolean ignoreCase,
+        DiffStrategy strategy) {
       // prepare the input-text and convert to comparable numbers.
       Hashtable<String,Integer> h = new Hashtable<>(TextA.length() + TextB.length());
 
       // The A-Version of the data (original data) to be compared.
-      DiffData DataA = new DiffData(DiffCodes(TextA, h, trimSpace, ignoreSpace, ignoreCase));
+      int[] codesA = DiffCodes(TextA, h, trimSpace, ignoreSpace, ignoreCase);
 
       // The B-Version of the data (modified data) to be compared.
-      DiffData DataB = new DiffData(DiffCodes(TextB, h, trimSpace, ignoreSpace, ignoreCase));
+      int[] codesB = DiffCodes(TextB, h, trimSpace, ignoreSpace, ignoreCase);
 
       h = null; // free up hashtable memory (maybe)
 
+      return strategy.diff(codesA, codesB);
+    } // DiffText
+
+
+    /**
+     * Find the difference in 2 text files, comparing by textlines.
+     * @param fileA A-version of the file (usually the old one)
+     * @param fileB B-version of the file (usually the new one)
+     * @return Returns a array of Items that describe the differences.
+     * @throws IOException If either file can't be read
+    */
+    public static Item[] diffFiles(Path fileA, Path fileB) throws IOException {
+      return diffFiles(fileA, fileB, false, false, false);
+    }
+
+
+    /**
+     * Find the difference in 2 text files, comparing by textlines.
+     * This does the same as diffText() without reading either file into
+     * a String: the files are memory-mapped, and each line is hashed
+     * straight from its bytes (see LineIndex and LineTable), so the only
+     * memory used per line is a few ints. Lines are compared as bytes,
+     * so both files should be in the same encoding, and ignoreCase only
+     * folds ASCII letters.
+     * @param fileA A-version of the file (usually the old one)
+     * @param fileB B-version of the file (usually the new one)
+     * @param trimSpace When set to true, all leading and trailing whitespace characters are stripped out before the comparation is done.
+     * @param ignoreSpace When set to true, all whitespace characters are converted to a single space character before the comparation is done.
+     * @param ignoreCase When set to true, all characters are converted to their lowercase equivivalence before the comparation is done.
+     * @return Returns a array of Items that describe the differences.
+     * @throws IOException If either file can't be read
+    */
+    public static Item[] diffFiles(Path fileA, Path fileB, boolean trimSpace, boolean ignoreSpace, boolean ignoreCase) throws IOException {
+      return diffFiles(fileA, fileB, trimSpace, ignoreSpace, ignoreCase, MYERS);
+    }
+
+
+    /**
+     * Find the difference in 2 text files, comparing by textlines, with a given algorithm.
+     * @param fileA A-version of the file (usually the old one)
+     * @param fileB B-version of the file (usually the new one)
+     * @param trimSpace Strip leading and trailing whitespace before comparing
+     * @param ignoreSpace Convert runs of whitespace to one space before comparing
+     * @param ignoreCase Compare ASCII letters without regard to case
+     * @param strategy The algorithm, such as MYERS, MYERS_FAST, PATIENCE, HISTOGRAM, PARALLEL or AUTO
+     * @return Returns a array of Items that describe the differences.
+     * @throws IOException If either file can't be read
+    */
+    public static Item[] diffFiles(Path fileA, Path fileB, boolean trimSpace, boolean ignoreSpace, boolean ignoreCase,
+        DiffStrategy strategy) throws IOException {
+      try (LineIndex a = new LineIndex(fileA); LineIndex b = new LineIndex(fileB)) {
+        return diffLines(a, b, trimSpace, ignoreSpace, ignoreCase, strategy);
+      }
+    }
+
+
+    /**
+     * Find the difference in 2 indexed text files, comparing by textlines;
+     * use this instead of diffFiles() to keep the indexes for printing.
+     * @param a A-version of the file (usually the old one)
+     * @param b B-version of the file (usually the new one)
+     * @param trimSpace Strip leading and trailing whitespace before comparing
+     * @param ignoreSpace Convert runs of whitespace to one space before comparing
+     * @param ignoreCase Compare ASCII letters without regard to case
+     * @return Returns a array of Items that describe the differences.
+    */
+    public static Item[] diffLines(LineIndex a, LineIndex b, boolean trimSpace, boolean ignoreSpace, boolean ignoreCase) {
+      return diffLines(a, b, trimSpace, ignoreSpace, ignoreCase, MYERS);
+    }
+
+
+    /**
+     * Find the difference in 2 indexed text files, comparing by textlines, with a given algorithm.
+     * @param a A-version of the file (usually the old one)
+     * @param b B-version of the file (usually the new one)
+     * @param trimSpace Strip leading and trailing whitespace before comparing
+     * @param ignoreSpace Convert runs of whitespace to one space before comparing
+     * @param ignoreCase Compare ASCII letters without regard to case
+     * @param strategy The algorithm, such as MYERS, MYERS_FAST, PATIENCE, HISTOGRAM, PARALLEL or AUTO
+     * @return Returns a array of Items that describe the differences.
+    */
+    public static Item[] diffLines(LineIndex a, LineIndex b, boolean trimSpace, boolean ignoreSpace, boolean ignoreCase,
+        DiffStrategy strategy) {
+      LineTable t = new LineTable(a.size() + b.size(), trimSpace, ignoreSpace, ignoreCase);
+      int[] codesA = t.codes(a);
+      int[] codesB = t.codes(b);
+      t = null;
+      return strategy.diff(codesA, codesB);
+    }
+
+
+    /**
+     * Pick a strategy from statistics of the input. Small inputs
+     * (up to AUTO_MYERS_LINES between them) get MYERS, whose diff is
+     * minimal and cheap to find at that size. Otherwise, if at least
+     * half the lines of the shorter input occur once in each input, as
+     * in most source code, PATIENCE has plenty of anchors; if not, as in
+     * logs and data files with many repeated lines, HISTOGRAM.
+     * @param a A-version of the numbers (usually the old one)
+     * @param b B-version of the numbers (usually the new one)
+     * @return The strategy to use
+    */
+    public static DiffStrategy choose(int[] a, int[] b) {
+      if (a.length + b.length <= AUTO_MYERS_LINES) {
+        return MYERS;
+      }
+      int[][] codes = denseCodes(a, b);
+      int[] countA = new int[a.length + b.length + 1];
+      int[] countB = new int[countA.length];
+      for (int c : codes[0])
+        countA[c]++;
+      for (int c : codes[1])
+        countB[c]++;
+      int unique = 0;
+      for (int c = 0; c < countA.length; c++) {
+        if (countA[c] == 1 && countB[c] == 1)
+          unique++;
+      }
+      return unique * 2 >= Math.min(a.length, b.length) ? PATIENCE : HISTOGRAM;
+    }
+
+
+    /**
+     * Make sure that the numbers for the lines of 2 texts are all between
+     * 0 and the total number of lines, so that they can index arrays.
+     * The numbers from DiffCodes and LineTable already are; any others
+     * are renumbered.
+     * @return The 2 arrays, either as given or renumbered
+    */
+    static int[][] denseCodes(int[] a, int[] b) {
+      int max = a.length + b.length;
+      boolean dense = true;
+      for (int c : a)
+        dense &= c >= 0 && c <= max;
+      for (int c : b)
+        dense &= c >= 0 && c <= max;
+      if (dense) {
+        return new int[][] { a, b };
+      }
+      Map<Integer,Integer> h = new HashMap<>();
+      int[][] ret = { new int[a.length], new int[b.length] };
+      for (int i = 0; i < a.length; i++)
+        ret[0][i] = h.computeIfAbsent(a[i], k -> h.size() + 1);
+      for (int i = 0; i < b.length; i++)
+        ret[1][i] = h.computeIfAbsent(b[i], k -> h.size() + 1);
+      return ret;
+    }
+
+
+    /**
+     * Run the comparison proper on two texts that have been converted to numbers.
+    */
+    private static Item[] diffCodes(DiffData DataA, DiffData DataB, Cost cost) {
       int MAX = DataA.Length + DataB.Length + 1;
       // vector for the (0,0) to (x,y) search
       int[] DownVector = new int[2 * MAX + 2];
       // vector for the (u,v) to (N,M) search
       int[] UpVector = new int[2 * MAX + 2];
 
-      LCS(DataA, 0, DataA.Length, DataB, 0, DataB.Length, DownVector, UpVector);
+      LCS(DataA, 0, DataA.Length, DataB, 0, DataB.Length, DownVector, UpVector, cost);
 
+      return finish(DataA, DataB);
+    }
+
+
+    /**
+     * Tidy up the lines found to be modified, and make them into Items.
+    */
+    static Item[] finish(DiffData DataA, DiffData DataB) {
       Optimize(DataA);
       Optimize(DataB);
       return CreateDiffs(DataA, DataB);
-    } // DiffText
+    }
 
 
     /**
@@ -258,12 +555,15 @@ public class Diff {
      * @param UpperB upper bound of the actual range in DataB (exclusive)
      * @param DownVector a vector for the (0,0) to (x,y) search. Passed as a parameter for speed reasons.
      * @param UpVector a vector for the (u,v) to (N,M) search. Passed as a parameter for speed reasons.
+     * @param cost the cost limit, or null to search until the middle snake is found
      * @return a MiddleSnakeData record containing x,y and u,v
     */
     private static SMSRD SMS(DiffData DataA, int LowerA, int UpperA, DiffData DataB, int LowerB, int UpperB,
-      int[] DownVector, int[] UpVector) {
+      int[] DownVector, int[] UpVector, Cost cost) {
 
       SMSRD ret = new SMSRD();
+      if (cost != null)
+        cost.searches++;
       int MAX = DataA.Length + DataB.Length + 1;
 
       int DownK = LowerA - LowerB; // the k-line to start the forward search
@@ -354,6 +654,36 @@ public class Diff {
 
         } // for k
 
+        // Too expensive? Then split at the furthest point reached by either search
+        if (cost != null && D >= cost.limit) {
+          int bestDown = -1, downX = 0, downY = 0;
+          for (int k = DownK - D; k <= DownK + D; k += 2) {
+            int x = DownVector[DownOffset + k], y = x - k;
+            if (x >= LowerA && x <= UpperA && y >= LowerB && y <= UpperB && (x < UpperA || y < UpperB)
+                && x + y > bestDown) {
+              bestDown = x + y;
+              downX = x; downY = y;
+            }
+          }
+          int bestUp = -1, upX = 0, upY = 0;
+          for (int k = UpK - D; k <= UpK + D; k += 2) {
+            int x = UpVector[UpOffset + k], y = x - k;
+            if (x >= LowerA && x <= UpperA && y >= LowerB && y <= UpperB && (x > LowerA || y > LowerB)
+                && (bestUp < 0 || x + y < bestUp)) {
+              bestUp = x + y;
+              upX = x; upY = y;
+            }
+          }
+          int downGain = bestDown < 0 ? 0 : bestDown - (LowerA + LowerB);
+          int upGain = bestUp < 0 ? 0 : (UpperA + UpperB) - bestUp;
+          if (downGain > 0 || upGain > 0) {
+            cost.cutoffs++;
+            ret.x = downGain >= upGain ? downX : upX;
+            ret.y = downGain >= upGain ? downY : upY;
+            return (ret);
+          }
+        } // if
+
       } // for D
 
       throw new IllegalStateException("the algorithm should never come here.");
@@ -374,41 +704,81 @@ public class Diff {
      * @param DownVector a vector for the (0,0) to (x,y) search. Passed as a parameter for speed reasons.
      * @param UpVector a vector for the (u,v) to (N,M) search. Passed as a parameter for speed reasons.
     */
-    private static void LCS(DiffData DataA, int LowerA, int UpperA, DiffData DataB, int LowerB, int UpperB, int[] DownVector, int[] UpVector) {
-      // System.out.println(2, "LCS", String.format("Analyse the box: A[{0}-{1}] to B[{2}-{3}]", LowerA, UpperA, LowerB, UpperB));
+    static void LCS(DiffData DataA, int LowerA, int UpperA, DiffData DataB, int LowerB, int UpperB, int[] DownVector, int[] UpVector) {
+      LCS(DataA, LowerA, UpperA, DataB, LowerB, UpperB, DownVector, UpVector, null);
+    }
 
-      // Fast walkthrough equal lines at the start
-      while (LowerA < UpperA && LowerB < UpperB && DataA.data[LowerA] == DataB.data[LowerB]) {
-        LowerA++; LowerB++;
-      }
 
-      // Fast walkthrough equal lines at the end
-      while (LowerA < UpperA && LowerB < UpperB && DataA.data[UpperA - 1] == DataB.data[UpperB - 1]) {
-        --UpperA; --UpperB;
-      }
+    /**
+     * The LCS algorithm, with a limit on the cost of each search for a middle snake.
+     * @param cost the cost limit, or null for none
+    */
+    static void LCS(DiffData DataA, int LowerA, int UpperA, DiffData DataB, int LowerB, int UpperB, int[] DownVector, int[] UpVector,
+        Cost cost) {
+      // System.out.println(2, "LCS", String.format("Analyse the box: A[{0}-{1}] to B[{2}-{3}]", LowerA, UpperA, LowerB, UpperB));
+
+      // Recurse into the smaller of the two boxes on either side of the middle snake,
+      // and loop on the larger: a cost cutoff can leave one box nearly as big as the
+      // whole, so recursing into both would need stack in proportion to the input.
+      while (true) {
+        // Fast walkthrough equal lines at the start
+        while (LowerA < UpperA && LowerB < UpperB && DataA.data[LowerA] == DataB.data[LowerB]) {
+          LowerA++; LowerB++;
+        }
 
-      if (LowerA == UpperA) {
-        // mark as inserted lines.
-        while (LowerB < UpperB)
-          DataB.modified[LowerB++] = true;
+        // Fast walkthrough equal lines at the end
+        while (LowerA < UpperA && LowerB < UpperB && DataA.data[UpperA - 1] == DataB.data[UpperB - 1]) {
+          --UpperA; --UpperB;
+        }
 
-      } else if (LowerB == UpperB) {
-        // mark as deleted lines.
-        while (LowerA < UpperA)
-          DataA.modified[LowerA++] = true;
+        if (LowerA == UpperA) {
+          // mark as inserted lines.
+          while (LowerB < UpperB)
+            DataB.modified[LowerB++] = true;
+          return;
+
+        } else if (LowerB == UpperB) {
+          // mark as deleted lines.
+          while (LowerA < UpperA)
+            DataA.modified[LowerA++] = true;
+          return;
+        }
 
-      } else {
         // Find the middle snakea and length of an optimal path for A and B
-        SMSRD smsrd = SMS(DataA, LowerA, UpperA, DataB, LowerB, UpperB, DownVector, UpVector);
+        SMSRD smsrd = SMS(DataA, LowerA, UpperA, DataB, LowerB, UpperB, DownVector, UpVector, cost);
         // System.out.println(2, "MiddleSnakeData", String.format("{0},{1}", smsrd.x, smsrd.y));
 
         // The path is from LowerX to (x,y) and (x,y) to UpperX
-        LCS(DataA, LowerA, smsrd.x, DataB, LowerB, smsrd.y, DownVector, UpVector);
-        LCS(DataA, smsrd.x, UpperA, DataB, smsrd.y, UpperB, DownVector, UpVector);  // 2002.09.20: no need for 2 points 
+        if ((smsrd.x - LowerA) + (smsrd.y - LowerB) <= (UpperA - smsrd.x) + (UpperB - smsrd.y)) {
+          LCS(DataA, LowerA, smsrd.x, DataB, LowerB, smsrd.y, DownVector, UpVector, cost);
+          LowerA = smsrd.x; LowerB = smsrd.y;
+        } else {
+          LCS(DataA, smsrd.x, UpperA, DataB, smsrd.y, UpperB, DownVector, UpVector, cost);  // 2002.09.20: no need for 2 points
+          UpperA = smsrd.x; UpperB = smsrd.y;
+        }
       }
     } // LCS()
 
 
+    /**
+     * Run LCS on part of 2 texts, working on copies of those parts so that
+     * the vectors need only be as big as the parts, not the whole texts.
+     * @param vectors the DownVector and UpVector, replaced if too small
+    */
+    static void LCSPart(DiffData DataA, int LowerA, int UpperA, DiffData DataB, int LowerB, int UpperB, int[][] vectors) {
+      DiffData PartA = new DiffData(Arrays.copyOfRange(DataA.data, LowerA, UpperA));
+      DiffData PartB = new DiffData(Arrays.copyOfRange(DataB.data, LowerB, UpperB));
+      int size = 2 * (PartA.Length + PartB.Length + 1) + 2;
+      if (vectors[0] == null || vectors[0].length < size) {
+        vectors[0] = new int[size];
+        vectors[1] = new int[size];
+      }
+      LCS(PartA, 0, PartA.Length, PartB, 0, PartB.Length, vectors[0], vectors[1]);
+      System.arraycopy(PartA.modified, 0, DataA.modified, LowerA, PartA.Length);
+      System.arraycopy(PartB.modified, 0, DataB.modified, LowerB, PartB.Length);
+    }
+
+
     /**Scan the tables of which lines are inserted and deleted,
      * producing an edit script in forward order.  
      * dynamic array
@@ -467,17 +837,17 @@ public class Diff {
   {
 
     /**Number of elements (lines). */
-    private int Length;
+    int Length;
 
     /**Buffer of numbers that will be compared. */
-    private int[] data;
+    int[] data;
 
     /**
      * Array of booleans that flag for modified data.
      * This is the result of the diff.
      * This means deletedA in the first Data or inserted in the second Data.
     */
-    private boolean[] modified;
+    boolean[] modified;
 
     /**
      * Initialize the Diff-Data buffer.
@@ -1,5 +1,7 @@
 package com.darwinsys.diff;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 
 import com.darwinsys.diff.DiffType;
@@ -74,6 +76,23 @@ public class DiffPrint {
 		}
 	}
 	
+	/**
+	 * Format some Diff.Item objects like diff -u, with three lines of
+	 * context; use UnifiedDiffWriter directly to change that, or to print
+	 * from a LineIndex instead of String arrays.
+	 * @param diffItems The array of Diff.Item
+	 * @param sOld The old file, as an array of String
+	 * @param sNew The new file, as an array of String
+	 * @param nameOld The old file's name
+	 * @param nameNew The new file's name
+	 * @param out Where to write the differences
+	 * @throws IOException If the output fails
+	 */
+	public static void unifiedPrint(final Item[] diffItems, String[] sOld, String[] sNew,
+			String nameOld, String nameNew, Writer out) throws IOException {
+		new UnifiedDiffWriter(out).write(diffItems, sOld, sNew, nameOld, nameNew);
+	}
+
 	private static String printRange(int start, int end) {
 		if (start == end) {
 			return Integer.toString(start);
@@ -0,0 +1,19 @@
+package com.darwinsys.diff;
+
+/**
+ * An algorithm for finding the differences between two texts that have
+ * been converted to numbers, one per line, as done by Diff.diffText()
+ * and Diff.diffLines(). See Diff.MYERS, Diff.MYERS_FAST, Diff.PATIENCE,
+ * Diff.HISTOGRAM, Diff.PARALLEL and Diff.AUTO.
+ * @author Ian Darwin
+ */
+public interface DiffStrategy {
+
+	/**
+	 * Compare two sequences of line numbers.
+	 * @param a A-version of the numbers (usually the old one)
+	 * @param b B-version of the numbers (usually the new one)
+	 * @return The differences, in forward order
+	 */
+	public Diff.Item[] diff(int[] a, int[] b);
+}
@@ -0,0 +1,80 @@
+package com.darwinsys.diff;
+
+/**
+ * The "histogram diff" of JGit and git: an extension of patience diff
+ * that copes with lines that are repeated. In each gap it finds the
+ * longest common run of lines that contains the rarest line it can
+ * (counting occurrences in version a), keeps that run as the anchor,
+ * and compares the gaps on either side the same way. Lines occurring
+ * more than MAX_CHAIN_LENGTH times are not used to start a run; a gap
+ * with nothing else in common falls back to Myers.
+ * Not thread-safe; use Diff.HISTOGRAM, or one instance per thread.
+ * @author Ian Darwin
+ */
+public class HistogramDiff extends AnchoredDiff {
+
+	/** Lines occurring more often than this in a gap aren't looked up */
+	public static final int MAX_CHAIN_LENGTH = 64;
+
+	/** How often each number occurs in the current gap of a */
+	private int[] count;
+	/** Where each number last occurs in the gap of a */
+	private int[] head;
+	/** For each line of a, the previous line with the same number, or -1 */
+	private int[] chain;
+
+	@Override
+	void prepare() {
+		count = new int[maxCode + 1];
+		head = new int[maxCode + 1];
+		chain = new int[a.length];
+	}
+
+	@Override
+	boolean split(int lowA, int highA, int lowB, int highB) {
+		for (int i = lowA; i < highA; i++) {
+			int c = a[i];
+			chain[i] = count[c] == 0 ? -1 : head[c];
+			head[c] = i;
+			count[c]++;
+		}
+
+		int bestCount = MAX_CHAIN_LENGTH, bestLen = 0, bestA = 0, bestB = 0;
+		for (int j = lowB; j < highB; ) {
+			int c = b[j], next = j + 1;
+			if (count[c] != 0 && count[c] <= bestCount) {
+				for (int i = head[c]; i >= 0; i = chain[i]) {
+					// Extend the match both ways, noting its rarest line
+					int sA = i, sB = j, eA = i + 1, eB = j + 1, rarest = count[c];
+					while (sA > lowA && sB > lowB && a[sA - 1] == b[sB - 1]) {
+						rarest = Math.min(rarest, count[a[--sA]]);
+						--sB;
+					}
+					while (eA < highA && eB < highB && a[eA] == b[eB]) {
+						rarest = Math.min(rarest, count[a[eA++]]);
+						++eB;
+					}
+					if (rarest < bestCount || rarest == bestCount && eA - sA > bestLen) {
+						bestCount = rarest;
+						bestLen = eA - sA;
+						bestA = sA;
+						bestB = sB;
+					}
+					// Later starts within this run would only find part of it
+					next = Math.max(next, eB);
+				}
+			}
+			j = next;
+		}
+
+		for (int i = lowA; i < highA; i++) {
+			count[a[i]] = 0;
+		}
+		if (bestLen == 0) {
+			return false;
+		}
+		push(lowA, bestA, lowB, bestB);
+		push(bestA + bestLen, highA, bestB + bestLen, highB);
+		return true;
+	}
+}
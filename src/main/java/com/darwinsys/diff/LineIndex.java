@@ -0,0 +1,208 @@
+package com.darwinsys.diff;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A file memory-mapped read-only, with the byte offset of the start of
+ * each line, so that Diff can compare and print its lines without
+ * reading the file into Strings. A line ends with a newline, which is
+ * not part of it, nor is a carriage return before the newline; a final
+ * line without a newline still counts. Files bigger than a single
+ * mapping (2GB) are mapped in several segments.
+ * @author Ian Darwin
+ */
+public class LineIndex implements Closeable {
+
+	/** Size of each mapped segment, as a power of two */
+	static final int SEGMENT_SHIFT = 30;
+
+	private final int shift;
+	private final long mask;
+	private FileChannel channel;
+	private ByteBuffer[] segments;
+	private final long length;
+	/** Start of each line, plus the end of the file */
+	private long[] starts = new long[1024];
+	private int lines;
+
+	/**
+	 * Map and index a file.
+	 * @param file The file
+	 * @throws IOException If the file can't be opened or mapped
+	 */
+	public LineIndex(Path file) throws IOException {
+		this(file, SEGMENT_SHIFT);
+	}
+
+	/** For testing, with smaller segments */
+	LineIndex(Path file, int shift) throws IOException {
+		this.shift = shift;
+		this.mask = (1L << shift) - 1;
+		channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			length = channel.size();
+			segments = new ByteBuffer[(int) ((length + mask) >>> shift)];
+			for (int i = 0; i < segments.length; i++) {
+				long base = (long) i << shift;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+					base, Math.min(mask + 1, length - base));
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+		index();
+	}
+
+	/** Find the start of every line */
+	private void index() {
+		add(0);
+		for (int i = 0; i < segments.length; i++) {
+			ByteBuffer seg = segments[i];
+			long base = (long) i << shift;
+			int n = seg.limit();
+			for (int j = 0; j < n; j++) {
+				if (seg.get(j) == '\n') {
+					add(base + j + 1);
+				}
+			}
+		}
+		// Unless the file ends with a newline, the last line ends at EOF
+		if (starts[lines - 1] != length) {
+			add(length);
+		}
+		--lines;		// the last entry is only the end
+	}
+
+	private void add(long offset) {
+		if (lines == starts.length) {
+			starts = Arrays.copyOf(starts, lines * 2);
+		}
+		starts[lines++] = offset;
+	}
+
+	/** @return The number of lines */
+	public int size() {
+		return lines;
+	}
+
+	/** @return The length of the file in bytes */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * @param line The line number, from 0
+	 * @return The byte offset of the start of the line
+	 */
+	public long getStart(int line) {
+		checkLine(line);
+		return starts[line];
+	}
+
+	/**
+	 * @param line The line number, from 0
+	 * @return The byte offset just past the end of the line,
+	 * not counting the newline or a carriage return before it
+	 */
+	public long getEnd(int line) {
+		checkLine(line);
+		long end = starts[line + 1];
+		if (end > starts[line] && byteAt(end - 1) == '\n') {
+			--end;
+			if (end > starts[line] && byteAt(end - 1) == '\r') {
+				--end;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @param line The line number, from 0
+	 * @return True if the line ends with a newline; only the last line
+	 * of a file can be without one
+	 */
+	public boolean hasNewline(int line) {
+		checkLine(line);
+		return byteAt(starts[line + 1] - 1) == '\n';
+	}
+
+	private void checkLine(int line) {
+		if (line < 0 || line >= lines) {
+			throw new IndexOutOfBoundsException(
+				"Line " + line + " of " + lines);
+		}
+	}
+
+	/**
+	 * @param offset The offset in the file
+	 * @return The byte at that offset
+	 */
+	public byte byteAt(long offset) {
+		return segments[(int) (offset >>> shift)].get((int) (offset & mask));
+	}
+
+	/**
+	 * Copy the bytes of one line, without its line ending.
+	 * @param line The line number, from 0
+	 * @param out Where to write it
+	 * @param buf Work space, or null
+	 * @throws IOException If the output fails
+	 */
+	public void writeLine(int line, OutputStream out, byte[] buf) throws IOException {
+		if (buf == null) {
+			buf = new byte[8192];
+		}
+		long pos = getStart(line), end = getEnd(line);
+		while (pos < end) {
+			int n = 0;
+			while (n < buf.length && pos < end) {
+				buf[n++] = byteAt(pos++);
+			}
+			out.write(buf, 0, n);
+		}
+	}
+
+	/**
+	 * Get one line as a String; use sparingly, as this is what the
+	 * index is there to avoid.
+	 * @param line The line number, from 0
+	 * @param cs The file's encoding
+	 * @return The text of the line
+	 */
+	public String getLine(int line, Charset cs) {
+		long start = getStart(line);
+		byte[] b = new byte[(int) (getEnd(line) - start)];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = byteAt(start + i);
+		}
+		return new String(b, cs);
+	}
+
+	/**
+	 * @param line The line number, from 0
+	 * @return The text of the line, read as UTF-8
+	 */
+	public String getLine(int line) {
+		return getLine(line, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Close the file. The mappings are only released when they are
+	 * garbage-collected, but the index may not be used after this.
+	 */
+	@Override
+	public void close() throws IOException {
+		segments = null;
+		channel.close();
+	}
+}
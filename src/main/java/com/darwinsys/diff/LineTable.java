@@ -0,0 +1,187 @@
+package com.darwinsys.diff;
+
+import java.util.Arrays;
+
+/**
+ * Gives each distinct line a number, like the Hashtable in
+ * Diff.DiffCodes, but working from the bytes of a LineIndex: lines are
+ * hashed in place into an open-addressing table of ints, and only on a
+ * hash match are the two lines' bytes compared, so no String is made
+ * for any line. As in DiffCodes, carriage returns are ignored, and the
+ * line can be trimmed, have its runs of white space folded to one
+ * space, and be compared ignoring case; these work on ASCII only.
+ * A last line without a newline differs from the same line with one,
+ * as in GNU diff, unless white space is being ignored.
+ * @author Ian Darwin
+ */
+class LineTable {
+
+	private final boolean trimSpace, ignoreSpace, ignoreCase;
+
+	/** The slots: a code, or 0 if empty */
+	private int[] slots;
+	/** The hash, source and line number of the first line with each code */
+	private int[] hashes = new int[1024];
+	private LineIndex[] sources = new LineIndex[1024];
+	private int[] lines = new int[1024];
+	/** The number of codes handed out */
+	private int codes;
+
+	private final Cursor c1 = new Cursor(), c2 = new Cursor();
+
+	LineTable(int expectedLines, boolean trimSpace, boolean ignoreSpace, boolean ignoreCase) {
+		this.trimSpace = trimSpace;
+		this.ignoreSpace = ignoreSpace;
+		this.ignoreCase = ignoreCase;
+		int n = 16;
+		while (n < expectedLines * 2 && n < 1 << 30) {
+			n <<= 1;
+		}
+		slots = new int[n];
+	}
+
+	/**
+	 * Number every line of a file.
+	 * @param src The file
+	 * @return The code for each line; equal lines get equal codes,
+	 * across all the files given to this LineTable
+	 */
+	int[] codes(LineIndex src) {
+		int[] ret = new int[src.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = code(src, i);
+		}
+		return ret;
+	}
+
+	/** @return The number of distinct lines seen */
+	int size() {
+		return codes;
+	}
+
+	private int code(LineIndex src, int line) {
+		int h = hash(src, line);
+		int mask = slots.length - 1;
+		for (int i = h & mask; ; i = (i + 1) & mask) {
+			int code = slots[i] - 1;
+			if (code < 0) {
+				break;
+			}
+			if (hashes[code] == h && same(src, line, sources[code], lines[code])) {
+				return code + 1;
+			}
+		}
+		if (codes == hashes.length) {
+			int n = codes * 2;
+			hashes = Arrays.copyOf(hashes, n);
+			sources = Arrays.copyOf(sources, n);
+			lines = Arrays.copyOf(lines, n);
+		}
+		hashes[codes] = h;
+		sources[codes] = src;
+		lines[codes] = line;
+		++codes;
+		if (codes * 2 > slots.length) {
+			rehash();
+		} else {
+			put(codes - 1);
+		}
+		return codes;
+	}
+
+	private void put(int code) {
+		int mask = slots.length - 1;
+		int i = hashes[code] & mask;
+		while (slots[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		slots[i] = code + 1;
+	}
+
+	/** Double the table, re-using the saved hashes */
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		for (int code = 0; code < codes; code++) {
+			put(code);
+		}
+	}
+
+	/** FNV-1a over the line as compared, with a final mix */
+	private int hash(LineIndex src, int line) {
+		Cursor c = c1.start(src, line);
+		int h = 0x811c9dc5;
+		for (int b; (b = c.next()) >= 0; ) {
+			h = (h ^ b) * 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		return h ^ (h >>> 13);
+	}
+
+	private boolean same(LineIndex src1, int line1, LineIndex src2, int line2) {
+		Cursor a = c1.start(src1, line1), b = c2.start(src2, line2);
+		int x;
+		do {
+			x = a.next();
+			if (x != b.next()) {
+				return false;
+			}
+		} while (x >= 0);
+		return true;
+	}
+
+	private static boolean isSpace(int b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B;
+	}
+
+	/** Stands for the missing newline of an incomplete last line; not a byte value */
+	private static final int NO_NEWLINE = 256;
+
+	/** Walks the bytes of one line as the comparison sees them */
+	private class Cursor {
+		LineIndex src;
+		long pos, end;
+		boolean noNewline;
+
+		Cursor start(LineIndex src, int line) {
+			this.src = src;
+			pos = src.getStart(line);
+			end = src.getEnd(line);
+			noNewline = !ignoreSpace && !trimSpace && !src.hasNewline(line);
+			if (trimSpace) {
+				while (pos < end && (src.byteAt(pos) & 0xff) <= ' ') {
+					++pos;
+				}
+				while (end > pos && (src.byteAt(end - 1) & 0xff) <= ' ') {
+					--end;
+				}
+			}
+			return this;
+		}
+
+		/** @return The next byte, NO_NEWLINE, or -1 at the end of the line */
+		int next() {
+			while (pos < end) {
+				int b = src.byteAt(pos++) & 0xff;
+				if (b == '\r') {
+					continue;
+				}
+				if (ignoreSpace && isSpace(b)) {
+					while (pos < end && isSpace(src.byteAt(pos) & 0xff)) {
+						++pos;
+					}
+					return ' ';
+				}
+				if (ignoreCase && b >= 'A' && b <= 'Z') {
+					b += 'a' - 'A';
+				}
+				return b;
+			}
+			if (noNewline) {
+				noNewline = false;
+				return NO_NEWLINE;
+			}
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.darwinsys.diff;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Myers' algorithm, split up to use all the CPUs on very large inputs,
+ * such as two dumps of a configuration with millions of lines.
+ * The lines that occur exactly once in each input are matched up, and
+ * the longest run of them that is in the same order in both is taken
+ * as anchors, as in PatienceDiff; the gaps between the anchors are then
+ * independent of each other, and are compared with Diff.LCS() by tasks
+ * in a ForkJoinPool, each on its own copy of its gaps and with its own
+ * vectors. The result can differ slightly from Diff.MYERS, as
+ * the anchors are kept even where a minimal diff would not keep them.
+ * Unlike PatienceDiff and HistogramDiff, this is thread-safe.
+ * @author Ian Darwin
+ */
+public class ParallelDiff implements DiffStrategy {
+
+	/** The default for taskLines */
+	public static final int DEFAULT_TASK_LINES = 8192;
+
+	private final ForkJoinPool pool;
+	private final int taskLines;
+
+	/** Construct a ParallelDiff that runs in the common pool */
+	public ParallelDiff() {
+		this(ForkJoinPool.commonPool(), DEFAULT_TASK_LINES);
+	}
+
+	/**
+	 * Construct a ParallelDiff.
+	 * @param pool The pool to run in
+	 * @param taskLines Gaps are grouped into tasks of about this many lines
+	 */
+	public ParallelDiff(ForkJoinPool pool, int taskLines) {
+		if (taskLines < 1) {
+			throw new IllegalArgumentException("taskLines must be positive");
+		}
+		this.pool = pool;
+		this.taskLines = taskLines;
+	}
+
+	@Override
+	public Diff.Item[] diff(int[] arrayA, int[] arrayB) {
+		int[][] codes = Diff.denseCodes(arrayA, arrayB);
+		Diff.DiffData dataA = new Diff.DiffData(codes[0]);
+		Diff.DiffData dataB = new Diff.DiffData(codes[1]);
+		int[] gaps = gaps(codes[0], codes[1]);
+		int n = gaps.length / 4;
+		// The total size of the gaps before each one, for splitting up the work
+		long[] sizes = new long[n + 1];
+		for (int g = 0; g < n; g++) {
+			sizes[g + 1] = sizes[g] + (gaps[4 * g + 1] - gaps[4 * g]) + (gaps[4 * g + 3] - gaps[4 * g + 2]);
+		}
+		if (n > 0) {
+			pool.invoke(new Task(dataA, dataB, gaps, sizes, 0, n));
+		}
+		return Diff.finish(dataA, dataB);
+	}
+
+	/**
+	 * Find the anchors, and return the gaps between them.
+	 * @return The gaps that have anything in them, as lowA, highA, lowB, highB
+	 */
+	static int[] gaps(int[] a, int[] b) {
+		int codes = a.length + b.length + 1;
+		int n = Math.min(a.length, b.length);
+		int[] pairA = new int[n], pairB = new int[n];
+		int pairs = PatienceDiff.uniquePairs(a, 0, a.length, b, 0, b.length,
+			new int[codes], new int[codes], new int[codes], pairA, pairB);
+		// The anchors, last first
+		int[] anchors = new int[pairs];
+		int len = 0;
+		if (pairs > 0) {
+			int[] prev = new int[pairs];
+			for (int k = PatienceDiff.longestIncreasing(pairB, pairs, new int[pairs], prev);
+					k >= 0; k = prev[k]) {
+				anchors[len++] = k;
+			}
+		}
+		int[] gaps = new int[4 * (len + 1)];
+		int g = 0, lowA = 0, lowB = 0;
+		for (int k = len - 1; k >= -1; k--) {
+			int anchorA = k >= 0 ? pairA[anchors[k]] : a.length;
+			int anchorB = k >= 0 ? pairB[anchors[k]] : b.length;
+			// Leave out the lines at either end that are the same
+			int highA = anchorA, highB = anchorB;
+			while (lowA < highA && lowB < highB && a[lowA] == b[lowB]) {
+				++lowA;
+				++lowB;
+			}
+			while (lowA < highA && lowB < highB && a[highA - 1] == b[highB - 1]) {
+				--highA;
+				--highB;
+			}
+			if (lowA < highA || lowB < highB) {
+				gaps[g++] = lowA;
+				gaps[g++] = highA;
+				gaps[g++] = lowB;
+				gaps[g++] = highB;
+			}
+			lowA = anchorA + 1;
+			lowB = anchorB + 1;
+		}
+		return Arrays.copyOf(gaps, g);
+	}
+
+	/** Compare some of the gaps, or split them between two more Tasks */
+	private class Task extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final Diff.DiffData dataA, dataB;
+		final int[] gaps;
+		final long[] sizes;
+		final int from, to;
+
+		Task(Diff.DiffData dataA, Diff.DiffData dataB, int[] gaps, long[] sizes, int from, int to) {
+			this.dataA = dataA;
+			this.dataB = dataB;
+			this.gaps = gaps;
+			this.sizes = sizes;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1 && sizes[to] - sizes[from] > taskLines) {
+				// Split where half the lines are on each side
+				int mid = Arrays.binarySearch(sizes, from, to, (sizes[from] + sizes[to]) / 2);
+				mid = Math.max(from + 1, Math.min(to - 1, mid < 0 ? -mid - 1 : mid));
+				invokeAll(new Task(dataA, dataB, gaps, sizes, from, mid),
+					new Task(dataA, dataB, gaps, sizes, mid, to));
+				return;
+			}
+			int[][] vectors = new int[2][];
+			for (int g = from; g < to; g++) {
+				Diff.LCSPart(dataA, gaps[4 * g], gaps[4 * g + 1],
+					dataB, gaps[4 * g + 2], gaps[4 * g + 3], vectors);
+			}
+		}
+	}
+}
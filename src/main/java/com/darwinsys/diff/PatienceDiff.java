@@ -0,0 +1,121 @@
+package com.darwinsys.diff;
+
+/**
+ * Bram Cohen's "patience diff": the lines that occur exactly once in
+ * each version are matched up, the longest run of them that is in the
+ * same order in both versions is kept as anchors, and the gaps between
+ * anchors are compared the same way. Because it never matches common
+ * lines such as blank lines and braces to each other, the hunks follow
+ * the structure of the text more closely than a minimal diff, and moved
+ * blocks cost little; gaps without unique lines fall back to Myers.
+ * Not thread-safe; use Diff.PATIENCE, or one instance per thread.
+ * @author Ian Darwin
+ */
+public class PatienceDiff extends AnchoredDiff {
+
+	/** How often each number occurs in the current gap of a and of b */
+	private int[] countA, countB;
+	/** Where in b each number last occurs in the current gap */
+	private int[] posB;
+	/** The unique pairs, by position in a and in b */
+	private int[] pairA, pairB;
+	/** Work space for the longest increasing subsequence */
+	private int[] tails, prev;
+
+	@Override
+	void prepare() {
+		countA = new int[maxCode + 1];
+		countB = new int[maxCode + 1];
+		posB = new int[maxCode + 1];
+		int n = Math.min(a.length, b.length);
+		pairA = new int[n];
+		pairB = new int[n];
+		tails = new int[n];
+		prev = new int[n];
+	}
+
+	@Override
+	boolean split(int lowA, int highA, int lowB, int highB) {
+		int pairs = uniquePairs(a, lowA, highA, b, lowB, highB,
+			countA, countB, posB, pairA, pairB);
+		if (pairs == 0) {
+			return false;
+		}
+		// Walk the anchors back from the end, pushing the gaps after each
+		int endA = highA, endB = highB;
+		for (int k = longestIncreasing(pairB, pairs, tails, prev); k >= 0; k = prev[k]) {
+			push(pairA[k] + 1, endA, pairB[k] + 1, endB);
+			endA = pairA[k];
+			endB = pairB[k];
+		}
+		push(lowA, endA, lowB, endB);
+		return true;
+	}
+
+	/**
+	 * Find the lines that occur once in a range of a and once in a range of b.
+	 * @param count1 Work space, one per number, all zero; left that way
+	 * @param count2 Work space, one per number, all zero; left that way
+	 * @param pos Work space, one per number
+	 * @param pairA Set to the position in a of each line found, in order
+	 * @param pairB Set to the position in b of each line found
+	 * @return The number of lines found
+	 */
+	static int uniquePairs(int[] a, int lowA, int highA, int[] b, int lowB, int highB,
+			int[] count1, int[] count2, int[] pos, int[] pairA, int[] pairB) {
+		for (int i = lowA; i < highA; i++) {
+			count1[a[i]]++;
+		}
+		for (int j = lowB; j < highB; j++) {
+			count2[b[j]]++;
+			pos[b[j]] = j;
+		}
+		int pairs = 0;
+		for (int i = lowA; i < highA; i++) {
+			int c = a[i];
+			if (count1[c] == 1 && count2[c] == 1) {
+				pairA[pairs] = i;
+				pairB[pairs] = pos[c];
+				++pairs;
+			}
+		}
+		for (int i = lowA; i < highA; i++) {
+			count1[a[i]] = 0;
+		}
+		for (int j = lowB; j < highB; j++) {
+			count2[b[j]] = 0;
+		}
+		return pairs;
+	}
+
+	/**
+	 * Find the longest run of pairs that are in order in b as well as in a,
+	 * by patience sorting.
+	 * @param pairB The positions in b of the pairs, which are in order of a
+	 * @param pairs The number of pairs, at least one
+	 * @param tails Work space, one per pair
+	 * @param prev Set to the link from each pair to the one before it in
+	 * the run, or -1
+	 * @return The last pair of the run
+	 */
+	static int longestIncreasing(int[] pairB, int pairs, int[] tails, int[] prev) {
+		int len = 0;
+		for (int k = 0; k < pairs; k++) {
+			int lo = 0, hi = len;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (pairB[tails[mid]] < pairB[k]) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			prev[k] = lo > 0 ? tails[lo - 1] : -1;
+			tails[lo] = k;
+			if (lo == len) {
+				++len;
+			}
+		}
+		return tails[len - 1];
+	}
+}
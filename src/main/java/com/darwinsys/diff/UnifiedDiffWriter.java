@@ -0,0 +1,302 @@
+package com.darwinsys.diff;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.darwinsys.diff.Diff.Item;
+import com.darwinsys.lang.GetOpt;
+
+/**
+ * Write Diff.Items in the unified format of diff -u, straight to a
+ * Writer, with the given number of lines of context around each change;
+ * changes whose context would meet or overlap go in the same hunk. The
+ * lines are read one at a time from a LineIndex (or a String[], for
+ * small inputs), so a multi-gigabyte diff needs no more memory than the
+ * index and the Items.
+ * <pre>
+ * try (LineIndex a = new LineIndex(oldFile); LineIndex b = new LineIndex(newFile)) {
+ *     Item[] items = Diff.diffLines(a, b, false, false, false, Diff.AUTO);
+ *     new UnifiedDiffWriter(out).write(items, a, b, "old.txt", "new.txt");
+ * }
+ * </pre>
+ * @author Ian Darwin
+ */
+public class UnifiedDiffWriter {
+
+	public static final int DEFAULT_CONTEXT = 3;
+
+	private final Writer out;
+	private int context = DEFAULT_CONTEXT;
+	private Charset charset = StandardCharsets.UTF_8;
+
+	/** Work space for copying and decoding lines from a LineIndex */
+	private byte[] bytes = new byte[256];
+	private CharBuffer chars = CharBuffer.allocate(256);
+
+	/**
+	 * Construct a UnifiedDiffWriter
+	 * @param out Where the diff is to be written
+	 */
+	public UnifiedDiffWriter(Writer out) {
+		this.out = out;
+	}
+
+	/** @param context How many unchanged lines to show around each change */
+	public void setContext(int context) {
+		if (context < 0) {
+			throw new IllegalArgumentException("Context may not be negative");
+		}
+		this.context = context;
+	}
+
+	/** @param charset The encoding of files read through a LineIndex; UTF-8 by default */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/** The lines of one version, however they are held */
+	private interface Lines {
+		int size();
+		void write(int line) throws IOException;
+		boolean hasNewline(int line);
+	}
+
+	/**
+	 * Write a diff between two indexed files.
+	 * @param items The differences, from Diff.diffLines() or diffFiles()
+	 * @param a The old file
+	 * @param b The new file
+	 * @param nameA The old file's name, for the header
+	 * @param nameB The new file's name, for the header
+	 * @return The number of hunks written
+	 * @throws IOException If the output fails
+	 */
+	public int write(Item[] items, final LineIndex a, final LineIndex b,
+			String nameA, String nameB) throws IOException {
+		final CharsetDecoder decoder = charset.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		return write(items, new IndexLines(a, decoder), new IndexLines(b, decoder), nameA, nameB);
+	}
+
+	/**
+	 * Write a diff between two texts held as arrays of lines.
+	 * @param items The differences, from Diff.diffText()
+	 * @param a The old text
+	 * @param b The new text
+	 * @param nameA The old text's name, for the header
+	 * @param nameB The new text's name, for the header
+	 * @return The number of hunks written
+	 * @throws IOException If the output fails
+	 */
+	public int write(Item[] items, final String[] a, final String[] b,
+			String nameA, String nameB) throws IOException {
+		return write(items, new ArrayLines(a), new ArrayLines(b), nameA, nameB);
+	}
+
+	private int write(Item[] items, Lines a, Lines b, String nameA, String nameB)
+			throws IOException {
+		if (items.length == 0) {
+			return 0;
+		}
+		out.write("--- " + nameA + "\n");
+		out.write("+++ " + nameB + "\n");
+		int hunks = 0;
+		for (int first = 0; first < items.length; ) {
+			// Take in the following changes whose context meets this one's
+			int last = first;
+			while (last + 1 < items.length &&
+					items[last + 1].startA - (items[last].startA + items[last].deletedA) <= 2 * context) {
+				++last;
+			}
+			int startA = Math.max(0, items[first].startA - context);
+			int startB = items[first].startB - (items[first].startA - startA);
+			int endA = Math.min(a.size(), items[last].startA + items[last].deletedA + context);
+			int endB = items[last].startB + items[last].insertedB + (endA - items[last].startA - items[last].deletedA);
+			out.write("@@ -" + range(startA, endA - startA) +
+				" +" + range(startB, endB - startB) + " @@\n");
+
+			int lineA = startA;
+			for (int i = first; i <= last; i++) {
+				Item item = items[i];
+				for (; lineA < item.startA; lineA++) {
+					line(' ', a, lineA);
+				}
+				for (; lineA < item.startA + item.deletedA; lineA++) {
+					line('-', a, lineA);
+				}
+				for (int lineB = item.startB; lineB < item.startB + item.insertedB; lineB++) {
+					line('+', b, lineB);
+				}
+			}
+			for (; lineA < endA; lineA++) {
+				line(' ', a, lineA);
+			}
+			++hunks;
+			first = last + 1;
+		}
+		out.flush();
+		return hunks;
+	}
+
+	/** Format a range: the first line, from 1, then the count unless it's 1 */
+	static String range(int start, int count) {
+		switch (count) {
+		case 0:
+			return start + ",0";	// the line before, as diff does
+		case 1:
+			return Integer.toString(start + 1);
+		default:
+			return (start + 1) + "," + count;
+		}
+	}
+
+	private void line(char prefix, Lines lines, int line) throws IOException {
+		out.write(prefix);
+		lines.write(line);
+		out.write('\n');
+		if (!lines.hasNewline(line)) {
+			out.write("\\ No newline at end of file\n");
+		}
+	}
+
+	private class ArrayLines implements Lines {
+		final String[] lines;
+
+		ArrayLines(String[] lines) {
+			this.lines = lines;
+		}
+
+		public int size() {
+			return lines.length;
+		}
+
+		public void write(int line) throws IOException {
+			out.write(lines[line]);
+		}
+
+		public boolean hasNewline(int line) {
+			return true;
+		}
+	}
+
+	private class IndexLines implements Lines {
+		final LineIndex index;
+		final CharsetDecoder decoder;
+
+		IndexLines(LineIndex index, CharsetDecoder decoder) {
+			this.index = index;
+			this.decoder = decoder;
+		}
+
+		public int size() {
+			return index.size();
+		}
+
+		/** Decode the line through the re-used buffers, without making a String */
+		public void write(int line) throws IOException {
+			long start = index.getStart(line);
+			int n = (int) (index.getEnd(line) - start);
+			if (bytes.length < n) {
+				bytes = new byte[Math.max(n, bytes.length * 2)];
+			}
+			for (int i = 0; i < n; i++) {
+				bytes[i] = index.byteAt(start + i);
+			}
+			int max = (int) Math.ceil(n * (double) decoder.maxCharsPerByte());
+			if (chars.capacity() < max) {
+				chars = CharBuffer.allocate(Math.max(max, chars.capacity() * 2));
+			}
+			chars.clear();
+			decoder.reset();
+			ByteBuffer in = ByteBuffer.wrap(bytes, 0, n);
+			decoder.decode(in, chars, true);
+			decoder.flush(chars);
+			out.write(chars.array(), 0, chars.position());
+		}
+
+		public boolean hasNewline(int line) {
+			return index.hasNewline(line);
+		}
+	}
+
+	/**
+	 * Compare two files, and print the differences in unified format.
+	 * Usage: UnifiedDiffWriter [-U context] [-a myers|fast|patience|histogram|parallel|auto] [-b] [-w] [-i] file1 file2
+	 * <br>-b folds runs of white space, -w also trims it from the ends
+	 * of lines, and -i ignores the case of ASCII letters.
+	 * The exit status is 0 if the files are the same, 1 if they differ.
+	 */
+	public static void main(String[] args) throws IOException {
+		int context = DEFAULT_CONTEXT;
+		DiffStrategy strategy = Diff.AUTO;
+		boolean trimSpace = false, ignoreSpace = false, ignoreCase = false;
+		GetOpt go = new GetOpt("U:a:bwi");
+		char c;
+		while ((c = go.getopt(args)) != GetOpt.DONE) {
+			switch (c) {
+			case 'U':
+				context = Integer.parseInt(go.optarg());
+				break;
+			case 'a':
+				strategy = getStrategy(go.optarg());
+				break;
+			case 'b':
+				ignoreSpace = true;
+				break;
+			case 'w':
+				trimSpace = true;
+				ignoreSpace = true;
+				break;
+			case 'i':
+				ignoreCase = true;
+				break;
+			default:
+				usage();
+			}
+		}
+		int first = go.getOptInd();
+		if (args.length - first != 2) {
+			usage();
+		}
+		Path fileA = Paths.get(args[first]), fileB = Paths.get(args[first + 1]);
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 65536);
+		int hunks;
+		try (LineIndex a = new LineIndex(fileA); LineIndex b = new LineIndex(fileB)) {
+			Item[] items = Diff.diffLines(a, b, trimSpace, ignoreSpace, ignoreCase, strategy);
+			UnifiedDiffWriter w = new UnifiedDiffWriter(out);
+			w.setContext(context);
+			hunks = w.write(items, a, b, args[first], args[first + 1]);
+		}
+		System.exit(hunks == 0 ? 0 : 1);
+	}
+
+	static DiffStrategy getStrategy(String name) {
+		switch (name) {
+		case "myers":		return Diff.MYERS;
+		case "fast":		return Diff.MYERS_FAST;
+		case "patience":	return Diff.PATIENCE;
+		case "histogram":	return Diff.HISTOGRAM;
+		case "parallel":	return Diff.PARALLEL;
+		case "auto":		return Diff.AUTO;
+		default:
+			throw new IllegalArgumentException("Unknown diff algorithm " + name);
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: UnifiedDiffWriter [-U context] " +
+			"[-a myers|fast|patience|histogram|parallel|auto] [-b] [-w] [-i] file1 file2");
+		System.exit(2);
+	}
+}
@@ -45,34 +45,47 @@ public class StringFormat extends Format {
 		Object obj, StringBuffer where, FieldPosition ignore)  {
 
 		String s = (String)obj;
-		String wanted = s.substring(0, Math.min(s.length(), maxChars));
+		return format(s, 0, s.length(), where);
+	}
 
-		// If no space left for justification, return maxChars' worth */
-		if (wanted.length() > maxChars) {
-			where.append(wanted);
-		}
-		// Else get the spaces in the right place.
-		else switch (just) {
+	/** Format part of a String, StringBuilder, etc., without making
+	 * a String of that part; for formatting many values into one
+	 * re-used buffer.
+	 * @param s The text
+	 * @param start The index of the first character to format
+	 * @param end The index after the last character
+	 * @param where The buffer to append to
+	 * @return where
+	 */
+	public StringBuffer format(CharSequence s, int start, int end, StringBuffer where) {
+		int len = Math.min(end - start, maxChars);
+
+		// Get the spaces in the right place.
+		switch (just) {
 			case JUST_RIGHT:
-				pad(where, maxChars - wanted.length());
-				where.append(wanted);
+				pad(where, maxChars - len);
+				where.append(s, start, start + len);
 				break;
 			case JUST_CENTRE:
 				int startPos = where.length();
-				pad(where, (maxChars - wanted.length())/2);
-				where.append(wanted);
-				pad(where, (maxChars - wanted.length())/2);
+				pad(where, (maxChars - len)/2);
+				where.append(s, start, start + len);
+				pad(where, (maxChars - len)/2);
 				// Adjust for "rounding error"
 				pad(where, maxChars - (where.length() - startPos));
 				break;
 			case JUST_LEFT:
-				where.append(wanted);
-				pad(where, maxChars - wanted.length());
+				where.append(s, start, start + len);
+				pad(where, maxChars - len);
 				break;
 			}
 		return where;
 	}
 
+	public int getMaxChars() {
+		return maxChars;
+	}
+
 	protected final void pad(StringBuffer to, int howMany) {
 		for (int i=0; i<howMany; i++)
 			to.append(' ');
@@ -0,0 +1,100 @@
+package com.darwinsys.sql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An SQL statement whose ${name} variables have been turned into
+ * JDBC '?' parameters, along with the values to bind to them.
+ * Variables inside quoted strings or identifiers can't be parameters,
+ * so they are substituted as text, with single quotes doubled inside
+ * string literals; variables not in the map are left alone.
+ * <pre>
+ * select * from emp where name = ${who} and dept = '${dept}'
+ * </pre>
+ * with who=Ian and dept=R&amp;D becomes
+ * <pre>
+ * select * from emp where name = ? and dept = 'R&amp;D'
+ * </pre>
+ * with the single value "Ian".
+ * @author Ian Darwin
+ */
+public class BoundStatement {
+
+	private final String sql;
+	private final List<String> values;
+
+	private BoundStatement(String sql, List<String> values) {
+		this.sql = sql;
+		this.values = values;
+	}
+
+	/**
+	 * Convert the ${name} variables in a statement to parameters.
+	 * @param input The SQL, containing ${name} references
+	 * @param vars The variables, usually a com.darwinsys.util.VariableMap
+	 * @return The statement with '?' for each variable used as a value
+	 */
+	public static BoundStatement parse(String input, Map<String, String> vars) {
+		if (vars == null || input.indexOf("${") == -1) {
+			return new BoundStatement(input, Collections.<String>emptyList());
+		}
+		StringBuilder sb = new StringBuilder(input.length());
+		List<String> values = new ArrayList<>();
+		char quote = 0;		// the quote char we are inside of, or 0
+		final int n = input.length();
+		for (int i = 0; i < n; i++) {
+			char c = input.charAt(i);
+			if (c == '$' && i + 1 < n && input.charAt(i + 1) == '{') {
+				int end = input.indexOf('}', i + 2);
+				if (end != -1) {
+					String name = input.substring(i + 2, end);
+					String value = vars.get(name);
+					if (value != null) {
+						if (quote == 0) {
+							sb.append('?');
+							values.add(value);
+						} else if (quote == '\'') {
+							sb.append(value.replace("'", "''"));
+						} else {
+							sb.append(value);
+						}
+						i = end;
+						continue;
+					}
+				}
+			}
+			if (quote == 0) {
+				if (c == '\'' || c == '"') {
+					quote = c;
+				}
+			} else if (c == quote) {
+				quote = 0;	// a doubled quote just re-enters the string
+			}
+			sb.append(c);
+		}
+		return new BoundStatement(sb.toString(), values);
+	}
+
+	/** @return The SQL text, with '?' in place of the variables */
+	public String getSQL() {
+		return sql;
+	}
+
+	/** @return The values for the '?' parameters, in order */
+	public List<String> getValues() {
+		return values;
+	}
+
+	/** @return True if there are any parameters to bind */
+	public boolean hasParameters() {
+		return !values.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return sql + " " + values;
+	}
+}
@@ -0,0 +1,344 @@
+package com.darwinsys.sql;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.darwinsys.csv.CSVImport;
+
+/**
+ * Load CSV data into a table, much faster than running INSERT statements
+ * one at a time: one PreparedStatement is re-used for every row, rows are
+ * sent to the database in batches, and the parsing is done on a second
+ * thread, handing batches of rows over through a small queue, so that
+ * reading the file and writing the database overlap.
+ * <p>Values are passed with setObject(i, value, columnType) so the driver
+ * converts the strings to the column types; an empty field (or the
+ * null string, if one is set) is loaded as NULL. Quoted fields may span lines.
+ * Empty lines are skipped, except when loading just one column: then an
+ * empty line is an empty field, so it too is loaded as NULL.
+ * @author Ian Darwin
+ */
+public class CSVLoader {
+
+	/** How many batches the parser can get ahead of the database */
+	private static final int QUEUE_SIZE = 4;
+
+	/** Rows parsed from the input, with the line the last one ended on */
+	private static class Chunk {
+		final List<String[]> rows;
+		final int lastLine;
+		Chunk(List<String[]> rows, int lastLine) {
+			this.rows = rows;
+			this.lastLine = lastLine;
+		}
+	}
+	private static final Chunk END = new Chunk(null, 0);
+
+	private final Connection conn;
+	private final String table;
+	private List<String> columns;
+	private char delimiter = CSVImport.DEFAULT_SEP;
+	private boolean header;
+	private String nullString = "";
+	private int batchSize = 1000;
+	private int commitInterval;
+	private PrintStream progress;
+	private long progressNanos = 5_000_000_000L;
+
+	private volatile IOException parseError;
+
+	/**
+	 * Construct a loader.
+	 * @param conn The connection to load through
+	 * @param table The table to load into
+	 */
+	public CSVLoader(Connection conn, String table) {
+		this.conn = conn;
+		this.table = table;
+	}
+
+	/**
+	 * Load all the rows from the input.
+	 * @param in The CSV input, which is not closed
+	 * @return The number of rows loaded
+	 * @throws IOException If the input can't be read or has the wrong
+	 * number of fields on a line
+	 * @throws SQLException If the table can't be found or an insert fails
+	 */
+	public long load(Reader in) throws IOException, SQLException {
+		final BufferedReader reader = in instanceof BufferedReader ?
+			(BufferedReader) in : new BufferedReader(in, 65536);
+		final int[] lineNumber = new int[1];
+		List<String> cols = columns;
+		if (header) {
+			String[] names = readRecord(reader, new CSVImport(delimiter), lineNumber, false);
+			if (cols == null && names != null) {
+				cols = Arrays.asList(names);
+			}
+		}
+		final int[] types = getColumnTypes(cols);
+		final int colCount = types.length;
+
+		final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+		Thread parser = new Thread(new Runnable() {
+			public void run() {
+				parse(reader, colCount, lineNumber, queue);
+			}
+		}, "CSVLoader parser");
+		parser.setDaemon(true);
+		parseError = null;
+		parser.start();
+
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(table);
+		if (cols != null) {
+			sql.append(" (").append(String.join(", ", cols)).append(')');
+		}
+		sql.append(" VALUES (");
+		for (int i = 0; i < colCount; i++) {
+			sql.append(i == 0 ? "?" : ", ?");
+		}
+		sql.append(')');
+
+		boolean savedAutoCommit = conn.getAutoCommit();
+		if (commitInterval > 0) {
+			conn.setAutoCommit(false);
+		}
+		final long start = System.nanoTime();
+		long lastReport = start;
+		long rows = 0, rowsSinceCommit = 0;
+		boolean done = false;
+		Throwable failure = null;
+		try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+			Chunk chunk;
+			while ((chunk = queue.take()) != END) {
+				for (String[] row : chunk.rows) {
+					for (int i = 0; i < colCount; i++) {
+						String value = i < row.length ? row[i] : null;
+						if (value == null || value.equals(nullString)) {
+							ps.setNull(i + 1, types[i]);
+						} else {
+							ps.setObject(i + 1, value, types[i]);
+						}
+					}
+					ps.addBatch();
+				}
+				try {
+					ps.executeBatch();
+				} catch (SQLException e) {
+					throw new SQLException(String.format(
+						"Load of %s failed in the batch ending at line %d: %s",
+						table, chunk.lastLine, e.getMessage()), e.getSQLState(), e);
+				}
+				rows += chunk.rows.size();
+				rowsSinceCommit += chunk.rows.size();
+				if (commitInterval > 0 && rowsSinceCommit >= commitInterval) {
+					conn.commit();
+					rowsSinceCommit = 0;
+				}
+				long now = System.nanoTime();
+				if (progress != null && now - lastReport >= progressNanos) {
+					report(rows, now - start);
+					lastReport = now;
+				}
+			}
+			if (parseError != null) {
+				throw parseError;
+			}
+			if (commitInterval > 0) {
+				conn.commit();
+			}
+			done = true;
+		} catch (InterruptedException e) {
+			SQLException ex = new SQLException("Load of " + table + " interrupted", e);
+			failure = ex;
+			throw ex;
+		} catch (Throwable t) {
+			failure = t;
+			throw t;
+		} finally {
+			parser.interrupt();		// in case we failed while it was still going
+			if (commitInterval > 0) {
+				try {
+					if (!done) {
+						conn.rollback();
+					}
+					conn.setAutoCommit(savedAutoCommit);
+				} catch (SQLException e) {
+					// Don't let this hide the reason we are rolling back
+					if (failure == null) {
+						throw e;
+					}
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if (progress != null) {
+			report(rows, System.nanoTime() - start);
+		}
+		return rows;
+	}
+
+	/** The parser thread: read records and queue them in batches */
+	private void parse(BufferedReader reader, int colCount, int[] lineNumber,
+		BlockingQueue<Chunk> queue) {
+		CSVImport csv = new CSVImport(delimiter);
+		try {
+			try {
+				List<String[]> rows = new ArrayList<>(batchSize);
+				String[] row;
+				while ((row = readRecord(reader, csv, lineNumber, colCount == 1)) != null) {
+					if (row.length > colCount) {
+						throw new IOException(String.format("%s line %d: %d fields, expected %d",
+							table, lineNumber[0], row.length, colCount));
+					}
+					rows.add(row);
+					if (rows.size() >= batchSize) {
+						queue.put(new Chunk(rows, lineNumber[0]));
+						rows = new ArrayList<>(batchSize);
+					}
+				}
+				if (!rows.isEmpty()) {
+					queue.put(new Chunk(rows, lineNumber[0]));
+				}
+			} catch (IOException e) {
+				parseError = e;
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Throwable t) {		// even an Error, or load() would wait for END for ever
+				parseError = new IOException("Can't parse " + table + " data", t);
+			}
+			queue.put(END);
+		} catch (InterruptedException e) {
+			// The loader gave up
+		}
+	}
+
+	/**
+	 * Read one record, joining lines while a quoted field is open.
+	 * @param emptyLines True if an empty line is a record of one empty
+	 * field, as it is in a one-column file; else empty lines are skipped
+	 * @return The fields, or null at end of input
+	 */
+	private static String[] readRecord(BufferedReader reader, CSVImport csv,
+		int[] lineNumber, boolean emptyLines) throws IOException {
+		String line;
+		do {
+			line = reader.readLine();
+			if (line == null) {
+				return null;
+			}
+			++lineNumber[0];
+		} while (line.isEmpty() && !emptyLines);
+		if (line.isEmpty()) {
+			return new String[] { "" };
+		}
+		if (countQuotes(line) % 2 != 0) {
+			StringBuilder sb = new StringBuilder(line);
+			int quotes = countQuotes(line);
+			String more;
+			while (quotes % 2 != 0 && (more = reader.readLine()) != null) {
+				++lineNumber[0];
+				sb.append('\n').append(more);
+				quotes += countQuotes(more);
+			}
+			line = sb.toString();
+		}
+		List<String> fields = csv.parse(line);
+		return fields.toArray(new String[fields.size()]);
+	}
+
+	private static int countQuotes(String s) {
+		int n = 0;
+		for (int i = s.indexOf('"'); i != -1; i = s.indexOf('"', i + 1)) {
+			++n;
+		}
+		return n;
+	}
+
+	/** Get the types of the columns being loaded, from an empty query */
+	private int[] getColumnTypes(List<String> cols) throws SQLException {
+		String query = "SELECT " + (cols == null ? "*" : String.join(", ", cols)) +
+			" FROM " + table + " WHERE 1 = 0";
+		try (Statement st = conn.createStatement();
+			ResultSet rs = st.executeQuery(query)) {
+			ResultSetMetaData md = rs.getMetaData();
+			int[] types = new int[md.getColumnCount()];
+			for (int i = 0; i < types.length; i++) {
+				types[i] = md.getColumnType(i + 1);
+			}
+			return types;
+		}
+	}
+
+	private void report(long rows, long nanos) {
+		double secs = nanos / 1_000_000_000d;
+		progress.printf("CSVLoader: %s: %d rows in %.1f sec (%.0f rows/sec)%n",
+			table, rows, secs, secs > 0 ? rows / secs : 0d);
+	}
+
+	/** @param columns The columns to load, in the order they appear
+	 * in the file; by default, from the header if there is one,
+	 * else all the columns of the table
+	 */
+	public void setColumns(List<String> columns) {
+		this.columns = columns;
+	}
+
+	public void setDelimiter(char delimiter) {
+		this.delimiter = delimiter;
+	}
+
+	/** @param header True if the first line holds the column names */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	/** @param nullString The field value to load as NULL, default empty */
+	public void setNullString(String nullString) {
+		this.nullString = nullString;
+	}
+
+	/** @param batchSize The number of rows sent to the database at a time */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Commit every so many rows (rounded up to a whole batch), and at
+	 * the end, rolling back on failure; 0, the default, leaves
+	 * transactions alone.
+	 * @param rows The number of rows per commit
+	 */
+	public void setCommitInterval(int rows) {
+		if (rows < 0) {
+			throw new IllegalArgumentException("Commit interval may not be negative");
+		}
+		this.commitInterval = rows;
+	}
+
+	/**
+	 * Report progress (rows and rows/sec) every so often and at the end.
+	 * @param progress Where to report it, or null for no reports
+	 * @param seconds How often
+	 */
+	public void setProgress(PrintStream progress, int seconds) {
+		this.progress = progress;
+		this.progressNanos = seconds * 1_000_000_000L;
+	}
+}
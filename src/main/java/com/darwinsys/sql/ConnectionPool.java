@@ -0,0 +1,498 @@
+package com.darwinsys.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.darwinsys.util.Verbosity;
+
+/**
+ * A small, dependency-free pool of JDBC Connections for one Configuration.
+ * Connections handed out are proxies whose close() method returns
+ * the underlying Connection to the pool instead of closing it.
+ * <p>Normally obtained from ConnectionUtil.getPool(), which sets the
+ * pool up from the PoolXXX entries in the .db.properties file:
+ * <pre>
+ * test.PoolMin=2
+ * test.PoolMax=20
+ * test.PoolIdleTimeout=600	# seconds
+ * test.PoolBorrowTimeout=30	# seconds
+ * test.PoolValidate=true
+ * </pre>
+ * @author Ian Darwin
+ */
+public class ConnectionPool implements AutoCloseable {
+
+	public static final int DEFAULT_MIN_SIZE = 0;
+	public static final int DEFAULT_MAX_SIZE = 10;
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+	public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30 * 1000L;
+	/** How long to wait, in seconds, for Connection.isValid() */
+	public static final int VALIDATION_TIMEOUT_SECS = 5;
+
+	/** One Timer thread does idle eviction for all the pools */
+	private static Timer evictor;
+
+	private final Configuration config;
+	private final int minSize, maxSize;
+	/** Volatile, as the evictor thread reads it without the lock */
+	private volatile long idleTimeoutMillis = DEFAULT_IDLE_TIMEOUT_MILLIS;
+	private long borrowTimeoutMillis = DEFAULT_BORROW_TIMEOUT_MILLIS;
+	private boolean validateOnBorrow = true;
+	private TimerTask evictionTask;
+
+	/** Idle connections, most recently returned first */
+	private final Deque<Entry> idle = new ArrayDeque<>();
+	/** Physical connections open or being opened, idle or not */
+	private int total;
+	private boolean closed;
+
+	// Statistics, all guarded by "this"
+	private long created, destroyed, borrowed, returned,
+		validationFailures, timeouts, waits, totalWaitNanos, maxWaitNanos;
+
+	/** A physical connection and when it was last returned */
+	private static class Entry {
+		final Connection physical;
+		long lastUsed;
+		Entry(Connection physical) {
+			this.physical = physical;
+		}
+	}
+
+	/**
+	 * Construct a pool
+	 * @param config The Configuration to make connections from
+	 * @param minSize The number of connections to keep even when idle
+	 * @param maxSize The maximum number of connections open at once
+	 * @throws ClassNotFoundException If the JDBC driver can't be loaded
+	 */
+	public ConnectionPool(Configuration config, int minSize, int maxSize)
+		throws ClassNotFoundException {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+			throw new IllegalArgumentException(
+				"Invalid pool sizes: min " + minSize + ", max " + maxSize);
+		}
+		this.config = config;
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		// Load the driver once, instead of once per connection
+		Class.forName(config.getDriverName());
+		scheduleEviction();
+	}
+
+	/**
+	 * Get a Connection from the pool, opening a new one if none is
+	 * idle and the pool is not full, else waiting for one to be returned.
+	 * Close the Connection to give it back.
+	 * @return A Connection
+	 * @throws SQLTimeoutException If none comes free within the borrow timeout
+	 * @throws SQLException If a new Connection can't be opened
+	 */
+	public Connection getConnection() throws SQLException {
+		final long startNanos = System.nanoTime();
+		final long deadline = startNanos + borrowTimeoutMillis * 1_000_000L;
+		while (true) {
+			Entry entry = null;
+			synchronized (this) {
+				boolean waited = false;
+				while (entry == null) {
+					if (closed) {
+						throw new SQLException("Connection pool " + config.getName() + " is closed");
+					}
+					entry = idle.pollFirst();
+					if (entry != null) {
+						break;
+					}
+					if (total < maxSize) {
+						++total;	// reserve the slot, then connect outside the lock
+						break;
+					}
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						++timeouts;
+						throw new SQLTimeoutException(String.format(
+							"No connection free in pool %s after %d ms",
+							config.getName(), borrowTimeoutMillis));
+					}
+					waited = true;
+					try {
+						wait(remaining / 1_000_000L + 1);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted waiting for a connection", e);
+					}
+				}
+				if (waited) {
+					long waitNanos = System.nanoTime() - startNanos;
+					++waits;
+					totalWaitNanos += waitNanos;
+					maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+				}
+			}
+			if (entry == null) {
+				entry = createEntry();
+			} else if (validateOnBorrow && !isValid(entry.physical)) {
+				synchronized (this) {
+					++validationFailures;
+				}
+				destroy(entry);
+				continue;
+			}
+			synchronized (this) {
+				++borrowed;
+			}
+			return wrap(entry);
+		}
+	}
+
+	/** Open a new physical Connection for a slot already counted in "total" */
+	private Entry createEntry() throws SQLException {
+		try {
+			if (ConnectionUtil.getVerbosity() != Verbosity.QUIET) {
+				System.out.println("ConnectionPool: connecting to " + config.getDbURL());
+			}
+			Entry entry = new Entry(DriverManager.getConnection(
+				config.getDbURL(), config.getUserName(), config.getPassword()));
+			synchronized (this) {
+				++created;
+			}
+			return entry;
+		} catch (SQLException | RuntimeException e) {
+			synchronized (this) {
+				--total;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	private static boolean isValid(Connection c) {
+		try {
+			return c.isValid(VALIDATION_TIMEOUT_SECS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/** Close a physical Connection and give up its slot */
+	private void destroy(Entry entry) {
+		try {
+			entry.physical.close();
+		} catch (SQLException e) {
+			// Nothing useful to do, it's going away anyway
+		}
+		synchronized (this) {
+			--total;
+			++destroyed;
+			notifyAll();
+		}
+	}
+
+	/** Called when the user closes one of our proxies */
+	private void release(Entry entry) {
+		try {
+			// Don't let one user's transaction leak into the next user's
+			if (!entry.physical.getAutoCommit()) {
+				entry.physical.rollback();
+				entry.physical.setAutoCommit(true);
+			}
+			entry.physical.clearWarnings();
+		} catch (SQLException e) {
+			destroy(entry);
+			return;
+		}
+		synchronized (this) {
+			++returned;
+			if (!closed) {
+				entry.lastUsed = System.currentTimeMillis();
+				idle.addFirst(entry);
+				notify();
+				return;
+			}
+		}
+		destroy(entry);
+	}
+
+	/** Wrap a physical Connection in a proxy that returns it on close() */
+	private Connection wrap(final Entry entry) {
+		InvocationHandler handler = new InvocationHandler() {
+			boolean returnedToPool;
+
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				switch (method.getName()) {
+				case "close":
+					if (!returnedToPool) {
+						returnedToPool = true;
+						release(entry);
+					}
+					return null;
+				case "isClosed":
+					return returnedToPool || entry.physical.isClosed();
+				case "toString":
+					return "Pooled " + entry.physical;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				}
+				if (returnedToPool) {
+					throw new SQLException("Connection has been returned to the pool");
+				}
+				try {
+					return method.invoke(entry.physical, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		};
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+			new Class<?>[] { Connection.class }, handler);
+	}
+
+	/** Close connections that have sat idle too long, keeping minSize,
+	 * then open new ones if we are below minSize.
+	 */
+	void evictAndFill() {
+		long timeout = idleTimeoutMillis;
+		long cutoff = System.currentTimeMillis() - timeout;
+		Deque<Entry> victims = new ArrayDeque<>();
+		int wanted;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			// Oldest are at the end; with no timeout, only refill
+			Iterator<Entry> it = idle.descendingIterator();
+			while (timeout > 0 && it.hasNext() && total - victims.size() > minSize) {
+				Entry e = it.next();
+				if (e.lastUsed > cutoff) {
+					break;
+				}
+				it.remove();
+				victims.add(e);
+			}
+			wanted = minSize - (total - victims.size());
+		}
+		for (Entry e : victims) {
+			destroy(e);
+		}
+		for (int i = 0; i < wanted; i++) {
+			synchronized (this) {
+				if (closed || total >= minSize) {
+					return;
+				}
+				++total;
+			}
+			try {
+				Entry entry = createEntry();
+				synchronized (this) {
+					entry.lastUsed = System.currentTimeMillis();
+					idle.addLast(entry);
+					notify();
+				}
+			} catch (SQLException e) {
+				System.err.println("ConnectionPool: could not pre-open connection: " + e);
+				return;
+			}
+		}
+	}
+
+	private synchronized void scheduleEviction() {
+		if (evictionTask != null) {
+			evictionTask.cancel();
+			evictionTask = null;
+		}
+		if (idleTimeoutMillis <= 0 && minSize == 0) {
+			return;
+		}
+		long period = idleTimeoutMillis > 0 ?
+			Math.max(idleTimeoutMillis / 2, 1000) : 60 * 1000L;
+		evictionTask = new TimerTask() {
+			@Override
+			public void run() {
+				// An exception here would kill the Timer that all the pools share
+				try {
+					evictAndFill();
+				} catch (RuntimeException e) {
+					System.err.println("ConnectionPool: eviction failed: " + e);
+				}
+			}
+		};
+		synchronized (ConnectionPool.class) {
+			if (evictor == null) {
+				evictor = new Timer("ConnectionPool evictor", true);
+			}
+			evictor.schedule(evictionTask, minSize > 0 ? 0 : period, period);
+		}
+	}
+
+	/**
+	 * Close all idle connections and stop handing out new ones;
+	 * connections still in use are closed when they are returned.
+	 */
+	public void close() {
+		Deque<Entry> victims;
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			if (evictionTask != null) {
+				evictionTask.cancel();
+			}
+			victims = new ArrayDeque<>(idle);
+			idle.clear();
+			notifyAll();
+		}
+		for (Entry e : victims) {
+			destroy(e);
+		}
+	}
+
+	/**
+	 * Set how long a connection may sit unused before the
+	 * evictor closes it (subject to the minimum size).
+	 * @param idleTimeoutMillis The timeout, or 0 for no eviction.
+	 */
+	public void setIdleTimeout(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+		scheduleEviction();
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeoutMillis;
+	}
+
+	/**
+	 * Set how long getConnection() waits for a connection when the pool is full.
+	 * @param borrowTimeoutMillis The timeout
+	 */
+	public void setBorrowTimeout(long borrowTimeoutMillis) {
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+	}
+
+	public long getBorrowTimeout() {
+		return borrowTimeoutMillis;
+	}
+
+	/**
+	 * Set whether idle connections are checked with isValid() before
+	 * being handed out; invalid ones are discarded and replaced.
+	 * @param validateOnBorrow True to validate
+	 */
+	public void setValidateOnBorrow(boolean validateOnBorrow) {
+		this.validateOnBorrow = validateOnBorrow;
+	}
+
+	public boolean isValidateOnBorrow() {
+		return validateOnBorrow;
+	}
+
+	public Configuration getConfiguration() {
+		return config;
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Get a snapshot of the pool's counters.
+	 * @return The current Statistics
+	 */
+	public synchronized Statistics getStatistics() {
+		Statistics s = new Statistics();
+		s.name = config.getName();
+		s.open = total;
+		s.idle = idle.size();
+		s.created = created;
+		s.destroyed = destroyed;
+		s.borrowed = borrowed;
+		s.returned = returned;
+		s.validationFailures = validationFailures;
+		s.timeouts = timeouts;
+		s.waits = waits;
+		s.totalWaitMillis = totalWaitNanos / 1_000_000L;
+		s.maxWaitMillis = maxWaitNanos / 1_000_000L;
+		return s;
+	}
+
+	@Override
+	public String toString() {
+		return getStatistics().toString();
+	}
+
+	/** A snapshot of the counters for one pool */
+	public static class Statistics {
+		String name;
+		int open, idle;
+		long created, destroyed, borrowed, returned,
+			validationFailures, timeouts, waits, totalWaitMillis, maxWaitMillis;
+
+		/** @return Physical connections currently open, in use or idle */
+		public int getOpen() {
+			return open;
+		}
+		/** @return Physical connections sitting idle in the pool */
+		public int getIdle() {
+			return idle;
+		}
+		/** @return Physical connections in use */
+		public int getActive() {
+			return open - idle;
+		}
+		public long getCreated() {
+			return created;
+		}
+		public long getDestroyed() {
+			return destroyed;
+		}
+		public long getBorrowed() {
+			return borrowed;
+		}
+		public long getReturned() {
+			return returned;
+		}
+		public long getValidationFailures() {
+			return validationFailures;
+		}
+		/** @return Number of getConnection() calls that gave up waiting */
+		public long getTimeouts() {
+			return timeouts;
+		}
+		/** @return Number of getConnection() calls that had to wait */
+		public long getWaits() {
+			return waits;
+		}
+		public long getTotalWaitMillis() {
+			return totalWaitMillis;
+		}
+		public long getMaxWaitMillis() {
+			return maxWaitMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+				"Pool %s: open %d, idle %d, created %d, destroyed %d, borrowed %d, returned %d, " +
+				"invalid %d, waits %d (max %d ms), timeouts %d",
+				name, open, idle, created, destroyed, borrowed, returned,
+				validationFailures, waits, maxWaitMillis, timeouts);
+		}
+	}
+}
@@ -9,7 +9,9 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
@@ -31,6 +33,8 @@ public class ConnectionUtil {
 	private static Verbosity verbosity = Verbosity.QUIET;
 	/** The contents of the current Configuration file */
 	private static final Properties properties = new Properties();
+	/** The connection pools, one per configuration name */
+	private static final Map<String, ConnectionPool> pools = new HashMap<>();
 	
 	/** Sets the full path of the config file to read.
 	 * @param configFileName The FileName of the configuration file to use.
@@ -127,6 +131,91 @@ public class ConnectionUtil {
 		return getConnection(c.getDbURL(), c.getDriverName(), c.getUserName(), c.getPassword());
 	}
 
+	/**
+	 * Get a Connection from the pool for the given config, creating
+	 * the pool the first time. Close the Connection to return it to the pool.
+	 * @param config The name of the wanted configuration
+	 * @return A pooled Connection
+	 * @throws SQLException If the pool can't supply a connection
+	 */
+	public static Connection getPooledConnection(String config) throws SQLException {
+		return getPool(config).getConnection();
+	}
+
+	/**
+	 * Get the connection pool for the named configuration,
+	 * creating it the first time.
+	 * @param config The name of the wanted configuration
+	 * @return The ConnectionPool
+	 */
+	public static ConnectionPool getPool(String config) throws DataBaseException {
+		synchronized (pools) {
+			ConnectionPool pool = pools.get(config);
+			if (pool != null) {
+				return pool;
+			}
+		}
+		return getPool(getConfiguration(config));
+	}
+
+	/**
+	 * Get the connection pool for a Configuration, creating it the
+	 * first time. Pools are keyed by the Configuration's name; the pool
+	 * sizes and timeouts come from the config.PoolMin, config.PoolMax,
+	 * config.PoolIdleTimeout and config.PoolBorrowTimeout (both in seconds)
+	 * and config.PoolValidate entries in the properties file, if present.
+	 * @param config The Configuration
+	 * @return The ConnectionPool
+	 */
+	public static ConnectionPool getPool(Configuration config) throws DataBaseException {
+		synchronized (pools) {
+			ConnectionPool pool = pools.get(config.getName());
+			if (pool == null) {
+				ensurePropertiesLoaded();
+				String prefix = config.getName() + ".";
+				try {
+					pool = new ConnectionPool(config,
+						getIntProperty(prefix + "PoolMin", ConnectionPool.DEFAULT_MIN_SIZE),
+						getIntProperty(prefix + "PoolMax", ConnectionPool.DEFAULT_MAX_SIZE));
+				} catch (ClassNotFoundException ex) {
+					throw new DataBaseException(ex.toString());
+				}
+				pool.setIdleTimeout(1000L * getIntProperty(prefix + "PoolIdleTimeout",
+					(int)(ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS / 1000)));
+				pool.setBorrowTimeout(1000L * getIntProperty(prefix + "PoolBorrowTimeout",
+					(int)(ConnectionPool.DEFAULT_BORROW_TIMEOUT_MILLIS / 1000)));
+				pool.setValidateOnBorrow(Boolean.parseBoolean(
+					properties.getProperty(prefix + "PoolValidate", "true")));
+				pools.put(config.getName(), pool);
+			}
+			return pool;
+		}
+	}
+
+	/** Close all the connection pools; connections in use are
+	 * closed as they are returned.
+	 */
+	public static void closePools() {
+		synchronized (pools) {
+			for (ConnectionPool pool : pools.values()) {
+				pool.close();
+			}
+			pools.clear();
+		}
+	}
+
+	private static int getIntProperty(String key, int defaultValue) {
+		String val = properties.getProperty(key);
+		if (val == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(val.trim());
+		} catch (NumberFormatException e) {
+			throw new DataBaseException("Invalid number for " + key + ": " + val);
+		}
+	}
+
 	/** Generate a Set&lt;String&gt; of the config names available
 	 * from the current configuration file.
 	 * @return Set&lt;String&gt; of the configurations
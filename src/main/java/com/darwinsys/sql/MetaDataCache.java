@@ -0,0 +1,212 @@
+package com.darwinsys.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * A cache of the DatabaseMetaData table and column lists for one
+ * connection, since on a large catalog each getTables() or getColumns()
+ * call can take seconds. Entries are loaded when first wanted (or,
+ * for the table list, in the background by preload()), and reloaded
+ * when they are older than the time-to-live or after refresh().
+ * <p>The table and column names are also kept sorted, case-insensitively,
+ * for prefix lookup, e.g., for completion in a GUI.
+ * <p>Each ResultSet handed out is a shared view of the cached
+ * CachedRowSet, with its own cursor; closing it does not affect the cache.
+ * @author Ian Darwin
+ */
+public class MetaDataCache {
+
+	public static final long DEFAULT_TTL_MILLIS = 10 * 60 * 1000;
+
+	private static final String[] TABLE_TYPES = { "TABLE", "VIEW" };
+
+	/** One cached getTables() or getColumns() result, with its names */
+	private static class Entry {
+		final CachedRowSet rows;
+		final NavigableSet<String> names;
+		final long loaded = System.currentTimeMillis();
+		Entry(CachedRowSet rows, NavigableSet<String> names) {
+			this.rows = rows;
+			this.names = names;
+		}
+	}
+
+	private final DatabaseMetaData md;
+	private long ttl = DEFAULT_TTL_MILLIS;
+
+	/** Guarded by this */
+	private Entry tables;
+	/** The columns of each table, by table name; guarded by this */
+	private final Map<String, Entry> columns = new HashMap<>();
+
+	/**
+	 * Construct a cache
+	 * @param md The metadata for the connection
+	 */
+	public MetaDataCache(DatabaseMetaData md) {
+		this.md = md;
+	}
+
+	/**
+	 * Get the tables and views, as from
+	 * getTables(null, null, "%", { "TABLE", "VIEW" })
+	 * @return A ResultSet positioned before the first row
+	 * @throws SQLException If the metadata can't be loaded
+	 */
+	public ResultSet getTables() throws SQLException {
+		return view(getTablesEntry().rows);
+	}
+
+	/**
+	 * Get the columns of one table, as from getColumns(null, null, table, "%")
+	 * @param table The table name, as the database wants it
+	 * @return A ResultSet positioned before the first row
+	 * @throws SQLException If the metadata can't be loaded
+	 */
+	public ResultSet getColumns(String table) throws SQLException {
+		return view(getColumnsEntry(table).rows);
+	}
+
+	/**
+	 * Find the table and view names that start with a prefix, ignoring case
+	 * @param prefix The start of the name
+	 * @return The names, in order
+	 * @throws SQLException If the metadata can't be loaded
+	 */
+	public NavigableSet<String> getTableNames(String prefix) throws SQLException {
+		return byPrefix(getTablesEntry().names, prefix);
+	}
+
+	/**
+	 * Find the column names of a table that start with a prefix, ignoring case
+	 * @param table The table name, as the database wants it
+	 * @param prefix The start of the name
+	 * @return The names, in order
+	 * @throws SQLException If the metadata can't be loaded
+	 */
+	public NavigableSet<String> getColumnNames(String table, String prefix) throws SQLException {
+		return byPrefix(getColumnsEntry(table).names, prefix);
+	}
+
+	/** Start loading the table list on a background thread,
+	 * so it will be there when first wanted.
+	 */
+	public void preload() {
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				try {
+					getTablesEntry();
+				} catch (SQLException e) {
+					System.err.println("MetaDataCache: preload failed: " + e);
+				}
+			}
+		}, "MetaDataCache preload");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/** Forget everything, so it is all loaded again when next wanted */
+	public synchronized void refresh() {
+		tables = null;
+		columns.clear();
+	}
+
+	/**
+	 * Set how long entries are kept before being loaded again
+	 * @param millis The time to live; 0 means for ever
+	 */
+	public void setTTL(long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("TTL may not be negative");
+		}
+		this.ttl = millis;
+	}
+
+	public long getTTL() {
+		return ttl;
+	}
+
+	private synchronized Entry getTablesEntry() throws SQLException {
+		if (tables == null || isStale(tables)) {
+			tables = load(md.getTables(null, null, "%", TABLE_TYPES), "TABLE_NAME");
+		}
+		return tables;
+	}
+
+	private synchronized Entry getColumnsEntry(String table) throws SQLException {
+		Entry e = columns.get(table);
+		if (e == null || isStale(e)) {
+			e = load(md.getColumns(null, null, table, "%"), "COLUMN_NAME");
+			columns.put(table, e);
+		}
+		return e;
+	}
+
+	private boolean isStale(Entry e) {
+		return ttl > 0 && System.currentTimeMillis() - e.loaded >= ttl;
+	}
+
+	/** Copy a metadata ResultSet, and collect the names in it */
+	private static Entry load(ResultSet rs, String nameColumn) throws SQLException {
+		CachedRowSet rows = RowSetProvider.newFactory().createCachedRowSet();
+		try {
+			rows.populate(rs);
+		} finally {
+			rs.close();
+		}
+		NavigableSet<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		int column = rows.findColumn(nameColumn);
+		while (rows.next()) {
+			names.add(rows.getString(column));
+		}
+		rows.beforeFirst();
+		return new Entry(rows, Collections.unmodifiableNavigableSet(names));
+	}
+
+	private static NavigableSet<String> byPrefix(NavigableSet<String> names, String prefix) {
+		if (prefix == null || prefix.isEmpty()) {
+			return names;
+		}
+		return names.subSet(prefix, true, prefix + Character.MAX_VALUE, false);
+	}
+
+	/**
+	 * Make a view of the cached rows with a cursor of its own. The
+	 * shared copy from createShared() would empty the cache if closed,
+	 * so it is wrapped to ignore close().
+	 */
+	private static ResultSet view(CachedRowSet rows) throws SQLException {
+		final ResultSet shared;
+		synchronized (rows) {
+			shared = rows.createShared();
+		}
+		shared.beforeFirst();
+		return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+			new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					if (method.getName().equals("close")) {
+						return null;
+					}
+					try {
+						return method.invoke(shared, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				}
+			});
+	}
+}
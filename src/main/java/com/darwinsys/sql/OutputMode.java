@@ -6,14 +6,26 @@ package com.darwinsys.sql;
 public enum OutputMode {
 	/** Mode for Text */
 	t("Text"),
+	/** Mode for Text with the columns lined up */
+	aligned("Aligned text"),
 	/** Mode for HTML output */
 	h("HTML"),
 	/** Mode for SQL output */
 	s("SQL"),
 	/** Mode for XML output */
 	x("XML"),
+	/** Mode for XML with one element per row, one child element per column */
+	xmlrows("XML rows"),
 	/** Mode for JTable */
-	j("Table");
+	j("Table"),
+	/** Mode for RFC 4180 comma-separated values */
+	csv("CSV"),
+	/** Mode for tab-separated values */
+	tsv("TSV"),
+	/** Mode for a JSON array of row objects */
+	json("JSON"),
+	/** Mode for newline-delimited JSON, one row object per line */
+	ndjson("NDJSON");
 
 	String name;
 	OutputMode(String n) {
@@ -0,0 +1,284 @@
+package com.darwinsys.sql;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * A read-only TableModel over a ResultSet that reads the rows in pages
+ * on a background thread, so the JTable shows rows as they arrive and
+ * the GUI stays responsive however many rows there are.
+ * <p>Pages are kept in a least-recently-used cache of limited size.
+ * If the ResultSet is scrollable, pages that fall out of the cache
+ * are read again (with absolute()) when the user scrolls back to them;
+ * cells show as empty until their page arrives. A forward-only
+ * ResultSet can't be re-read, so all its pages are kept.
+ * <p>The model owns the ResultSet, and closes it and its Statement
+ * in close().
+ * @author Ian Darwin
+ */
+@SuppressWarnings("serial")
+public class PagedTableModel extends AbstractTableModel implements AutoCloseable {
+
+	public static final int DEFAULT_PAGE_SIZE = 500;
+	public static final int DEFAULT_MAX_PAGES = 200;
+
+	private final ResultSet rs;
+	private final int pageSize;
+	private final boolean scrollable;
+	private final int colCount;
+	private final String[] columnNames;
+	private final Class<?>[] columnClasses;
+
+	/** The pages read, by page number; guarded by itself */
+	private final LinkedHashMap<Integer, Object[][]> pages;
+
+	/** Pages wanted by getValueAt() but not in the cache */
+	private final LinkedBlockingDeque<Integer> requests = new LinkedBlockingDeque<>();
+
+	/** Rows the JTable knows about; only used on the event thread */
+	private int rowCount;
+
+	/** Rows read so far by the first pass; only used by the loader */
+	private int scanned;
+	private volatile boolean scanDone;
+	private boolean repositionNeeded;
+
+	private final Thread loader;
+	private volatile boolean closed;
+
+	/**
+	 * Construct a model with the default page and cache sizes;
+	 * call start() to begin reading.
+	 * @param rs The ResultSet, positioned before the first row
+	 * @throws SQLException If the metadata can't be read
+	 */
+	public PagedTableModel(ResultSet rs) throws SQLException {
+		this(rs, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+	}
+
+	/**
+	 * Construct a model; call start() to begin reading.
+	 * @param rs The ResultSet, positioned before the first row
+	 * @param pageSize The number of rows per page
+	 * @param maxPages The most pages to keep, if the ResultSet is scrollable
+	 * @throws SQLException If the metadata can't be read
+	 */
+	public PagedTableModel(ResultSet rs, int pageSize, final int maxPages) throws SQLException {
+		if (pageSize < 1 || maxPages < 1) {
+			throw new IllegalArgumentException("Page size and count must be positive");
+		}
+		this.rs = rs;
+		this.pageSize = pageSize;
+		this.scrollable = rs.getType() != ResultSet.TYPE_FORWARD_ONLY;
+		ResultSetMetaData md = rs.getMetaData();
+		colCount = md.getColumnCount();
+		columnNames = new String[colCount];
+		columnClasses = new Class<?>[colCount];
+		for (int i = 0; i < colCount; i++) {
+			columnNames[i] = md.getColumnLabel(i + 1);
+			try {
+				columnClasses[i] = Class.forName(md.getColumnClassName(i + 1));
+			} catch (Exception e) {
+				columnClasses[i] = Object.class;
+			}
+		}
+		pages = new LinkedHashMap<Integer, Object[][]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Object[][]> eldest) {
+				return scrollable && size() > maxPages;
+			}
+		};
+		loader = new Thread(new Runnable() {
+			public void run() {
+				load();
+			}
+		}, "PagedTableModel loader");
+		loader.setDaemon(true);
+	}
+
+	/** Start reading rows in the background */
+	public void start() {
+		loader.start();
+	}
+
+	/** The loader thread: read through the rows once, a page at a time,
+	 * re-reading any evicted pages that are asked for along the way.
+	 */
+	private void load() {
+		try {
+			while (!closed) {
+				Integer wanted = scanDone ? requests.take() : requests.poll();
+				if (wanted != null) {
+					loadPage(wanted);
+				} else {
+					scanPage();
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed
+		} catch (SQLException e) {
+			if (!closed) {
+				System.err.println("PagedTableModel: " + e);
+			}
+		} finally {
+			closeResultSet();
+		}
+	}
+
+	/** Read the next page in the first pass */
+	private void scanPage() throws SQLException {
+		if (repositionNeeded) {
+			if (scanned == 0) {
+				rs.beforeFirst();
+			} else {
+				rs.absolute(scanned);
+			}
+			repositionNeeded = false;
+		}
+		Object[][] rows = new Object[pageSize][];
+		int n = 0;
+		while (n < pageSize && !closed && rs.next()) {
+			rows[n++] = readRow();
+		}
+		if (n == 0) {
+			scanDone = true;
+			return;
+		}
+		if (n < pageSize) {
+			Object[][] shorter = new Object[n][];
+			System.arraycopy(rows, 0, shorter, 0, n);
+			rows = shorter;
+		}
+		synchronized (pages) {
+			pages.put(scanned / pageSize, rows);
+		}
+		scanned += n;
+		final int total = scanned;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (total > rowCount) {
+					int first = rowCount;
+					rowCount = total;
+					fireTableRowsInserted(first, total - 1);
+				}
+			}
+		});
+		scanDone = n < pageSize;
+	}
+
+	/** Re-read a page that was evicted from the cache */
+	private void loadPage(int page) throws SQLException {
+		synchronized (pages) {
+			if (pages.containsKey(page)) {
+				return;
+			}
+		}
+		final int first = page * pageSize;
+		if (!scrollable || first >= scanned) {
+			return;
+		}
+		repositionNeeded = true;
+		if (!rs.absolute(first + 1)) {
+			return;
+		}
+		int n = Math.min(pageSize, scanned - first);
+		Object[][] rows = new Object[n][];
+		rows[0] = readRow();
+		for (int i = 1; i < n && rs.next(); i++) {
+			rows[i] = readRow();
+		}
+		synchronized (pages) {
+			pages.put(page, rows);
+		}
+		final int last = first + n - 1;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				fireTableRowsUpdated(first, Math.min(last, rowCount - 1));
+			}
+		});
+	}
+
+	private Object[] readRow() throws SQLException {
+		Object[] row = new Object[colCount];
+		for (int i = 0; i < colCount; i++) {
+			row[i] = rs.getObject(i + 1);
+		}
+		return row;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public int getColumnCount() {
+		return colCount;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return columnNames[column];
+	}
+
+	@Override
+	public Class<?> getColumnClass(int column) {
+		return columnClasses[column];
+	}
+
+	/** Get a value from the cache; if its page isn't there, ask the
+	 * loader for it and return null for now.
+	 */
+	@Override
+	public Object getValueAt(int row, int column) {
+		int page = row / pageSize;
+		Object[][] rows;
+		synchronized (pages) {
+			rows = pages.get(page);
+		}
+		if (rows == null) {
+			if (!requests.contains(page)) {
+				requests.addFirst(page);	// most recent request first
+			}
+			return null;
+		}
+		int i = row % pageSize;
+		return i < rows.length ? rows[i][column] : null;
+	}
+
+	/** @return True once all the rows have been read */
+	public boolean isComplete() {
+		return scanDone;
+	}
+
+	/** Stop reading, and close the ResultSet and its Statement. */
+	@Override
+	public void close() {
+		closed = true;
+		if (loader.isAlive()) {
+			loader.interrupt();		// it closes the ResultSet on the way out
+		} else {
+			closeResultSet();
+		}
+	}
+
+	private synchronized void closeResultSet() {
+		try {
+			Statement st = rs.getStatement();
+			rs.close();
+			if (st != null) {
+				st.close();
+			}
+		} catch (SQLException e) {
+			// Nothing more to be done
+		}
+	}
+}
@@ -0,0 +1,441 @@
+package com.darwinsys.sql;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Run the statements of one or more scripts on several Connections
+ * at once, for scripts whose statements don't depend on each other
+ * (e.g., one INSERT...SELECT per partition). Each Connection has its
+ * own SQLRunner, so all the usual output modes work; each statement's
+ * output is collected separately and printed in script order.
+ * <p>Escape commands (\m, \b, etc.) are a barrier: all earlier statements
+ * are finished first, then the escape is run on every connection.
+ * @author Ian Darwin
+ */
+public class ParallelSQLRunner implements AutoCloseable {
+
+	private final Configuration config;
+	private final int parallelism;
+	private final String outputModeName;
+	private PrintWriter out = new PrintWriter(System.out, true);
+	private boolean failFast;
+	private int errorCount;
+
+	/** Settings passed on to each SQLRunner */
+	private int rowsPerInsert = 1, rowsPerTransaction, queryTimeout;
+	private boolean statsEnabled;
+	private long slowMillis = -1;
+	private PrintWriter slowLog;
+	private boolean explainSlow;
+
+	/** Set from worker threads, so they can skip work after a failure */
+	private volatile boolean aborted;
+
+	private SQLRunnerErrorHandler errorHandler = new SQLRunnerErrorHandler() {
+		public void handleError(Exception e) {
+			System.err.println(e);
+		}
+	};
+
+	private final List<SQLRunner> runners = new ArrayList<>();
+	/** The SQLRunners not currently running a statement */
+	private BlockingQueue<SQLRunner> idleRunners;
+	private ExecutorService executor;
+	/** Submitted statements whose output has not been printed yet */
+	private final Deque<Future<Result>> pending = new ArrayDeque<>();
+
+	/** The outcome of one statement */
+	private static class Result {
+		String output;
+		Exception error;
+	}
+
+	/**
+	 * Construct a parallel runner; connections are opened by open()
+	 * or by the first script run.
+	 * @param config The Configuration to open all the Connections with
+	 * @param parallelism The number of Connections
+	 * @param outputModeName The output mode name, as for \m
+	 */
+	public ParallelSQLRunner(Configuration config, int parallelism, String outputModeName) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.config = config;
+		this.parallelism = parallelism;
+		this.outputModeName = outputModeName;
+	}
+
+	/**
+	 * Open the Connections and create the worker threads.
+	 * @throws SQLException If a Connection can't be opened
+	 * @throws IOException If an SQLRunner can't be set up
+	 * @throws ClassNotFoundException If the driver isn't found
+	 */
+	public void open() throws SQLException, IOException, ClassNotFoundException {
+		if (executor != null) {
+			return;
+		}
+		idleRunners = new ArrayBlockingQueue<>(parallelism);
+		try {
+			for (int i = 0; i < parallelism; i++) {
+				Connection conn = ConnectionUtil.getConnection(config);
+				SQLRunner runner = new SQLRunner(conn, null, outputModeName);
+				runners.add(runner);
+				configure(runner);
+				idleRunners.add(runner);
+			}
+		} catch (SQLException | IOException | ClassNotFoundException e) {
+			closeRunners();
+			throw e;
+		}
+		executor = Executors.newFixedThreadPool(parallelism);
+	}
+
+	/** Pass the settings made here on to one SQLRunner */
+	private void configure(SQLRunner runner) throws SQLException {
+		runner.setSQLInsertOptions(rowsPerInsert, rowsPerTransaction);
+		runner.setQueryTimeout(queryTimeout);
+		runner.setStatsEnabled(statsEnabled);
+		runner.setSlowQueryLog(slowMillis, slowLog, explainSlow);
+	}
+
+	/**
+	 * Run several script files, in order, as one stream of statements.
+	 * @param scriptFiles The names of the files
+	 * @return The number of statements that failed
+	 * @throws Exception If the scripts can't be read or the Connections opened
+	 */
+	public int runScripts(String... scriptFiles) throws Exception {
+		for (String scriptFile : scriptFiles) {
+			if (aborted) {
+				break;
+			}
+			try (BufferedReader is = new BufferedReader(new FileReader(scriptFile))) {
+				runScript(is, scriptFile);
+			}
+		}
+		return errorCount;
+	}
+
+	/**
+	 * Run one script, spreading its statements across the Connections.
+	 * @param is The script
+	 * @param name The script name, for messages
+	 * @return The number of statements that failed so far
+	 * @throws Exception If the script can't be read or the Connections opened
+	 */
+	public int runScript(BufferedReader is, String name) throws Exception {
+		open();
+		SQLScriptReader script = new SQLScriptReader(is);
+		ScriptStatement stmt;
+		while (!aborted && (stmt = script.readStatement()) != null) {
+			if (stmt.isEscape()) {
+				runEverywhere(stmt.getText());
+			} else {
+				submit(stmt.getText());
+			}
+		}
+		drain();
+		flushBatches();
+		return errorCount;
+	}
+
+	/** Send any statements left in each runner's JDBC batch */
+	private void flushBatches() {
+		for (SQLRunner runner : runners) {
+			StringWriter sw = new StringWriter();
+			try {
+				runner.setOutputFile(new PrintWriter(sw));
+				runner.flushBatch();
+			} catch (Exception e) {
+				++errorCount;
+				errorHandler.handleError(e);
+			}
+			out.print(sw);
+		}
+		out.flush();
+	}
+
+	/** Queue one statement, after printing results that are
+	 * far enough behind that the queue would otherwise grow without bound.
+	 */
+	private void submit(final String stmt) throws InterruptedException {
+		while (pending.size() >= parallelism * 4) {
+			printNext();
+		}
+		pending.add(executor.submit(new Callable<Result>() {
+			public Result call() throws Exception {
+				Result result = new Result();
+				if (aborted) {
+					return result;
+				}
+				SQLRunner runner = idleRunners.take();
+				StringWriter sw = new StringWriter();
+				try {
+					runner.setOutputFile(new PrintWriter(sw));
+					runner.runStatement(stmt);
+				} catch (Exception e) {
+					result.error = e;
+					if (failFast) {
+						aborted = true;
+					}
+				} finally {
+					idleRunners.add(runner);
+				}
+				result.output = sw.toString();
+				return result;
+			}
+		}));
+	}
+
+	/** Print the output of the oldest outstanding statement, waiting for it if need be */
+	private void printNext() throws InterruptedException {
+		Future<Result> f = pending.removeFirst();
+		Result result;
+		try {
+			result = f.get();
+		} catch (ExecutionException e) {
+			result = new Result();
+			result.error = e.getCause() instanceof Exception ?
+				(Exception) e.getCause() : e;
+		}
+		if (result.output != null) {
+			out.print(result.output);
+			out.flush();
+		}
+		if (result.error != null) {
+			++errorCount;
+			if (failFast) {
+				aborted = true;
+			}
+			errorHandler.handleError(result.error);
+		}
+	}
+
+	/** Wait for, and print the output of, all outstanding statements */
+	private void drain() throws InterruptedException {
+		while (!pending.isEmpty()) {
+			printNext();
+		}
+	}
+
+	/** Run an escape command on every Connection, once all are idle */
+	private void runEverywhere(String escape) throws InterruptedException {
+		drain();
+		if (aborted) {		// an earlier statement failed, with failFast set
+			return;
+		}
+		if (escape.startsWith("\\o")) {	// Output applies to us, not the workers
+			setOutputFile(escape.substring(2).trim());
+			return;
+		}
+		if (escape.startsWith("\\q")) {
+			aborted = true;
+			return;
+		}
+		// Only show the output from the first one, they should all be the same.
+		StringWriter firstOutput = null;
+		for (SQLRunner runner : runners) {
+			StringWriter sw = new StringWriter();
+			try {
+				runner.setOutputFile(new PrintWriter(sw));
+				runner.runStatement(escape);
+			} catch (Exception e) {
+				++errorCount;
+				errorHandler.handleError(e);
+				if (failFast) {
+					aborted = true;
+					break;
+				}
+				// Else carry on, so the escape applies to every connection that can take it
+			} finally {
+				if (firstOutput == null) {
+					firstOutput = sw;
+				}
+			}
+		}
+		if (firstOutput != null) {
+			out.print(firstOutput);
+			out.flush();
+		}
+	}
+
+	private void setOutputFile(String fileName) {
+		try {
+			if (fileName.length() == 0) {
+				out = new PrintWriter(System.out, true);
+			} else {
+				out = new PrintWriter(new FileWriter(fileName), true);
+			}
+		} catch (IOException e) {
+			++errorCount;
+			errorHandler.handleError(e);
+		}
+	}
+
+	/**
+	 * Finish any batches, then close all the Connections and threads.
+	 * @throws SQLException If closing fails
+	 */
+	public void close() throws SQLException {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+		closeRunners();
+		out.flush();
+	}
+
+	private void closeRunners() throws SQLException {
+		SQLException first = null;
+		for (SQLRunner runner : runners) {
+			try {
+				StringWriter sw = new StringWriter();
+				runner.setOutputFile(new PrintWriter(sw));
+				runner.close();
+				out.print(sw);
+			} catch (SQLException e) {
+				if (first == null) {
+					first = e;
+				}
+			}
+		}
+		runners.clear();
+		if (first != null) {
+			throw first;
+		}
+	}
+
+	/**
+	 * Set where the output goes; default is System.out.
+	 * @param out The output
+	 */
+	public void setOutput(PrintWriter out) {
+		this.out = out;
+	}
+
+	/**
+	 * Choose between stopping at the first error (fail-fast) and
+	 * reporting errors but carrying on (the default).
+	 * @param failFast True to stop at the first error.
+	 */
+	public void setFailFast(boolean failFast) {
+		this.failFast = failFast;
+	}
+
+	public boolean isFailFast() {
+		return failFast;
+	}
+
+	/**
+	 * Set how the SQL output mode writes its insert statements, on every Connection.
+	 * @param rowsPerStatement The most rows per insert statement (default 1)
+	 * @param transactionSize Wrap this many rows in a transaction, or 0 for none
+	 * @see SQLRunner#setSQLInsertOptions(int, int)
+	 */
+	public void setSQLInsertOptions(int rowsPerStatement, int transactionSize) {
+		this.rowsPerInsert = rowsPerStatement;
+		this.rowsPerTransaction = transactionSize;
+		for (SQLRunner runner : runners) {
+			runner.setSQLInsertOptions(rowsPerStatement, transactionSize);
+		}
+	}
+
+	/**
+	 * Set the time limit for each statement.
+	 * @param seconds The limit, or 0 (the default) for none
+	 * @throws SQLException If the driver rejects the value
+	 * @see SQLRunner#setQueryTimeout(int)
+	 */
+	public void setQueryTimeout(int seconds) throws SQLException {
+		if (seconds < 0) {
+			throw new IllegalArgumentException("Query timeout may not be negative");
+		}
+		this.queryTimeout = seconds;
+		for (SQLRunner runner : runners) {
+			runner.setQueryTimeout(seconds);
+		}
+	}
+
+	/**
+	 * Turn the per-statement statistics on or off, on every Connection.
+	 * @param enabled True to keep statistics
+	 * @see #getStats()
+	 */
+	public void setStatsEnabled(boolean enabled) {
+		this.statsEnabled = enabled;
+		for (SQLRunner runner : runners) {
+			runner.setStatsEnabled(enabled);
+		}
+	}
+
+	/**
+	 * Log statements that take at least the given time, from every Connection.
+	 * @param thresholdMillis The threshold, or negative to turn logging off
+	 * @param log Where to log them; the workers share it
+	 * @param explain True to add the plans of logged statements
+	 * @see SQLRunner#setSlowQueryLog(long, PrintWriter, boolean)
+	 */
+	public void setSlowQueryLog(long thresholdMillis, PrintWriter log, boolean explain) {
+		this.slowMillis = thresholdMillis;
+		this.slowLog = log;
+		this.explainSlow = explain;
+		for (SQLRunner runner : runners) {
+			runner.setSlowQueryLog(thresholdMillis, log, explain);
+		}
+	}
+
+	/**
+	 * Get the statistics of all the Connections together; call it
+	 * when no script is running, and before close().
+	 * @return The totals, or null if no Connection kept statistics
+	 */
+	public StatementStats getStats() {
+		StatementStats total = null;
+		for (SQLRunner runner : runners) {
+			if (runner.getStats() != null) {
+				if (total == null) {
+					total = new StatementStats();
+				}
+				total.add(runner.getStats());
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Set the error handler; it is called from the thread running
+	 * the script, in script order, for each failing statement.
+	 * @param errorHandler The handler
+	 */
+	public void setErrorHandler(SQLRunnerErrorHandler errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+}
@@ -0,0 +1,26 @@
+package com.darwinsys.sql;
+
+import java.sql.Connection;
+import java.util.List;
+
+import com.darwinsys.database.DataBaseException;
+
+/**
+ * A ConfigurationManager that hands out Connections from
+ * the ConnectionUtil pool for each Configuration, so that
+ * repeated commands don't pay for a new connection each time.
+ */
+public class PooledConfigurationManager implements ConfigurationManager {
+
+	public List<Configuration> getConfigurations() {
+		return ConnectionUtil.getConfigurations();
+	}
+
+	public Connection getConnection(Configuration config) {
+		try {
+			return ConnectionUtil.getPool(config).getConnection();
+		} catch (Exception e) {
+			throw new DataBaseException("Failed to get connection to " + config.getName(), e);
+		}
+	}
+}
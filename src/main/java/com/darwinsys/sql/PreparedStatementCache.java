@@ -0,0 +1,213 @@
+package com.darwinsys.sql;
+
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of PreparedStatements for one Connection,
+ * so that statements of the same shape are only parsed and planned once.
+ * The cache key is the SQL text with runs of whitespace outside quotes
+ * collapsed, so trivially different layouts share one PreparedStatement.
+ * <p>Not thread-safe; like the Connection it belongs to, use it from
+ * one thread at a time.
+ * @author Ian Darwin
+ */
+public class PreparedStatementCache {
+
+	public static final int DEFAULT_MAX_SIZE = 100;
+
+	private final Connection conn;
+	private final int maxSize;
+	private long hits, misses, evictions;
+
+	/** A cached statement, along with its parameter types once known */
+	private static class Entry {
+		final PreparedStatement ps;
+		/** JDBC Types of the parameters, or null if not yet asked,
+		 * or zero-length if the driver can't tell us. */
+		int[] types;
+		Entry(PreparedStatement ps) {
+			this.ps = ps;
+		}
+	}
+
+	private final LinkedHashMap<String, Entry> cache;
+
+	/**
+	 * Construct a cache
+	 * @param conn The Connection to prepare statements on
+	 * @param maxSize The most statements to keep open
+	 */
+	@SuppressWarnings("serial")
+	public PreparedStatementCache(Connection conn, int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be positive");
+		}
+		this.conn = conn;
+		this.maxSize = maxSize;
+		cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() <= PreparedStatementCache.this.maxSize) {
+					return false;
+				}
+				++evictions;
+				closeQuietly(eldest.getValue().ps);
+				return true;
+			}
+		};
+	}
+
+	public PreparedStatementCache(Connection conn) {
+		this(conn, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Get a PreparedStatement for the given SQL, from the cache if possible,
+	 * and bind the given values to its parameters.
+	 * @param sql The SQL, with '?' parameters
+	 * @param values The values for the parameters; they are bound as the
+	 * parameter's type if the driver's ParameterMetaData knows it, else as Strings
+	 * @return The PreparedStatement, ready to execute
+	 * @throws SQLException If the prepare or bind fails
+	 */
+	public PreparedStatement prepare(String sql, List<String> values) throws SQLException {
+		String key = normalize(sql);
+		Entry entry = cache.get(key);
+		if (entry == null) {
+			++misses;
+			entry = new Entry(conn.prepareStatement(sql));
+			cache.put(key, entry);
+		} else {
+			++hits;
+			entry.ps.clearParameters();
+		}
+		if (entry.types == null && !values.isEmpty()) {
+			entry.types = getParameterTypes(entry.ps, values.size());
+		}
+		for (int i = 0; i < values.size(); i++) {
+			String value = values.get(i);
+			int type = i < entry.types.length ? entry.types[i] : Types.VARCHAR;
+			if (value == null) {
+				entry.ps.setNull(i + 1, type);
+			} else if (isCharacterType(type)) {
+				entry.ps.setString(i + 1, value);
+			} else {
+				// The driver converts the String to the target type
+				entry.ps.setObject(i + 1, value, type);
+			}
+		}
+		return entry.ps;
+	}
+
+	private static int[] getParameterTypes(PreparedStatement ps, int count) {
+		try {
+			ParameterMetaData md = ps.getParameterMetaData();
+			int[] types = new int[count];
+			for (int i = 0; i < count; i++) {
+				types[i] = md.getParameterType(i + 1);
+			}
+			return types;
+		} catch (SQLException | RuntimeException e) {
+			// Plenty of drivers don't implement this; bind everything as Strings.
+			return new int[0];
+		}
+	}
+
+	private static boolean isCharacterType(int type) {
+		switch (type) {
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.LONGVARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+		case Types.LONGNVARCHAR:
+		case Types.CLOB:
+		case Types.NCLOB:
+		case Types.OTHER:
+		case Types.NULL:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Collapse each run of whitespace outside quotes to a single
+	 * space and trim the ends, to make the cache key.
+	 * @param sql The input SQL
+	 * @return The normalized form
+	 */
+	static String normalize(String sql) {
+		StringBuilder sb = new StringBuilder(sql.length());
+		char quote = 0;
+		boolean pendingSpace = false;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (quote == 0 && Character.isWhitespace(c)) {
+				pendingSpace = sb.length() > 0;
+				continue;
+			}
+			if (pendingSpace) {
+				sb.append(' ');
+				pendingSpace = false;
+			}
+			if (quote == 0 && (c == '\'' || c == '"')) {
+				quote = c;
+			} else if (c == quote) {
+				quote = 0;
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/** Close all the cached statements and empty the cache. */
+	public void clear() {
+		for (Iterator<Entry> it = cache.values().iterator(); it.hasNext(); ) {
+			closeQuietly(it.next().ps);
+			it.remove();
+		}
+	}
+
+	private static void closeQuietly(PreparedStatement ps) {
+		try {
+			ps.close();
+		} catch (SQLException e) {
+			// Nothing to be done
+		}
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Statement cache: %d of %d used, %d hits, %d misses, %d evictions",
+			cache.size(), maxSize, hits, misses, evictions);
+	}
+}
@@ -0,0 +1,710 @@
+package com.darwinsys.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.NClob;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLXML;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.serial.SerialBlob;
+import javax.sql.rowset.serial.SerialClob;
+
+/**
+ * A cache of query results, for reports and dashboards that run the same
+ * expensive queries over and over. Results are keyed by the statement's
+ * SQL, with whitespace collapsed, and its parameter values; each is kept
+ * as an array of the column values per row (much smaller than a
+ * CachedRowSet, which keeps two copies of each row) until it is older
+ * than the time-to-live. When the estimated size of all the results
+ * passes the limit, the least recently used are dropped.
+ * <p>Results are captured as they stream past on their way to the
+ * ResultsDecorator, so the first run is not slowed down; a result
+ * bigger than a quarter of the limit is not kept. Each value is kept
+ * as the decorator read it (with getString(), getTimestamp(), etc.),
+ * since the driver's formatting of a value is not its toString(), and
+ * a column is read only once, since some drivers can't read a LONG or
+ * stream column twice. Cached results are replayed through a read-only,
+ * scrollable ResultSet that gives back the same values to the same
+ * getters; the results of a query are cached separately for each
+ * reader (normally the output mode), so a hit prints what the miss did.
+ * <p>Thread-safe, but give each SQLRunner its own cache: the key
+ * does not say which Connection (and so which user or schema)
+ * a result came from.
+ * @author Ian Darwin
+ */
+public class QueryCache {
+
+	public static final long DEFAULT_TTL_MILLIS = 60 * 1000;
+	public static final long DEFAULT_MAX_BYTES = 32 * 1024 * 1024;
+
+	/** The statements whose results may be cached */
+	private static final Pattern QUERY =
+		Pattern.compile("^(select|with)\\b", Pattern.CASE_INSENSITIVE);
+
+	/** The hint that marks one query as cacheable, as Oracle places hints,
+	 * since SQLScriptReader drops comments before a statement
+	 */
+	private static final Pattern HINT =
+		Pattern.compile("^(select|with)\\s*/\\*\\+\\s*cache\\s*\\*/", Pattern.CASE_INSENSITIVE);
+
+	/** One cached result */
+	private static class Entry {
+		final ResultSetMetaData md;
+		/** The getter that each column's values were read with */
+		final String[] getters;
+		final Object[][] rows;
+		final long bytes;
+		final long loaded = System.currentTimeMillis();
+		Entry(ResultSetMetaData md, String[] getters, Object[][] rows, long bytes) {
+			this.md = md;
+			this.getters = getters;
+			this.rows = rows;
+			this.bytes = bytes;
+		}
+	}
+
+	private long ttl = DEFAULT_TTL_MILLIS;
+	private long maxBytes = DEFAULT_MAX_BYTES;
+
+	/** Guarded by this */
+	private final LinkedHashMap<List<Object>, Entry> cache =
+		new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes;
+	private long hits, misses, expired, evictions, tooBig, clears;
+
+	/**
+	 * True if a statement is a query
+	 * @param sql The trimmed statement
+	 * @return True if its results may be cached
+	 */
+	static boolean isQuery(String sql) {
+		return QUERY.matcher(sql).find();
+	}
+
+	/**
+	 * True if a query is marked for caching with a hint after
+	 * its first word, like select &#47;*+ cache *&#47; ...
+	 * @param sql The trimmed statement
+	 * @return True if it has the hint
+	 */
+	static boolean hasHint(String sql) {
+		return HINT.matcher(sql).lookingAt();
+	}
+
+	private static List<Object> key(String sql, List<String> values, String reader) {
+		return Arrays.<Object>asList(PreparedStatementCache.normalize(sql), values, reader);
+	}
+
+	/**
+	 * Get a cached result
+	 * @param sql The statement, as sent to the database
+	 * @param values Its parameter values
+	 * @return A ResultSet positioned before the first row, or null
+	 * if there is no cached result or it is too old
+	 */
+	public ResultSet get(String sql, List<String> values) {
+		return get(sql, values, null);
+	}
+
+	/**
+	 * Get a cached result, as read by one reader
+	 * @param sql The statement, as sent to the database
+	 * @param values Its parameter values
+	 * @param reader What read the result when it was captured, e.g., the
+	 * output mode; other readers' results are not returned
+	 * @return A ResultSet positioned before the first row, or null
+	 * if there is no cached result or it is too old
+	 */
+	public synchronized ResultSet get(String sql, List<String> values, String reader) {
+		List<Object> key = key(sql, values, reader);
+		Entry e = cache.get(key);
+		if (e != null && ttl > 0 && System.currentTimeMillis() - e.loaded >= ttl) {
+			cache.remove(key);
+			bytes -= e.bytes;
+			++expired;
+			e = null;
+		}
+		if (e == null) {
+			++misses;
+			return null;
+		}
+		++hits;
+		return new Replay(e).getResultSet();
+	}
+
+	/**
+	 * Wrap a live ResultSet so that its rows are copied as they are read,
+	 * and cached when the last one has been read.
+	 * The rows are only kept if the ResultSet is read to the end, so
+	 * a cancelled query caches nothing.
+	 * @param sql The statement, as sent to the database
+	 * @param values Its parameter values
+	 * @param rs The results, positioned before the first row
+	 * @return A ResultSet that reads through to rs
+	 * @throws SQLException If the metadata can't be read
+	 */
+	public ResultSet capture(String sql, List<String> values, ResultSet rs)
+		throws SQLException {
+		return capture(sql, values, null, rs);
+	}
+
+	/**
+	 * Wrap a live ResultSet, as for capture(sql, values, rs), for one reader.
+	 * @param sql The statement, as sent to the database
+	 * @param values Its parameter values
+	 * @param reader What will read the results, e.g., the output mode
+	 * @param rs The results, positioned before the first row
+	 * @return A ResultSet that reads through to rs
+	 * @throws SQLException If the metadata can't be read
+	 */
+	public ResultSet capture(String sql, List<String> values, String reader, ResultSet rs)
+		throws SQLException {
+		return new Capture(key(sql, values, reader), rs).getResultSet();
+	}
+
+	private synchronized void put(List<Object> key, Entry e) {
+		if (e.bytes > maxBytes / 4) {
+			++tooBig;
+			return;
+		}
+		Entry old = cache.put(key, e);
+		if (old != null) {
+			bytes -= old.bytes;
+		}
+		bytes += e.bytes;
+		for (Iterator<Entry> it = cache.values().iterator(); bytes > maxBytes && it.hasNext(); ) {
+			bytes -= it.next().bytes;
+			it.remove();
+			++evictions;
+		}
+	}
+
+	/** Drop all the cached results, e.g., after the data has been changed */
+	public synchronized void clear() {
+		if (!cache.isEmpty()) {
+			cache.clear();
+			bytes = 0;
+			++clears;
+		}
+	}
+
+	/**
+	 * Set how long results are kept
+	 * @param millis The time to live; 0 means until evicted or cleared
+	 */
+	public void setTTL(long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("TTL may not be negative");
+		}
+		this.ttl = millis;
+	}
+
+	public long getTTL() {
+		return ttl;
+	}
+
+	/**
+	 * Set the limit on the estimated size of the cached results
+	 * @param maxBytes The limit
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("Cache size must be positive");
+		}
+		this.maxBytes = maxBytes;
+		for (Iterator<Entry> it = cache.values().iterator(); bytes > maxBytes && it.hasNext(); ) {
+			bytes -= it.next().bytes;
+			it.remove();
+			++evictions;
+		}
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/** @return The estimated size of the cached results */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("Query cache: %d results, %d of %d KB used, %d hits, %d misses " +
+			"(%d expired), %d evictions, %d too big, %d clears",
+			cache.size(), (bytes + 1023) / 1024, maxBytes / 1024, hits, misses,
+			expired, evictions, tooBig, clears);
+	}
+
+	/** A rough guess at the heap used by a value, with its reference */
+	static long sizeOf(Object o) {
+		if (o == null) {
+			return 8;
+		} else if (o instanceof String) {
+			return 8 + 40 + ((String) o).length();
+		} else if (o instanceof byte[]) {
+			return 8 + 16 + ((byte[]) o).length;
+		} else if (o instanceof BigDecimal) {
+			return 8 + 40 + ((BigDecimal) o).precision() / 2;
+		} else if (o instanceof Number || o instanceof Boolean) {
+			return 8 + 16;
+		} else {
+			return 8 + 32;		// dates and such
+		}
+	}
+
+	/** Copy the metadata, since the driver's may not outlive its ResultSet */
+	private static ResultSetMetaData copy(ResultSetMetaData md) throws SQLException {
+		RowSetMetaDataImpl copy = new RowSetMetaDataImpl();
+		int n = md.getColumnCount();
+		copy.setColumnCount(n);
+		for (int i = 1; i <= n; i++) {
+			copy.setColumnName(i, md.getColumnName(i));
+			copy.setColumnLabel(i, md.getColumnLabel(i));
+			copy.setColumnType(i, md.getColumnType(i));
+			try {
+				copy.setColumnTypeName(i, md.getColumnTypeName(i));
+				copy.setTableName(i, md.getTableName(i));
+				copy.setSchemaName(i, md.getSchemaName(i));
+				copy.setCatalogName(i, md.getCatalogName(i));
+				copy.setPrecision(i, Math.max(0, md.getPrecision(i)));
+				copy.setScale(i, Math.max(0, md.getScale(i)));
+				copy.setColumnDisplaySize(i, Math.max(0, md.getColumnDisplaySize(i)));
+				copy.setNullable(i, md.isNullable(i));
+				copy.setSigned(i, md.isSigned(i));
+				copy.setAutoIncrement(i, md.isAutoIncrement(i));
+				copy.setCaseSensitive(i, md.isCaseSensitive(i));
+				copy.setCurrency(i, md.isCurrency(i));
+				copy.setSearchable(i, md.isSearchable(i));
+			} catch (SQLException | RuntimeException e) {
+				// The driver doesn't know; leave the defaults
+			}
+		}
+		return copy;
+	}
+
+	/** Marks a value that has not been read yet */
+	private static final Object UNREAD = new Object();
+
+	/**
+	 * Copies each value as it is read; values not read by the time
+	 * next() moves on are read then, with the getter used for the
+	 * column in earlier rows, or getObject().
+	 */
+	private class Capture implements InvocationHandler {
+		private final List<Object> key;
+		private final ResultSet rs;
+		private final int cols;
+		private final String[] getters;
+		private List<Object[]> rows = new ArrayList<>();
+		private Object[] row;
+		private long size;
+
+		Capture(List<Object> key, ResultSet rs) throws SQLException {
+			this.key = key;
+			this.rs = rs;
+			this.cols = rs.getMetaData().getColumnCount();
+			this.getters = new String[cols];
+		}
+
+		ResultSet getResultSet() {
+			return (ResultSet) Proxy.newProxyInstance(
+				ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (rows != null && row != null && name.equals("next")) {
+				readRest();
+			}
+			Object ret;
+			try {
+				ret = method.invoke(rs, args);
+			} catch (InvocationTargetException e) {
+				rows = null;
+				throw e.getCause();
+			}
+			if (rows == null) {
+				return ret;
+			}
+			if (name.equals("next")) {
+				if (Boolean.TRUE.equals(ret)) {
+					row = new Object[cols];
+					Arrays.fill(row, UNREAD);
+					rows.add(row);
+					grow(16 + 8 * cols);
+				} else {
+					put(key, new Entry(copy(rs.getMetaData()), getters,
+						rows.toArray(new Object[rows.size()][]), size));
+					rows = null;
+				}
+			} else if (row != null && name.startsWith("get") && args != null &&
+					(args[0] instanceof Integer || args[0] instanceof String)) {
+				if (args.length > 1) {
+					rows = null;		// with a Calendar, scale, etc.; can't replay
+					return ret;
+				}
+				int col = args[0] instanceof String ?
+					rs.findColumn((String) args[0]) : (Integer) args[0];
+				ret = record(col, name, method.getReturnType(), ret);
+			}
+			return ret;
+		}
+
+		/** Read the values the decorator skipped, before the row is gone */
+		private void readRest() throws SQLException {
+			for (int i = 0; i < cols && rows != null; i++) {
+				if (row[i] == UNREAD) {
+					String getter = getters[i] == null ? "getObject" : getters[i];
+					Method m;
+					Object o;
+					try {
+						m = ResultSet.class.getMethod(getter, int.class);
+						o = m.invoke(rs, i + 1);
+					} catch (InvocationTargetException e) {
+						rows = null;		// can't cache it, but the decorator carries on
+						return;
+					} catch (ReflectiveOperationException e) {
+						throw new IllegalStateException(e);
+					}
+					record(i + 1, getter, m.getReturnType(), o);
+				}
+			}
+		}
+
+		/**
+		 * Keep one value; streams and LOBs, which may not outlive the
+		 * row, are copied, and the caller is given the copy.
+		 * @return The value for the caller
+		 */
+		private Object record(int col, String getter, Class<?> type, Object o) throws SQLException {
+			if (getters[col - 1] == null) {
+				getters[col - 1] = getter;
+			} else if (!getters[col - 1].equals(getter)) {
+				rows = null;		// read two ways; we couldn't say which to give back
+				return o;
+			}
+			Object value = o, ret = o;
+			try {
+				if (o instanceof Blob) {
+					byte[] b = ((Blob) o).getBytes(1, (int) ((Blob) o).length());
+					value = b;
+					ret = new SerialBlob(b);
+				} else if (o instanceof NClob || o instanceof Array || o instanceof SQLXML ||
+						o instanceof Struct || o instanceof Ref) {
+					rows = null;		// no copy of these that we could give back
+					return o;
+				} else if (o instanceof Clob) {
+					String str = ((Clob) o).getSubString(1, (int) ((Clob) o).length());
+					value = str;
+					ret = new SerialClob(str.toCharArray());
+				} else if (o instanceof InputStream) {
+					byte[] b = ((InputStream) o).readAllBytes();
+					value = b;
+					ret = new ByteArrayInputStream(b);
+				} else if (o instanceof Reader) {
+					StringBuilder sb = new StringBuilder();
+					char[] buf = new char[8192];
+					for (int n; (n = ((Reader) o).read(buf)) > 0; ) {
+						sb.append(buf, 0, n);
+					}
+					value = sb.toString();
+					ret = new StringReader(sb.toString());
+				} else if (o instanceof byte[]) {
+					value = ((byte[]) o).clone();
+				}
+			} catch (IOException e) {
+				throw new SQLException("Can't read column " + col, e);
+			}
+			if (type.isPrimitive() && rs.wasNull()) {
+				value = null;
+			}
+			row[col - 1] = value;
+			grow(sizeOf(value));
+			return ret;
+		}
+
+		private void grow(long n) {
+			size += n;
+			if (size > maxBytes / 4) {
+				rows = null;		// too big to keep, stop copying
+				synchronized (QueryCache.this) {
+					++tooBig;
+				}
+			}
+		}
+	}
+
+	/** A read-only ResultSet over a cached result, with a cursor of its own */
+	private static class Replay implements InvocationHandler {
+		private final Entry entry;
+		private int row = -1;
+		private boolean wasNull, closed;
+
+		Replay(Entry entry) {
+			this.entry = entry;
+		}
+
+		ResultSet getResultSet() {
+			return (ResultSet) Proxy.newProxyInstance(
+				ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			final int n = entry.rows.length;
+			String name = method.getName();
+			switch (name) {
+			case "next":
+				row = Math.min(row + 1, n);
+				return row < n;
+			case "previous":
+				row = Math.max(row - 1, -1);
+				return row >= 0;
+			case "absolute":
+				int r = (Integer) args[0];
+				row = r >= 0 ? Math.min(r - 1, n) : Math.max(n + r, -1);
+				return row >= 0 && row < n;
+			case "relative":
+				row = Math.max(-1, Math.min(row + (Integer) args[0], n));
+				return row >= 0 && row < n;
+			case "first":
+				row = 0;
+				return n > 0;
+			case "last":
+				row = n - 1;
+				return n > 0;
+			case "beforeFirst":
+				row = -1;
+				return null;
+			case "afterLast":
+				row = n;
+				return null;
+			case "getRow":
+				return row >= 0 && row < n ? row + 1 : 0;
+			case "isBeforeFirst":
+				return row < 0 && n > 0;
+			case "isAfterLast":
+				return row >= n && n > 0;
+			case "isFirst":
+				return row == 0 && n > 0;
+			case "isLast":
+				return row == n - 1 && n > 0;
+			case "getMetaData":
+				return entry.md;
+			case "findColumn":
+				return findColumn((String) args[0]);
+			case "wasNull":
+				return wasNull;
+			case "getType":
+				return ResultSet.TYPE_SCROLL_INSENSITIVE;
+			case "getConcurrency":
+				return ResultSet.CONCUR_READ_ONLY;
+			case "getFetchDirection":
+				return ResultSet.FETCH_FORWARD;
+			case "getFetchSize":
+				return 0;
+			case "setFetchSize":
+			case "setFetchDirection":
+			case "clearWarnings":
+			case "getWarnings":
+			case "getStatement":
+				return null;
+			case "close":
+				closed = true;
+				return null;
+			case "isClosed":
+				return closed;
+			case "unwrap":
+				throw new SQLException("Not a wrapper");
+			case "isWrapperFor":
+				return false;
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "QueryCache result of " + n + " rows";
+			default:
+				if (name.startsWith("get") && args != null && args.length >= 1) {
+					int col = args[0] instanceof String ?
+						findColumn((String) args[0]) : (Integer) args[0];
+					return get(method, col);
+				}
+				throw new SQLFeatureNotSupportedException(
+					"Cached results are read-only: " + name);
+			}
+		}
+
+		private int findColumn(String label) throws SQLException {
+			for (int i = 1; i <= entry.md.getColumnCount(); i++) {
+				if (label.equalsIgnoreCase(entry.md.getColumnLabel(i))) {
+					return i;
+				}
+			}
+			throw new SQLException("No column " + label);
+		}
+
+		/**
+		 * Get a column value: as it was read, if by the same getter,
+		 * else converted from that as well as we can
+		 */
+		private Object get(Method method, int col) throws SQLException {
+			if (row < 0 || row >= entry.rows.length) {
+				throw new SQLException("Not on a row");
+			}
+			Object o = entry.rows[row][col - 1];
+			wasNull = o == null;
+			String getter = method.getName();
+			if (getter.equals(entry.getters[col - 1])) {
+				return replay(getter, method.getReturnType(), o);
+			}
+			switch (getter) {
+			case "getObject":
+				return o;
+			case "getString":
+			case "getNString":
+				return o == null ? null : o instanceof byte[] ?
+					new String((byte[]) o, StandardCharsets.UTF_8) : o.toString();
+			case "getBoolean":
+				return o instanceof Boolean ? o : o instanceof Number ?
+					((Number) o).intValue() != 0 : o != null &&
+					(o.toString().equalsIgnoreCase("true") || o.toString().equals("1"));
+			case "getByte":
+				return (byte) toNumber(o).longValue();
+			case "getShort":
+				return (short) toNumber(o).longValue();
+			case "getInt":
+				return toNumber(o).intValue();
+			case "getLong":
+				return toNumber(o).longValue();
+			case "getFloat":
+				return toNumber(o).floatValue();
+			case "getDouble":
+				return toNumber(o).doubleValue();
+			case "getBigDecimal":
+				return o == null ? null : o instanceof BigDecimal ? o :
+					new BigDecimal(o.toString());
+			case "getDate":
+				return o instanceof java.util.Date ?
+					new java.sql.Date(((java.util.Date) o).getTime()) : o;
+			case "getTime":
+				return o instanceof java.util.Date ?
+					new java.sql.Time(((java.util.Date) o).getTime()) : o;
+			case "getTimestamp":
+				return o instanceof java.util.Date && !(o instanceof java.sql.Timestamp) ?
+					new java.sql.Timestamp(((java.util.Date) o).getTime()) : o;
+			case "getBytes":
+				return o instanceof String ? ((String) o).getBytes(StandardCharsets.UTF_8) : o;
+			case "getBinaryStream":
+				return o == null ? null : new ByteArrayInputStream(
+					o instanceof byte[] ? (byte[]) o : o.toString().getBytes(StandardCharsets.UTF_8));
+			case "getCharacterStream":
+				return o == null ? null : new StringReader(o instanceof byte[] ?
+					new String((byte[]) o, StandardCharsets.UTF_8) : o.toString());
+			case "getBlob":
+				return o instanceof byte[] ? new SerialBlob((byte[]) o) : o;
+			case "getClob":
+				return o instanceof String ? new SerialClob(((String) o).toCharArray()) : o;
+			default:
+				throw new SQLFeatureNotSupportedException(
+					"Not available from cached results: " + getter);
+			}
+		}
+
+		/** Give back a value as it was read, with a fresh copy of anything mutable */
+		private static Object replay(String getter, Class<?> type, Object o) throws SQLException {
+			if (o == null) {
+				if (type == boolean.class) {
+					return false;
+				} else if (type.isPrimitive()) {
+					return zero(type);
+				}
+				return null;
+			}
+			switch (getter) {
+			case "getBlob":
+				return new SerialBlob((byte[]) o);
+			case "getClob":
+				return new SerialClob(((String) o).toCharArray());
+			case "getBinaryStream":
+			case "getAsciiStream":
+			case "getUnicodeStream":
+				return new ByteArrayInputStream((byte[]) o);
+			case "getCharacterStream":
+			case "getNCharacterStream":
+				return new StringReader((String) o);
+			default:
+				return o instanceof byte[] ? ((byte[]) o).clone() : o;
+			}
+		}
+
+		/** Zero of a primitive numeric type, boxed, as a driver gives for NULL */
+		private static Object zero(Class<?> type) {
+			if (type == byte.class) {
+				return (byte) 0;
+			} else if (type == short.class) {
+				return (short) 0;
+			} else if (type == long.class) {
+				return 0L;
+			} else if (type == float.class) {
+				return 0f;
+			} else if (type == double.class) {
+				return 0d;
+			}
+			return 0;
+		}
+
+		private static Number toNumber(Object o) {
+			if (o == null) {
+				return 0;
+			} else if (o instanceof Number) {
+				return (Number) o;
+			} else if (o instanceof Boolean) {
+				return (Boolean) o ? 1 : 0;
+			}
+			return new BigDecimal(o.toString().trim());
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package com.darwinsys.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A handle on one statement submitted to SQLRunner.submit(), which
+ * can be waited for, cancelled, or polled for its progress.
+ * The future completes with the number of rows read or updated
+ * (-1 for escape commands), or exceptionally with the statement's
+ * SQLException, SyntaxException, etc.
+ * <p>Cancelling calls Statement.cancel(), which asks the database to stop
+ * work on the statement; it also stops the reading of any ResultSet
+ * at the next row, for drivers that ignore cancel() once rows are flowing.
+ * The future is not completed by cancel() itself, but by the worker
+ * once it has left JDBC, with a CancellationException unless the
+ * statement finished anyway; so when get() returns or throws, the
+ * Connection is free to be used or closed.
+ * @author Ian Darwin
+ */
+public class QueryHandle implements InvocationHandler {
+
+	/** The SQLState for "query canceled" */
+	public static final String SQLSTATE_CANCELED = "57014";
+
+	/** Default number of rows between progress reports */
+	public static final int DEFAULT_PROGRESS_INTERVAL = 1000;
+
+	private final String sql;
+	private final QueryListener listener;
+	private final CompletableFuture<Integer> future = new CompletableFuture<>();
+	private int progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+	private volatile boolean cancelled;
+	private volatile long rowsFetched;
+	/** The Statement currently running for this handle, or null */
+	private volatile Statement statement;
+	private ResultSet rs;
+
+	QueryHandle(String sql, QueryListener listener) {
+		this.sql = sql;
+		this.listener = listener;
+	}
+
+	/**
+	 * Stop the statement: if it has not started it never will; if it is
+	 * running the database is asked to cancel it. Returns at once;
+	 * wait on the future to know when the worker has stopped.
+	 * @return True if the statement had not already finished or been cancelled
+	 */
+	public synchronized boolean cancel() {
+		if (future.isDone() || cancelled) {
+			return false;
+		}
+		cancelled = true;
+		Statement s = statement;
+		if (s != null) {
+			try {
+				s.cancel();
+			} catch (SQLException e) {
+				// Driver can't cancel; we'll still stop at the next row
+			}
+		}
+		return true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public boolean isDone() {
+		return future.isDone();
+	}
+
+	/** @return The future for the statement's result: rows read or updated */
+	public CompletableFuture<Integer> getFuture() {
+		return future;
+	}
+
+	/** @return The number of rows read so far */
+	public long getRowsFetched() {
+		return rowsFetched;
+	}
+
+	public String getSQL() {
+		return sql;
+	}
+
+	/**
+	 * Set how often the listener hears about progress.
+	 * @param progressInterval The number of rows between reports
+	 */
+	public void setProgressInterval(int progressInterval) {
+		if (progressInterval < 1) {
+			throw new IllegalArgumentException("Progress interval must be positive");
+		}
+		this.progressInterval = progressInterval;
+	}
+
+	/** Called by the SQLRunner just before execute(), and with null after. */
+	void setStatement(Statement statement) throws SQLException {
+		this.statement = statement;
+		if (statement != null && cancelled) {
+			throw canceledException();
+		}
+	}
+
+	/** Called by the SQLRunner when the ResultSet is ready, to count its rows */
+	ResultSet wrap(ResultSet rs) {
+		this.rs = rs;
+		return (ResultSet) Proxy.newProxyInstance(
+			ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, this);
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		Object ret;
+		try {
+			ret = method.invoke(rs, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+		if (method.getName().equals("next")) {
+			if (cancelled) {
+				throw canceledException();
+			}
+			if (Boolean.TRUE.equals(ret)) {
+				if (++rowsFetched % progressInterval == 0 && listener != null) {
+					listener.progress(this, rowsFetched);
+				}
+			} else if (listener != null) {
+				listener.progress(this, rowsFetched);
+			}
+		}
+		return ret;
+	}
+
+	private static SQLException canceledException() {
+		return new SQLException("Statement cancelled", SQLSTATE_CANCELED);
+	}
+
+	void complete(int count) {
+		future.complete(count);
+	}
+
+	/** Called by the worker when the statement fails, or is cancelled before it starts */
+	void fail(Throwable t) {
+		if (cancelled && !(t instanceof CancellationException)) {
+			CancellationException ce = new CancellationException("Statement cancelled");
+			ce.initCause(t);
+			t = ce;
+		}
+		future.completeExceptionally(t);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("QueryHandle[%s, %d rows%s]", sql, rowsFetched,
+			cancelled ? ", cancelled" : future.isDone() ? ", done" : "");
+	}
+}
@@ -0,0 +1,18 @@
+package com.darwinsys.sql;
+
+/**
+ * Receives progress reports for a statement run by SQLRunner.submit().
+ * Called on the SQLRunner's worker thread, so GUI code must hand
+ * the work over to its own event thread.
+ */
+public interface QueryListener {
+
+	/**
+	 * Called every so many rows while a ResultSet is being read,
+	 * and once more when it has all been read.
+	 * @param handle The statement's handle
+	 * @param rowsFetched The number of rows read so far
+	 */
+	public void progress(QueryHandle handle, long rowsFetched);
+
+}
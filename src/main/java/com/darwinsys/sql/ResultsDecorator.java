@@ -67,10 +67,34 @@ public abstract class ResultsDecorator {
 	public abstract void displayTable(String table, ResultSet rs)
 		throws IOException, SQLException;
 
+	/**
+	 * Say whether this decorator needs to move backwards or
+	 * jump around in the ResultSet. Most decorators read each row
+	 * exactly once, so SQLRunner can hand them the live, forward-only
+	 * ResultSet; those that return true get a scrollable ResultSet
+	 * with a Statement of its own (or a CachedRowSet copy if the
+	 * driver can't scroll), which they must close when done with it.
+	 * @return true if the ResultSet must be scrollable.
+	 */
+	public boolean needsScrolling() {
+		return false;
+	}
+
 	public void printRowCount(int n) throws IOException {
 		out.println("Row Count = " + n);
 	}
 
+	/**
+	 * Print a comment, such as the "output from command" line that
+	 * SQLRunner puts before each result. Formats that have no room
+	 * for comments override this to print nothing.
+	 * @param comment The comment text, including any comment marker
+	 * @throws IOException on I/O error
+	 */
+	public void printComment(String comment) throws IOException {
+		println(comment);
+	}
+
 	public void println(String line) throws IOException {
 		out.println(line);
 	}
@@ -90,5 +114,36 @@ public abstract class ResultsDecorator {
 	public void setWriter(PrintWriter out) {
 		this.out = out;
 	}
+
+	/**
+	 * Write the start of a buffer without making a String of it,
+	 * for decorators that build each row or line in one re-used buffer.
+	 * @param buf The buffer
+	 * @param len How many characters of it to write
+	 */
+	protected void writeChars(StringBuilder buf, int len) {
+		buf.getChars(0, len, getChars(len), 0);
+		out.write(chars, 0, len);
+	}
+
+	/**
+	 * Write the start of a buffer without making a String of it.
+	 * @param buf The buffer
+	 * @param len How many characters of it to write
+	 */
+	protected void writeChars(StringBuffer buf, int len) {
+		buf.getChars(0, len, getChars(len), 0);
+		out.write(chars, 0, len);
+	}
+
+	/** Work space for writeChars(), reused and grown as needed */
+	private char[] chars = new char[256];
+
+	private char[] getChars(int len) {
+		if (chars.length < len) {
+			chars = new char[Math.max(len, chars.length * 2)];
+		}
+		return chars;
+	}
 }
 // end::main[]
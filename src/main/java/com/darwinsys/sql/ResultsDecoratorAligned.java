@@ -0,0 +1,208 @@
+package com.darwinsys.sql;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.darwinsys.lang.StringFormat;
+import com.darwinsys.util.Verbosity;
+
+/**
+ * Print a ResultSet as a plain-text table with aligned columns, like psql:
+ * <pre>
+ *  id |   name    | salary
+ * ----+-----------+--------
+ *   1 | Ian       |  10.50
+ * </pre>
+ * The column widths are chosen from the first few rows (100 by default),
+ * so the rest can be streamed without holding the whole result in memory;
+ * later values that don't fit are cut off, or wrapped onto extra lines,
+ * except numbers, which are never cut and are right-justified.
+ * Each line is built in one re-used buffer by StringFormat, so no
+ * Strings are made for the padded cells.
+ */
+public class ResultsDecoratorAligned extends ResultsDecoratorText {
+
+	public static final int DEFAULT_SAMPLE_ROWS = 100;
+	public static final int DEFAULT_MAX_WIDTH = 40;
+
+	private int sampleRows = DEFAULT_SAMPLE_ROWS;
+	private int maxWidth = DEFAULT_MAX_WIDTH;
+	private boolean wrap;
+
+	/** The line being built */
+	private final StringBuffer line = new StringBuffer(256);
+
+	public ResultsDecoratorAligned(PrintWriter out, Verbosity v) {
+		super(out, v);
+	}
+
+	@Override
+	public int write(ResultSet rs) throws IOException, SQLException {
+		ResultSetMetaData md = rs.getMetaData();
+		final int colCount = md.getColumnCount();
+
+		// Read the sample, and size the columns to fit it
+		List<String[]> sample = new ArrayList<>();
+		boolean more = true;
+		while (sample.size() < sampleRows && (more = rs.next())) {
+			sample.add(getRow(rs, new String[colCount]));
+		}
+		int[] widths = new int[colCount];
+		String[] labels = new String[colCount];
+		for (int i = 0; i < colCount; i++) {
+			labels[i] = md.getColumnLabel(i + 1);
+			widths[i] = labels[i].length();
+			for (String[] row : sample) {
+				widths[i] = Math.max(widths[i], row[i].length());
+			}
+			widths[i] = Math.max(1, Math.min(widths[i], maxWidth));
+		}
+
+		StringFormat[] headers = new StringFormat[colCount];
+		StringFormat[] cells = new StringFormat[colCount];
+		boolean[] numeric = new boolean[colCount];
+		for (int i = 0; i < colCount; i++) {
+			numeric[i] = isNumeric(md.getColumnType(i + 1));
+			headers[i] = new StringFormat(widths[i], StringFormat.JUST_CENTRE);
+			cells[i] = new StringFormat(widths[i],
+				numeric[i] ? StringFormat.JUST_RIGHT : StringFormat.JUST_LEFT);
+		}
+
+		int[] offsets = new int[colCount];
+		writeRow(labels, headers, new boolean[colCount], offsets);
+		line.setLength(0);
+		for (int i = 0; i < colCount; i++) {
+			line.append(i == 0 ? "-" : "-+-");
+			for (int j = 0; j < widths[i]; j++) {
+				line.append('-');
+			}
+		}
+		line.append('-');
+		writeLine();
+
+		int rowCount = 0;
+		for (String[] row : sample) {
+			writeRow(row, cells, numeric, offsets);
+			++rowCount;
+		}
+		sample = null;
+		if (more) {
+			String[] row = new String[colCount];
+			while (rs.next()) {
+				writeRow(getRow(rs, row), cells, numeric, offsets);
+				++rowCount;
+			}
+		}
+		return rowCount;
+	}
+
+	/** Read the current row's values, with null as an empty string */
+	private static String[] getRow(ResultSet rs, String[] row) throws SQLException {
+		for (int i = 0; i < row.length; i++) {
+			String s = rs.getString(i + 1);
+			row[i] = s == null ? "" : s;
+		}
+		return row;
+	}
+
+	/**
+	 * Write one row; if wrapping, values too wide for their column
+	 * continue on the next lines.
+	 * @param numeric True for the columns whose values mustn't be cut
+	 * @param offsets Work space, one per column
+	 */
+	private void writeRow(String[] row, StringFormat[] formats, boolean[] numeric,
+			int[] offsets) {
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = 0;
+		}
+		boolean more;
+		do {
+			more = false;
+			line.setLength(0);
+			for (int i = 0; i < row.length; i++) {
+				line.append(i == 0 ? " " : " | ");
+				int start = line.length();
+				if (numeric[i] && offsets[i] == 0 && row[i].length() > formats[i].getMaxChars()) {
+					line.append(row[i]);		// better misaligned than wrong
+					offsets[i] = row[i].length();	// so continuation lines leave it blank
+					continue;
+				}
+				int end = wrap ?
+					Math.min(row[i].length(), offsets[i] + formats[i].getMaxChars()) :
+					row[i].length();
+				formats[i].format(row[i], offsets[i], end, line);
+				offsets[i] = end;
+				more |= end < row[i].length();
+				// Tabs and newlines would spoil the alignment
+				for (int j = start; j < line.length(); j++) {
+					if (line.charAt(j) < ' ') {
+						line.setCharAt(j, ' ');
+					}
+				}
+			}
+			writeLine();
+		} while (more);
+	}
+
+	/** Write the line buffer, without trailing spaces */
+	private void writeLine() {
+		int n = line.length();
+		while (n > 0 && line.charAt(n - 1) == ' ') {
+			--n;
+		}
+		writeChars(line, n);
+		out.println();
+	}
+
+	static boolean isNumeric(int type) {
+		switch (type) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+		case Types.REAL:
+		case Types.FLOAT:
+		case Types.DOUBLE:
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/** @param rows How many rows to read before choosing the column widths */
+	public void setSampleRows(int rows) {
+		if (rows < 0) {
+			throw new IllegalArgumentException("Sample size may not be negative");
+		}
+		this.sampleRows = rows;
+	}
+
+	/** @param maxWidth The widest a column may be */
+	public void setMaxWidth(int maxWidth) {
+		if (maxWidth < 1) {
+			throw new IllegalArgumentException("Width must be positive");
+		}
+		this.maxWidth = maxWidth;
+	}
+
+	/** @param wrap True to wrap values too wide for their column,
+	 * false (the default) to cut them off
+	 */
+	public void setWrap(boolean wrap) {
+		this.wrap = wrap;
+	}
+
+	@Override
+	public String getName() {
+		return "Aligned text";
+	}
+}
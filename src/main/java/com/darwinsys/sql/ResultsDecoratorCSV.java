@@ -0,0 +1,203 @@
+package com.darwinsys.sql;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.format.DateTimeFormatter;
+
+import com.darwinsys.csv.CSVExport;
+import com.darwinsys.util.Verbosity;
+
+/**
+ * Print a ResultSet as RFC 4180 comma-separated values, or as
+ * tab-separated values using the same quoting rules.
+ * Rows are streamed: each one is built in a reused buffer
+ * and written out before the next is fetched.
+ */
+public class ResultsDecoratorCSV extends ResultsDecorator {
+
+	public static final String CRLF = "\r\n";
+
+	private final char delimiter;
+	private String lineSeparator;
+	private String nullValue = "";
+	private boolean header = true;
+	private DateTimeFormatter dateFormat, timeFormat, timestampFormat;
+
+	/** The current row, reused for every row */
+	private final StringBuilder row = new StringBuilder(256);
+
+	/**
+	 * Construct a CSV decorator.
+	 * @param out The output
+	 * @param v The verbosity
+	 */
+	public ResultsDecoratorCSV(PrintWriter out, Verbosity v) {
+		this(out, v, ',');
+	}
+
+	/**
+	 * Construct a decorator for the given delimiter. Comma-separated
+	 * output ends lines with CRLF, as RFC 4180 requires; anything else
+	 * (notably tab-separated) uses newline.
+	 * @param out The output
+	 * @param v The verbosity
+	 * @param delimiter The field delimiter
+	 */
+	public ResultsDecoratorCSV(PrintWriter out, Verbosity v, char delimiter) {
+		super(out, v);
+		this.delimiter = delimiter;
+		this.lineSeparator = delimiter == ',' ? CRLF : "\n";
+	}
+
+	@Override
+	public int write(ResultSet rs) throws IOException, SQLException {
+		ResultSetMetaData md = rs.getMetaData();
+		final int colCount = md.getColumnCount();
+		// Look up the column types once, not once per cell
+		final int[] types = new int[colCount + 1];
+		for (int i = 1; i <= colCount; i++) {
+			types[i] = md.getColumnType(i);
+		}
+		if (header) {
+			row.setLength(0);
+			for (int i = 1; i <= colCount; i++) {
+				if (i > 1) {
+					row.append(delimiter);
+				}
+				CSVExport.appendField(row, md.getColumnLabel(i), delimiter);
+			}
+			writeRow();
+		}
+		int rowCount = 0;
+		while (rs.next()) {
+			++rowCount;
+			row.setLength(0);
+			for (int i = 1; i <= colCount; i++) {
+				if (i > 1) {
+					row.append(delimiter);
+				}
+				String val = getValue(rs, i, types[i]);
+				if (val == null) {
+					row.append(nullValue);
+				} else {
+					CSVExport.appendField(row, val, delimiter);
+				}
+			}
+			writeRow();
+		}
+		return rowCount;
+	}
+
+	/** Get one cell's value as a String, formatting dates/times if asked to */
+	private String getValue(ResultSet rs, int i, int type) throws SQLException {
+		switch (type) {
+		case Types.DATE:
+			if (dateFormat != null) {
+				Date d = rs.getDate(i);
+				return d == null ? null : dateFormat.format(d.toLocalDate());
+			}
+			break;
+		case Types.TIME:
+			if (timeFormat != null) {
+				Time t = rs.getTime(i);
+				return t == null ? null : timeFormat.format(t.toLocalTime());
+			}
+			break;
+		case Types.TIMESTAMP:
+			if (timestampFormat != null) {
+				Timestamp ts = rs.getTimestamp(i);
+				return ts == null ? null : timestampFormat.format(ts.toLocalDateTime());
+			}
+			break;
+		}
+		return rs.getString(i);
+	}
+
+	/** Write the row buffer plus line separator, without making a String of it */
+	private void writeRow() {
+		row.append(lineSeparator);
+		writeChars(row, row.length());
+	}
+
+	@Override
+	public void displayTable(String table, ResultSet rs) throws IOException, SQLException {
+		write(rs);
+	}
+
+	/** Comments would corrupt the data, so don't print any */
+	@Override
+	public void printComment(String comment) {
+		// empty
+	}
+
+	/** Keep the row count out of the data */
+	@Override
+	public void printRowCount(int rowCount) throws IOException {
+		if (verbosity != Verbosity.QUIET) {
+			System.err.println("RowCount: " + rowCount);
+		}
+	}
+
+	/**
+	 * Set what is printed for SQL NULL; the default, empty, is what
+	 * most spreadsheets and loaders expect.
+	 * @param nullValue The text for NULL, printed without quoting
+	 */
+	public void setNullValue(String nullValue) {
+		this.nullValue = nullValue;
+	}
+
+	public String getNullValue() {
+		return nullValue;
+	}
+
+	/**
+	 * Set whether a header line of column labels is printed (default true).
+	 * @param header True for a header
+	 */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	public boolean isHeader() {
+		return header;
+	}
+
+	/**
+	 * Set the line separator.
+	 * @param lineSeparator The separator, e.g., CRLF or "\n"
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Set how DATE, TIME and TIMESTAMP columns are formatted;
+	 * a null formatter (the default) means use the driver's getString().
+	 * @param dateFormat For DATE columns, e.g., DateTimeFormatter.ISO_LOCAL_DATE
+	 * @param timeFormat For TIME columns
+	 * @param timestampFormat For TIMESTAMP columns
+	 */
+	public void setDateFormats(DateTimeFormatter dateFormat,
+			DateTimeFormatter timeFormat, DateTimeFormatter timestampFormat) {
+		this.dateFormat = dateFormat;
+		this.timeFormat = timeFormat;
+		this.timestampFormat = timestampFormat;
+	}
+
+	public char getDelimiter() {
+		return delimiter;
+	}
+
+	@Override
+	public String getName() {
+		return delimiter == '\t' ? "TSV" : "CSV";
+	}
+}
@@ -0,0 +1,314 @@
+package com.darwinsys.sql;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Blob;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Base64;
+
+import com.darwinsys.util.Verbosity;
+
+/**
+ * Print a ResultSet as JSON, either as one array of row objects
+ * per ResultSet, or as newline-delimited JSON (one object per line,
+ * no enclosing array) for feeding to stream processors.
+ * Each row is written as soon as it is read, so memory use does
+ * not depend on the size of the ResultSet.
+ * <p>Numbers and booleans are unquoted, DATE, TIME and TIMESTAMP
+ * are ISO-8601 strings, binary data is base64, and SQL NULL is null.
+ */
+public class ResultsDecoratorJSON extends ResultsDecorator {
+
+	private final boolean ndjson;
+
+	/** How each column's value is written */
+	private static final int STRING = 0, NUMBER = 1, BOOLEAN = 2,
+		DATE = 3, TIME = 4, TIMESTAMP = 5, BINARY = 6, BLOB = 7;
+
+	/** The current row, reused for every row */
+	private final StringBuilder row = new StringBuilder(256);
+
+	/**
+	 * Construct a decorator for JSON arrays.
+	 * @param out The output
+	 * @param v The verbosity
+	 */
+	public ResultsDecoratorJSON(PrintWriter out, Verbosity v) {
+		this(out, v, false);
+	}
+
+	/**
+	 * Construct a decorator.
+	 * @param out The output
+	 * @param v The verbosity
+	 * @param ndjson True for newline-delimited JSON, false for an array
+	 */
+	public ResultsDecoratorJSON(PrintWriter out, Verbosity v, boolean ndjson) {
+		super(out, v);
+		this.ndjson = ndjson;
+	}
+
+	@Override
+	public int write(ResultSet rs) throws IOException, SQLException {
+		ResultSetMetaData md = rs.getMetaData();
+		final int colCount = md.getColumnCount();
+		// Work out the keys and the value kinds once, not once per row
+		final String[] keys = new String[colCount + 1];
+		final int[] kinds = new int[colCount + 1];
+		for (int i = 1; i <= colCount; i++) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(i == 1 ? "{" : ",");
+			appendString(sb, md.getColumnLabel(i));
+			sb.append(':');
+			keys[i] = sb.toString();
+			kinds[i] = getKind(md.getColumnType(i));
+		}
+		if (!ndjson) {
+			out.print('[');
+		}
+		int rowCount = 0;
+		while (rs.next()) {
+			row.setLength(0);
+			if (!ndjson) {
+				row.append(rowCount == 0 ? "\n" : ",\n");
+			}
+			++rowCount;
+			for (int i = 1; i <= colCount; i++) {
+				row.append(keys[i]);
+				appendValue(rs, i, kinds[i]);
+			}
+			row.append(colCount == 0 ? "{}" : "}");
+			if (ndjson) {
+				row.append('\n');
+			}
+			writeRow();
+		}
+		if (!ndjson) {
+			out.print(rowCount == 0 ? "]\n" : "\n]\n");
+		}
+		return rowCount;
+	}
+
+	private static int getKind(int type) {
+		switch (type) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+		case Types.REAL:
+		case Types.FLOAT:
+		case Types.DOUBLE:
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+			return NUMBER;
+		case Types.BIT:
+		case Types.BOOLEAN:
+			return BOOLEAN;
+		case Types.DATE:
+			return DATE;
+		case Types.TIME:
+			return TIME;
+		case Types.TIMESTAMP:
+			return TIMESTAMP;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+			return BINARY;
+		case Types.BLOB:
+			return BLOB;
+		default:
+			return STRING;
+		}
+	}
+
+	/** Append one cell's value to the row buffer */
+	private void appendValue(ResultSet rs, int i, int kind) throws SQLException {
+		switch (kind) {
+		case NUMBER:
+			String num = rs.getString(i);
+			String json;
+			if (num == null) {
+				row.append("null");
+			} else if ((json = toJSONNumber(num)) != null) {
+				row.append(json);
+			} else {
+				appendString(row, num);	// NaN, Infinity
+			}
+			return;
+		case BOOLEAN:
+			boolean b = rs.getBoolean(i);
+			row.append(rs.wasNull() ? "null" : b ? "true" : "false");
+			return;
+		case DATE:
+			Date d = rs.getDate(i);
+			appendQuotedOrNull(d == null ? null : d.toLocalDate().toString());
+			return;
+		case TIME:
+			Time t = rs.getTime(i);
+			appendQuotedOrNull(t == null ? null : t.toLocalTime().toString());
+			return;
+		case TIMESTAMP:
+			Timestamp ts = rs.getTimestamp(i);
+			appendQuotedOrNull(ts == null ? null : ts.toLocalDateTime().toString());
+			return;
+		case BINARY:
+			byte[] bytes = rs.getBytes(i);
+			appendQuotedOrNull(bytes == null ? null : Base64.getEncoder().encodeToString(bytes));
+			return;
+		case BLOB:
+			Blob blob = rs.getBlob(i);
+			if (blob == null) {
+				row.append("null");
+			} else {
+				appendQuotedOrNull(Base64.getEncoder().encodeToString(
+					blob.getBytes(1, (int) blob.length())));
+				blob.free();
+			}
+			return;
+		default:
+			String s = rs.getString(i);
+			if (s == null) {
+				row.append("null");
+			} else {
+				appendString(row, s);
+			}
+		}
+	}
+
+	/** Append a value that needs no escaping, in quotes */
+	private void appendQuotedOrNull(String s) {
+		if (s == null) {
+			row.append("null");
+		} else {
+			row.append('"').append(s).append('"');
+		}
+	}
+
+	/**
+	 * Make the driver's rendering of a number into a JSON number: some
+	 * drivers leave out the 0 before the decimal point, as in ".5".
+	 * @return The JSON number, or null if there isn't one (NaN, Infinity)
+	 */
+	static String toJSONNumber(String s) {
+		if (s.startsWith(".")) {
+			s = "0" + s;
+		} else if (s.startsWith("-.")) {
+			s = "-0" + s.substring(1);
+		}
+		return isJSONNumber(s) ? s : null;
+	}
+
+	/** True if the driver's rendering of a number is valid JSON as-is, that is,
+	 * -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?
+	 */
+	static boolean isJSONNumber(String s) {
+		final int n = s.length();
+		int i = 0;
+		if (i < n && s.charAt(i) == '-') {
+			++i;
+		}
+		if (i < n && s.charAt(i) == '0') {
+			++i;
+		} else if ((i = digits(s, i)) < 0) {
+			return false;
+		}
+		if (i < n && s.charAt(i) == '.') {
+			if ((i = digits(s, i + 1)) < 0) {
+				return false;
+			}
+		}
+		if (i < n && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+			++i;
+			if (i < n && (s.charAt(i) == '+' || s.charAt(i) == '-')) {
+				++i;
+			}
+			if ((i = digits(s, i)) < 0) {
+				return false;
+			}
+		}
+		return i == n;
+	}
+
+	/** Skip one or more digits
+	 * @return The index after them, or -1 if there are none
+	 */
+	private static int digits(String s, int i) {
+		int start = i;
+		while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+			++i;
+		}
+		return i > start ? i : -1;
+	}
+
+	/**
+	 * Append a string as a JSON string literal, escaping in one pass.
+	 * @param sb The buffer
+	 * @param s The string, not null
+	 */
+	static void appendString(StringBuilder sb, String s) {
+		sb.append('"');
+		final int n = s.length();
+		int start = 0;
+		for (int i = 0; i < n; i++) {
+			char c = s.charAt(i);
+			// U+2028 and U+2029 are legal in JSON but not in JavaScript source
+			if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+				continue;
+			}
+			sb.append(s, start, i);
+			start = i + 1;
+			switch (c) {
+			case '"':	sb.append("\\\""); break;
+			case '\\':	sb.append("\\\\"); break;
+			case '\n':	sb.append("\\n"); break;
+			case '\r':	sb.append("\\r"); break;
+			case '\t':	sb.append("\\t"); break;
+			case '\b':	sb.append("\\b"); break;
+			case '\f':	sb.append("\\f"); break;
+			default:
+				sb.append(String.format("\\u%04x", (int) c));
+			}
+		}
+		sb.append(s, start, n);
+		sb.append('"');
+	}
+
+	/** Write the row buffer, without making a String of it */
+	private void writeRow() {
+		writeChars(row, row.length());
+	}
+
+	@Override
+	public void displayTable(String table, ResultSet rs) throws IOException, SQLException {
+		write(rs);
+	}
+
+	/** Comments are not allowed in JSON, so don't print any */
+	@Override
+	public void printComment(String comment) {
+		// empty
+	}
+
+	/** Keep the row count out of the data */
+	@Override
+	public void printRowCount(int rowCount) throws IOException {
+		if (verbosity != Verbosity.QUIET) {
+			System.err.println("RowCount: " + rowCount);
+		}
+	}
+
+	public boolean isNDJSON() {
+		return ndjson;
+	}
+
+	@Override
+	public String getName() {
+		return ndjson ? "NDJSON" : "JSON";
+	}
+}
@@ -27,102 +27,79 @@ package com.darwinsys.sql;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 
 import javax.swing.JTable;
-import javax.swing.event.TableModelListener;
-import javax.swing.table.TableModel;
+import javax.swing.SwingUtilities;
 
 import com.darwinsys.util.Verbosity;
 
-/** Print ResultSet in HTML
+/** Show a ResultSet in a JTable, via a PagedTableModel that
+ * reads the rows in the background, so write() returns at once
+ * and the rows appear in the table as they arrive.
  */
 public class ResultsDecoratorJTable extends ResultsDecorator {
 	JTable table;
+	private int pageSize = PagedTableModel.DEFAULT_PAGE_SIZE;
+	private int maxPages = PagedTableModel.DEFAULT_MAX_PAGES;
+	/** The model now being shown */
+	private PagedTableModel current;
 
 	public ResultsDecoratorJTable(JTable table, PrintWriter out, Verbosity v) {
 		super(out, v);
 		this.table = table;
 	}
 
+	/**
+	 * Start showing a ResultSet; the model takes it over, and closes it
+	 * when the next one is shown or close() is called.
+	 * @return -1, as the rows have not been counted yet
+	 */
 	public int write(final ResultSet rs) throws IOException, SQLException {
-
-		final ResultSetMetaData md = rs.getMetaData();
-		final int colCount = md.getColumnCount();
-
-		// Create a JTableModel to hold the data; map 1-origin SQL row/col to/from 0-origin JTable row/col
-		TableModel dataModel = new TableModel() {
-
-			public Class<?> getColumnClass(int columnIndex) {
-				try {
-					return Class.forName(md.getColumnClassName(1+columnIndex));
-				} catch (Exception e) {
-					return null;
-				}
-			}
-
-			public int getColumnCount() {
-				return colCount;
-			}
-
-			public String getColumnName(int columnIndex) {
-				try {
-					return md.getColumnLabel(1+columnIndex);
-				} catch (SQLException e) {
-					e.printStackTrace();
-					return "unknown";
-				}
-			}
-
-			public int getRowCount() {
-				try {
-					rs.last();
-					return rs.getRow();
-				} catch (SQLException e) {
-					e.printStackTrace();
-					return -1;
-				}
-			}
-
-			public Object getValueAt(int rowIndex, int columnIndex) {
-				try {
-					rs.absolute(1+rowIndex);
-					return rs.getObject(1+columnIndex);
-				} catch (SQLException e) {
-					e.printStackTrace();
-					return null;
-				}
-			}
-
-			/** All read-only for now */
-			public boolean isCellEditable(int rowIndex, int columnIndex) {
-				return false;
-			}
-
-			public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
-				throw new IllegalArgumentException("Model is read-only");
-			}
-
-			// LISTENER SUPPORT
-			public void addTableModelListener(TableModelListener l) {
-                // ??
-			}
-
-			public void removeTableModelListener(TableModelListener l) {
-                // ??
+		final PagedTableModel dataModel;
+		try {
+			dataModel = new PagedTableModel(rs, pageSize, maxPages);
+		} catch (SQLException e) {
+			rs.close();
+			throw e;
+		}
+		close();
+		current = dataModel;
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				table.setModel(dataModel);
 			}
-		};
+		});
+		dataModel.start();
+		return -1;
+	}
 
-		// populate it
-		table.setModel(dataModel);
-		
-		// Something the UI interface design forgot
-		for (int i = 0; i < colCount; i++) {
-			// XXX put column name as tooltip
+	/** Stop reading the rows of the ResultSet now shown, if any,
+	 * and close it.
+	 */
+	public void close() {
+		if (current != null) {
+			current.close();
+			current = null;
 		}
+	}
 
-		return dataModel.getRowCount();
+	/**
+	 * Set the number of rows read at a time, and the most
+	 * pages to keep in memory; other pages are read again
+	 * as needed.
+	 * @param pageSize The rows per page
+	 * @param maxPages The most pages to keep
+	 */
+	public void setPaging(int pageSize, int maxPages) {
+		this.pageSize = pageSize;
+		this.maxPages = maxPages;
+	}
+
+	/** The TableModel re-reads pages with absolute(), so needs scrolling */
+	@Override
+	public boolean needsScrolling() {
+		return true;
 	}
 
 	@Override
@@ -35,9 +35,24 @@ import com.darwinsys.util.Verbosity;
 
 /**
  * Print an SQL ResultSet in SQL-import format.
+ * By default each row is a separate insert statement; for faster
+ * reloading, setRowsPerStatement() groups rows into multi-row
+ * VALUES lists, and setTransactionSize() wraps groups of rows
+ * in transactions.
  */
 public class ResultsDecoratorSQL extends ResultsDecorator {
 
+	/** How each column's value is written */
+	private static final int UNQUOTED = 0, STRING = 1, TEMPORAL = 2;
+
+	private int rowsPerStatement = 1;
+	private int transactionSize;
+	private String beginCommand = "START TRANSACTION;";
+	private String commitCommand = "COMMIT;";
+
+	/** The current row, reused for every row */
+	private final StringBuilder sb = new StringBuilder(256);
+
 	public ResultsDecoratorSQL(PrintWriter out, Verbosity v) {
 		super(out, v);
 	}
@@ -55,64 +70,102 @@ public class ResultsDecoratorSQL extends ResultsDecorator {
 			System.err.println("Warning: at least one tablename null");
 		}
 		int colCount = metadata.getColumnCount();
-		StringBuffer sb = new StringBuffer("insert into ").append(tableName).append("(");
+		sb.setLength(0);
+		sb.append("insert into ").append(tableName).append("(");
+		// Look up the column types once, not once per cell
+		final int[] kinds = new int[colCount + 1];
 		for (int i = 1; i <= colCount; i++) {
 			sb.append(metadata.getColumnName(i));
 			if (i != colCount) {
 				sb.append(", ");
 			}
+			kinds[i] = getKind(metadata.getColumnType(i));
 		}
-		sb.append(") values (");
+		sb.append(rowsPerStatement == 1 ? ") values (" : ") values");
 		String insertCommand = sb.toString();
 
 		int rowCount = 0;
+		int rowsInStatement = 0, rowsInTransaction = 0;
 		while (rs.next()) {
 			++rowCount;
-			println(insertCommand);
-
+			if (rowsInStatement == 0) {
+				if (transactionSize > 0 && rowsInTransaction == 0) {
+					println(beginCommand);
+				}
+				println(insertCommand);
+			} else {
+				println(",");
+			}
+			sb.setLength(0);
+			if (rowsPerStatement > 1) {
+				sb.append('(');
+			}
 			for (int i = 1; i <= colCount; i++) {
 				String tmp = rs.getString(i);
-				if (rs.wasNull()) {
-					print("null");
+				if (tmp == null) {
+					sb.append("null");
 				} else {
 					// Numbers go unchanged; Strings get squote doubling
-					// and wrap in dquotes; dates/times/etc get wrapped
-					// in dquotes; default case goes unchanged.
-					switch (metadata.getColumnType(i)) {
-						case Types.BIGINT:
-						case Types.DECIMAL:
-						case Types.DOUBLE:
-						case Types.FLOAT:
-						case Types.INTEGER:
-							// Do nothing
-							break;
-						case Types.CHAR:
-						case Types.CLOB:
-						case Types.VARCHAR:
-						case Types.LONGVARCHAR:
-							tmp = duplicateSingleQuotes(tmp);
-							tmp = wrapInDoubleQuotes(tmp);
+					// and wrap in squotes; dates/times/etc get wrapped
+					// in squotes; default case goes unchanged.
+					switch (kinds[i]) {
+						case STRING:
+							appendQuoted(sb, tmp);
 							break;
-						case Types.DATE:
-						case Types.TIME:
-						case Types.TIMESTAMP:
-							tmp = wrapInDoubleQuotes(tmp);
+						case TEMPORAL:
+							sb.append('\'').append(tmp).append('\'');
 							break;
 						default:
-							// Do Nothing
-						break;
+							sb.append(tmp);
+							break;
 					}
-					print(tmp);
 				}
 				if (i != colCount) {
-					print( ", ");
+					sb.append(", ");
+				}
+			}
+			sb.append(')');
+			print(sb.toString());
+			++rowsInStatement;
+			++rowsInTransaction;
+			if (rowsInStatement == rowsPerStatement) {
+				println(";");
+				rowsInStatement = 0;
+				if (transactionSize > 0 && rowsInTransaction >= transactionSize) {
+					println(commitCommand);
+					rowsInTransaction = 0;
 				}
 			}
-			println(");");
+		}
+		if (rowsInStatement > 0) {
+			println(";");
+		}
+		if (transactionSize > 0 && rowsInTransaction > 0) {
+			println(commitCommand);
 		}
 		return rowCount;
 	}
 
+	private static int getKind(int type) {
+		switch (type) {
+			case Types.CHAR:
+			case Types.CLOB:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.NCHAR:
+			case Types.NCLOB:
+			case Types.NVARCHAR:
+			case Types.LONGNVARCHAR:
+				return STRING;
+			case Types.DATE:
+			case Types.TIME:
+			case Types.TIMESTAMP:
+				return TEMPORAL;
+			default:
+				return UNQUOTED;
+		}
+	}
+
 	/** Display this resultset assuming it is a
 	 * Table description.
 	 * @param tableName Table name
@@ -141,21 +194,64 @@ public class ResultsDecoratorSQL extends ResultsDecorator {
 
 
 	/**
-	 * Double the quotes in a string
-	 * @param input The input string to be doubled
-	 * @return The doubled string
+	 * Append a string wrapped in single quotes, doubling
+	 * any single quotes inside it, in one pass.
+	 * @param sb The buffer
+	 * @param input The string to be quoted
+	 */
+	static void appendQuoted(StringBuilder sb, String input) {
+		sb.append('\'');
+		int start = 0, quote;
+		while ((quote = input.indexOf('\'', start)) != -1) {
+			sb.append(input, start, quote + 1).append('\'');
+			start = quote + 1;
+		}
+		sb.append(input, start, input.length());
+		sb.append('\'');
+	}
+
+	/**
+	 * Set how many rows go in each insert statement. The default, 1, gives
+	 * one plain "insert ... values (...);" per row; larger values give
+	 * "insert ... values (...),(...),...;", which most databases load
+	 * much faster.
+	 * @param rowsPerStatement The most rows per statement, at least 1
 	 */
-	private String duplicateSingleQuotes(String input) {
-		return input.replaceAll("'", "''");
+	public void setRowsPerStatement(int rowsPerStatement) {
+		if (rowsPerStatement < 1) {
+			throw new IllegalArgumentException("Rows per statement must be at least 1");
+		}
+		this.rowsPerStatement = rowsPerStatement;
+	}
+
+	public int getRowsPerStatement() {
+		return rowsPerStatement;
+	}
+
+	/**
+	 * Wrap every N rows in a transaction, so the dump doesn't reload
+	 * in autocommit mode. Transactions only end between statements,
+	 * so a transaction may run over N until the current statement is full.
+	 * @param transactionSize The number of rows, or 0 (the default) for
+	 * no transaction commands
+	 */
+	public void setTransactionSize(int transactionSize) {
+		this.transactionSize = transactionSize;
+	}
+
+	public int getTransactionSize() {
+		return transactionSize;
 	}
 
 	/**
-	 * Wrap a string in double quotes
-	 * @param input The string to be wrapped
-	 * @return The wrapped string
+	 * Set the commands that start and end each transaction;
+	 * the defaults are the standard START TRANSACTION; and COMMIT;
+	 * @param begin The begin command, e.g., "BEGIN;"
+	 * @param commit The commit command
 	 */
-	private String wrapInDoubleQuotes(String input) {
-		return String.format("'%s'", input);
+	public void setTransactionCommands(String begin, String commit) {
+		this.beginCommand = begin;
+		this.commitCommand = commit;
 	}
 
 	@Override
@@ -26,40 +26,429 @@ package com.darwinsys.sql;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.math.BigDecimal;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
 
-import javax.sql.rowset.WebRowSet;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import com.darwinsys.util.Verbosity;
 
 /**
- * This guy's primary raison d'etre is to generate an XML output file
- * for use in JUnit testing of the ResultsDecoratorSQL!
+ * Print a ResultSet as XML, one row at a time as it is read, so
+ * memory use does not depend on the size of the ResultSet.
+ * The default Layout follows the WebRowSet schema, so the output can
+ * be read back with WebRowSet.readXml() (this guy's first raison d'etre
+ * was to generate an XML file for use in JUnit testing of the
+ * ResultsDecoratorSQL); the others are simpler, with one element
+ * per row and the values as elements or attributes named for the columns.
  */
 public class ResultsDecoratorXML extends ResultsDecorator {
-	private static final String SUN_WEBROWSET_IMPL_CLASS = "com.sun.rowset.WebRowSetImpl";
-	WebRowSet results;
+
+	/** How the rows are laid out */
+	public enum Layout {
+		/** The WebRowSet schema: properties, metadata, then
+		 * currentRow elements holding columnValue elements
+		 */
+		WEBROWSET,
+		/** &lt;row&gt;&lt;name&gt;value&lt;/name&gt;...&lt;/row&gt;, leaving out nulls */
+		ELEMENTS,
+		/** &lt;row name="value" .../&gt;, leaving out nulls */
+		ATTRIBUTES
+	}
+
+	private static final String WEBROWSET_NS = "http://java.sun.com/xml/ns/jdbc";
+	private static final String XSI_NS = "http://www.w3.org/2001/XMLSchema-instance";
+
+	/** How each column's value is written */
+	private static final int STRING = 0, INT = 1, LONG = 2, FLOAT = 3,
+		DOUBLE = 4, DECIMAL = 5, BOOLEAN = 6, DATE = 7, TIME = 8,
+		TIMESTAMP = 9, BINARY = 10;
+
+	private static final XMLOutputFactory factory = XMLOutputFactory.newInstance();
+
+	private Layout layout = Layout.WEBROWSET;
+	private String rootElement = "resultset", rowElement = "row";
 
 	public ResultsDecoratorXML(PrintWriter out, Verbosity v) {
 		super(out, v);
+	}
+
+	public ResultsDecoratorXML(PrintWriter out, Verbosity v, Layout layout) {
+		super(out, v);
+		this.layout = layout;
+	}
 
+	@Override
+	public int write(ResultSet rs) throws IOException, SQLException {
 		try {
-			// The class name is uncommitted so subject to change.
-			@SuppressWarnings("unchecked")
-			Class<WebRowSet> c = (Class<WebRowSet>) Class.forName(SUN_WEBROWSET_IMPL_CLASS);
-			results = c.getConstructor().newInstance();
+			XMLStreamWriter xw = factory.createXMLStreamWriter(out);
+			xw.writeStartDocument("1.0");
+			int n = layout == Layout.WEBROWSET ? writeWebRowSet(xw, rs) : writeRows(xw, rs);
+			xw.writeEndDocument();
+			xw.close();		// doesn't close out
+			out.println();
+			return n;
+		} catch (XMLStreamException e) {
+			throw new IOException("XML output failed: " + e, e);
+		}
+	}
+
+	private int writeWebRowSet(XMLStreamWriter xw, ResultSet rs)
+		throws XMLStreamException, SQLException {
 
-		} catch (Exception ex){
-			throw new IllegalArgumentException(
-			"can't load " + SUN_WEBROWSET_IMPL_CLASS + ", check CLASSPATH");
+		ResultSetMetaData md = rs.getMetaData();
+		final int colCount = md.getColumnCount();
+		final int[] kinds = new int[colCount + 1];
+
+		nl(xw, 0);
+		xw.writeStartElement("webRowSet");
+		xw.writeDefaultNamespace(WEBROWSET_NS);
+		xw.writeNamespace("xsi", XSI_NS);
+		xw.writeAttribute(XSI_NS, "schemaLocation",
+			WEBROWSET_NS + " " + WEBROWSET_NS + "/webrowset.xsd");
+
+		// The properties are those of a freshly-populated WebRowSet
+		nl(xw, 1);
+		xw.writeStartElement("properties");
+		writeNullElement(xw, 2, "command");
+		writeElement(xw, 2, "concurrency", Integer.toString(ResultSet.CONCUR_UPDATABLE));
+		writeNullElement(xw, 2, "datasource");
+		writeElement(xw, 2, "escape-processing", "true");
+		writeElement(xw, 2, "fetch-direction", Integer.toString(ResultSet.FETCH_FORWARD));
+		writeElement(xw, 2, "fetch-size", "0");
+		writeElement(xw, 2, "isolation-level", "2");
+		writeElement(xw, 2, "key-columns", "");
+		writeElement(xw, 2, "map", "");
+		writeElement(xw, 2, "max-field-size", "0");
+		writeElement(xw, 2, "max-rows", "0");
+		writeElement(xw, 2, "query-timeout", "0");
+		writeElement(xw, 2, "read-only", "true");
+		writeElement(xw, 2, "rowset-type", "ResultSet.TYPE_SCROLL_INSENSITIVE");
+		writeElement(xw, 2, "show-deleted", "false");
+		writeNullElement(xw, 2, "table-name");
+		writeNullElement(xw, 2, "url");
+		nl(xw, 2);
+		xw.writeStartElement("sync-provider");
+		writeElement(xw, 3, "sync-provider-name", "com.sun.rowset.providers.RIOptimisticProvider");
+		writeElement(xw, 3, "sync-provider-vendor", "Oracle Corporation");
+		writeElement(xw, 3, "sync-provider-version", "1.0");
+		writeElement(xw, 3, "sync-provider-grade", "2");
+		writeElement(xw, 3, "data-source-lock", "1");
+		nl(xw, 2);
+		xw.writeEndElement();
+		nl(xw, 1);
+		xw.writeEndElement();
+
+		nl(xw, 1);
+		xw.writeStartElement("metadata");
+		writeElement(xw, 2, "column-count", Integer.toString(colCount));
+		for (int i = 1; i <= colCount; i++) {
+			kinds[i] = getKind(md.getColumnType(i));
+			nl(xw, 2);
+			xw.writeStartElement("column-definition");
+			writeElement(xw, 3, "column-index", Integer.toString(i));
+			writeElement(xw, 3, "auto-increment", Boolean.toString(md.isAutoIncrement(i)));
+			writeElement(xw, 3, "case-sensitive", Boolean.toString(md.isCaseSensitive(i)));
+			writeElement(xw, 3, "currency", Boolean.toString(md.isCurrency(i)));
+			writeElement(xw, 3, "nullable", Integer.toString(md.isNullable(i)));
+			writeElement(xw, 3, "signed", Boolean.toString(md.isSigned(i)));
+			writeElement(xw, 3, "searchable", Boolean.toString(md.isSearchable(i)));
+			writeElement(xw, 3, "column-display-size", Integer.toString(md.getColumnDisplaySize(i)));
+			writeElement(xw, 3, "column-label", md.getColumnLabel(i));
+			writeElement(xw, 3, "column-name", md.getColumnName(i));
+			writeElement(xw, 3, "schema-name", md.getSchemaName(i));
+			writeElement(xw, 3, "column-precision", Integer.toString(md.getPrecision(i)));
+			writeElement(xw, 3, "column-scale", Integer.toString(md.getScale(i)));
+			writeElement(xw, 3, "table-name", md.getTableName(i));
+			writeElement(xw, 3, "catalog-name", md.getCatalogName(i));
+			writeElement(xw, 3, "column-type", Integer.toString(md.getColumnType(i)));
+			writeElement(xw, 3, "column-type-name", md.getColumnTypeName(i));
+			nl(xw, 2);
+			xw.writeEndElement();
 		}
+		nl(xw, 1);
+		xw.writeEndElement();
+
+		nl(xw, 1);
+		xw.writeStartElement("data");
+		int rowCount = 0;
+		while (rs.next()) {
+			++rowCount;
+			nl(xw, 2);
+			xw.writeStartElement("currentRow");
+			for (int i = 1; i <= colCount; i++) {
+				String value = getWebRowSetValue(rs, i, kinds[i]);
+				if (value == null) {
+					writeNullElement(xw, 3, "columnValue");
+				} else {
+					writeElement(xw, 3, "columnValue", value);
+				}
+			}
+			nl(xw, 2);
+			xw.writeEndElement();
+		}
+		nl(xw, 1);
+		xw.writeEndElement();
+		nl(xw, 0);
+		xw.writeEndElement();
+		return rowCount;
 	}
 
-	@Override
-	public int write(ResultSet rs) throws SQLException {
-		results.writeXml(rs, out);
-		return results.getRow();
+	private int writeRows(XMLStreamWriter xw, ResultSet rs)
+		throws XMLStreamException, SQLException {
+
+		ResultSetMetaData md = rs.getMetaData();
+		final int colCount = md.getColumnCount();
+		final String[] names = new String[colCount + 1];
+		final int[] kinds = new int[colCount + 1];
+		for (int i = 1; i <= colCount; i++) {
+			names[i] = toXMLName(md.getColumnLabel(i));
+			kinds[i] = getKind(md.getColumnType(i));
+		}
+		final boolean attributes = layout == Layout.ATTRIBUTES;
+		if (attributes) {
+			makeUnique(names);		// as in "select a.id, b.id ..."
+		}
+
+		nl(xw, 0);
+		xw.writeStartElement(rootElement);
+		int rowCount = 0;
+		while (rs.next()) {
+			++rowCount;
+			nl(xw, 1);
+			if (attributes) {
+				xw.writeEmptyElement(rowElement);
+			} else {
+				xw.writeStartElement(rowElement);
+			}
+			for (int i = 1; i <= colCount; i++) {
+				String value = getValue(rs, i, kinds[i]);
+				if (value == null) {
+					continue;
+				}
+				if (attributes) {
+					xw.writeAttribute(names[i], value);
+				} else {
+					writeElement(xw, 2, names[i], value);
+				}
+			}
+			if (!attributes) {
+				nl(xw, 1);
+				xw.writeEndElement();
+			}
+		}
+		nl(xw, 0);
+		xw.writeEndElement();
+		return rowCount;
+	}
+
+	private static int getKind(int type) {
+		switch (type) {
+		case Types.TINYINT:
+		case Types.SMALLINT:
+		case Types.INTEGER:
+			return INT;
+		case Types.BIGINT:
+			return LONG;
+		case Types.REAL:
+			return FLOAT;
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			return DOUBLE;
+		case Types.NUMERIC:
+		case Types.DECIMAL:
+			return DECIMAL;
+		case Types.BIT:
+		case Types.BOOLEAN:
+			return BOOLEAN;
+		case Types.DATE:
+			return DATE;
+		case Types.TIME:
+			return TIME;
+		case Types.TIMESTAMP:
+			return TIMESTAMP;
+		case Types.BINARY:
+		case Types.VARBINARY:
+		case Types.LONGVARBINARY:
+		case Types.BLOB:
+			return BINARY;
+		default:
+			return STRING;
+		}
+	}
+
+	/** Get a value as the WebRowSet reader expects it: dates and times
+	 * as milliseconds. The schema has no encoding for binary data, so
+	 * it is written in base64 as in the other Layouts; readXml() gives
+	 * back the bytes of that text, for the caller to decode.
+	 * @return The value, or null for SQL NULL
+	 */
+	private static String getWebRowSetValue(ResultSet rs, int i, int kind) throws SQLException {
+		String value;
+		switch (kind) {
+		case INT:
+			value = Integer.toString(rs.getInt(i));
+			break;
+		case LONG:
+			value = Long.toString(rs.getLong(i));
+			break;
+		case FLOAT:
+			value = Float.toString(rs.getFloat(i));
+			break;
+		case DOUBLE:
+			value = Double.toString(rs.getDouble(i));
+			break;
+		case BOOLEAN:
+			value = Boolean.toString(rs.getBoolean(i));
+			break;
+		case DATE:
+			java.util.Date d = rs.getDate(i);
+			return d == null ? null : Long.toString(d.getTime());
+		case TIME:
+			java.util.Date t = rs.getTime(i);
+			return t == null ? null : Long.toString(t.getTime());
+		case TIMESTAMP:
+			java.util.Date ts = rs.getTimestamp(i);
+			return ts == null ? null : Long.toString(ts.getTime());
+		case BINARY:
+			return getValue(rs, i, kind);
+		default:
+			return getValue(rs, i, kind);
+		}
+		return rs.wasNull() ? null : value;
+	}
+
+	/** Get a value with ISO dates and base64 binary data
+	 * @return The value, or null for SQL NULL
+	 */
+	private static String getValue(ResultSet rs, int i, int kind) throws SQLException {
+		switch (kind) {
+		case DECIMAL:
+			BigDecimal bd = rs.getBigDecimal(i);
+			return bd == null ? null : bd.toPlainString();
+		case BOOLEAN:
+			boolean b = rs.getBoolean(i);
+			return rs.wasNull() ? null : Boolean.toString(b);
+		case DATE:
+			java.sql.Date d = rs.getDate(i);
+			return d == null ? null : d.toLocalDate().toString();
+		case TIME:
+			java.sql.Time t = rs.getTime(i);
+			return t == null ? null : t.toLocalTime().toString();
+		case TIMESTAMP:
+			Timestamp ts = rs.getTimestamp(i);
+			return ts == null ? null : ts.toLocalDateTime().toString();
+		case BINARY:
+			byte[] bytes = rs.getBytes(i);
+			return bytes == null ? null : Base64.getEncoder().encodeToString(bytes);
+		default:
+			return toXMLChars(rs.getString(i));
+		}
+	}
+
+	/** Start a new line, indented */
+	private static void nl(XMLStreamWriter xw, int depth) throws XMLStreamException {
+		xw.writeCharacters("\n");
+		for (int i = 0; i < depth; i++) {
+			xw.writeCharacters("  ");
+		}
+	}
+
+	private static void writeElement(XMLStreamWriter xw, int depth, String name, String value)
+		throws XMLStreamException {
+		nl(xw, depth);
+		xw.writeStartElement(name);
+		if (value != null) {
+			xw.writeCharacters(value);
+		}
+		xw.writeEndElement();
+	}
+
+	/** Write an element holding the WebRowSet null marker, &lt;null/&gt; */
+	private static void writeNullElement(XMLStreamWriter xw, int depth, String name)
+		throws XMLStreamException {
+		nl(xw, depth);
+		xw.writeStartElement(name);
+		xw.writeEmptyElement("null");
+		xw.writeEndElement();
+	}
+
+	/**
+	 * Make a column name usable as an element or attribute name,
+	 * replacing any characters that aren't allowed with '_'.
+	 * @param name The column name
+	 * @return The XML name
+	 */
+	static String toXMLName(String name) {
+		if (name == null || name.isEmpty()) {
+			return "_";
+		}
+		StringBuilder sb = new StringBuilder(name.length() + 1);
+		char first = name.charAt(0);
+		if (!(Character.isLetter(first) || first == '_')) {
+			sb.append('_');
+		}
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			sb.append(Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' ? c : '_');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Rename repeated names, which can't be attributes of the same
+	 * element, by adding _2, _3, etc., to the second and later ones.
+	 * @param names The names; element 0 is unused, as in JDBC
+	 */
+	static void makeUnique(String[] names) {
+		Set<String> used = new HashSet<>();
+		for (int i = 1; i < names.length; i++) {
+			used.add(names[i]);
+		}
+		Set<String> seen = new HashSet<>();
+		for (int i = 1; i < names.length; i++) {
+			if (!seen.add(names[i])) {
+				String name;
+				for (int n = 2; !used.add(name = names[i] + "_" + n); n++) {
+					// try the next one
+				}
+				names[i] = name;
+			}
+		}
+	}
+
+	/**
+	 * Replace the control characters that XML 1.0 doesn't allow
+	 * (even as character references) with U+FFFD.
+	 * @param s The string, may be null
+	 * @return The string, copied only if it needed changing
+	 */
+	static String toXMLChars(String s) {
+		if (s == null) {
+			return null;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+				char[] chars = s.toCharArray();
+				for (int j = i; j < chars.length; j++) {
+					if (chars[j] < 0x20 && chars[j] != '\t' && chars[j] != '\n' && chars[j] != '\r') {
+						chars[j] = '\ufffd';
+					}
+				}
+				return new String(chars);
+			}
+		}
+		return s;
 	}
 
 	@Override
@@ -67,12 +456,37 @@ public class ResultsDecoratorXML extends ResultsDecorator {
 		write(rs);
 	}
 
+	/** Comments would go before the XML declaration, so don't print any */
+	@Override
+	public void printComment(String comment) {
+		// empty
+	}
+
 	@Override
 	public void printRowCount(int rowCount) throws IOException {
 		System.err.println("RowCount: " + rowCount);
 
 	}
 
+	public Layout getLayout() {
+		return layout;
+	}
+
+	public void setLayout(Layout layout) {
+		this.layout = layout;
+	}
+
+	/**
+	 * Set the names of the enclosing and per-row elements
+	 * for the ELEMENTS and ATTRIBUTES layouts.
+	 * @param root The element around all the rows, default "resultset"
+	 * @param row The element for each row, default "row"
+	 */
+	public void setElementNames(String root, String row) {
+		this.rootElement = toXMLName(root);
+		this.rowElement = toXMLName(row);
+	}
+
 	/* (non-Javadoc)
 	 * @see ResultsDecorator#getName()
 	 */
@@ -30,29 +30,63 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.sql.rowset.CachedRowSet;
 import javax.sql.rowset.RowSetFactory;
 import javax.sql.rowset.RowSetProvider;
 
+import com.darwinsys.util.VariableMap;
 import com.darwinsys.util.Verbosity;
 
 /** Class to run an SQL script, like psql(1), SQL*Plus, or similar programs.
  * Command line interface accepts options -c config [-f configFile] [scriptFile].
- * <p>Input language is: escape commands (begin with \ and MUST end with semi-colon), or
+ * <p>Input language is: escape commands (begin with \ and end with semi-colon or newline), or
  * standard SQL statements which must also end with semi-colon);
  * <p>Escape sequences:
  * <ul>
- * <li> \m (output-mode), takes character t for text,
- * h for html, s for sql, x for xml (not in this version)
+ * <li> \m (output-mode), takes character t for text, aligned for text
+ * in lined-up columns, h for html, s for sql, x for xml (in WebRowSet format), xmlrows for
+ * xml with an element per row, csv for comma-separated values,
+ * tsv for tab-separated values, json for a JSON array, ndjson for
+ * newline-delimited JSON
  * (the SQL output is intended to be usable to re-insert the data into another identical table,
  * but this has not been extensively tested!).
  * <li> \o output-file, redirects output.
+ * <li> \dt lists the tables, \dt table describes one; both are cached,
+ * and \dr forgets the cached lists so they are read again.
+ * <li> \copy table [(col, ...)] FROM file [HEADER] [DELIMITER c] [NULL string]
+ * [BATCH n] [COMMIT n] loads a CSV file into a table, in batches.
+ * <li> \b N [M] batch mode: send consecutive INSERT/UPDATE/DELETE statements
+ * to the database N at a time, committing every M batches; \b 0 turns it off.
+ * <li> \set name value sets a variable; ${name} in later statements is sent
+ * as a PreparedStatement parameter. \set name unsets it, \set alone lists them.
+ * <li> \stats on|off|reset controls per-statement timing statistics;
+ * \stats alone prints them. \stats slow N [explain] logs statements
+ * taking N milliseconds or more to stderr, with their plans if asked;
+ * \stats slow off stops it.
+ * <li> \cache on caches the results of queries with a hint, like
+ * select &#47;*+ cache *&#47; ..., and of all queries if the connection is read-only;
+ * \cache all caches all queries; \cache off stops. \cache stats prints the
+ * hit rate, \cache clear empties it, \cache ttl N sets how many seconds
+ * results are kept and \cache size N how many megabytes.
+ * Any statement that doesn't return rows empties the cache.
  * <li> \q quit the program
  * </ul>
  * <p>This class can also be used from within programs such as servlets, etc.;
@@ -69,7 +103,6 @@ import com.darwinsys.util.Verbosity;
  * insert into PERSON(PERSON_KEY,  FIRST_NAME, INITIAL, LAST_NAME, ... )
  * values (4, 'Ian', 'F', 'Darwin', ...);
  * </pre>
- * <p>TODO Fix parsing so \\ escapes don't need to end with SQL semi-colon.
  * <p>TODO add a "Manual Commit" (or "Undoable") mode, in CLI and GUI
  * @author	Ian Darwin, http://www.darwinsys.com/
  */
@@ -102,9 +135,65 @@ public class SQLRunner {
 
 	private DatabaseMetaData dbMeta;
 
+	/** The table and column lists, created on first use */
+	private MetaDataCache metaDataCache;
+
 	/** SQL Statement */
 	private Statement statement;
 
+	/** The default number of rows to ask the driver for at a time */
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+
+	/** The fetch size used when streaming results */
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+
+	/** Statements per JDBC batch; 0 means batching is off */
+	private int batchSize;
+
+	/** Commit after this many batches; 0 means leave autocommit alone */
+	private int commitEvery;
+
+	/** Number of statements added to the current batch */
+	private int pendingBatch;
+
+	private int batchesSinceCommit;
+
+	private boolean savedAutoCommit;
+
+	/** Variables for ${name} parameters, or null */
+	private VariableMap variables;
+
+	/** PreparedStatements for parameterised statements, created when first needed */
+	private PreparedStatementCache statementCache;
+
+	/** Per-statement timings, or null when not being collected */
+	private StatementStats stats;
+
+	/** Log statements taking at least this long; negative means don't */
+	private long slowQueryNanos = -1;
+
+	private PrintWriter slowQueryLog;
+
+	private boolean explainSlowQueries;
+
+	/** Results of repeated queries, or null when not caching */
+	private QueryCache queryCache;
+
+	/** True to cache every query, not just those with the hint */
+	private boolean cacheAllQueries;
+
+	/** The per-statement time limit in seconds, 0 for none */
+	private int queryTimeout;
+
+	/** Runs the statements given to submit(), created when first needed */
+	private ExecutorService executor;
+
+	/** The handle of the submitted statement being run, or null */
+	private volatile QueryHandle currentHandle;
+
+	/** The row or update count of the last statement, -1 if it had none */
+	private int lastCount;
+
 	/** Where the output is going */
 	private PrintWriter out;
 
@@ -114,14 +203,29 @@ public class SQLRunner {
 	private ResultsDecorator textDecorator =
 		new ResultsDecoratorText(out, verbosity);
 
-	private ResultsDecorator sqlDecorator;
+	private ResultsDecoratorSQL sqlDecorator;
+
+	/** Options for the SQL decorator, kept here as it's created lazily */
+	private int sqlRowsPerStatement = 1, sqlTransactionSize;
+
+	private ResultsDecorator alignedDecorator;
 
 	private ResultsDecorator htmlDecorator;
 
 	private ResultsDecorator xmlDecorator;
 
+	private ResultsDecorator xmlRowsDecorator;
+
 	private ResultsDecorator jtableDecorator;
 
+	private ResultsDecorator csvDecorator;
+
+	private ResultsDecorator tsvDecorator;
+
+	private ResultsDecorator jsonDecorator;
+
+	private ResultsDecorator ndjsonDecorator;
+
 	private boolean debug;
 
 	private boolean escape;
@@ -177,8 +281,10 @@ public class SQLRunner {
 			dbMeta.getDatabaseProductName().indexOf("DB2") >= 0;
 		String dbName = dbMeta.getDatabaseProductName();
 		System.out.println("SQLRunner: Connected to " + dbName);
-		statement = conn.createStatement();
-		
+		statement = conn.createStatement(
+			ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		statement.setFetchSize(fetchSize);
+
 		if (outputFileName == null) {
 			out = new PrintWriter(System.out);
 		} else {
@@ -212,6 +318,12 @@ public class SQLRunner {
 			case t:
 				newDecorator = textDecorator;
 				break;
+			case aligned:
+				if (alignedDecorator == null) {
+					alignedDecorator = new ResultsDecoratorAligned(out, verbosity);
+				}
+				newDecorator = alignedDecorator;
+				break;
 			case h:
 				if (htmlDecorator == null) {
 					htmlDecorator = new ResultsDecoratorHTML(out, verbosity);
@@ -221,6 +333,8 @@ public class SQLRunner {
 			case s:
 				if (sqlDecorator == null) {
 					sqlDecorator = new ResultsDecoratorSQL(out, verbosity);
+					sqlDecorator.setRowsPerStatement(sqlRowsPerStatement);
+					sqlDecorator.setTransactionSize(sqlTransactionSize);
 				}
 				newDecorator = sqlDecorator;
 				break;
@@ -230,6 +344,13 @@ public class SQLRunner {
 				}
 				newDecorator = xmlDecorator;
 				break;
+			case xmlrows:
+				if (xmlRowsDecorator == null) {
+					xmlRowsDecorator = new ResultsDecoratorXML(out, verbosity,
+						ResultsDecoratorXML.Layout.ELEMENTS);
+				}
+				newDecorator = xmlRowsDecorator;
+				break;
 			case j:
 				if (jtableDecorator == null) {
 					if (gui == null) {
@@ -241,6 +362,30 @@ public class SQLRunner {
 				}
 				newDecorator = jtableDecorator;
 				break;
+			case csv:
+				if (csvDecorator == null) {
+					csvDecorator = new ResultsDecoratorCSV(out, verbosity, ',');
+				}
+				newDecorator = csvDecorator;
+				break;
+			case tsv:
+				if (tsvDecorator == null) {
+					tsvDecorator = new ResultsDecoratorCSV(out, verbosity, '\t');
+				}
+				newDecorator = tsvDecorator;
+				break;
+			case json:
+				if (jsonDecorator == null) {
+					jsonDecorator = new ResultsDecoratorJSON(out, verbosity, false);
+				}
+				newDecorator = jsonDecorator;
+				break;
+			case ndjson:
+				if (ndjsonDecorator == null) {
+					ndjsonDecorator = new ResultsDecoratorJSON(out, verbosity, true);
+				}
+				newDecorator = ndjsonDecorator;
+				break;
 			default:
 				System.err.println("invalid mode: "
 								+ outputMode + "; must be one of: ");
@@ -261,12 +406,13 @@ public class SQLRunner {
 	 * or from user code. Deprecated because of the poor capability
 	 * for error handling; it would be better for the user interface
 	 * code to create a Reader and then say:
-	 * <pre>while ((stmt = SQLRunner.getStatement(is)) != null) {
-			stmt = stmt.trim();
+	 * <pre>SQLScriptReader script = new SQLScriptReader(reader);
+		ScriptStatement stmt;
+		while ((stmt = script.readStatement()) != null) {
 			try {
-				myRunner.runStatement(stmt);
+				myRunner.runStatement(stmt.getText());
 			} catch (Exception e) {
-				// Display the message to the user ...
+				// Display the message and stmt.getLineNumber() to the user ...
 			}
 		}
 	 * </pre>
@@ -292,12 +438,13 @@ public class SQLRunner {
 	 * Deprecated because of the poor capability
 	 * for error handling; it would be better for the
 	 * user interface code to do:
-	 * <pre>while ((stmt = SQLRunner.getStatement(is)) != null) {
-			stmt = stmt.trim();
+	 * <pre>SQLScriptReader script = new SQLScriptReader(reader);
+		ScriptStatement stmt;
+		while ((stmt = script.readStatement()) != null) {
 			try {
-				myRunner.runStatement(stmt);
+				myRunner.runStatement(stmt.getText());
 			} catch (Exception e) {
-				// Display the message to the user ...
+				// Display the message and stmt.getLineNumber() to the user ...
 			}
 		}
 	 * </pre>
@@ -311,12 +458,13 @@ public class SQLRunner {
 	public void runScript(BufferedReader is, String name)
 		throws IOException, SQLException, SyntaxException {
 
-		String stmt;
+		SQLScriptReader script = new SQLScriptReader(is);
+		ScriptStatement stmt;
 
-		while ((stmt = getStatement(is)) != null) {
-			stmt = stmt.trim();
-			runStatement(stmt);
+		while ((stmt = script.readStatement()) != null) {
+			runStatement(stmt.getText());
 		}
+		flushBatch();
 	}
 
 	/**
@@ -347,13 +495,229 @@ public class SQLRunner {
 				throw new SyntaxException("\\o needs output file arg");
 			}
 			setOutputFile(rest);
+		} else if (str.startsWith("\\b")){
+			if (rest == null){
+				throw new SyntaxException("\\b needs batch size arg");
+			}
+			String[] args = rest.trim().split("\\s+");
+			try {
+				setBatchSize(Integer.parseInt(args[0]),
+					args.length > 1 ? Integer.parseInt(args[1]) : 0);
+			} catch (NumberFormatException e) {
+				throw new SyntaxException("\\b needs numeric args: " + rest);
+			}
+		} else if (str.startsWith("\\copy")){
+			doCopy(str);
+		} else if (str.startsWith("\\cache")){
+			doCache(str.substring(6).trim());
+		} else if (str.startsWith("\\stats")){
+			doStats(str.substring(6).trim());
+		} else if (str.startsWith("\\set")){
+			doSet(str.substring(4).trim());
 		} else if (str.startsWith("\\q")){
+			endBatching();
 			exit(0);
 		} else {
 			throw new SyntaxException("Unknown escape: " + str);
 		}
 	}
 
+	private static final Pattern COPY = Pattern.compile(
+		"\\\\copy\\s+([^\\s(]+)\\s*(?:\\(([^)]*)\\))?\\s*from\\s+('[^']*'|\\S+)\\s*(.*)",
+		Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	/**
+	 * Handle \copy table [(col, ...)] FROM file [HEADER] [DELIMITER c]
+	 * [NULL string] [BATCH n] [COMMIT n]: load a CSV file into a table
+	 * with a CSVLoader.
+	 * @param str The whole escape
+	 */
+	private void doCopy(String str) throws IOException, SQLException, SyntaxException {
+		Matcher m = COPY.matcher(str.trim());
+		if (!m.matches()) {
+			throw new SyntaxException(
+				"Usage: \\copy table [(col, ...)] FROM file [HEADER] [DELIMITER c] " +
+				"[NULL string] [BATCH n] [COMMIT n]");
+		}
+		flushBatch();
+		if (queryCache != null) {
+			queryCache.clear();
+		}
+		CSVLoader loader = new CSVLoader(conn, m.group(1));
+		if (m.group(2) != null) {
+			loader.setColumns(Arrays.asList(m.group(2).trim().split("\\s*,\\s*")));
+		}
+		String file = m.group(3);
+		if (file.startsWith("'")) {
+			file = file.substring(1, file.length() - 1);
+		}
+		String[] options = m.group(4).trim().split("\\s+");
+		try {
+			for (int i = 0; i < options.length; i++) {
+				switch (options[i].toLowerCase()) {
+				case "":
+					break;
+				case "header":
+					loader.setHeader(true);
+					break;
+				case "delimiter":
+					String d = options[++i];
+					loader.setDelimiter(d.equals("tab") || d.equals("\\t") ? '\t' : d.charAt(0));
+					break;
+				case "null":
+					loader.setNullString(options[++i]);
+					break;
+				case "batch":
+					loader.setBatchSize(Integer.parseInt(options[++i]));
+					break;
+				case "commit":
+					loader.setCommitInterval(Integer.parseInt(options[++i]));
+					break;
+				default:
+					throw new SyntaxException("\\copy: unknown option " + options[i]);
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new SyntaxException("\\copy: bad option value in " + m.group(4));
+		}
+		if (verbosity != Verbosity.QUIET) {
+			loader.setProgress(System.err, 5);
+		}
+		try (Reader in = new FileReader(file)) {
+			int n = (int) Math.min(Integer.MAX_VALUE, loader.load(in));
+			lastCount = n;
+			currentDecorator.printRowCount(n);
+		}
+	}
+
+	/**
+	 * Handle \set: list, set or unset variables
+	 * @param args The part after the "\set"
+	 */
+	private void doSet(String args) throws IOException {
+		if (args.length() == 0) {
+			if (variables != null) {
+				for (String name : new TreeSet<>(variables.keySet())) {
+					currentDecorator.println(name + " = " + variables.get(name));
+				}
+			}
+			if (statementCache != null) {
+				currentDecorator.println("-- " + statementCache);
+			}
+			return;
+		}
+		String[] nv = args.split("\\s+", 2);
+		if (variables == null) {
+			variables = new VariableMap();
+		}
+		if (nv.length == 1) {
+			variables.remove(nv[0]);
+		} else {
+			variables.setVar(nv[0], nv[1]);
+		}
+	}
+
+	/**
+	 * Handle \stats: print, or turn on/off/reset statistics, or set the slow query log
+	 * @param args The part after the "\stats"
+	 */
+	private void doStats(String args) throws SyntaxException {
+		String[] words = args.split("\\s+");
+		switch (words[0]) {
+		case "":
+			if (stats == null) {
+				out.println("-- Statistics are off; use \\stats on");
+			} else {
+				stats.print(out);
+			}
+			if (statementCache != null) {
+				out.println("-- " + statementCache);
+			}
+			out.flush();
+			break;
+		case "on":
+			setStatsEnabled(true);
+			break;
+		case "off":
+			setStatsEnabled(false);
+			break;
+		case "reset":
+			if (stats != null) {
+				stats.reset();
+			}
+			break;
+		case "slow":
+			if (words.length < 2) {
+				throw new SyntaxException("\\stats slow needs milliseconds or off");
+			}
+			if (words[1].equals("off")) {
+				setSlowQueryLog(-1, null, false);
+				break;
+			}
+			try {
+				setSlowQueryLog(Long.parseLong(words[1]),
+					new PrintWriter(System.err, true),
+					words.length > 2 && words[2].equals("explain"));
+			} catch (NumberFormatException e) {
+				throw new SyntaxException("\\stats slow needs milliseconds: " + args);
+			}
+			break;
+		default:
+			throw new SyntaxException("\\stats takes on, off, reset or slow: " + args);
+		}
+	}
+
+	/**
+	 * Handle \cache: turn the query cache on or off, print its statistics,
+	 * empty it, or set its TTL or size
+	 * @param args The part after the "\cache"
+	 */
+	private void doCache(String args) throws SQLException, SyntaxException {
+		String[] words = args.split("\\s+");
+		switch (words[0]) {
+		case "on":
+			setQueryCache(queryCache != null ? queryCache : new QueryCache(),
+				conn.isReadOnly());
+			break;
+		case "all":
+			setQueryCache(queryCache != null ? queryCache : new QueryCache(), true);
+			break;
+		case "off":
+			setQueryCache(null, false);
+			break;
+		case "":
+		case "stats":
+			out.println(queryCache == null ?
+				"-- Query cache is off; use \\cache on" : "-- " + queryCache);
+			out.flush();
+			break;
+		case "clear":
+			if (queryCache != null) {
+				queryCache.clear();
+			}
+			break;
+		case "ttl":
+		case "size":
+			if (queryCache == null) {
+				throw new SyntaxException("\\cache " + words[0] + ": use \\cache on first");
+			}
+			try {
+				long n = Long.parseLong(words[1]);
+				if (words[0].equals("ttl")) {
+					queryCache.setTTL(n * 1000);
+				} else {
+					queryCache.setMaxBytes(n * 1024 * 1024);
+				}
+			} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+				throw new SyntaxException("\\cache " + words[0] + " needs a number: " + args);
+			}
+			break;
+		default:
+			throw new SyntaxException(
+				"\\cache takes on, all, off, stats, clear, ttl or size: " + args);
+		}
+	}
+
 	/**
 	 * Display - generate output for \dt and similar escapes
 	 * XXX: Move more formatting to ResultsDecorator: listTables(rs), listColumns(rs)
@@ -369,9 +733,7 @@ public class SQLRunner {
 		// setOutputMode(OutputMode.t);
 		if (rest.equals("t")) {
 			// Display list of tables
-			DatabaseMetaData md = conn.getMetaData();
-			ResultSet rs = 
-				md.getTables(null, null, "%", new String[]{"TABLE","VIEW"});
+			ResultSet rs = getMetaDataCache().getTables();
 			textDecorator.setWriter(out);
 			textDecorator.write(rs);
 			textDecorator.flush();
@@ -383,14 +745,49 @@ public class SQLRunner {
 				tableName = tableName.toUpperCase();
 			}
 			System.out.println("-- Display table " + tableName);
-			DatabaseMetaData md = conn.getMetaData();
-			ResultSet rs = md.getColumns(null, null, tableName, "%");
+			ResultSet rs = getMetaDataCache().getColumns(tableName);
 			currentDecorator.displayTable(tableName, rs);
 			textDecorator.flush();
+		} else if (rest.equals("r")) {
+			// Reload the table and column lists when next wanted
+			getMetaDataCache().refresh();
 		} else
 			throw new SyntaxException("\\d"  + rest + " invalid");
 	}
 
+	/**
+	 * Get the cache of table and column lists used by \dt,
+	 * creating it on first use.
+	 * @return The cache for this SQLRunner's connection
+	 */
+	public MetaDataCache getMetaDataCache() {
+		if (metaDataCache == null) {
+			metaDataCache = new MetaDataCache(dbMeta);
+		}
+		return metaDataCache;
+	}
+
+	/**
+	 * Make a Statement of its own for a decorator that needs
+	 * to scroll, so that its ResultSet can stay open while the
+	 * decorator uses it. If the driver can't scroll, the
+	 * results will be copied into a CachedRowSet.
+	 * @return The statement
+	 * @throws SQLException On any database error
+	 */
+	private Statement createScrollingStatement() throws SQLException {
+		Statement st;
+		if (dbMeta.supportsResultSetType(ResultSet.TYPE_SCROLL_INSENSITIVE)) {
+			st = conn.createStatement(
+				ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		} else {
+			st = conn.createStatement();
+		}
+		st.setFetchSize(fetchSize);
+		st.setQueryTimeout(queryTimeout);
+		return st;
+	}
+
 	/**
 	 * @param rs The resultset
 	 * @return The rowset
@@ -427,7 +824,138 @@ public class SQLRunner {
 		currentDecorator.setWriter(out);
 	}
 
+	/**
+	 * Set the number of rows the driver should fetch per round trip
+	 * when streaming results. Some drivers ignore this, or only honor
+	 * it in certain modes (e.g., PostgreSQL only streams when autocommit
+	 * is off; MySQL wants Integer.MIN_VALUE).
+	 * @param fetchSize The number of rows, or 0 to let the driver decide.
+	 * @throws SQLException If the driver rejects the value
+	 */
+	public void setFetchSize(int fetchSize) throws SQLException {
+		if (fetchSize < 0 && fetchSize != Integer.MIN_VALUE) {
+			throw new IllegalArgumentException("Invalid fetch size " + fetchSize);
+		}
+		this.fetchSize = fetchSize;
+		statement.setFetchSize(fetchSize);
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/** The DML statements that may be grouped into a JDBC batch */
+	private static final Pattern BATCHABLE =
+		Pattern.compile("^(insert|update|delete|merge|replace|upsert)\\b",
+			Pattern.CASE_INSENSITIVE);
+
+	/** True if the statement can go into a JDBC batch
+	 * @param sql The trimmed SQL statement
+	 * @return True if it is a DML statement
+	 */
+	static boolean isBatchable(String sql) {
+		return BATCHABLE.matcher(sql).find();
+	}
+
+	/**
+	 * Set how the SQL output mode writes its insert statements.
+	 * @param rowsPerStatement The most rows per insert statement (default 1)
+	 * @param transactionSize Wrap this many rows in a transaction, or 0 for none
+	 * @see ResultsDecoratorSQL#setRowsPerStatement(int)
+	 */
+	public void setSQLInsertOptions(int rowsPerStatement, int transactionSize) {
+		this.sqlRowsPerStatement = rowsPerStatement;
+		this.sqlTransactionSize = transactionSize;
+		if (sqlDecorator != null) {
+			sqlDecorator.setRowsPerStatement(rowsPerStatement);
+			sqlDecorator.setTransactionSize(transactionSize);
+		}
+	}
+
+	/**
+	 * Turn batch mode on or off. In batch mode, runs of consecutive
+	 * DML statements are sent with addBatch()/executeBatch() instead
+	 * of one round trip per statement; any other statement or escape
+	 * flushes the pending batch first.
+	 * @param batchSize The number of statements per batch, or 0 for no batching
+	 * @param commitEvery If positive, turn off autocommit and commit after
+	 * this many batches; if 0, leave autocommit alone.
+	 * @throws SQLException If flushing the current batch fails
+	 */
+	public void setBatchSize(int batchSize, int commitEvery) throws SQLException {
+		if (batchSize < 0 || commitEvery < 0) {
+			throw new IllegalArgumentException("Batch and commit sizes may not be negative");
+		}
+		endBatching();
+		this.batchSize = batchSize;
+		this.commitEvery = batchSize > 0 ? commitEvery : 0;
+		if (this.commitEvery > 0) {
+			savedAutoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+		}
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Send any statements waiting in the current batch to the database,
+	 * and report the total update count through the current decorator.
+	 * @throws IOException If the decorator fails
+	 * @throws SQLException If the batch fails
+	 */
+	public void flushBatch() throws IOException, SQLException {
+		if (pendingBatch == 0) {
+			return;
+		}
+		pendingBatch = 0;
+		if (queryCache != null) {
+			queryCache.clear();
+		}
+		int[] counts;
+		try {
+			counts = statement.executeBatch();
+		} finally {
+			statement.clearBatch();
+		}
+		int total = 0;
+		for (int n : counts) {
+			if (n > 0) {
+				total += n;
+			}
+		}
+		currentDecorator.printRowCount(total);
+		if (commitEvery > 0 && ++batchesSinceCommit >= commitEvery) {
+			conn.commit();
+			batchesSinceCommit = 0;
+		}
+	}
+
+	/** Flush the batch, commit anything outstanding and
+	 * put autocommit back the way we found it.
+	 */
+	private void endBatching() throws SQLException {
+		try {
+			flushBatch();
+		} catch (IOException e) {
+			throw new SQLException("Could not report batch results", e);
+		}
+		if (commitEvery > 0) {
+			conn.commit();
+			conn.setAutoCommit(savedAutoCommit);
+			batchesSinceCommit = 0;
+			commitEvery = 0;
+		}
+	}
+
 	/** Run one Statement, and format results as per Update or Query.
+	 * Query results are streamed from the live ResultSet directly
+	 * into the current ResultsDecorator, unless that decorator
+	 * needs to scroll back and forth (e.g., the JTable), in which
+	 * case it gets a scrollable ResultSet with a Statement of its own
+	 * (or, if the driver can't scroll, a CachedRowSet copy) and
+	 * closes it itself.
 	 * Called from runScript or from user code.
 	 * @param rawString The sql statement 
 	 * @throws IOException If something fails
@@ -438,42 +966,383 @@ public class SQLRunner {
 		throws IOException, SQLException, SyntaxException {
 
 		final String inString = rawString.trim();
+		lastCount = -1;
 
 		if (verbosity != Verbosity.QUIET) {
 			out.println("Executing : <<" + inString + ">>");
 			out.flush();
 		}
-		currentDecorator.println(
+		currentDecorator.printComment(
 			String.format("-- output from command -- \"%s\"%n", inString));
 
 		escape = false;
 		if (inString.startsWith("\\")) {
 			escape = true;
+			flushBatch();
 			doEscape(inString);
 			return;
 		}
 
-		boolean hasResultSet = 
-			statement.execute(inString);		// DO IT - call the database.
+		final BoundStatement bound = BoundStatement.parse(inString, variables);
 
-		if (!hasResultSet) {
-			currentDecorator.printRowCount(statement.getUpdateCount());
-		} else {
-			int n = currentDecorator.write(cacheResultSet(statement.getResultSet()));
-			if (verbosity == Verbosity.VERBOSE || verbosity == Verbosity.DEBUG) {
+		if (batchSize > 0) {
+			if (!bound.hasParameters() && isBatchable(inString)) {
+				statement.addBatch(bound.getSQL());
+				if (++pendingBatch >= batchSize) {
+					flushBatch();
+					currentDecorator.flush();
+				}
+				return;
+			}
+			flushBatch();
+		}
+
+		final boolean cacheable = queryCache != null &&
+			(QueryCache.hasHint(inString) || cacheAllQueries && QueryCache.isQuery(inString));
+		if (cacheable) {
+			ResultSet cached = queryCache.get(bound.getSQL(), bound.getValues(),
+				currentDecorator.getName());
+			if (cached != null) {
+				// Reported as for a query, but with no time spent in the database
+				if (currentHandle != null) {
+					cached = currentHandle.wrap(cached);
+				}
+				long writeStart = System.nanoTime();
+				int n = currentDecorator.write(cached);
+				lastCount = n;
+				long writeNanos = System.nanoTime() - writeStart;
+				if (n >= 0 && (verbosity == Verbosity.VERBOSE || verbosity == Verbosity.DEBUG)) {
+					currentDecorator.printRowCount(n);
+					reportRate(n, writeNanos);
+				}
+				if (n >= 0 && (stats != null || slowQueryNanos >= 0)) {
+					recordTimes(bound, 0, -1, 0, writeNanos, n);
+				}
+				currentDecorator.flush();
+				return;
+			}
+		}
+
+		final Statement stmt;
+		final boolean hasResultSet;
+		final long start = System.nanoTime();
+		final QueryHandle handle = currentHandle;
+		try {
+			if (bound.hasParameters()) {
+				PreparedStatement ps =
+					getStatementCache().prepare(bound.getSQL(), bound.getValues());
+				ps.setFetchSize(fetchSize);
+				ps.setQueryTimeout(queryTimeout);
+				stmt = ps;
+				if (handle != null) {
+					handle.setStatement(ps);
+				}
+				hasResultSet = ps.execute();		// DO IT - call the database.
+			} else {
+				stmt = currentDecorator.needsScrolling() ?
+					createScrollingStatement() : statement;
+				if (handle != null) {
+					handle.setStatement(stmt);
+				}
+				hasResultSet = stmt.execute(bound.getSQL());	// DO IT
+			}
+
+			final long executeNanos = System.nanoTime() - start;
+			final boolean timing = stats != null || slowQueryNanos >= 0;
+
+			if (!hasResultSet) {
+				int n = stmt.getUpdateCount();
+				if (stmt != statement && !(stmt instanceof PreparedStatement)) {
+					stmt.close();	// an unused scrolling statement
+				}
+				lastCount = n;
+				if (queryCache != null) {
+					queryCache.clear();		// it may have changed the data
+				}
 				currentDecorator.printRowCount(n);
+				if (timing) {
+					recordTimes(bound, executeNanos, -1, 0, 0, n);
+				}
+			} else {
+				long writeStart = System.nanoTime();
+				int n;
+				StatementStats.FetchTimer timer = null;
+				if (currentDecorator.needsScrolling()) {
+					ResultSet rs = stmt.getResultSet();
+					if (rs.getType() == ResultSet.TYPE_FORWARD_ONLY) {
+						try (ResultSet live = rs) {
+							rs = cacheResultSet(live);
+						}
+						// The copy's getStatement() is null, so nobody else will close this
+						if (stmt != statement && !(stmt instanceof PreparedStatement)) {
+							stmt.close();
+						}
+					}
+					// The decorator now owns rs, and closes it when done
+					n = currentDecorator.write(rs);
+				} else try (ResultSet rs = stmt.getResultSet()) {
+					ResultSet results = rs;
+					if (cacheable) {
+						results = queryCache.capture(bound.getSQL(), bound.getValues(),
+							currentDecorator.getName(), results);
+					}
+					if (timing) {
+						timer = new StatementStats.FetchTimer(results, start);
+						results = timer.getResultSet();
+					}
+					if (handle != null) {
+						results = handle.wrap(results);
+					}
+					n = currentDecorator.write(results);
+				}
+				lastCount = n;
+				long writeNanos = System.nanoTime() - writeStart;
+				// n is -1 if the decorator is still reading rows in the background
+				if (n >= 0 && (verbosity == Verbosity.VERBOSE || verbosity == Verbosity.DEBUG)) {
+					currentDecorator.printRowCount(n);
+					reportRate(n, writeNanos);
+				}
+				if (timer != null) {
+					recordTimes(bound, executeNanos, timer.firstRowNanos,
+						timer.fetchNanos, writeNanos - timer.fetchNanos, n);
+				} else if (timing && n >= 0) {		// the decorator fetched the rows itself
+					recordTimes(bound, executeNanos, -1, 0, writeNanos, n);
+				}
+			}
+		} finally {
+			if (handle != null) {
+				handle.setStatement(null);
 			}
 		}
 		currentDecorator.flush();
 	}
 
+	/**
+	 * Run one statement in the background, on this SQLRunner's worker thread;
+	 * statements submitted together run one at a time, in order.
+	 * While it runs the statement can be cancelled through the
+	 * returned handle, and the listener is told how many rows have been read.
+	 * Don't call runStatement() while submitted statements are running.
+	 * @param sql The statement or escape, as for runStatement()
+	 * @param listener The progress listener, or null
+	 * @return A handle for waiting for, or cancelling, the statement
+	 */
+	public QueryHandle submit(final String sql, QueryListener listener) {
+		final QueryHandle handle = new QueryHandle(sql, listener);
+		getExecutor().execute(new Runnable() {
+			public void run() {
+				if (handle.isCancelled()) {
+					handle.fail(new CancellationException("Statement cancelled"));
+					return;
+				}
+				currentHandle = handle;
+				try {
+					runStatement(sql);
+					handle.complete(lastCount);
+				} catch (Throwable t) {
+					handle.fail(t);
+				} finally {
+					currentHandle = null;
+				}
+			}
+		});
+		return handle;
+	}
+
+	/** Get the worker thread pool, creating it when first needed.
+	 * Its thread goes away when idle, so an unclosed SQLRunner won't keep it.
+	 */
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			ThreadPoolExecutor tpe = new ThreadPoolExecutor(1, 1,
+				30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "SQLRunner worker");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			tpe.allowCoreThreadTimeOut(true);
+			executor = tpe;
+		}
+		return executor;
+	}
+
+	/**
+	 * Set the time limit for each statement; the driver cancels
+	 * statements that run longer, with an SQLTimeoutException.
+	 * @param seconds The limit, or 0 (the default) for none
+	 * @throws SQLException If the driver rejects the value
+	 */
+	public void setQueryTimeout(int seconds) throws SQLException {
+		if (seconds < 0) {
+			throw new IllegalArgumentException("Query timeout may not be negative");
+		}
+		queryTimeout = seconds;
+		statement.setQueryTimeout(seconds);
+	}
+
+	public int getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	/** Add one statement's times to the statistics and,
+	 * if it was slow enough, to the slow query log.
+	 */
+	private void recordTimes(BoundStatement bound, long executeNanos,
+			long firstRowNanos, long fetchNanos, long renderNanos, int rows) {
+		long total = executeNanos + fetchNanos + renderNanos;
+		if (stats != null) {
+			stats.record(bound.getSQL(), executeNanos, firstRowNanos,
+				fetchNanos, renderNanos, rows);
+		}
+		if (slowQueryNanos < 0 || total < slowQueryNanos) {
+			return;
+		}
+		slowQueryLog.printf(
+			"-- slow statement: %.1f ms (execute %.1f, first row %.1f, fetch %.1f, render %.1f), %d rows%n",
+			total / 1e6, executeNanos / 1e6, firstRowNanos < 0 ? 0 : firstRowNanos / 1e6,
+			fetchNanos / 1e6, renderNanos / 1e6, rows);
+		slowQueryLog.println(bound.hasParameters() ? bound.toString() : bound.getSQL());
+		if (explainSlowQueries) {
+			explain(bound);
+		}
+		slowQueryLog.flush();
+	}
+
+	/** The statements worth asking for a plan */
+	private static final Pattern EXPLAINABLE =
+		Pattern.compile("^(select|with|insert|update|delete|merge|replace)\\b",
+			Pattern.CASE_INSENSITIVE);
+
+	/** Print the plan for a statement to the slow query log, as comments,
+	 * if this driver understands EXPLAIN.
+	 */
+	private void explain(BoundStatement bound) {
+		if (bound.hasParameters() || !EXPLAINABLE.matcher(bound.getSQL()).find()) {
+			return;
+		}
+		try (Statement explainStatement = conn.createStatement();
+				ResultSet rs = explainStatement.executeQuery("EXPLAIN " + bound.getSQL())) {
+			int cols = rs.getMetaData().getColumnCount();
+			while (rs.next()) {
+				StringBuilder sb = new StringBuilder("-- ");
+				for (int i = 1; i <= cols; i++) {
+					if (i > 1) {
+						sb.append(' ');
+					}
+					sb.append(rs.getString(i));
+				}
+				slowQueryLog.println(sb);
+			}
+		} catch (SQLException e) {
+			slowQueryLog.println("-- EXPLAIN not available: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Turn collection of per-statement statistics on or off.
+	 * Turning it off discards what was collected.
+	 * @param enabled True to collect statistics
+	 */
+	public void setStatsEnabled(boolean enabled) {
+		if (!enabled) {
+			stats = null;
+		} else if (stats == null) {
+			stats = new StatementStats();
+		}
+	}
+
+	/** @return The statistics collected so far, or null if they are off */
+	public StatementStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Log statements that take at least the given time.
+	 * @param thresholdMillis The threshold, or negative to turn logging off
+	 * @param log Where to log them
+	 * @param explain True to add the plan (EXPLAIN output) for logged
+	 * statements, when the database supports it
+	 */
+	public void setSlowQueryLog(long thresholdMillis, PrintWriter log, boolean explain) {
+		this.slowQueryNanos = thresholdMillis < 0 ? -1 : thresholdMillis * 1_000_000;
+		this.slowQueryLog = log;
+		this.explainSlowQueries = explain;
+	}
+
+	/**
+	 * Cache the results of repeated queries.
+	 * Queries with a hint, like select &#47;*+ cache *&#47; ..., are always
+	 * cached; with allQueries, so is every SELECT (or WITH) statement.
+	 * Only results streamed to the decorator are captured, not those
+	 * of scrolling decorators such as the JTable.
+	 * @param cache The cache, which may be shared, or null to stop caching
+	 * @param allQueries True to cache all queries, e.g., for a read-only session
+	 */
+	public void setQueryCache(QueryCache cache, boolean allQueries) {
+		this.queryCache = cache;
+		this.cacheAllQueries = cache != null && allQueries;
+	}
+
+	/** @return The query cache, or null if not caching */
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/** Get the current ResultsDecorator, e.g., to set format-specific
+	 * options after choosing the output mode.
+	 * @return The decorator for the current output mode
+	 */
+	public ResultsDecorator getResultsDecorator() {
+		return currentDecorator;
+	}
+
+	/** Get the PreparedStatement cache, creating it on first use
+	 * @return The cache for this runner's Connection
+	 */
+	public PreparedStatementCache getStatementCache() {
+		if (statementCache == null) {
+			statementCache = new PreparedStatementCache(conn);
+		}
+		return statementCache;
+	}
+
+	/**
+	 * Set the variables used for ${name} parameters.
+	 * @param variables The variables, or null to turn off substitution
+	 */
+	public void setVariables(VariableMap variables) {
+		this.variables = variables;
+	}
+
+	public VariableMap getVariables() {
+		return variables;
+	}
+
+	/**
+	 * Report how fast rows came through; this goes to System.err
+	 * so as not to corrupt output formats such as SQL or XML.
+	 * @param rows The number of rows written
+	 * @param nanos The elapsed time
+	 */
+	private static void reportRate(int rows, long nanos) {
+		double secs = nanos / 1_000_000_000d;
+		System.err.printf("SQLRunner: %d rows in %.3f sec (%.0f rows/sec)%n",
+			rows, secs, secs > 0 ? rows / secs : 0d);
+	}
+
 	/** Extract one statement from the given Reader.
 	 * Ignore comments and null lines.
 	 * @param is The input
 	 * @return The SQL statement, up to but not including the ';' character.
 	 * May be null if no statement found.
 	 * @throws IOException on io error
+	 * @deprecated Splits statements at any line ending in ';', even inside
+	 * quotes or procedure bodies; use SQLScriptReader instead.
 	 */
+	@Deprecated
 	public static String getStatement(BufferedReader is)
 	throws IOException {
 		StringBuilder sb = new StringBuilder();
@@ -519,9 +1388,22 @@ public class SQLRunner {
 	 * @throws SQLException If the database gets upset.
 	 */
 	public void close() throws SQLException {
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdown();
+				executor = null;
+			}
+		}
 		if (statement != null) {
+			endBatching();
 			statement.close();
 		}
+		if (statementCache != null) {
+			if (verbosity != Verbosity.QUIET) {
+				System.err.println("SQLRunner: " + statementCache);
+			}
+			statementCache.clear();
+		}
 		if (conn != null) {
 			conn.close();
 		}
@@ -26,11 +26,16 @@ package com.darwinsys.sql;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
 
 import com.darwinsys.database.DataBaseException;
 import com.darwinsys.lang.GetOpt;
@@ -46,7 +51,7 @@ public class SQLRunnerCLI {
 	 */
 	private static void doHelp(int i) {
 		System.out.println(
-		"Usage: SQLRunner [-f configFile] [-c config] [SQLscript[ ...]");
+		"Usage: SQLRunner [-f configFile] [-c config] [-b batchSize [-B commitEvery]] [-p parallelism [-e]] [-i rowsPerInsert] [-t rowsPerTransaction] [-S] [-s slowMillis [-x]] [-T timeoutSecs] [SQLscript[ ...]");
 		System.exit(i);
 	}
 
@@ -58,7 +63,13 @@ public class SQLRunnerCLI {
 		String config = "default";
 		String outputModeName = "t";
 		String outputFile = null;
-		final GetOpt go = new GetOpt("dvf:c:m:o:");
+		int batchSize = 0, commitEvery = 0, parallelism = 1;
+		int rowsPerInsert = 1, rowsPerTransaction = 0;
+		boolean stats = false, explain = false;
+		long slowMillis = -1;
+		int timeout = 0;
+		boolean failFast = false;
+		final GetOpt go = new GetOpt("dvef:c:m:o:b:B:p:i:t:Ss:xT:");
 		char c;
 		while ((c = go.getopt(args)) != GetOpt.DONE) {
 			switch(c) {
@@ -83,6 +94,36 @@ public class SQLRunnerCLI {
 			case 'o':
 				outputFile = go.optarg();
 				break;
+			case 'b':
+				batchSize = Integer.parseInt(go.optarg());
+				break;
+			case 'B':
+				commitEvery = Integer.parseInt(go.optarg());
+				break;
+			case 'p':
+				parallelism = Integer.parseInt(go.optarg());
+				break;
+			case 'e':
+				failFast = true;
+				break;
+			case 'i':
+				rowsPerInsert = Integer.parseInt(go.optarg());
+				break;
+			case 't':
+				rowsPerTransaction = Integer.parseInt(go.optarg());
+				break;
+			case 'S':
+				stats = true;
+				break;
+			case 's':
+				slowMillis = Long.parseLong(go.optarg());
+				break;
+			case 'x':
+				explain = true;
+				break;
+			case 'T':
+				timeout = Integer.parseInt(go.optarg());
+				break;
 			default:
 				System.err.println("Unknown option character " + c);
 				doHelp(1);
@@ -100,17 +141,43 @@ public class SQLRunnerCLI {
 	            sc.close();
 				conf.setPassword(newPass);
 			}
+			if (parallelism > 1) {
+				ParallelSQLRunner prog = new ParallelSQLRunner(conf, parallelism, outputModeName);
+				prog.setFailFast(failFast);
+				if (outputFile != null) {
+					prog.setOutput(new PrintWriter(new FileWriter(outputFile), true));
+				}
+				prog.setSQLInsertOptions(rowsPerInsert, rowsPerTransaction);
+				prog.setStatsEnabled(stats);
+				prog.setQueryTimeout(timeout);
+				if (slowMillis >= 0) {
+					prog.setSlowQueryLog(slowMillis, new PrintWriter(System.err, true), explain);
+				}
+				System.exit(runParallel(prog, batchSize, commitEvery, stats, go, args));
+			}
 			Connection conn = ConnectionUtil.getConnection(conf);
 
 
 			SQLRunner prog = new SQLRunner(conn, outputFile, outputModeName);
+			if (batchSize > 0) {
+				prog.setBatchSize(batchSize, commitEvery);
+			}
+			prog.setSQLInsertOptions(rowsPerInsert, rowsPerTransaction);
+			prog.setStatsEnabled(stats);
+			prog.setQueryTimeout(timeout);
+			if (slowMillis >= 0) {
+				prog.setSlowQueryLog(slowMillis, new PrintWriter(System.err, true), explain);
+			}
 
 			if (go.getOptInd() == args.length) {
 				runScript(prog, new BufferedReader(
 					new InputStreamReader(System.in)), "(standard input)");
-			} else for (int i = go.getOptInd()-1; i < args.length; i++) {
+			} else for (int i = go.getOptInd(); i < args.length; i++) {
 				runScript(prog, args[i]);
 			}
+			if (stats) {
+				printStats(prog.getStats());
+			}
 			prog.close();
 		} catch (SQLException ex) {
 			throw new DataBaseException(ex.toString());
@@ -122,6 +189,44 @@ public class SQLRunnerCLI {
 		System.exit(0);
 	}
 
+	/**
+	 * Run the scripts with several connections at once
+	 * @return The exit status: 0 if no statement failed, else 1
+	 */
+	private static int runParallel(ParallelSQLRunner runner, int batchSize, int commitEvery,
+			boolean stats, GetOpt go, String[] args) {
+		try (ParallelSQLRunner prog = runner) {
+			if (batchSize > 0) {
+				prog.runScript(new BufferedReader(new StringReader(
+					"\\b " + batchSize + " " + commitEvery + ";")), "(batch setup)");
+			}
+			if (go.getOptInd() == args.length) {
+				prog.runScript(new BufferedReader(
+					new InputStreamReader(System.in)), "(standard input)");
+			} else {
+				prog.runScripts(Arrays.copyOfRange(args, go.getOptInd(), args.length));
+			}
+			System.out.printf("SQLRunner: %d statement(s) failed.%n", prog.getErrorCount());
+			if (stats) {
+				printStats(prog.getStats());
+			}
+			return prog.getErrorCount() == 0 ? 0 : 1;
+		} catch (Exception ex) {
+			throw new DataBaseException(ex.toString());
+		}
+	}
+
+	/** Print the statistics to stderr; a script may have turned them off with \stats off */
+	private static void printStats(StatementStats stats) {
+		if (stats == null) {
+			System.err.println("SQLRunner: statistics were turned off");
+			return;
+		}
+		PrintWriter err = new PrintWriter(System.err);
+		stats.print(err);
+		err.flush();
+	}
+
 	static void runScript(SQLRunner prog, String scriptFile)
 	throws IOException, SQLException {
 
@@ -133,19 +238,47 @@ public class SQLRunnerCLI {
 		runScript(prog, is, scriptFile);
 	}
 
+	/** The statement now running, so it can be cancelled on interrupt */
+	private static volatile QueryHandle current;
+
+	static {
+		// On ^C, ask the database to stop, rather than leaving it to finish
+		// a statement nobody will see the end of.
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				QueryHandle h = current;
+				// A \q is running when the script exits normally
+				if (h != null && !h.getSQL().trim().startsWith("\\q") && h.cancel()) {
+					System.err.println("SQLRunner: cancelled " + h.getSQL());
+				}
+			}
+		});
+	}
+
 	static void runScript(SQLRunner prog, BufferedReader is, String name) throws IOException {
-		String stmt;
+		SQLScriptReader script = new SQLScriptReader(is);
+		ScriptStatement stmt;
 
 		System.out.printf("SQLRunner: starting %s%n", name);
 		System.out.flush();
-		while ((stmt = SQLRunner.getStatement(is)) != null) {
-			stmt = stmt.trim();
+		while ((stmt = script.readStatement()) != null) {
+			current = prog.submit(stmt.getText(), null);
 			try {
-				prog.runStatement(stmt);
+				current.getFuture().get();
+			} catch (ExecutionException e) {
+				System.err.printf("%s:%d: %s%n", name, stmt.getLineNumber(), e.getCause());
 			} catch (Exception e) {
-				System.err.println(e);
+				System.err.printf("%s:%d: %s%n", name, stmt.getLineNumber(), e);
+			} finally {
+				current = null;
 			}
 		}
+		try {
+			prog.flushBatch();
+		} catch (Exception e) {
+			System.err.println(e);
+		}
 		System.out.printf("SQLRunner: %s done.%n", name);
 		System.out.flush();
 	}
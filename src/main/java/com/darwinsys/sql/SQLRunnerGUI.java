@@ -36,9 +36,12 @@ import java.awt.event.ItemListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.prefs.Preferences;
 
 import javax.swing.AbstractAction;
@@ -61,6 +64,8 @@ import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.table.TableModel;
 
 import com.darwinsys.genericui.SuccessFailureUI;
 import com.darwinsys.io.TextAreaWriter;
@@ -80,10 +85,14 @@ public class SQLRunnerGUI  {
 
 	final List<Configuration> configurations;
 	final PrintWriter out;
-	/** Thread to run the SQL command in */
+	/** Thread to connect and start the SQL command in */
 	Thread commandRunnerThread;
+	/** The running SQL command, or null */
+	volatile QueryHandle currentQuery;
 	/** The active JDBC connection, or null */
 	Connection currentConnection;
+	/** The connection the JTable's rows are being read from, if any */
+	Connection tableConnection;
 
 	ConfigurationManager configManager;
 
@@ -100,6 +109,7 @@ public class SQLRunnerGUI  {
 	private final JCheckBox passwdPromptCheckBox;
 	private final JComboBox modeList;
 	private final JDialog busyDialog;
+	private final JLabel busyLabel;
 
 	private JTable jtable;
 
@@ -193,6 +203,7 @@ public class SQLRunnerGUI  {
 			resultsStatusBar.reset();
 			busyDialog.setVisible(true);
 
+			closeTableResults();
 			try {
 				currentConnection =  configManager.getConnection(config);
 
@@ -204,31 +215,94 @@ public class SQLRunnerGUI  {
 				}
 				prog.setOutputFile(out);
 
-				// RUN THE SQL
-				prog.runStatement(command);
+				// RUN THE SQL, in the background so the Cancel button can stop it
+				currentQuery = prog.submit(command, progressListener);
+				try {
+					currentQuery.getFuture().get();
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof Exception ?
+						(Exception) e.getCause() : e;
+				}
 
 				if (prog.isEscape()) {
 					outputPanel.setSelectedIndex(0);
 				}
 				resultsStatusBar.showSuccess();	// If no exception thrown!
+			} catch (CancellationException e) {
+				resultsStatusBar.showFailure();
+				out.println("-- Cancelled");
+				out.flush();
 			} catch (Exception e) {
 				resultsStatusBar.showFailure();
 				eHandler.handleError(e);
 			} finally {
+				currentQuery = null;
 				runButton.setEnabled(true);
 				busyDialog.setVisible(false);
-				try {
-					// Nested try here is deliberate, not a big deal if this call crashes
-					if (currentConnection != null) {
-						currentConnection.close();
-					}
-				} catch (SQLException ex) {
-					System.err.println("Warning: close caused " + ex);
+				busyLabel.setText(" ");
+				if (mode == OutputMode.j) {
+					// The JTable may still be reading its rows; close it next time
+					tableConnection = currentConnection;
+				} else {
+					closeConnection(currentConnection);
 				}
 			}
 		}
 	};
 
+	/** Stop the JTable reading rows from the last query, and close
+	 * the connection they came from.
+	 */
+	void closeTableResults() {
+		// Called from the run thread as well as the EDT; only the EDT may touch the JTable
+		final TableModel[] model = new TableModel[1];
+		Runnable getModel = new Runnable() {
+			public void run() {
+				model[0] = jtable.getModel();
+			}
+		};
+		if (SwingUtilities.isEventDispatchThread()) {
+			getModel.run();
+		} else {
+			try {
+				SwingUtilities.invokeAndWait(getModel);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (InvocationTargetException e) {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		if (model[0] instanceof PagedTableModel) {
+			((PagedTableModel) model[0]).close();
+		}
+		if (tableConnection != null) {
+			closeConnection(tableConnection);
+			tableConnection = null;
+		}
+	}
+
+	private static void closeConnection(Connection conn) {
+		try {
+			// Nested try here is deliberate, not a big deal if this call crashes
+			if (conn != null) {
+				conn.close();
+			}
+		} catch (SQLException ex) {
+			System.err.println("Warning: close caused " + ex);
+		}
+	}
+
+	/** Show the number of rows read so far in the busy dialog */
+	QueryListener progressListener = new QueryListener() {
+		public void progress(QueryHandle handle, final long rowsFetched) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					busyLabel.setText(rowsFetched + " rows");
+				}
+			});
+		}
+	};
+
 	Action runAction = new AbstractAction("Run") {
 
 		/** Called each time the user presses the Run button
@@ -243,10 +317,16 @@ public class SQLRunnerGUI  {
 	};
 
 	/**
-	 * Action to cancel the database if it is taking too long... Use with caution.
+	 * Action to cancel the command if it is taking too long; this
+	 * asks the database to stop working on it, via Statement.cancel().
 	 */
-	Action cancelAction = new AbstractAction("Interrupt") {
+	Action cancelAction = new AbstractAction("Cancel") {
 		public void actionPerformed(ActionEvent e) {
+			QueryHandle query = currentQuery;
+			if (query != null) {
+				query.cancel();
+				return;
+			}
 			if (commandRunnerThread.isAlive()) {
 				try {
 					if (currentConnection != null) {
@@ -289,6 +369,7 @@ public class SQLRunnerGUI  {
 		mainWindow.addWindowListener(new WindowAdapter() {
 			@Override
 			public void windowClosing(WindowEvent e) {
+				closeTableResults();
 				mainWindow.dispose();
 				SQLRunner.exit(0);
 			}
@@ -372,6 +453,8 @@ public class SQLRunnerGUI  {
 		JProgressBar busyIndicator = new JProgressBar();
 		busyIndicator.setIndeterminate(true);
 		busyDialog.add(busyIndicator, BorderLayout.CENTER);
+		busyLabel = new JLabel(" ");
+		busyDialog.add(busyLabel, BorderLayout.NORTH);
 		JPanel bottomPanel = new JPanel();
 		bottomPanel.add(new JButton(cancelAction));
 		busyDialog.add(bottomPanel, BorderLayout.SOUTH);
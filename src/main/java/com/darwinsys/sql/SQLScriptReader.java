@@ -0,0 +1,562 @@
+package com.darwinsys.sql;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Split an SQL script into statements, one at a time, reading it
+ * through a large buffer so that scripts of any size can be run in
+ * constant memory. Unlike the old line-at-a-time SQLRunner.getStatement(),
+ * this understands enough SQL not to split a statement in the wrong place:
+ * <ul>
+ * <li>'strings' (with '' inside, and optionally backslash escapes),
+ * "identifiers", `identifiers` and PostgreSQL $tag$ dollar quotes $tag$;
+ * <li>-- comments, # comments at the start of a line, and /* block comments *&#47;
+ * (block comments inside a statement are kept, so hints still work);
+ * <li>DELIMITER xx lines, as in MySQL scripts, to change the delimiter
+ * from the default ';';
+ * <li>CREATE PROCEDURE, FUNCTION, TRIGGER and EVENT statements
+ * with BEGIN ... END bodies, which end at the delimiter after the last END;
+ * <li>CREATE PACKAGE and PACKAGE BODY, whose last END has no BEGIN; as in
+ * Oracle's SQL*Plus these end at a line holding only a /, unless the
+ * delimiter has been changed from ';';
+ * <li>a line holding only a / also ends any other statement, and is
+ * otherwise dropped, so scripts written for SQL*Plus work;
+ * <li>SQLRunner escape commands (\m, \o, etc.), which end at the delimiter
+ * or at the end of the line.
+ * </ul>
+ * Statements come back trimmed, without the delimiter, and with the
+ * line number where they began.
+ * <pre>
+ * try (SQLScriptReader script = new SQLScriptReader(new FileReader(file))) {
+ *     ScriptStatement st;
+ *     while ((st = script.readStatement()) != null) {
+ *         runner.runStatement(st.getText());
+ *     }
+ * }
+ * </pre>
+ * @author Ian Darwin
+ */
+public class SQLScriptReader implements Iterator<ScriptStatement>, Closeable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	public static final String DEFAULT_DELIMITER = ";";
+
+	private static final Pattern DELIMITER_COMMAND =
+		Pattern.compile("(?i)delimiter(?:\\s+(\\S+))?\\s*");
+
+	/** Lexer states */
+	private static final int NORMAL = 0, SQUOTE = 1, DQUOTE = 2, BACKTICK = 3,
+		DOLLAR_TAG = 4, DOLLAR = 5, LINE_COMMENT = 6, BLOCK_COMMENT = 7, ESCAPE = 8;
+
+	private final Reader in;
+	private final char[] buf;
+	private int pos, limit;
+	private boolean eof;
+	private int line = 1;
+
+	private String delimiter = DEFAULT_DELIMITER;
+	private boolean backslashEscapes;
+
+	/** The statement being built */
+	private final StringBuilder sb = new StringBuilder(1024);
+	private int state;
+	private int startLine;
+	/** Where in sb the current stretch of unquoted text began, so
+	 * delimiters are only looked for there */
+	private int normalSince;
+	/** Where in sb the current line began */
+	private int lineStart;
+	private boolean lineHasText;
+	/** Block comments are dropped before the statement starts, kept after */
+	private boolean keepComment;
+	/** The dollar-quote tag, e.g., "$body$", when in one */
+	private String dollarTag;
+	private int dollarStart;
+
+	/** Word tracking, for CREATE PROCEDURE ... BEGIN ... END; blockAware
+	 * is set once the kind of object is known to have a body */
+	private boolean inWord, firstWord, create, blockAware, prevEnd;
+	/** In CREATE PACKAGE, which ends at a / line, not at a ';' */
+	private boolean inPackage;
+	/** True in a DELIMITER line, which ends at the newline, not a delimiter
+	 * (so "DELIMITER ;;" works) */
+	private boolean delimiterCommand;
+	private int wordStart, depth;
+	/** Parentheses open, outside quotes; BEGIN etc. inside them don't count */
+	private int parens;
+
+	/** For the Iterator, the statement read by hasNext() */
+	private ScriptStatement lookahead;
+
+	/**
+	 * Construct a reader with the default buffer size
+	 * @param in The script
+	 */
+	public SQLScriptReader(Reader in) {
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Construct a reader
+	 * @param in The script; there is no need to wrap it in a BufferedReader
+	 * @param bufferSize The number of chars to read at a time
+	 */
+	public SQLScriptReader(Reader in, int bufferSize) {
+		this.in = in;
+		this.buf = new char[bufferSize];
+	}
+
+	/**
+	 * Read the next statement.
+	 * @return The statement, or null at the end of the script.
+	 * @throws IOException If reading fails
+	 */
+	public ScriptStatement readStatement() throws IOException {
+		startStatement();
+		int ch;
+		while ((ch = read()) != -1) {
+			char c = (char) ch;
+			ScriptStatement st = null;
+			switch (state) {
+			case SQUOTE:
+				sb.append(c);
+				if (c == '\\' && backslashEscapes) {
+					if ((ch = read()) != -1) {
+						sb.append((char) ch);
+					}
+				} else if (c == '\'') {
+					if (peek() == '\'') {
+						sb.append((char) read());
+					} else {
+						toNormal();
+					}
+				}
+				break;
+			case DQUOTE:
+			case BACKTICK:
+				sb.append(c);
+				char q = state == DQUOTE ? '"' : '`';
+				if (c == q) {
+					if (peek() == q) {
+						sb.append((char) read());
+					} else {
+						toNormal();
+					}
+				}
+				break;
+			case DOLLAR_TAG:
+				if (c == '$') {
+					sb.append(c);
+					dollarTag = sb.substring(dollarStart);
+					state = DOLLAR;
+				} else if (Character.isLetterOrDigit(c) || c == '_') {
+					sb.append(c);
+				} else {
+					// Wasn't a dollar quote after all, e.g., a $1 parameter
+					toNormal();
+					st = normal(c);
+				}
+				break;
+			case DOLLAR:
+				sb.append(c);
+				if (c == '$' && sb.length() - dollarTag.length() >= dollarStart + dollarTag.length() &&
+						endsWith(dollarTag, sb.length() - dollarTag.length())) {
+					toNormal();
+				}
+				break;
+			case LINE_COMMENT:
+				if (c == '\n') {
+					state = NORMAL;
+					if (lineHasText) {
+						st = normal(c);
+					}	// else drop the whole line
+				}
+				break;
+			case BLOCK_COMMENT:
+				if (keepComment) {
+					sb.append(c);
+				}
+				if (c == '*' && peek() == '/') {
+					read();
+					if (keepComment) {
+						sb.append('/');
+					}
+					toNormal();
+				}
+				break;
+			case ESCAPE:
+				if (c == '\n') {
+					st = finish();
+					break;
+				}
+				sb.append(c);
+				if (endsWith(delimiter, normalSince)) {
+					sb.setLength(sb.length() - delimiter.length());
+					st = finish();
+				}
+				break;
+			default:
+				st = normal(c);
+				break;
+			}
+			if (st != null) {
+				return st;
+			}
+		}
+		// End of input: whatever is left is the last statement, delimiter or no
+		endWord();
+		return finish();
+	}
+
+	/** Handle one character outside quotes and comments */
+	private ScriptStatement normal(char c) throws IOException {
+		if (Character.isWhitespace(c)) {
+			endWord();
+			if (sb.length() == 0) {
+				return null;		// skip leading white space
+			}
+			sb.append(c);
+			return c == '\n' ? endOfLine() : null;
+		}
+		if (c == '-' && peek() == '-') {
+			endWord();
+			read();
+			state = LINE_COMMENT;
+			return null;
+		}
+		if (c == '#' && !lineHasText) {
+			state = LINE_COMMENT;
+			return null;
+		}
+		if (c == '/' && peek() == '*') {
+			endWord();
+			read();
+			keepComment = sb.length() > 0;
+			if (keepComment) {
+				sb.append("/*");
+			}
+			state = BLOCK_COMMENT;
+			return null;
+		}
+		if (sb.length() == 0) {
+			startLine = line;
+			if (c == '\\') {
+				sb.append(c);
+				state = ESCAPE;
+				normalSince = 0;
+				return null;
+			}
+		}
+		lineHasText = true;
+		if (c == '$' && !inWord && !delimiter.startsWith("$")) {
+			int next = peek();
+			if (next == '$' || next == '_' || next != -1 && Character.isLetter(next)) {
+				dollarStart = sb.length();
+				sb.append(c);
+				state = DOLLAR_TAG;
+				return null;
+			}
+		}
+		if (Character.isLetterOrDigit(c) || c == '_' || c == '$') {
+			if (!inWord) {
+				inWord = true;
+				wordStart = sb.length();
+			}
+		} else {
+			endWord();
+			prevEnd = false;		// "END;" then "IF" is not "END IF"
+			switch (c) {
+			case '\'':
+				sb.append(c);
+				state = SQUOTE;
+				return null;
+			case '"':
+				sb.append(c);
+				state = DQUOTE;
+				return null;
+			case '`':
+				sb.append(c);
+				state = BACKTICK;
+				return null;
+			case '(':
+				++parens;
+				break;
+			case ')':
+				--parens;
+				break;
+			}
+		}
+		sb.append(c);
+		if (depth <= 0 && !delimiterCommand && !(inPackage && delimiter.equals(DEFAULT_DELIMITER)) &&
+				endsWith(delimiter, normalSince)) {
+			inWord = false;
+			sb.setLength(sb.length() - delimiter.length());
+			return finish();
+		}
+		return null;
+	}
+
+	/** At a newline outside quotes: look for a DELIMITER command,
+	 * which has no delimiter of its own, or a / line */
+	private ScriptStatement endOfLine() {
+		if (delimiterCommand) {
+			return finish();
+		}
+		if (isSlashLine(sb.length() - 1)) {
+			sb.setLength(lineStart);
+			return finish();
+		}
+		lineStart = sb.length();
+		lineHasText = false;
+		return null;
+	}
+
+	/** Finish the statement in sb; returns null (and starts over) if it is empty
+	 * or was a DELIMITER command.
+	 */
+	private ScriptStatement finish() {
+		if (isSlashLine(sb.length())) {		// at the end of the input
+			sb.setLength(lineStart);
+		}
+		String text = sb.toString().trim();
+		int where = startLine;
+		boolean wasDelimiterCommand = delimiterCommand;
+		startStatement();
+		if (text.isEmpty()) {
+			return null;
+		}
+		if (wasDelimiterCommand) {
+			Matcher m = DELIMITER_COMMAND.matcher(text);
+			if (m.matches()) {
+				if (m.group(1) != null) {
+					delimiter = m.group(1);
+				}
+				return null;
+			}
+		}
+		return new ScriptStatement(text, where);
+	}
+
+	private void startStatement() {
+		sb.setLength(0);
+		state = NORMAL;
+		normalSince = lineStart = 0;
+		lineHasText = false;
+		inWord = false;
+		firstWord = true;
+		create = blockAware = prevEnd = inPackage = delimiterCommand = false;
+		depth = parens = 0;
+	}
+
+	private void toNormal() {
+		state = NORMAL;
+		normalSince = sb.length();
+	}
+
+	/** True if the current line, up to end, holds only a / */
+	private boolean isSlashLine(int end) {
+		int slash = -1;
+		for (int i = lineStart; i < end; i++) {
+			char c = sb.charAt(i);
+			if (c == '/' && slash < 0) {
+				slash = i;
+			} else if (!Character.isWhitespace(c)) {
+				return false;
+			}
+		}
+		return slash >= 0;
+	}
+
+	/** True if sb ends with s, starting no earlier than from */
+	private boolean endsWith(String s, int from) {
+		int start = sb.length() - s.length();
+		if (start < from) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (sb.charAt(start + i) != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * At the end of a word, keep track of BEGIN/CASE ... END nesting in
+	 * CREATE statements, so semicolons inside a procedure or trigger body
+	 * don't end it. END IF, END LOOP, etc., close things we didn't count.
+	 * Nothing is counted until the kind of object is known to have a body,
+	 * nor inside parentheses, as BEGIN can be a column name in CREATE TABLE.
+	 */
+	private void endWord() {
+		if (!inWord) {
+			return;
+		}
+		inWord = false;
+		if (firstWord) {
+			firstWord = false;
+			create = isWord("CREATE");
+			delimiterCommand = isWord("DELIMITER");
+			return;
+		}
+		if (!create || parens > 0) {
+			return;
+		}
+		if (!blockAware) {
+			inPackage = isWord("PACKAGE");
+			blockAware = isWord("PROCEDURE") || isWord("FUNCTION") || isWord("TRIGGER") ||
+				isWord("EVENT") || inPackage;
+			return;
+		}
+		if (inPackage) {
+			return;		// it ends at the / line, however its ENDs nest
+		}
+		boolean afterEnd = prevEnd;
+		prevEnd = false;
+		if (isWord("END")) {
+			--depth;
+			prevEnd = true;
+		} else if (afterEnd) {
+			if (isWord("IF") || isWord("LOOP") || isWord("WHILE") || isWord("REPEAT")) {
+				++depth;
+			}
+		} else if (isWord("BEGIN") || isWord("CASE")) {
+			++depth;
+		}
+	}
+
+	private boolean isWord(String word) {
+		if (sb.length() - wordStart != word.length()) {
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			if (Character.toUpperCase(sb.charAt(wordStart + i)) != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Read one char, counting lines */
+	private int read() throws IOException {
+		if (pos >= limit && !fill()) {
+			return -1;
+		}
+		char c = buf[pos++];
+		if (c == '\n') {
+			++line;
+		}
+		return c;
+	}
+
+	private int peek() throws IOException {
+		if (pos >= limit && !fill()) {
+			return -1;
+		}
+		return buf[pos];
+	}
+
+	private boolean fill() throws IOException {
+		if (eof) {
+			return false;
+		}
+		int n;
+		do {
+			n = in.read(buf, 0, buf.length);
+		} while (n == 0);
+		if (n < 0) {
+			eof = true;
+			return false;
+		}
+		pos = 0;
+		limit = n;
+		return true;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (lookahead == null) {
+			try {
+				lookahead = readStatement();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return lookahead != null;
+	}
+
+	@Override
+	public ScriptStatement next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ScriptStatement st = lookahead;
+		lookahead = null;
+		return st;
+	}
+
+	/**
+	 * Get the statements as a Stream; closing the Stream closes the Reader.
+	 * @return The Stream of statements, read lazily
+	 */
+	public Stream<ScriptStatement> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+			Spliterator.ORDERED | Spliterator.NONNULL), false)
+			.onClose(new Runnable() {
+				public void run() {
+					try {
+						close();
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+	}
+
+	/** @return The current line number in the input */
+	public int getLineNumber() {
+		return line;
+	}
+
+	public String getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * Set the statement delimiter; scripts can also change it
+	 * with a DELIMITER line.
+	 * @param delimiter The new delimiter, e.g., "//"
+	 */
+	public void setDelimiter(String delimiter) {
+		if (delimiter == null || delimiter.isEmpty()) {
+			throw new IllegalArgumentException("Delimiter may not be empty");
+		}
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Say whether backslash escapes a character inside 'strings',
+	 * as in MySQL ('it\'s'); the default, false, is standard SQL.
+	 * @param backslashEscapes True to honor backslash escapes
+	 */
+	public void setBackslashEscapes(boolean backslashEscapes) {
+		this.backslashEscapes = backslashEscapes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
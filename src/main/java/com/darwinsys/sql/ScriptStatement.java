@@ -0,0 +1,37 @@
+package com.darwinsys.sql;
+
+/**
+ * One statement or escape command read from an SQL script
+ * by SQLScriptReader, with where it came from.
+ * @author Ian Darwin
+ */
+public class ScriptStatement {
+
+	private final String text;
+	private final int lineNumber;
+
+	public ScriptStatement(String text, int lineNumber) {
+		this.text = text;
+		this.lineNumber = lineNumber;
+	}
+
+	/** @return The statement, trimmed, without its delimiter */
+	public String getText() {
+		return text;
+	}
+
+	/** @return The line in the script where the statement starts, counting from 1 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+
+	/** @return True if this is an SQLRunner escape command like \m */
+	public boolean isEscape() {
+		return text.startsWith("\\");
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,403 @@
+package com.darwinsys.sql;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latency statistics for the statements run by an SQLRunner, grouped
+ * by statement "fingerprint": the SQL with its literals replaced by '?',
+ * so that statements differing only in their values count together.
+ * For each fingerprint a Histogram of each phase is kept:
+ * execute (until the driver returns), first row (from the start
+ * until the first next() returns), fetch (time spent inside next()),
+ * and render (the rest of the time spent in the ResultsDecorator).
+ * <p>Not thread-safe; each SQLRunner has its own.
+ * @author Ian Darwin
+ */
+public class StatementStats {
+
+	/**
+	 * A histogram of durations with power-of-two microsecond buckets,
+	 * which is small, cheap to update and accurate to within a factor
+	 * of two, plenty to tell a 3ms query from a 300ms one.
+	 */
+	public static class Histogram {
+		/** counts[i] is the number of durations from 2^(i-1) up to 2^i microseconds */
+		private final long[] counts = new long[64];
+		private long count, sum, max;
+		private long min = Long.MAX_VALUE;
+
+		/**
+		 * Add one duration
+		 * @param nanos The duration
+		 */
+		public void add(long nanos) {
+			long micros = Math.max(0, nanos / 1000);
+			++counts[64 - Long.numberOfLeadingZeros(micros)];
+			++count;
+			sum += nanos;
+			min = Math.min(min, nanos);
+			max = Math.max(max, nanos);
+		}
+
+		/**
+		 * Add all the durations of another histogram
+		 * @param h The other histogram
+		 */
+		public void add(Histogram h) {
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] += h.counts[i];
+			}
+			count += h.count;
+			sum += h.sum;
+			min = Math.min(min, h.min);
+			max = Math.max(max, h.max);
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotalNanos() {
+			return sum;
+		}
+
+		public long getMinNanos() {
+			return count == 0 ? 0 : min;
+		}
+
+		public long getMaxNanos() {
+			return max;
+		}
+
+		public long getMeanNanos() {
+			return count == 0 ? 0 : sum / count;
+		}
+
+		/**
+		 * Estimate a percentile, as the upper bound of the bucket it falls in
+		 * (but never more than the largest value seen).
+		 * @param p The percentile, from 0 to 100
+		 * @return The estimated duration in nanoseconds
+		 */
+		public long getPercentileNanos(double p) {
+			if (count == 0) {
+				return 0;
+			}
+			long wanted = (long) Math.ceil(count * p / 100);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= wanted && seen > 0) {
+					long upper = i == 0 ? 1000 : (1L << i) * 1000;
+					return Math.min(upper, max);
+				}
+			}
+			return max;
+		}
+	}
+
+	/** The statistics for one fingerprint */
+	public static class Entry {
+		private final String fingerprint;
+		private long rows;
+		final Histogram total = new Histogram();
+		final Histogram execute = new Histogram();
+		final Histogram firstRow = new Histogram();
+		final Histogram fetch = new Histogram();
+		final Histogram render = new Histogram();
+
+		Entry(String fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public Histogram getTotal() {
+			return total;
+		}
+
+		public Histogram getExecute() {
+			return execute;
+		}
+
+		public Histogram getFirstRow() {
+			return firstRow;
+		}
+
+		public Histogram getFetch() {
+			return fetch;
+		}
+
+		public Histogram getRender() {
+			return render;
+		}
+	}
+
+	/**
+	 * Times the calls to next() on a ResultSet, so fetching (waiting
+	 * for the driver) can be told apart from rendering.
+	 */
+	static class FetchTimer implements InvocationHandler {
+		private final ResultSet rs;
+		private final long start;
+		long fetchNanos;
+		long firstRowNanos = -1;
+
+		/**
+		 * @param rs The ResultSet to time
+		 * @param start The System.nanoTime() when the statement started
+		 */
+		FetchTimer(ResultSet rs, long start) {
+			this.rs = rs;
+			this.start = start;
+		}
+
+		/** @return A ResultSet that times next() and passes everything to the real one */
+		ResultSet getResultSet() {
+			return (ResultSet) Proxy.newProxyInstance(
+				ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			boolean isNext = method.getName().equals("next");
+			long t0 = isNext ? System.nanoTime() : 0;
+			try {
+				Object ret = method.invoke(rs, args);
+				if (isNext) {
+					long t1 = System.nanoTime();
+					fetchNanos += t1 - t0;
+					if (firstRowNanos == -1 && Boolean.TRUE.equals(ret)) {
+						firstRowNanos = t1 - start;
+					}
+				}
+				return ret;
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	/**
+	 * Record one statement's timings.
+	 * @param sql The statement as run
+	 * @param executeNanos Time for execute() to return
+	 * @param firstRowNanos Time from the start until the first row was
+	 * available, or -1 if there was no ResultSet or it was empty
+	 * @param fetchNanos Time spent in ResultSet.next()
+	 * @param renderNanos Time spent formatting the rows
+	 * @param rows The number of rows returned or updated
+	 * @return The total time
+	 */
+	public long record(String sql, long executeNanos, long firstRowNanos,
+			long fetchNanos, long renderNanos, long rows) {
+		String fp = fingerprint(sql);
+		Entry e = entries.get(fp);
+		if (e == null) {
+			e = new Entry(fp);
+			entries.put(fp, e);
+		}
+		long total = executeNanos + fetchNanos + renderNanos;
+		e.total.add(total);
+		e.execute.add(executeNanos);
+		if (firstRowNanos >= 0) {
+			e.firstRow.add(firstRowNanos);
+		}
+		e.fetch.add(fetchNanos);
+		e.render.add(renderNanos);
+		e.rows += Math.max(0, rows);
+		return total;
+	}
+
+	/**
+	 * Add in another set of statistics, e.g., to total those of several SQLRunners.
+	 * @param other The statistics to add
+	 */
+	public void add(StatementStats other) {
+		for (Entry o : other.entries.values()) {
+			Entry e = entries.get(o.fingerprint);
+			if (e == null) {
+				e = new Entry(o.fingerprint);
+				entries.put(o.fingerprint, e);
+			}
+			e.total.add(o.total);
+			e.execute.add(o.execute);
+			e.firstRow.add(o.firstRow);
+			e.fetch.add(o.fetch);
+			e.render.add(o.render);
+			e.rows += o.rows;
+		}
+	}
+
+	/**
+	 * Get the statistics, most total time first.
+	 * @return The entries, one per fingerprint
+	 */
+	public List<Entry> getEntries() {
+		List<Entry> list = new ArrayList<>(entries.values());
+		Collections.sort(list, new Comparator<Entry>() {
+			public int compare(Entry a, Entry b) {
+				return Long.compare(b.total.getTotalNanos(), a.total.getTotalNanos());
+			}
+		});
+		return list;
+	}
+
+	/** Forget everything recorded so far */
+	public void reset() {
+		entries.clear();
+	}
+
+	/**
+	 * Print a summary table, in milliseconds, one line per fingerprint.
+	 * @param out Where to print it
+	 */
+	public void print(PrintWriter out) {
+		out.printf("%7s %9s %10s %8s %8s %8s %8s %8s | %8s %8s %8s %8s  %s%n",
+			"count", "rows", "total", "mean", "p50", "p95", "p99", "max",
+			"execute", "1st row", "fetch", "render", "statement");
+		for (Entry e : getEntries()) {
+			Histogram t = e.total;
+			long n = t.getCount();
+			out.printf("%7d %9d %10.1f %8.2f %8.2f %8.2f %8.2f %8.2f | %8.2f %8.2f %8.2f %8.2f  %s%n",
+				n, e.rows, ms(t.getTotalNanos()), ms(t.getMeanNanos()),
+				ms(t.getPercentileNanos(50)), ms(t.getPercentileNanos(95)),
+				ms(t.getPercentileNanos(99)), ms(t.getMaxNanos()),
+				ms(e.execute.getMeanNanos()), ms(e.firstRow.getMeanNanos()),
+				ms(e.fetch.getMeanNanos()), ms(e.render.getMeanNanos()),
+				e.fingerprint);
+		}
+	}
+
+	private static double ms(long nanos) {
+		return nanos / 1_000_000d;
+	}
+
+	/**
+	 * Reduce a statement to its shape: string and numeric literals
+	 * become '?', lists of them become a single '?...',
+	 * whitespace is collapsed and everything outside
+	 * quoted identifiers is lower-cased.
+	 * <pre>
+	 * SELECT *  FROM emp WHERE id IN (1, 2, 3) AND name = 'Ian'
+	 * </pre>
+	 * becomes
+	 * <pre>
+	 * select * from emp where id in (?...) and name = ?
+	 * </pre>
+	 * @param sql The SQL statement
+	 * @return The fingerprint
+	 */
+	public static String fingerprint(String sql) {
+		final int n = sql.length();
+		StringBuilder sb = new StringBuilder(n);
+		boolean pendingSpace = false;
+		for (int i = 0; i < n; i++) {
+			char c = sql.charAt(i);
+			if (Character.isWhitespace(c)) {
+				pendingSpace = sb.length() > 0;
+				continue;
+			}
+			if (pendingSpace) {
+				sb.append(' ');
+				pendingSpace = false;
+			}
+			if (c == '\'') {					// string literal, with '' inside
+				int j = i + 1;
+				while (j < n) {
+					if (sql.charAt(j) == '\'') {
+						if (j + 1 < n && sql.charAt(j + 1) == '\'') {
+							j += 2;
+							continue;
+						}
+						break;
+					}
+					++j;
+				}
+				i = j;
+				appendPlaceholder(sb);
+			} else if (c == '"') {				// quoted identifier, kept as-is
+				int j = sql.indexOf('"', i + 1);
+				if (j == -1) {
+					j = n - 1;
+				}
+				sb.append(sql, i, j + 1);
+				i = j;
+			} else if (isNumberStart(sql, i, sb)) {
+				int j = i + 1;
+				while (j < n && (Character.isLetterOrDigit(sql.charAt(j)) || sql.charAt(j) == '.')) {
+					++j;
+				}
+				i = j - 1;
+				appendPlaceholder(sb);
+			} else {
+				sb.append(Character.toLowerCase(c));
+			}
+		}
+		return sb.toString();
+	}
+
+	/** A digit, or a '.' or '-' followed by one, that isn't part of a name */
+	private static boolean isNumberStart(String sql, int i, StringBuilder sb) {
+		char c = sql.charAt(i);
+		if (c == '-' || c == '.') {
+			if (i + 1 >= sql.length() || !Character.isDigit(sql.charAt(i + 1))) {
+				return false;
+			}
+			// "-1" is a number after an operator or '(' but "a-1" is subtraction
+			if (c == '-' && sb.length() > 0) {
+				char prev = sb.charAt(sb.length() - (sb.charAt(sb.length() - 1) == ' ' ? 2 : 1));
+				if (Character.isLetterOrDigit(prev) || prev == ')' || prev == '?' || prev == '_') {
+					return false;
+				}
+			}
+		} else if (!Character.isDigit(c)) {
+			return false;
+		}
+		if (sb.length() == 0) {
+			return true;
+		}
+		char prev = sb.charAt(sb.length() - 1);
+		return !(Character.isLetterOrDigit(prev) || prev == '_' || prev == '$');
+	}
+
+	/** Append '?', folding "?, ?" lists into "?..." */
+	private static void appendPlaceholder(StringBuilder sb) {
+		int len = sb.length();
+		if (len >= 2 && sb.charAt(len - 1) == ' ' && sb.charAt(len - 2) == ',') {
+			len -= 2;
+		} else if (len >= 1 && sb.charAt(len - 1) == ',') {
+			len -= 1;
+		} else {
+			sb.append('?');
+			return;
+		}
+		if (len >= 1 && sb.charAt(len - 1) == '?') {
+			sb.setLength(len);
+			sb.append("...");
+		} else if (len >= 4 && sb.substring(len - 4, len).equals("?...")) {
+			sb.setLength(len);
+		} else {
+			sb.append('?');
+		}
+	}
+}
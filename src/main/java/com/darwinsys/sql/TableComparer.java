@@ -0,0 +1,665 @@
+package com.darwinsys.sql;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import com.darwinsys.database.DataBaseException;
+import com.darwinsys.lang.GetOpt;
+
+/**
+ * Check whether a table is the same in two databases (e.g., a replica,
+ * or before and after a migration) without pulling all of its rows across.
+ * The table's numeric primary key range is split into chunks, and each
+ * chunk's row count and a hash of its rows are computed on both sides,
+ * several chunks at once. Chunks that differ are split again, down to
+ * a few hundred keys, and only those are read row by row to find the
+ * keys that are missing from one side or have different values.
+ * <p>When both databases are the same product and it's one we know
+ * (MySQL/MariaDB or PostgreSQL), the hashing is done in the database
+ * with an aggregate, so only two numbers per chunk come back; otherwise
+ * the rows are read and hashed here, which costs transfer but not memory.
+ * The table needs a single-column integer primary key, as for TableCopier.
+ * @author Ian Darwin
+ */
+public class TableComparer implements AutoCloseable {
+
+	/** One range of keys, inclusive at both ends */
+	static class Chunk {
+		final long low, high;
+
+		Chunk(long low, long high) {
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		public String toString() {
+			return "[" + low + ".." + high + "]";
+		}
+	}
+
+	/** The row count and hash of one chunk on one side */
+	static class Summary {
+		final long rows;
+		final String hash;
+
+		Summary(long rows, String hash) {
+			this.rows = rows;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Summary)) {
+				return false;
+			}
+			Summary s = (Summary) o;
+			return rows == s.rows && (hash == null ? s.hash == null : hash.equals(s.hash));
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(rows) * 31 + (hash == null ? 0 : hash.hashCode());
+		}
+	}
+
+	/** The outcome of comparing one table */
+	public static class Result {
+		private final String table;
+		private final boolean serverHashing;
+		private int chunks, mismatchedChunks;
+		private final List<Long> onlyInSource = new ArrayList<>();
+		private final List<Long> onlyInTarget = new ArrayList<>();
+		private final List<Long> changed = new ArrayList<>();
+		private boolean truncated;
+		private long nanos;
+
+		Result(String table, boolean serverHashing) {
+			this.table = table;
+			this.serverHashing = serverHashing;
+		}
+
+		public String getTable() {
+			return table;
+		}
+
+		/** @return True if the hashing was done by the databases */
+		public boolean isServerHashing() {
+			return serverHashing;
+		}
+
+		/** @return The number of top-level chunks compared */
+		public int getChunks() {
+			return chunks;
+		}
+
+		/** @return The number of top-level chunks that differed */
+		public int getMismatchedChunks() {
+			return mismatchedChunks;
+		}
+
+		/** @return The keys of rows in the source but not the target */
+		public List<Long> getOnlyInSource() {
+			return onlyInSource;
+		}
+
+		/** @return The keys of rows in the target but not the source */
+		public List<Long> getOnlyInTarget() {
+			return onlyInTarget;
+		}
+
+		/** @return The keys of rows whose values differ */
+		public List<Long> getChanged() {
+			return changed;
+		}
+
+		/** @return True if there were more differences than were kept */
+		public boolean isTruncated() {
+			return truncated;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		public boolean isMatch() {
+			return mismatchedChunks == 0;
+		}
+
+		int differences() {
+			return onlyInSource.size() + onlyInTarget.size() + changed.size();
+		}
+
+		@Override
+		public String toString() {
+			if (isMatch()) {
+				return String.format("%s: match, %d chunks in %.3f sec",
+					table, chunks, nanos / 1_000_000_000d);
+			}
+			return String.format("%s: %d of %d chunks differ; %d only in source, " +
+				"%d only in target, %d changed%s, in %.3f sec",
+				table, mismatchedChunks, chunks, onlyInSource.size(),
+				onlyInTarget.size(), changed.size(), truncated ? " (truncated)" : "",
+				nanos / 1_000_000_000d);
+		}
+	}
+
+	private final TableCopier.ConnectionSource source, target;
+	private int threads = 4;
+	private int chunksPerTable = 64;
+	private int fanout = 8;
+	private long leafKeys = 500;
+	private int maxDifferences = 1000;
+	private int fetchSize = 1000;
+	private boolean serverHashing = true;
+	private PrintStream progress = System.err;
+
+	private ExecutorService pool;
+
+	/**
+	 * Construct a comparer between two configurations,
+	 * using their ConnectionUtil pools.
+	 * @param sourceConfig The configuration name of one side
+	 * @param targetConfig The configuration name of the other
+	 */
+	public TableComparer(String sourceConfig, String targetConfig) {
+		this(ConnectionUtil.getPool(sourceConfig), ConnectionUtil.getPool(targetConfig));
+	}
+
+	/**
+	 * Construct a comparer between two pools; each needs
+	 * as many connections as there are threads.
+	 * @param source The pool for one side
+	 * @param target The pool for the other
+	 */
+	public TableComparer(ConnectionPool source, ConnectionPool target) {
+		this(source::getConnection, target::getConnection);
+	}
+
+	TableComparer(TableCopier.ConnectionSource source, TableCopier.ConnectionSource target) {
+		this.source = source;
+		this.target = target;
+	}
+
+	/**
+	 * Compare one table.
+	 * @param table The table name, the same in both databases
+	 * @return Which chunks and keys differ
+	 * @throws SQLException If either side can't be read
+	 */
+	public Result compare(String table) throws SQLException {
+		final long start = System.nanoTime();
+		final String[] columns;
+		final String key;
+		final long[] bounds, targetBounds;
+		String aggregate = null;
+		try (Connection conn = source.getConnection()) {
+			int[] types, scales;
+			try (Statement st = conn.createStatement();
+				ResultSet rs = st.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+				ResultSetMetaData md = rs.getMetaData();
+				columns = new String[md.getColumnCount()];
+				types = new int[columns.length];
+				scales = new int[columns.length];
+				for (int i = 0; i < columns.length; i++) {
+					columns[i] = md.getColumnName(i + 1);
+					types[i] = md.getColumnType(i + 1);
+					scales[i] = md.getScale(i + 1);
+				}
+			}
+			key = TableCopier.findNumericKey(conn.getMetaData(), table, columns, types);
+			// The chunks are ranges of whole numbers, so a key
+			// such as 10.5 would fall between them and never be compared
+			if (key == null || scales[Arrays.asList(columns).indexOf(key)] != 0) {
+				throw new SQLException(table + " has no single-column integer primary key");
+			}
+			bounds = TableCopier.getKeyBounds(conn, table, key);
+			if (serverHashing) {
+				aggregate = getAggregate(conn.getMetaData().getDatabaseProductName(), columns);
+			}
+		}
+		try (Connection conn = target.getConnection()) {
+			targetBounds = TableCopier.getKeyBounds(conn, table, key);
+			if (aggregate != null && !aggregate.equals(
+					getAggregate(conn.getMetaData().getDatabaseProductName(), columns))) {
+				aggregate = null;	// different products hash differently
+			}
+		}
+
+		final String where = " FROM " + table + " WHERE " + key + " BETWEEN ? AND ?";
+		if (aggregate != null) {
+			// Make sure both sides accept it before relying on it
+			String probe = "SELECT COUNT(*), " + aggregate + where;
+			try {
+				query(source, probe, new Chunk(1, 0));
+				query(target, probe, new Chunk(1, 0));
+			} catch (SQLException e) {
+				if (progress != null) {
+					progress.println("TableComparer: hashing " + table + " here: " + e);
+				}
+				aggregate = null;
+			}
+		}
+		final String summarySql = aggregate != null ?
+			"SELECT COUNT(*), " + aggregate + where :
+			"SELECT " + String.join(", ", columns) + where;
+		final String rowSql = "SELECT " + key + ", " + String.join(", ", columns) +
+			where + " ORDER BY " + key;
+
+		Result result = new Result(table, aggregate != null);
+		if (bounds != null || targetBounds != null) {
+			long low = bounds == null ? targetBounds[0] :
+				targetBounds == null ? bounds[0] : Math.min(bounds[0], targetBounds[0]);
+			long high = bounds == null ? targetBounds[1] :
+				targetBounds == null ? bounds[1] : Math.max(bounds[1], targetBounds[1]);
+			List<Chunk> chunks = split(new Chunk(low, high), chunksPerTable);
+			result.chunks = chunks.size();
+			startPool();
+			boolean top = true;
+			while (!chunks.isEmpty() && result.differences() < maxDifferences) {
+				List<Chunk> mismatched = compareSummaries(summarySql, chunks, aggregate != null);
+				if (top) {
+					result.mismatchedChunks = mismatched.size();
+					top = false;
+				}
+				List<Chunk> leaves = new ArrayList<>();
+				chunks = new ArrayList<>();
+				for (Chunk c : mismatched) {
+					if (c.high - c.low < leafKeys) {
+						leaves.add(c);
+					} else {
+						chunks.addAll(split(c, fanout));
+					}
+				}
+				compareRows(rowSql, leaves, result);
+			}
+			result.truncated |= !chunks.isEmpty();
+		}
+		result.nanos = System.nanoTime() - start;
+		if (progress != null) {
+			progress.println("TableComparer: " + result);
+		}
+		return result;
+	}
+
+	/** Summarize the chunks on both sides at once; return those that differ */
+	private List<Chunk> compareSummaries(final String sql, List<Chunk> chunks,
+		final boolean aggregate) throws SQLException {
+		List<Future<Summary>> left = new ArrayList<>(), right = new ArrayList<>();
+		for (final Chunk c : chunks) {
+			left.add(pool.submit(new Callable<Summary>() {
+				public Summary call() throws SQLException {
+					return aggregate ? query(source, sql, c) : hashRows(source, sql, c);
+				}
+			}));
+			right.add(pool.submit(new Callable<Summary>() {
+				public Summary call() throws SQLException {
+					return aggregate ? query(target, sql, c) : hashRows(target, sql, c);
+				}
+			}));
+		}
+		List<Chunk> mismatched = new ArrayList<>();
+		for (int i = 0; i < chunks.size(); i++) {
+			if (!get(left.get(i), left, right).equals(get(right.get(i), left, right))) {
+				mismatched.add(chunks.get(i));
+			}
+		}
+		return mismatched;
+	}
+
+	/** Read the rows of the leaf chunks on both sides, and record the keys that differ */
+	private void compareRows(final String sql, List<Chunk> chunks, Result result)
+		throws SQLException {
+		List<Future<Map<Long, Long>>> left = new ArrayList<>(), right = new ArrayList<>();
+		for (final Chunk c : chunks) {
+			left.add(pool.submit(new Callable<Map<Long, Long>>() {
+				public Map<Long, Long> call() throws SQLException {
+					return rowHashes(source, sql, c);
+				}
+			}));
+			right.add(pool.submit(new Callable<Map<Long, Long>>() {
+				public Map<Long, Long> call() throws SQLException {
+					return rowHashes(target, sql, c);
+				}
+			}));
+		}
+		for (int i = 0; i < chunks.size(); i++) {
+			Iterator<Map.Entry<Long, Long>> l = get(left.get(i), left, right).entrySet().iterator();
+			Iterator<Map.Entry<Long, Long>> r = get(right.get(i), left, right).entrySet().iterator();
+			Map.Entry<Long, Long> a = l.hasNext() ? l.next() : null;
+			Map.Entry<Long, Long> b = r.hasNext() ? r.next() : null;
+			while (a != null || b != null) {
+				int cmp = a == null ? 1 : b == null ? -1 : a.getKey().compareTo(b.getKey());
+				List<Long> list = cmp < 0 ? result.onlyInSource :
+					cmp > 0 ? result.onlyInTarget :
+					a.getValue().equals(b.getValue()) ? null : result.changed;
+				if (list != null) {
+					if (result.differences() >= maxDifferences) {
+						result.truncated = true;
+						return;
+					}
+					list.add(cmp > 0 ? b.getKey() : a.getKey());
+				}
+				if (cmp <= 0) {
+					a = l.hasNext() ? l.next() : null;
+				}
+				if (cmp >= 0) {
+					b = r.hasNext() ? r.next() : null;
+				}
+			}
+		}
+	}
+
+	/** Wait for one task; if it failed, cancel the rest and rethrow */
+	private static <T> T get(Future<T> f, List<? extends Future<?>> left,
+		List<? extends Future<?>> right) throws SQLException {
+		try {
+			return f.get();
+		} catch (InterruptedException | ExecutionException e) {
+			for (Future<?> other : left) {
+				other.cancel(true);
+			}
+			for (Future<?> other : right) {
+				other.cancel(true);
+			}
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			}
+			throw new SQLException("Compare failed: " + cause, cause);
+		}
+	}
+
+	private PreparedStatement prepare(Connection conn, String sql, Chunk c)
+		throws SQLException {
+		PreparedStatement ps = conn.prepareStatement(sql,
+			ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		ps.setFetchSize(fetchSize);
+		ps.setLong(1, c.low);
+		ps.setLong(2, c.high);
+		return ps;
+	}
+
+	/** Run an aggregate query for a chunk */
+	private Summary query(TableCopier.ConnectionSource side, String sql, Chunk c)
+		throws SQLException {
+		try (Connection conn = side.getConnection();
+			PreparedStatement ps = prepare(conn, sql, c);
+			ResultSet rs = ps.executeQuery()) {
+			if (!rs.next()) {
+				return new Summary(0, null);
+			}
+			return new Summary(rs.getLong(1), rs.getString(2));
+		}
+	}
+
+	/** Read a chunk's rows and add up their hashes, so row order doesn't matter */
+	private Summary hashRows(TableCopier.ConnectionSource side, String sql, Chunk c)
+		throws SQLException {
+		long rows = 0, sum = 0;
+		CRC32 crc = new CRC32();
+		try (Connection conn = side.getConnection()) {
+			boolean autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);	// else PostgreSQL fetches everything
+			try (PreparedStatement ps = prepare(conn, sql, c);
+				ResultSet rs = ps.executeQuery()) {
+				int n = rs.getMetaData().getColumnCount();
+				while (rs.next()) {
+					sum += rowHash(rs, 1, n, crc);
+					rows++;
+				}
+			} finally {
+				conn.rollback();
+				conn.setAutoCommit(autoCommit);
+			}
+		}
+		return new Summary(rows, Long.toString(sum));
+	}
+
+	/** Read a chunk's rows, and hash each one by its key */
+	private Map<Long, Long> rowHashes(TableCopier.ConnectionSource side, String sql, Chunk c)
+		throws SQLException {
+		Map<Long, Long> hashes = new TreeMap<>();
+		CRC32 crc = new CRC32();
+		try (Connection conn = side.getConnection();
+			PreparedStatement ps = prepare(conn, sql, c);
+			ResultSet rs = ps.executeQuery()) {
+			int n = rs.getMetaData().getColumnCount();
+			while (rs.next()) {
+				hashes.put(rs.getLong(1), rowHash(rs, 2, n, crc));
+			}
+		}
+		return hashes;
+	}
+
+	/**
+	 * Hash columns first..last of the current row. Values are hashed by
+	 * their text, with numbers normalized so that, e.g., an Integer on
+	 * one side and a BigDecimal on the other hash alike.
+	 */
+	static long rowHash(ResultSet rs, int first, int last, CRC32 crc) throws SQLException {
+		crc.reset();
+		for (int i = first; i <= last; i++) {
+			Object o = rs.getObject(i);
+			String s;
+			if (o == null) {
+				crc.update(0);
+				continue;
+			} else if (o instanceof Number) {
+				s = o instanceof BigDecimal ?
+					((BigDecimal) o).stripTrailingZeros().toPlainString() :
+					new BigDecimal(o.toString()).stripTrailingZeros().toPlainString();
+			} else if (o instanceof byte[]) {
+				crc.update(1);
+				crc.update((byte[]) o);
+				continue;
+			} else {
+				s = o.toString();
+			}
+			crc.update(1);
+			crc.update(s.getBytes(StandardCharsets.UTF_8));
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * The aggregate hash expression for a database product, or null
+	 * if we don't know one and must hash the rows here.
+	 */
+	static String getAggregate(String product, String[] columns) {
+		if (product == null) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		if (product.startsWith("MySQL") || product.startsWith("MariaDB")) {
+			sb.append("SUM(CRC32(CONCAT_WS('#'");
+			for (String col : columns) {
+				sb.append(", COALESCE(CONCAT('v', ").append(col).append("), 'n')");
+			}
+			return sb.append(")))").toString();
+		}
+		if (product.startsWith("PostgreSQL")) {
+			sb.append("SUM(('x' || SUBSTR(MD5(ROW(")
+				.append(String.join(", ", columns))
+				.append(")::text), 1, 8))::bit(32)::bigint)");
+			return sb.toString();
+		}
+		return null;
+	}
+
+	/**
+	 * Split a chunk into at most n chunks of about the same width.
+	 */
+	static List<Chunk> split(Chunk c, int n) {
+		long[] splits = TableCopier.split(c.low, c.high, n);
+		List<Chunk> chunks = new ArrayList<>(splits.length + 1);
+		long low = c.low;
+		for (long s : splits) {
+			chunks.add(new Chunk(low, s - 1));
+			low = s;
+		}
+		chunks.add(new Chunk(low, c.high));
+		return chunks;
+	}
+
+	private synchronized void startPool() {
+		if (pool == null) {
+			pool = Executors.newFixedThreadPool(threads);
+		}
+	}
+
+	/** Stop the worker threads; the pools are left open */
+	@Override
+	public synchronized void close() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/** @param threads How many queries to run at once, over both sides */
+	public synchronized void setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Need at least one thread");
+		}
+		close();
+		this.threads = threads;
+	}
+
+	/** @param chunks The number of chunks to split each table into at first */
+	public void setChunksPerTable(int chunks) {
+		if (chunks < 1) {
+			throw new IllegalArgumentException("Need at least one chunk");
+		}
+		this.chunksPerTable = chunks;
+	}
+
+	/** @param fanout How many pieces to split a chunk that differs into */
+	public void setFanout(int fanout) {
+		if (fanout < 2) {
+			throw new IllegalArgumentException("Fanout must be at least 2");
+		}
+		this.fanout = fanout;
+	}
+
+	/** @param leafKeys The key width below which a chunk that differs is read row by row */
+	public void setLeafKeys(long leafKeys) {
+		if (leafKeys < 1) {
+			throw new IllegalArgumentException("Leaf width must be positive");
+		}
+		this.leafKeys = leafKeys;
+	}
+
+	/** @param maxDifferences How many differing keys to report before stopping */
+	public void setMaxDifferences(int maxDifferences) {
+		this.maxDifferences = maxDifferences;
+	}
+
+	/** @param fetchSize The fetch size hint for the reading statements */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/** @param serverHashing False to always hash the rows here */
+	public void setServerHashing(boolean serverHashing) {
+		this.serverHashing = serverHashing;
+	}
+
+	/** @param progress Where to report each table's result, or null */
+	public void setProgress(PrintStream progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Compare tables between two configurations from the command line:
+	 * TableComparer [-f configFile] [-t threads] [-c chunks] [-l]
+	 * sourceConfig targetConfig table ...
+	 * The -l option hashes locally even if the databases could do it.
+	 * Exits with status 1 if any table differs.
+	 * @param args The arguments
+	 */
+	public static void main(String[] args) {
+		int threads = 4, chunks = 64;
+		boolean local = false;
+		GetOpt go = new GetOpt("f:t:c:l");
+		char c;
+		while ((c = go.getopt(args)) != GetOpt.DONE) {
+			switch (c) {
+			case 'f':
+				ConnectionUtil.setConfigFileName(go.optarg());
+				break;
+			case 't':
+				threads = Integer.parseInt(go.optarg());
+				break;
+			case 'c':
+				chunks = Integer.parseInt(go.optarg());
+				break;
+			case 'l':
+				local = true;
+				break;
+			default:
+				usage();
+			}
+		}
+		int first = go.getOptInd();
+		if (args.length - first < 3) {
+			usage();
+		}
+		boolean same = true;
+		try (TableComparer comparer = new TableComparer(args[first], args[first + 1])) {
+			comparer.setThreads(threads);
+			comparer.setChunksPerTable(chunks);
+			comparer.setServerHashing(!local);
+			comparer.setProgress(null);
+			for (int i = first + 2; i < args.length; i++) {
+				Result r = comparer.compare(args[i]);
+				System.out.println(r);
+				if (!r.isMatch()) {
+					same = false;
+					print("only in " + args[first], r.getOnlyInSource());
+					print("only in " + args[first + 1], r.getOnlyInTarget());
+					print("changed", r.getChanged());
+				}
+			}
+		} catch (SQLException ex) {
+			throw new DataBaseException(ex.toString());
+		} finally {
+			ConnectionUtil.closePools();
+		}
+		System.exit(same ? 0 : 1);
+	}
+
+	private static void print(String what, List<Long> keys) {
+		if (!keys.isEmpty()) {
+			System.out.println("\t" + what + ": " + keys);
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: TableComparer [-f configFile] [-t threads] [-c chunks] [-l] " +
+			"sourceConfig targetConfig table ...");
+		System.exit(1);
+	}
+}
@@ -0,0 +1,563 @@
+package com.darwinsys.sql;
+
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.darwinsys.database.DataBaseException;
+import com.darwinsys.lang.GetOpt;
+
+/**
+ * Copy tables from one database to another, e.g., between environments,
+ * much faster than dumping them as INSERT statements and running those.
+ * Each table is split into ranges of its numeric primary key (if it has
+ * a single-column one), the ranges are read on several source connections
+ * at once with forward-only, streaming ResultSets, and the rows are
+ * handed in batches through a bounded queue (so the readers can't get
+ * too far ahead) to several writers, each inserting with a batched
+ * PreparedStatement on a target connection of its own and committing
+ * each batch.
+ * <p>The target tables must exist, with the same column names, and
+ * should be empty: a copy that fails part way leaves the batches
+ * already committed.
+ * <p>For streaming, some drivers need more than a fetch size: PostgreSQL
+ * only streams with autocommit off, which the readers do; MySQL
+ * Connector/J wants a fetch size of Integer.MIN_VALUE, or useCursorFetch=true
+ * in the URL.
+ * @author Ian Darwin
+ */
+public class TableCopier implements AutoCloseable {
+
+	/** Where connections come from; normally a ConnectionPool */
+	interface ConnectionSource {
+		Connection getConnection() throws SQLException;
+	}
+
+	/** The outcome of copying one table */
+	public static class Result {
+		private final String table;
+		private final long rows, nanos;
+		private final int ranges;
+
+		Result(String table, long rows, long nanos, int ranges) {
+			this.table = table;
+			this.rows = rows;
+			this.nanos = nanos;
+			this.ranges = ranges;
+		}
+
+		public String getTable() {
+			return table;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		/** @return The number of key ranges the table was read in */
+		public int getRanges() {
+			return ranges;
+		}
+
+		public double getRowsPerSecond() {
+			return nanos == 0 ? 0 : rows * 1_000_000_000d / nanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: %d rows in %.3f sec (%.0f rows/sec, %d ranges)",
+				table, rows, nanos / 1_000_000_000d, getRowsPerSecond(), ranges);
+		}
+	}
+
+	/** A batch of rows; the empty one tells a writer to stop */
+	private static final List<Object[]> END = new ArrayList<>();
+
+	/** How long to wait on the queue before checking for failure */
+	private static final long POLL_MILLIS = 100;
+
+	private final ConnectionSource source, target;
+	private int readers = 4, writers = 2;
+	private int rangesPerTable;
+	private int batchSize = 1000, queueSize = 16, fetchSize = 1000;
+	private PrintStream progress = System.err;
+
+	private ExecutorService readPool, writePool;
+
+	/**
+	 * Construct a copier between two configurations,
+	 * using their ConnectionUtil pools.
+	 * @param sourceConfig The configuration name to copy from
+	 * @param targetConfig The configuration name to copy to
+	 */
+	public TableCopier(String sourceConfig, String targetConfig) {
+		this(ConnectionUtil.getPool(sourceConfig), ConnectionUtil.getPool(targetConfig));
+	}
+
+	/**
+	 * Construct a copier between two pools; each needs
+	 * as many connections as there are readers or writers.
+	 * @param source The pool to copy from
+	 * @param target The pool to copy to
+	 */
+	public TableCopier(ConnectionPool source, ConnectionPool target) {
+		this(source::getConnection, target::getConnection);
+	}
+
+	TableCopier(ConnectionSource source, ConnectionSource target) {
+		this.source = source;
+		this.target = target;
+	}
+
+	/**
+	 * Copy several tables, one after another.
+	 * @param tables The table names
+	 * @return The results, in the same order
+	 * @throws SQLException If any copy fails; later tables are not copied
+	 */
+	public List<Result> copyTables(String... tables) throws SQLException {
+		List<Result> results = new ArrayList<>();
+		for (String table : tables) {
+			results.add(copy(table));
+		}
+		return results;
+	}
+
+	/**
+	 * Copy one table.
+	 * @param table The table name, the same in both databases
+	 * @return How many rows, and how fast
+	 * @throws SQLException If the copy fails
+	 */
+	public Result copy(String table) throws SQLException {
+		final long start = System.nanoTime();
+		final String[] columns;
+		final int[] types;
+		final String key;
+		final long[] bounds;
+		try (Connection conn = source.getConnection()) {
+			try (Statement st = conn.createStatement();
+				ResultSet rs = st.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+				ResultSetMetaData md = rs.getMetaData();
+				columns = new String[md.getColumnCount()];
+				types = new int[columns.length];
+				for (int i = 0; i < columns.length; i++) {
+					columns[i] = md.getColumnName(i + 1);
+					types[i] = md.getColumnType(i + 1);
+				}
+			}
+			key = findNumericKey(conn.getMetaData(), table, columns, types);
+			bounds = key == null ? null : getKeyBounds(conn, table, key);
+		}
+
+		final String select = "SELECT " + String.join(", ", columns) + " FROM " + table;
+		final List<String> queries = new ArrayList<>();
+		final List<long[]> params = new ArrayList<>();
+		int n = rangesPerTable > 0 ? rangesPerTable : readers;
+		long[] splits = bounds == null ? new long[0] : split(bounds[0], bounds[1], n);
+		if (splits.length == 0) {
+			queries.add(select);
+			params.add(new long[0]);
+		} else {
+			for (int i = 0; i <= splits.length; i++) {
+				if (i == 0) {
+					queries.add(select + " WHERE " + key + " < ?");
+					params.add(new long[] { splits[0] });
+				} else if (i == splits.length) {
+					queries.add(select + " WHERE " + key + " >= ?");
+					params.add(new long[] { splits[i - 1] });
+				} else {
+					queries.add(select + " WHERE " + key + " >= ? AND " + key + " < ?");
+					params.add(new long[] { splits[i - 1], splits[i] });
+				}
+			}
+		}
+
+		StringBuilder insert = new StringBuilder("INSERT INTO ").append(table)
+			.append(" (").append(String.join(", ", columns)).append(") VALUES (");
+		for (int i = 0; i < columns.length; i++) {
+			insert.append(i == 0 ? "?" : ", ?");
+		}
+		insert.append(')');
+
+		final BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(queueSize);
+		final Copy copy = new Copy(queue);
+		startPools();
+		List<Future<Long>> reads = new ArrayList<>();
+		for (int i = 0; i < queries.size(); i++) {
+			reads.add(readPool.submit(copy.reader(queries.get(i), params.get(i), columns.length)));
+		}
+		List<Future<Long>> writes = new ArrayList<>();
+		for (int i = 0; i < writers; i++) {
+			writes.add(writePool.submit(copy.writer(insert.toString(), types)));
+		}
+		long rows = 0;
+		try {
+			finish(reads, copy);
+		} finally {
+			try {
+				for (int i = 0; i < writers; i++) {
+					copy.put(END);
+				}
+			} catch (InterruptedException e) {
+				copy.failure = e;
+				Thread.currentThread().interrupt();
+			}
+			rows = finish(writes, copy);
+		}
+		Result result = new Result(table, rows, System.nanoTime() - start, queries.size());
+		if (progress != null) {
+			progress.println("TableCopier: " + result);
+		}
+		return result;
+	}
+
+	/** The state shared by the readers and writers of one table */
+	private class Copy {
+		final BlockingQueue<List<Object[]>> queue;
+		volatile Exception failure;
+
+		Copy(BlockingQueue<List<Object[]>> queue) {
+			this.queue = queue;
+		}
+
+		/** Queue a batch, giving up if the other side has failed */
+		void put(List<Object[]> batch) throws InterruptedException {
+			while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+				if (failure != null) {
+					if (batch == END) {
+						return;		// the writers are stopping anyway
+					}
+					throw new InterruptedException("Copy abandoned");
+				}
+			}
+		}
+
+		Callable<Long> reader(final String query, final long[] params, final int colCount) {
+			return new Callable<Long>() {
+				public Long call() throws Exception {
+					long rows = 0;
+					try (Connection conn = source.getConnection()) {
+						boolean autoCommit = conn.getAutoCommit();
+						conn.setAutoCommit(false);	// else PostgreSQL fetches everything
+						try (PreparedStatement ps = conn.prepareStatement(query,
+								ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+							ps.setFetchSize(fetchSize);
+							for (int i = 0; i < params.length; i++) {
+								ps.setLong(i + 1, params[i]);
+							}
+							try (ResultSet rs = ps.executeQuery()) {
+								List<Object[]> batch = new ArrayList<>(batchSize);
+								while (rs.next() && failure == null) {
+									Object[] row = new Object[colCount];
+									for (int i = 0; i < colCount; i++) {
+										row[i] = rs.getObject(i + 1);
+									}
+									batch.add(row);
+									if (batch.size() == batchSize) {
+										put(batch);
+										rows += batch.size();
+										batch = new ArrayList<>(batchSize);
+									}
+								}
+								if (!batch.isEmpty() && failure == null) {
+									put(batch);
+									rows += batch.size();
+								}
+							}
+						} finally {
+							conn.rollback();
+							conn.setAutoCommit(autoCommit);
+						}
+					} catch (Exception e) {
+						if (failure == null) {
+							failure = e;
+						}
+						throw e;
+					}
+					return rows;
+				}
+			};
+		}
+
+		Callable<Long> writer(final String insert, final int[] types) {
+			return new Callable<Long>() {
+				public Long call() throws Exception {
+					long rows = 0;
+					try (Connection conn = target.getConnection()) {
+						boolean autoCommit = conn.getAutoCommit();
+						conn.setAutoCommit(false);
+						try (PreparedStatement ps = conn.prepareStatement(insert)) {
+							while (true) {
+								List<Object[]> batch = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+								if (batch == END) {
+									break;
+								}
+								if (failure != null) {
+									throw new InterruptedException("Copy abandoned");
+								}
+								if (batch == null) {
+									continue;
+								}
+								for (Object[] row : batch) {
+									for (int i = 0; i < row.length; i++) {
+										if (row[i] == null) {
+											ps.setNull(i + 1, types[i]);
+										} else {
+											ps.setObject(i + 1, row[i]);
+										}
+									}
+									ps.addBatch();
+								}
+								ps.executeBatch();
+								conn.commit();
+								rows += batch.size();
+							}
+						} catch (Exception e) {
+							conn.rollback();
+							throw e;
+						} finally {
+							conn.setAutoCommit(autoCommit);
+						}
+					} catch (Exception e) {
+						if (failure == null) {
+							failure = e;
+						}
+						throw e;
+					}
+					return rows;
+				}
+			};
+		}
+	}
+
+	/** Wait for tasks, and add up their row counts */
+	private static long finish(List<Future<Long>> tasks, Copy copy) throws SQLException {
+		long rows = 0;
+		for (Future<Long> f : tasks) {
+			try {
+				rows += f.get();
+			} catch (InterruptedException e) {
+				copy.failure = e;
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				// reported below
+			}
+		}
+		Exception e = copy.failure;
+		if (e instanceof SQLException) {
+			throw (SQLException) e;
+		} else if (e != null) {
+			throw new SQLException("Copy failed: " + e, e);
+		}
+		return rows;
+	}
+
+	/**
+	 * Find the table's primary key, if it's a single integer column.
+	 * @return The key column name, or null
+	 */
+	static String findNumericKey(DatabaseMetaData md, String table,
+		String[] columns, int[] types) throws SQLException {
+		String key = null;
+		try (ResultSet rs = md.getPrimaryKeys(null, null, table)) {
+			while (rs.next()) {
+				if (key != null) {
+					return null;		// more than one column
+				}
+				key = rs.getString("COLUMN_NAME");
+			}
+		}
+		for (int i = 0; key != null && i < columns.length; i++) {
+			if (columns[i].equalsIgnoreCase(key)) {
+				switch (types[i]) {
+				case Types.TINYINT:
+				case Types.SMALLINT:
+				case Types.INTEGER:
+				case Types.BIGINT:
+				case Types.NUMERIC:
+				case Types.DECIMAL:
+					return columns[i];
+				default:
+					return null;
+				}
+			}
+		}
+		return null;
+	}
+
+	/** @return The smallest and largest key, or null if the table is empty */
+	static long[] getKeyBounds(Connection conn, String table, String key)
+		throws SQLException {
+		try (Statement st = conn.createStatement();
+			ResultSet rs = st.executeQuery(
+				"SELECT MIN(" + key + "), MAX(" + key + ") FROM " + table)) {
+			if (!rs.next()) {
+				return null;
+			}
+			long min = rs.getLong(1);
+			if (rs.wasNull()) {
+				return null;
+			}
+			return new long[] { min, rs.getLong(2) };
+		}
+	}
+
+	/**
+	 * Split the keys from min to max into n ranges of about the same width.
+	 * @return The n - 1 boundaries between ranges (fewer if there are
+	 * fewer than n keys), in order
+	 */
+	static long[] split(long min, long max, int n) {
+		double width = ((double) max - min + 1) / n;
+		List<Long> splits = new ArrayList<>();
+		long last = min;
+		for (int i = 1; i < n; i++) {
+			long s = min + (long) Math.ceil(width * i);
+			if (s > last && s <= max) {
+				splits.add(s);
+				last = s;
+			}
+		}
+		long[] ret = new long[splits.size()];
+		for (int i = 0; i < ret.length; i++) {
+			ret[i] = splits.get(i);
+		}
+		return ret;
+	}
+
+	private synchronized void startPools() {
+		if (readPool == null) {
+			readPool = Executors.newFixedThreadPool(readers);
+			writePool = Executors.newFixedThreadPool(writers);
+		}
+	}
+
+	/** Stop the reader and writer threads; the pools are left open */
+	@Override
+	public synchronized void close() {
+		if (readPool != null) {
+			readPool.shutdown();
+			writePool.shutdown();
+			readPool = writePool = null;
+		}
+	}
+
+	/**
+	 * Set how many source and target connections to use at once.
+	 * @param readers The number of key ranges read at once
+	 * @param writers The number of inserting connections
+	 */
+	public synchronized void setParallelism(int readers, int writers) {
+		if (readers < 1 || writers < 1) {
+			throw new IllegalArgumentException("Need at least one reader and writer");
+		}
+		close();
+		this.readers = readers;
+		this.writers = writers;
+	}
+
+	/** @param ranges The number of key ranges to split each table into;
+	 * by default, one per reader
+	 */
+	public void setRangesPerTable(int ranges) {
+		this.rangesPerTable = ranges;
+	}
+
+	/** @param batchSize The number of rows per insert batch and commit */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be positive");
+		}
+		this.batchSize = batchSize;
+	}
+
+	/** @param queueSize The number of batches that can wait for a writer */
+	public void setQueueSize(int queueSize) {
+		if (queueSize < 1) {
+			throw new IllegalArgumentException("Queue size must be positive");
+		}
+		this.queueSize = queueSize;
+	}
+
+	/** @param fetchSize The fetch size hint for the reading statements */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/** @param progress Where to report each table's throughput, or null */
+	public void setProgress(PrintStream progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Copy tables between two configurations from the command line:
+	 * TableCopier [-f configFile] [-r readers] [-w writers] [-b batchSize]
+	 * sourceConfig targetConfig table ...
+	 * @param args The arguments
+	 */
+	public static void main(String[] args) {
+		int readers = 4, writers = 2, batchSize = 1000;
+		GetOpt go = new GetOpt("f:r:w:b:");
+		char c;
+		while ((c = go.getopt(args)) != GetOpt.DONE) {
+			switch (c) {
+			case 'f':
+				ConnectionUtil.setConfigFileName(go.optarg());
+				break;
+			case 'r':
+				readers = Integer.parseInt(go.optarg());
+				break;
+			case 'w':
+				writers = Integer.parseInt(go.optarg());
+				break;
+			case 'b':
+				batchSize = Integer.parseInt(go.optarg());
+				break;
+			default:
+				usage();
+			}
+		}
+		int first = go.getOptInd();
+		if (args.length - first < 3) {
+			usage();
+		}
+		try (TableCopier copier = new TableCopier(args[first], args[first + 1])) {
+			copier.setParallelism(readers, writers);
+			copier.setBatchSize(batchSize);
+			for (int i = first + 2; i < args.length; i++) {
+				copier.copy(args[i]);
+			}
+		} catch (SQLException ex) {
+			throw new DataBaseException(ex.toString());
+		} finally {
+			ConnectionUtil.closePools();
+		}
+	}
+
+	private static void usage() {
+		System.err.println("Usage: TableCopier [-f configFile] [-r readers] [-w writers] " +
+			"[-b batchSize] sourceConfig targetConfig table ...");
+		System.exit(1);
+	}
+}
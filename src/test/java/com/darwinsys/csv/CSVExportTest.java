@@ -42,6 +42,14 @@ public class CSVExportTest extends TestCase {
         line.add(123);
         line.add("\"\"");
         assertEquals("quote at end", "123,\"\"", CSVExport.toString(line));
+
+        line.clear();
+        line.add("Say \"hi\", Ian");
+        line.add("1.5");
+        assertEquals("embedded quotes doubled", "\"Say \"\"hi\"\", Ian\",1.5",
+            CSVExport.toString(line));
+        assertEquals("other delimiter", "\"Say \"\"hi\"\", Ian\"|1.5",
+            CSVExport.toString(line, '|'));
 	}
 
     /**
@@ -56,4 +64,20 @@ public class CSVExportTest extends TestCase {
         System.out.println(result);
         assertEquals("123,\"\",456", result);
     }
+
+    /**
+     * Test RFC 4180 quoting: only fields with the delimiter, quotes
+     * or line endings are quoted, and embedded quotes are doubled.
+     */
+    public void testRFC4180() throws Exception {
+        line.add(123);
+        line.add("Darwin, Ian");
+        line.add("Say \"hi\"");
+        line.add("two\nlines");
+        line.add(null);
+        assertEquals("123,\"Darwin, Ian\",\"Say \"\"hi\"\"\",\"two\nlines\",",
+            CSVExport.toRFC4180(line, ','));
+        assertEquals("tab delimiter", "123\tDarwin, Ian\t\"Say \"\"hi\"\"\"\t\"two\nlines\"\t",
+            CSVExport.toRFC4180(line, '\t'));
+    }
 }
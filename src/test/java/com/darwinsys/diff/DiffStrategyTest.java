@@ -0,0 +1,189 @@
+package com.darwinsys.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.darwinsys.diff.Diff.Item;
+
+public class DiffStrategyTest {
+
+	static final DiffStrategy[] ALL = {
+		Diff.MYERS, Diff.PATIENCE, Diff.HISTOGRAM, Diff.PARALLEL, Diff.AUTO,
+		new Diff.Myers(1), new Diff.Myers(3)
+	};
+
+	/**
+	 * Check that a set of Items is a correct edit script: that the lines
+	 * outside the Items are equal, and in order.
+	 * @return The number of lines deleted plus the number inserted
+	 */
+	static int check(int[] a, int[] b, Item[] items) {
+		int i = 0, j = 0, cost = 0;
+		for (Item item : items) {
+			assertTrue(item.startA >= i && item.startB >= j);
+			assertEquals(item.startA - i, item.startB - j);
+			while (i < item.startA) {
+				assertEquals("line " + i, a[i++], b[j++]);
+			}
+			i += item.deletedA;
+			j += item.insertedB;
+			cost += item.deletedA + item.insertedB;
+		}
+		assertEquals(a.length - i, b.length - j);
+		while (i < a.length) {
+			assertEquals("line " + i, a[i++], b[j++]);
+		}
+		return cost;
+	}
+
+	static String toString(Item[] items) {
+		StringBuilder sb = new StringBuilder();
+		for (Item d : items) {
+			sb.append(d.deletedA + "." + d.insertedB + "." + d.startA + "." + d.startB + "*");
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testRandom() {
+		Random r = new Random(42);
+		for (int n = 0; n < 200; n++) {
+			int[] a = new int[r.nextInt(60)], b = new int[r.nextInt(60)];
+			int range = 1 + r.nextInt(40);
+			for (int i = 0; i < a.length; i++) {
+				a[i] = r.nextInt(range);
+			}
+			for (int i = 0; i < b.length; i++) {
+				b[i] = r.nextBoolean() && i < a.length ? a[i] : r.nextInt(range);
+			}
+			int minimal = check(a, b, Diff.MYERS.diff(a, b));
+			for (DiffStrategy s : ALL) {
+				assertTrue(check(a, b, s.diff(a, b)) >= minimal);
+			}
+		}
+	}
+
+	@Test
+	public void testSame() {
+		int[] a = { 1, 2, 3 };
+		for (DiffStrategy s : ALL) {
+			assertEquals(0, s.diff(a, a.clone()).length);
+			assertEquals("0.3.0.0*", toString(s.diff(new int[0], a)));
+			assertEquals("3.0.0.0*", toString(s.diff(a, new int[0])));
+		}
+	}
+
+	/**
+	 * A function moved below another: Myers matches up the braces and
+	 * blank lines, while patience and histogram move the whole function.
+	 */
+	@Test
+	public void testMovedBlock() {
+		String a = "void f() {\n  foo();\n}\n\nvoid g() {\n  bar();\n}\n";
+		String b = "void g() {\n  bar();\n}\n\nvoid f() {\n  foo();\n}\n";
+		String moved = "4.0.0.0*0.4.7.3*";
+		assertEquals(moved, toString(Diff.diffText(a, b, false, false, false, Diff.PATIENCE)));
+		assertEquals(moved, toString(Diff.diffText(a, b, false, false, false, Diff.HISTOGRAM)));
+	}
+
+	/** Repeated lines, which patience can't use as anchors */
+	@Test
+	public void testHistogramRepeats() {
+		int[] a = { 1, 9, 1, 2, 1, 3, 1 };
+		int[] b = { 1, 2, 1, 9, 1, 3, 1 };
+		for (DiffStrategy s : ALL) {
+			check(a, b, s.diff(a, b));
+		}
+	}
+
+	@Test
+	public void testDenseCodes() {
+		int[] a = { -5, 1000000, 7 }, b = { 7, -5 };
+		int[][] codes = Diff.denseCodes(a, b);
+		assertEquals(codes[0][0], codes[1][1]);
+		assertEquals(codes[0][2], codes[1][0]);
+		for (int[] side : codes) {
+			for (int c : side) {
+				assertTrue(c >= 0 && c <= a.length + b.length);
+			}
+		}
+		int[] small = { 1, 2 };
+		assertSame(small, Diff.denseCodes(small, new int[] { 2, 1 })[0]);
+		check(a, b, Diff.PATIENCE.diff(a, b));
+	}
+
+	@Test
+	public void testChoose() {
+		int[] small = new int[100];
+		assertSame(Diff.MYERS, Diff.choose(small, small));
+		int[] unique = new int[Diff.AUTO_MYERS_LINES];
+		int[] repeated = new int[Diff.AUTO_MYERS_LINES];
+		for (int i = 0; i < unique.length; i++) {
+			unique[i] = i + 1;
+			repeated[i] = i % 10 + 1;
+		}
+		assertSame(Diff.PATIENCE, Diff.choose(unique, unique));
+		assertSame(Diff.HISTOGRAM, Diff.choose(repeated, repeated));
+	}
+
+	/** Two large inputs with nothing in common, the worst case for Myers */
+	@Test
+	public void testCostLimit() {
+		Random r = new Random(42);
+		int[] a = new int[20000], b = new int[20000];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = r.nextInt(1000);
+			b[i] = r.nextInt(1000);
+		}
+		Diff.Myers fast = new Diff.Myers(Diff.Myers.FAST);
+		check(a, b, fast.diff(a, b));
+		assertTrue(fast.toString(), fast.getCutoffs() > 0);
+		assertTrue(fast.getSearches() >= fast.getCutoffs());
+
+		Diff.Myers minimal = new Diff.Myers();
+		int[] small = Arrays.copyOf(a, 300), other = Arrays.copyOf(b, 300);
+		int best = check(small, other, minimal.diff(small, other));
+		assertTrue(check(small, other, new Diff.Myers(5).diff(small, other)) >= best);
+		assertEquals(0, minimal.getCutoffs());
+		assertTrue(minimal.getSearches() > 0);
+	}
+
+	/** Each cutoff leaves one box nearly as big as before; that mustn't use stack for every cutoff */
+	@Test
+	public void testCostLimitLarge() {
+		Random r = new Random(42);
+		int[] a = new int[1000000], b = new int[1000000];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = r.nextInt(1000);
+			b[i] = 1000 + r.nextInt(1000);
+		}
+		for (int limit : new int[] { 1, 10, 64 }) {
+			Diff.Myers myers = new Diff.Myers(limit);
+			assertEquals(a.length + b.length, check(a, b, myers.diff(a, b)));
+			assertTrue(myers.toString(), myers.getCutoffs() > 0);
+		}
+	}
+
+	/** The limit mustn't change the diff of inputs that are nearly the same */
+	@Test
+	public void testCostLimitNotReached() {
+		int[] a = new int[1000];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = i;
+		}
+		int[] b = a.clone();
+		b[500] = -1;
+		assertEquals("1.1.500.500*", toString(Diff.MYERS_FAST.diff(a, b)));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBadCostLimit() {
+		new Diff.Myers(-2);
+	}
+}
@@ -2,6 +2,12 @@ package com.darwinsys.diff;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -111,4 +117,63 @@ public class DiffTest {
 				diffsToString(Diff.diffText(a, b, false, false, false)),
 				"0.1.4.4*1.0.9.10*");
 	}
+
+	/** Run diffFiles() on two strings, by way of temporary files */
+	private Diff.Item[] diffFiles(String a, String b, boolean trimSpace,
+			boolean ignoreSpace, boolean ignoreCase) throws IOException {
+		Path fa = Files.createTempFile("diff", ".a"), fb = Files.createTempFile("diff", ".b");
+		try {
+			Files.write(fa, a.getBytes(StandardCharsets.UTF_8));
+			Files.write(fb, b.getBytes(StandardCharsets.UTF_8));
+			return Diff.diffFiles(fa, fb, trimSpace, ignoreSpace, ignoreCase);
+		} finally {
+			Files.delete(fa);
+			Files.delete(fb);
+		}
+	}
+
+	@Test
+	public void filesSameAsText() throws IOException {
+		Random r = new Random(42);
+		for (int n = 0; n < 20; n++) {
+			StringBuilder a = new StringBuilder(), b = new StringBuilder();
+			for (int i = 0; i < 200; i++) {
+				String line = "line " + r.nextInt(30);
+				if (r.nextInt(5) != 0) {
+					a.append(line).append('\n');
+				}
+				if (r.nextInt(5) != 0) {
+					b.append(r.nextInt(10) == 0 ? "new" : line).append('\n');
+				}
+			}
+			assertEquals(diffsToString(Diff.diffText(a.toString(), b.toString())),
+				diffsToString(diffFiles(a.toString(), b.toString(), false, false, false)));
+		}
+	}
+
+	@Test
+	public void filesOptions() throws IOException {
+		String a = "one\r\n  Two  three \nfour\n";
+		String b = "one\nTwo three\nFOUR\n";
+		assertEquals("2.2.1.1*", diffsToString(diffFiles(a, b, false, false, false)));
+		assertEquals("1.1.2.2*", diffsToString(diffFiles(a, b, true, true, false)));
+		assertEquals("1.1.1.1*", diffsToString(diffFiles(a, b, false, false, true)));
+		assertEquals("", diffsToString(diffFiles(a, b, true, true, true)));
+		assertEquals(diffsToString(Diff.diffText(a, b, true, true, true)),
+			diffsToString(diffFiles(a, b, true, true, true)));
+	}
+
+	@Test
+	public void filesManyLines() throws IOException {
+		// Enough distinct lines to make the LineTable grow several times
+		StringBuilder a = new StringBuilder(), b = new StringBuilder();
+		for (int i = 0; i < 50000; i++) {
+			a.append(i).append('\n');
+			if (i != 12345) {
+				b.append(i).append('\n');
+			}
+		}
+		assertEquals("1.0.12345.12345*",
+			diffsToString(diffFiles(a.toString(), b.toString(), false, false, false)));
+	}
 }
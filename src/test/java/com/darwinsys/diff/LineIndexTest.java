@@ -0,0 +1,78 @@
+package com.darwinsys.diff;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class LineIndexTest {
+
+	Path file;
+
+	Path write(String text) throws IOException {
+		file = Files.createTempFile("lineindex", ".txt");
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testLines() throws IOException {
+		try (LineIndex ix = new LineIndex(write("one\r\n\ntwo\nthree"))) {
+			assertEquals(4, ix.size());
+			assertEquals("one", ix.getLine(0));
+			assertEquals("", ix.getLine(1));
+			assertEquals("two", ix.getLine(2));
+			assertEquals("three", ix.getLine(3));
+			assertEquals(6, ix.getStart(2));
+			assertEquals(9, ix.getEnd(2));
+			assertTrue(ix.hasNewline(2));
+			assertFalse(ix.hasNewline(3));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ix.writeLine(0, out, new byte[2]);
+			assertEquals("one", out.toString("UTF-8"));
+		}
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		try (LineIndex ix = new LineIndex(write(""))) {
+			assertEquals(0, ix.size());
+		}
+		Files.delete(file);
+		try (LineIndex ix = new LineIndex(write("\n"))) {
+			assertEquals(1, ix.size());
+			assertEquals("", ix.getLine(0));
+		}
+	}
+
+	@Test(expected=IndexOutOfBoundsException.class)
+	public void testBadLine() throws IOException {
+		try (LineIndex ix = new LineIndex(write("one\n"))) {
+			ix.getLine(1);
+		}
+	}
+
+	/** Lines that cross from one mapped segment into the next */
+	@Test
+	public void testSegments() throws IOException {
+		try (LineIndex ix = new LineIndex(write("abcdef\nghij\r\nk\n"), 2)) {
+			assertEquals(3, ix.size());
+			assertEquals("abcdef", ix.getLine(0));
+			assertEquals("ghij", ix.getLine(1));
+			assertEquals("k", ix.getLine(2));
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.darwinsys.diff;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelDiffTest {
+
+	ForkJoinPool pool;
+
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void testGaps() {
+		// 1 and 4 are unique, 2 and 3 aren't; 5 is unique but out of order
+		int[] a = { 5, 1, 2, 2, 3, 4, 3 };
+		int[] b = { 1, 2, 3, 3, 4, 5 };
+		assertEquals("[0, 1, 0, 0, 3, 4, 2, 3, 6, 7, 5, 6]",
+			Arrays.toString(ParallelDiff.gaps(a, b)));
+		assertEquals("[]", Arrays.toString(ParallelDiff.gaps(a, a)));
+		assertEquals("[0, 0, 0, 6]", Arrays.toString(ParallelDiff.gaps(new int[0], b)));
+	}
+
+	/** Many small tasks must give the same answer as one big one */
+	@Test
+	public void testTasks() {
+		Random r = new Random(42);
+		int[] a = new int[100_000], b = new int[100_000];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = i % 3 == 0 ? r.nextInt(20) : i;
+			b[i] = r.nextInt(10) == 0 ? -i : a[i];
+		}
+		String one = DiffStrategyTest.toString(
+			new ParallelDiff(pool, Integer.MAX_VALUE).diff(a, b));
+		String many = DiffStrategyTest.toString(new ParallelDiff(pool, 100).diff(a, b));
+		assertEquals(one, many);
+		DiffStrategyTest.check(a, b, new ParallelDiff(pool, 100).diff(a, b));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBadTaskLines() {
+		new ParallelDiff(pool, 0);
+	}
+}
@@ -0,0 +1,181 @@
+package com.darwinsys.diff;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.darwinsys.diff.Diff.Item;
+
+public class UnifiedDiffWriterTest {
+
+	/** The same files as in DiffPrintTest */
+	String[] dataOld = { "one", "two", "three", "four", "five", "six" };
+	String[] dataNew = { "one", "three", "four", "funf", "six", "heaven" };
+
+	Item[] items;
+	StringWriter out;
+	UnifiedDiffWriter writer;
+
+	@Before
+	public void setUp() {
+		items = Diff.diffText(String.join("\n", dataOld) + "\n", String.join("\n", dataNew) + "\n");
+		out = new StringWriter();
+		writer = new UnifiedDiffWriter(out);
+	}
+
+	@Test
+	public void testOneHunk() throws IOException {
+		assertEquals(1, writer.write(items, dataOld, dataNew, "a", "b"));
+		assertEquals("--- a\n+++ b\n@@ -1,6 +1,6 @@\n" +
+			" one\n-two\n three\n four\n-five\n+funf\n six\n+heaven\n",
+			out.toString());
+	}
+
+	@Test
+	public void testNoContext() throws IOException {
+		writer.setContext(0);
+		assertEquals(3, writer.write(items, dataOld, dataNew, "a", "b"));
+		assertEquals("--- a\n+++ b\n" +
+			"@@ -2 +1,0 @@\n-two\n" +
+			"@@ -5 +4 @@\n-five\n+funf\n" +
+			"@@ -6,0 +6 @@\n+heaven\n",
+			out.toString());
+	}
+
+	@Test
+	public void testSame() throws IOException {
+		assertEquals(0, writer.write(new Item[0], dataOld, dataOld, "a", "b"));
+		assertEquals("", out.toString());
+	}
+
+	@Test
+	public void testRange() {
+		assertEquals("0,0", UnifiedDiffWriter.range(0, 0));
+		assertEquals("1", UnifiedDiffWriter.range(0, 1));
+		assertEquals("11,5", UnifiedDiffWriter.range(10, 5));
+	}
+
+	/** From a LineIndex, with non-ASCII text and a last line without a newline */
+	@Test
+	public void testIndex() throws IOException {
+		Path fa = Files.createTempFile("unified", ".a"), fb = Files.createTempFile("unified", ".b");
+		try {
+			StringBuilder a = new StringBuilder(), b = new StringBuilder();
+			for (int i = 0; i < 20; i++) {
+				a.append("line ").append(i).append("\r\n");
+				b.append(i == 10 ? "ligne dix, d\u00e9j\u00e0 vu" : "line " + i).append("\r\n");
+			}
+			a.append("fin");
+			b.append("end");
+			Files.write(fa, a.toString().getBytes(StandardCharsets.UTF_8));
+			Files.write(fb, b.toString().getBytes(StandardCharsets.UTF_8));
+			writer.setContext(2);
+			try (LineIndex ia = new LineIndex(fa); LineIndex ib = new LineIndex(fb)) {
+				Item[] diffs = Diff.diffLines(ia, ib, false, false, false);
+				assertEquals(2, writer.write(diffs, ia, ib, "a", "b"));
+			}
+			assertEquals("--- a\n+++ b\n" +
+				"@@ -9,5 +9,5 @@\n line 8\n line 9\n-line 10\n+ligne dix, d\u00e9j\u00e0 vu\n line 11\n line 12\n" +
+				"@@ -19,3 +19,3 @@\n line 18\n line 19\n-fin\n\\ No newline at end of file\n" +
+				"+end\n\\ No newline at end of file\n",
+				out.toString());
+		} finally {
+			Files.delete(fa);
+			Files.delete(fb);
+		}
+	}
+
+	/**
+	 * Apply a unified diff, as patch would, so the writer's output
+	 * can be checked by what it does rather than how it looks.
+	 */
+	static String apply(String text, String diff) {
+		String[] old = text.split("(?<=\n)", -1);
+		List<String> lines = new ArrayList<>(Arrays.asList(old));
+		if (lines.get(lines.size() - 1).isEmpty()) {
+			lines.remove(lines.size() - 1);
+		}
+		List<String> ret = new ArrayList<>();
+		String[] d = diff.split("\n");
+		int at = 0;
+		for (int i = 2; i < d.length; i++) {
+			if (d[i].startsWith("@@")) {
+				int start = Integer.parseInt(d[i].substring(4).split("[ ,]")[0]);
+				int to = d[i].substring(4).split("[ ,]")[1].equals("0") ? start : start - 1;
+				while (at < to) {
+					ret.add(lines.get(at++));
+				}
+				continue;
+			}
+			// The newline, unless the next line says there wasn't one
+			String nl = i + 1 < d.length && d[i + 1].startsWith("\\") ? "" : "\n";
+			switch (d[i].charAt(0)) {
+			case ' ':
+				assertEquals(lines.get(at++), d[i].substring(1) + nl);
+				ret.add(d[i].substring(1) + nl);
+				break;
+			case '-':
+				assertEquals(lines.get(at++), d[i].substring(1) + nl);
+				break;
+			case '+':
+				ret.add(d[i].substring(1) + nl);
+				break;
+			}
+		}
+		while (at < lines.size()) {
+			ret.add(lines.get(at++));
+		}
+		return String.join("", ret);
+	}
+
+	/** Write two files, diff them, and check that the diff turns one into the other */
+	private String roundTrip(String a, String b) throws IOException {
+		Path fa = Files.createTempFile("unified", ".a"), fb = Files.createTempFile("unified", ".b");
+		try {
+			Files.write(fa, a.getBytes(StandardCharsets.UTF_8));
+			Files.write(fb, b.getBytes(StandardCharsets.UTF_8));
+			out.getBuffer().setLength(0);
+			try (LineIndex ia = new LineIndex(fa); LineIndex ib = new LineIndex(fb)) {
+				writer.write(Diff.diffLines(ia, ib, false, false, false), ia, ib, "a", "b");
+			}
+			assertEquals(b, apply(a, out.toString()));
+			return out.toString();
+		} finally {
+			Files.delete(fa);
+			Files.delete(fb);
+		}
+	}
+
+	/** A last line that differs only in its newline is a difference */
+	@Test
+	public void testNewlineOnly() throws IOException {
+		assertEquals("--- a\n+++ b\n@@ -1 +1 @@\n-x\n\\ No newline at end of file\n+x\n",
+			roundTrip("x", "x\n"));
+		assertEquals("--- a\n+++ b\n@@ -1 +1 @@\n-x\n+x\n\\ No newline at end of file\n",
+			roundTrip("x\n", "x"));
+		roundTrip("one\ntwo\nthree", "one\nTWO\nthree\n");
+		roundTrip("one\ntwo\nthree\n", "zero\none\ntwo\nthree");
+		assertEquals("", roundTrip("one\ntwo", "one\ntwo"));
+	}
+
+	@Test
+	public void testDiffPrint() throws IOException {
+		DiffPrint.unifiedPrint(items, dataOld, dataNew, "a", "b", out);
+		assertEquals(0, out.toString().indexOf("--- a\n+++ b\n@@ -1,6 +1,6 @@\n"));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testBadContext() {
+		writer.setContext(-1);
+	}
+}
@@ -23,4 +23,10 @@ public class StringFormatTest extends TestCase {
 		assertEquals("   JavaFun",
 			new StringFormat(10, StringFormat.JUST_RIGHT).format(mesg));
 	}
+	public void testSlice() {
+		StringBuffer sb = new StringBuffer("|");
+		new StringFormat(4, StringFormat.JUST_RIGHT).format(mesg, 4, 7, sb);
+		new StringFormat(3, StringFormat.JUST_LEFT).format(mesg, 0, 7, sb);
+		assertEquals("| FunJav", sb.toString());
+	}
 }
@@ -0,0 +1,58 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.darwinsys.util.VariableMap;
+
+public class BoundStatementTest {
+
+	VariableMap vars;
+
+	@Before
+	public void setUp() {
+		vars = new VariableMap();
+		vars.setVar("who", "Ian");
+		vars.setVar("dept", "O'Reilly");
+		vars.setVar("tab", "emp");
+	}
+
+	@Test
+	public void testNoVariables() {
+		BoundStatement b = BoundStatement.parse("select * from emp", vars);
+		assertEquals("select * from emp", b.getSQL());
+		assertFalse(b.hasParameters());
+		b = BoundStatement.parse("select * from ${tab}", null);
+		assertEquals("select * from ${tab}", b.getSQL());
+	}
+
+	@Test
+	public void testParameters() {
+		BoundStatement b = BoundStatement.parse(
+			"select * from emp where name = ${who} and x = ${who}", vars);
+		assertEquals("select * from emp where name = ? and x = ?", b.getSQL());
+		assertTrue(b.hasParameters());
+		assertEquals(Arrays.asList("Ian", "Ian"), b.getValues());
+	}
+
+	@Test
+	public void testInsideQuotes() {
+		BoundStatement b = BoundStatement.parse(
+			"select \"${tab}\".name from \"${tab}\" where dept = '${dept}' and n = ${who}", vars);
+		assertEquals("select \"emp\".name from \"emp\" where dept = 'O''Reilly' and n = ?", b.getSQL());
+		assertEquals(Arrays.asList("Ian"), b.getValues());
+	}
+
+	@Test
+	public void testUnknownVariable() {
+		BoundStatement b = BoundStatement.parse("select ${nosuch}, ${who}", vars);
+		assertEquals("select ${nosuch}, ?", b.getSQL());
+		assertEquals(1, b.getValues().size());
+	}
+}
@@ -0,0 +1,209 @@
+package com.darwinsys.sql;
+
+import static com.darwinsys.sql.MockProxies.proxy;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test CSVLoader against a Connection that records what is done to it */
+public class CSVLoaderTest {
+
+	String query, insert;
+	List<Object[]> batch, loaded;
+	List<Integer> batchSizes;
+	Object[] row;
+	int commits, rollbacks;
+	boolean autoCommit, failRollback;
+	Connection conn;
+
+	@Before
+	public void setUp() {
+		batch = new ArrayList<>();
+		loaded = new ArrayList<>();
+		batchSizes = new ArrayList<>();
+		row = new Object[3];
+		autoCommit = true;
+		conn = proxy(Connection.class, new InvocationHandler() {
+			public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+				switch (m.getName()) {
+				case "getAutoCommit":
+					return autoCommit;
+				case "setAutoCommit":
+					autoCommit = (Boolean) args[0];
+					return null;
+				case "commit":
+					++commits;
+					return null;
+				case "rollback":
+					if (failRollback) {
+						throw new SQLException("Rollback failed");
+					}
+					++rollbacks;
+					batch.clear();
+					return null;
+				case "createStatement":
+					return proxy(Statement.class, statementHandler);
+				case "prepareStatement":
+					insert = (String) args[0];
+					return proxy(PreparedStatement.class, statementHandler);
+				default:
+					return null;
+				}
+			}
+		});
+	}
+
+	InvocationHandler statementHandler = new InvocationHandler() {
+		public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+			switch (m.getName()) {
+			case "executeQuery":
+				query = (String) args[0];
+				String list = query.substring(7, query.indexOf(" FROM "));
+				String[] names = list.equals("*") ?
+					new String[] { "id", "name", "born" } : list.split(", ");
+				int[] types = new int[names.length];
+				for (int i = 0; i < names.length; i++) {
+					types[i] = names[i].equals("id") ? Types.INTEGER :
+						names[i].equals("born") ? Types.DATE : Types.VARCHAR;
+				}
+				return MockResultSets.create("t", names, types, new Object[0][]);
+			case "setObject":
+				row[(Integer) args[0] - 1] = args[1];
+				return null;
+			case "setNull":
+				row[(Integer) args[0] - 1] = null;
+				return null;
+			case "addBatch":
+				batch.add(row.clone());
+				return null;
+			case "executeBatch":
+				int[] counts = new int[batch.size()];
+				Arrays.fill(counts, 1);
+				batchSizes.add(batch.size());
+				loaded.addAll(batch);
+				batch.clear();
+				return counts;
+			default:
+				return null;
+			}
+		}
+	};
+
+	@Test
+	public void testLoad() throws Exception {
+		CSVLoader loader = new CSVLoader(conn, "t");
+		loader.setBatchSize(2);
+		long n = loader.load(new StringReader(
+			"1,Ian,1970-01-02\n" +
+			"2,\"Darwin, Ian\",\n" +
+			"\n" +
+			"3,\"two\nlines\",2000-01-01\n"));
+		assertEquals(3, n);
+		assertEquals("SELECT * FROM t WHERE 1 = 0", query);
+		assertEquals("INSERT INTO t VALUES (?, ?, ?)", insert);
+		assertEquals(Arrays.asList(2, 1), batchSizes);
+		assertArrayEquals(new Object[] { "1", "Ian", "1970-01-02" }, loaded.get(0));
+		// The trailing empty field is NULL
+		assertArrayEquals(new Object[] { "2", "Darwin, Ian", null }, loaded.get(1));
+		assertArrayEquals(new Object[] { "3", "two\nlines", "2000-01-01" }, loaded.get(2));
+		assertEquals(0, commits);
+	}
+
+	@Test
+	public void testHeaderAndCommit() throws Exception {
+		CSVLoader loader = new CSVLoader(conn, "t");
+		loader.setHeader(true);
+		loader.setDelimiter('|');
+		loader.setNullString("\\N");
+		loader.setBatchSize(1);
+		loader.setCommitInterval(2);
+		long n = loader.load(new StringReader("name|id\nIan|1\n\\N|2\nx|3\n"));
+		assertEquals(3, n);
+		assertEquals("SELECT name, id FROM t WHERE 1 = 0", query);
+		assertEquals("INSERT INTO t (name, id) VALUES (?, ?)", insert);
+		assertArrayEquals(new Object[] { null, "2", null }, loaded.get(1));	// row[2] unused
+		assertEquals(2, commits);	// one after two rows, one at the end
+		assertTrue("autocommit restored", autoCommit);
+	}
+
+	@Test
+	public void testOneColumnEmptyLines() throws Exception {
+		CSVLoader loader = new CSVLoader(conn, "t");
+		loader.setColumns(Arrays.asList("name"));
+		long n = loader.load(new StringReader("Ian\n\n\"\"\nDarwin\n\n"));
+		// In one column, an empty line is an empty value, not a line to skip
+		assertEquals(5, n);
+		assertEquals("INSERT INTO t (name) VALUES (?)", insert);
+		assertEquals("Ian", loaded.get(0)[0]);
+		assertNull(loaded.get(1)[0]);
+		assertNull(loaded.get(2)[0]);
+		assertEquals("Darwin", loaded.get(3)[0]);
+		assertNull(loaded.get(4)[0]);
+	}
+
+	@Test
+	public void testTooManyFields() throws Exception {
+		CSVLoader loader = new CSVLoader(conn, "t");
+		loader.setCommitInterval(10);
+		try {
+			loader.load(new StringReader("1,a,b\n2,a,b,c\n"));
+			fail("Did not throw");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+		}
+		assertEquals(1, rollbacks);
+		assertFalse(commits > 0);
+	}
+
+	@Test
+	public void testRollbackFails() throws Exception {
+		CSVLoader loader = new CSVLoader(conn, "t");
+		loader.setCommitInterval(10);
+		failRollback = true;
+		try {
+			loader.load(new StringReader("1,a,b\n2,a,b,c\n"));
+			fail("Did not throw");
+		} catch (IOException e) {
+			// The original failure, with the rollback's attached
+			assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+			assertEquals("Rollback failed", e.getSuppressed()[0].getMessage());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testParserError() throws Exception {
+		CSVLoader loader = new CSVLoader(conn, "t");
+		try {
+			loader.load(new Reader() {
+				public int read(char[] buf, int off, int len) {
+					throw new OutOfMemoryError("Test");
+				}
+				public void close() {
+				}
+			});
+			fail("Did not throw");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof OutOfMemoryError);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionPoolTest {
+
+	ConnectionPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		Configuration config = new SimpleSQLConfiguration("pooltest",
+			"jdbc:mock:pool", ConnectionUtilTest.MOCK_JBDC_DRIVER, "operator", "secret");
+		pool = new ConnectionPool(config, 0, 2);
+		pool.setBorrowTimeout(100);
+	}
+
+	@After
+	public void tearDown() {
+		pool.close();
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		Connection c1 = pool.getConnection();
+		assertNotNull(c1);
+		c1.close();
+		assertTrue(c1.isClosed());
+		Connection c2 = pool.getConnection();
+		assertFalse(c2.isClosed());
+		c2.close();
+		ConnectionPool.Statistics stats = pool.getStatistics();
+		assertEquals(1, stats.getCreated());
+		assertEquals(2, stats.getBorrowed());
+		assertEquals(2, stats.getReturned());
+		assertEquals(1, stats.getIdle());
+	}
+
+	@Test(expected=SQLException.class)
+	public void testUseAfterClose() throws Exception {
+		Connection c = pool.getConnection();
+		c.close();
+		c.getAutoCommit();
+	}
+
+	@Test
+	public void testBorrowTimeout() throws Exception {
+		Connection c1 = pool.getConnection();
+		Connection c2 = pool.getConnection();
+		try {
+			pool.getConnection();
+			fail("Did not time out when pool was full");
+		} catch (SQLTimeoutException e) {
+			// expected
+		}
+		assertEquals(1, pool.getStatistics().getTimeouts());
+		assertEquals(2, pool.getStatistics().getActive());
+		c1.close();
+		c2.close();
+	}
+
+	@Test
+	public void testWaitForReturn() throws Exception {
+		pool.setBorrowTimeout(5000);
+		final Connection c1 = pool.getConnection();
+		pool.getConnection();
+		new Thread(() -> {
+			try {
+				Thread.sleep(50);
+				c1.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}).start();
+		Connection c3 = pool.getConnection();
+		assertNotNull(c3);
+		assertEquals(1, pool.getStatistics().getWaits());
+		assertEquals(2, pool.getStatistics().getCreated());
+	}
+
+	@Test
+	public void testIdleEviction() throws Exception {
+		pool.setIdleTimeout(1);
+		pool.getConnection().close();
+		assertEquals(1, pool.getStatistics().getIdle());
+		Thread.sleep(5);
+		pool.evictAndFill();
+		assertEquals(0, pool.getStatistics().getOpen());
+		assertEquals(1, pool.getStatistics().getDestroyed());
+	}
+
+	/** A timeout of 0 means no eviction, though the task still runs to keep minSize */
+	@Test
+	public void testNoEviction() throws Exception {
+		pool.setIdleTimeout(0);
+		Connection c1 = pool.getConnection(), c2 = pool.getConnection();
+		c1.close();
+		c2.close();
+		pool.evictAndFill();
+		assertEquals(2, pool.getStatistics().getIdle());
+		assertEquals(0, pool.getStatistics().getDestroyed());
+	}
+
+	@Test
+	public void testRegistry() {
+		ConnectionPool p1 = ConnectionUtil.getPool("test");
+		assertSame(p1, ConnectionUtil.getPool("test"));
+		ConnectionUtil.closePools();
+	}
+}
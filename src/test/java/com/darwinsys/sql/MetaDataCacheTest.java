@@ -0,0 +1,111 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Test MetaDataCache against a DatabaseMetaData that counts its calls */
+public class MetaDataCacheTest {
+
+	int tableCalls, columnCalls;
+	MetaDataCache cache;
+
+	@Before
+	public void setUp() {
+		DatabaseMetaData md = (DatabaseMetaData) Proxy.newProxyInstance(
+			DatabaseMetaData.class.getClassLoader(), new Class<?>[] { DatabaseMetaData.class },
+			new InvocationHandler() {
+				public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+					switch (m.getName()) {
+					case "getTables":
+						++tableCalls;
+						return MockResultSets.create("tables",
+							new String[] { "TABLE_NAME", "TABLE_TYPE" },
+							new int[] { Types.VARCHAR, Types.VARCHAR },
+							new Object[][] {
+								{ "Customer", "TABLE" }, { "customer_address", "TABLE" },
+								{ "invoice", "TABLE" }, { "CUSTVIEW", "VIEW" },
+							});
+					case "getColumns":
+						++columnCalls;
+						return MockResultSets.create("columns",
+							new String[] { "TABLE_NAME", "COLUMN_NAME" },
+							new int[] { Types.VARCHAR, Types.VARCHAR },
+							new Object[][] {
+								{ args[2], "id" }, { args[2], "name" }, { args[2], "NAME2" },
+							});
+					default:
+						return null;
+					}
+				}
+			});
+		cache = new MetaDataCache(md);
+	}
+
+	@Test
+	public void testTablesCached() throws Exception {
+		ResultSet rs = cache.getTables();
+		int n = 0;
+		while (rs.next()) {
+			++n;
+		}
+		rs.close();
+		assertEquals(4, n);
+		// Closing the first view must not empty the cache
+		rs = cache.getTables();
+		assertTrue(rs.next());
+		assertEquals("Customer", rs.getString("TABLE_NAME"));
+		assertEquals(1, tableCalls);
+	}
+
+	@Test
+	public void testPrefix() throws Exception {
+		assertEquals(Arrays.asList("Customer", "customer_address", "CUSTVIEW"),
+			new ArrayList<>(cache.getTableNames("cust")));
+		assertEquals(4, cache.getTableNames("").size());
+		assertTrue(cache.getTableNames("x").isEmpty());
+		assertEquals(Arrays.asList("name", "NAME2"),
+			new ArrayList<>(cache.getColumnNames("invoice", "NA")));
+		assertEquals(1, tableCalls);
+		assertEquals(1, columnCalls);
+	}
+
+	@Test
+	public void testColumnsPerTable() throws Exception {
+		cache.getColumns("invoice");
+		cache.getColumns("invoice");
+		ResultSet rs = cache.getColumns("customer");
+		assertTrue(rs.next());
+		assertEquals("customer", rs.getString(1));
+		assertEquals(2, columnCalls);
+	}
+
+	@Test
+	public void testRefreshAndTTL() throws Exception {
+		cache.getTables();
+		cache.refresh();
+		cache.getTables();
+		assertEquals(2, tableCalls);
+		cache.setTTL(1);
+		Thread.sleep(5);
+		cache.getTables();
+		assertEquals(3, tableCalls);
+		cache.setTTL(0);
+		Thread.sleep(5);
+		cache.getTables();
+		assertEquals(3, tableCalls);
+		assertFalse(cache.getTableNames("inv").isEmpty());
+	}
+}
@@ -157,8 +157,7 @@ public class MockJDBCConnection implements Connection {
 	}
 
 	public boolean isValid(int timeout) throws SQLException {
-		// TODO Auto-generated method stub
-		return false;
+		return isOpen;
 	}
 
 	public String nativeSQL(String sql) throws SQLException {
@@ -7,10 +7,14 @@ import java.sql.DriverPropertyInfo;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.util.Properties;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 public class MockJDBCDriver implements Driver {
 
+	/** If set, connect() gets its Connections here, for tests that need them to do something */
+	static volatile Supplier<Connection> connections;
+
 	static {
 		try {
 			DriverManager.registerDriver(new MockJDBCDriver());
@@ -24,7 +28,8 @@ public class MockJDBCDriver implements Driver {
 	}
 
 	public Connection connect(String url, Properties info) throws SQLException {
-		return new MockJDBCConnection();
+		Supplier<Connection> s = connections;
+		return s != null ? s.get() : new MockJDBCConnection();
 	}
 
 	public int getMajorVersion() {
@@ -0,0 +1,39 @@
+package com.darwinsys.sql;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/** Build fake JDBC objects (Connection, Statement, etc.) for testing, from InvocationHandlers. */
+public class MockProxies {
+
+	/**
+	 * Create a proxy for one interface.
+	 * @param c The interface, e.g., Connection.class
+	 * @param h The handler that all calls go to
+	 * @return The proxy
+	 */
+	public static <T> T proxy(Class<T> c, InvocationHandler h) {
+		return c.cast(Proxy.newProxyInstance(c.getClassLoader(), new Class<?>[] { c }, h));
+	}
+
+	/**
+	 * The value a proxy returns for a method it doesn't otherwise handle:
+	 * false or zero for the primitive types that JDBC returns, else null.
+	 * @param m The method called
+	 * @return The default value
+	 */
+	public static Object none(Method m) {
+		Class<?> t = m.getReturnType();
+		if (t == boolean.class) {
+			return false;
+		}
+		if (t == int.class) {
+			return 0;
+		}
+		if (t == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+}
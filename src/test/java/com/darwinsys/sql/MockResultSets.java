@@ -0,0 +1,49 @@
+package com.darwinsys.sql;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+/** Build small in-memory ResultSets for testing the ResultsDecorators. */
+public class MockResultSets {
+
+	/**
+	 * Create a ResultSet from column names, java.sql.Types and rows.
+	 * @param table The table name reported by the metadata
+	 * @param names The column names
+	 * @param types The JDBC types
+	 * @param rows The data; null elements become SQL NULL
+	 * @return A ResultSet positioned before the first row
+	 * @throws SQLException If the RowSet implementation objects
+	 */
+	public static ResultSet create(String table, String[] names, int[] types, Object[][] rows)
+		throws SQLException {
+		RowSetMetaDataImpl md = new RowSetMetaDataImpl();
+		md.setColumnCount(names.length);
+		for (int i = 0; i < names.length; i++) {
+			md.setColumnName(i + 1, names[i]);
+			md.setColumnLabel(i + 1, names[i]);
+			md.setColumnType(i + 1, types[i]);
+			md.setTableName(i + 1, table);
+		}
+		CachedRowSet crs = RowSetProvider.newFactory().createCachedRowSet();
+		crs.setMetaData(md);
+		for (Object[] row : rows) {
+			crs.moveToInsertRow();
+			for (int i = 0; i < row.length; i++) {
+				if (row[i] == null) {
+					crs.updateNull(i + 1);
+				} else {
+					crs.updateObject(i + 1, row[i]);
+				}
+			}
+			crs.insertRow();
+		}
+		crs.moveToCurrentRow();
+		crs.beforeFirst();
+		return crs;
+	}
+}
@@ -0,0 +1,99 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.ResultSet;
+import java.sql.Types;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+
+import org.junit.Test;
+
+public class PagedTableModelTest {
+
+	private ResultSet getData(int rows) throws Exception {
+		Object[][] data = new Object[rows][];
+		for (int i = 0; i < rows; i++) {
+			data[i] = new Object[] { i, "row " + i };
+		}
+		return MockResultSets.create("t", new String[] { "id", "name" },
+			new int[] { Types.INTEGER, Types.VARCHAR }, data);
+	}
+
+	/** Wait for the loader, then for the events it sent to the event thread */
+	private void waitForRows(PagedTableModel model) throws Exception {
+		for (int i = 0; i < 500 && !model.isComplete(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue("loader finished", model.isComplete());
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				// nothing, just flush the queue
+			}
+		});
+	}
+
+	private Object getValueLater(final PagedTableModel model, final int row) throws Exception {
+		final Object[] ret = new Object[1];
+		for (int i = 0; i < 500 && ret[0] == null; i++) {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					ret[0] = model.getValueAt(row, 0);
+				}
+			});
+			if (ret[0] == null) {
+				Thread.sleep(10);
+			}
+		}
+		return ret[0];
+	}
+
+	@Test
+	public void testRowsArriveInPages() throws Exception {
+		PagedTableModel model = new PagedTableModel(getData(1005), 10, 3);
+		final int[] inserted = new int[2];
+		model.addTableModelListener(new TableModelListener() {
+			public void tableChanged(TableModelEvent e) {
+				if (e.getType() == TableModelEvent.INSERT) {
+					++inserted[0];
+					inserted[1] += e.getLastRow() - e.getFirstRow() + 1;
+				}
+			}
+		});
+		assertEquals(2, model.getColumnCount());
+		assertEquals("name", model.getColumnName(1));
+		assertEquals(0, model.getRowCount());
+		model.start();
+		waitForRows(model);
+		assertEquals(1005, model.getRowCount());
+		assertEquals(1005, inserted[1]);
+		assertTrue("incremental inserts", inserted[0] > 1);
+		assertEquals(1004, model.getValueAt(1004, 0));
+		model.close();
+	}
+
+	@Test
+	public void testEvictedPageIsReread() throws Exception {
+		PagedTableModel model = new PagedTableModel(getData(100), 10, 3);
+		model.start();
+		waitForRows(model);
+		// Only the last three pages are kept, so the first comes back later
+		assertNull(model.getValueAt(5, 0));
+		assertEquals(5, getValueLater(model, 5));
+		assertEquals(95, getValueLater(model, 95));
+		model.close();
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		PagedTableModel model = new PagedTableModel(getData(0), 10, 3);
+		model.start();
+		waitForRows(model);
+		assertEquals(0, model.getRowCount());
+		model.close();
+	}
+}
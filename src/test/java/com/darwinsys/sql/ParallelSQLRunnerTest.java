@@ -0,0 +1,241 @@
+package com.darwinsys.sql;
+
+import static com.darwinsys.sql.MockProxies.none;
+import static com.darwinsys.sql.MockProxies.proxy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test ParallelSQLRunner on Connections from MockJDBCDriver, each of
+ * which records what is run on it. Statements containing "bad" fail,
+ * as does \dt on the first Connection when failTables is set.
+ */
+public class ParallelSQLRunnerTest {
+
+	static final int N = 3;
+
+	/** Each statement run, as "connection: sql" */
+	List<String> executed;
+	/** The Connections that \dt has been run on */
+	List<Integer> tablesListed;
+	/** Each query timeout set, as "connection: seconds" */
+	Set<String> timeouts;
+	AtomicInteger connections;
+	volatile boolean failTables;
+	/** Holds the first N statements until all N are running */
+	CountDownLatch running;
+	List<Exception> errors;
+	ParallelSQLRunner runner;
+
+	@Before
+	public void setUp() {
+		executed = Collections.synchronizedList(new ArrayList<String>());
+		tablesListed = Collections.synchronizedList(new ArrayList<Integer>());
+		timeouts = Collections.synchronizedSet(new HashSet<String>());
+		connections = new AtomicInteger();
+		running = new CountDownLatch(N);
+		errors = new ArrayList<>();
+		MockJDBCDriver.connections = () -> proxy(Connection.class,
+			new MockConnection(connections.getAndIncrement()));
+		runner = new ParallelSQLRunner(new SimpleSQLConfiguration("test", "jdbc:mock:parallel",
+			"com.darwinsys.sql.MockJDBCDriver", "operator", "secret"), N, "t");
+		runner.setOutput(new PrintWriter(new StringWriter()));
+		runner.setErrorHandler(new SQLRunnerErrorHandler() {
+			public void handleError(Exception e) {
+				errors.add(e);
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		runner.close();
+		MockJDBCDriver.connections = null;
+	}
+
+	class MockConnection implements InvocationHandler {
+		final int id;
+
+		MockConnection(int id) {
+			this.id = id;
+		}
+
+		public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+			switch (m.getName()) {
+			case "getMetaData":
+				return proxy(DatabaseMetaData.class, new InvocationHandler() {
+					public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+						switch (m.getName()) {
+						case "getDatabaseProductName":
+							return "Mock";
+						case "getTables":
+							tablesListed.add(id);
+							if (failTables && id == 0) {
+								throw new SQLException("No tables on " + id);
+							}
+							return MockResultSets.create("tables", new String[] { "TABLE_NAME" },
+								new int[] { Types.VARCHAR }, new Object[][] { { "t" } });
+						default:
+							return none(m);
+						}
+					}
+				});
+			case "createStatement":
+				return proxy(Statement.class, new InvocationHandler() {
+					public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+						switch (m.getName()) {
+						case "execute":
+							String sql = (String) args[0];
+							running.countDown();
+							running.await(5, TimeUnit.SECONDS);
+							executed.add(id + ": " + sql);
+							if (sql.contains("bad")) {
+								throw new SQLException("Bad statement " + sql);
+							}
+							return false;
+						case "getUpdateCount":
+							return 1;
+						case "setQueryTimeout":
+							timeouts.add(id + ": " + args[0]);
+							return null;
+						default:
+							return none(m);
+						}
+					}
+				});
+			case "getAutoCommit":
+				return true;
+			default:
+				return none(m);
+			}
+		}
+	}
+
+	int run(String script) throws Exception {
+		return runner.runScript(new BufferedReader(new StringReader(script)), "test");
+	}
+
+	static String inserts(int from, int to) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = from; i < to; i++) {
+			sb.append("insert into t values(").append(i).append(");\n");
+		}
+		return sb.toString();
+	}
+
+	/** Count the statements run whose SQL contains the string */
+	int count(String s) {
+		int n = 0;
+		synchronized (executed) {
+			for (String e : executed) {
+				if (e.contains(s)) {
+					++n;
+				}
+			}
+		}
+		return n;
+	}
+
+	@Test
+	public void testSpread() throws Exception {
+		assertEquals(0, run(inserts(0, 30)));
+		assertEquals(N, connections.get());
+		assertEquals(30, executed.size());
+		// The first N statements each wait for the others, so all N must be used
+		Set<String> used = new HashSet<>();
+		for (String e : executed) {
+			used.add(e.substring(0, e.indexOf(':')));
+		}
+		assertEquals(N, used.size());
+		assertEquals(0, runner.getErrorCount());
+	}
+
+	@Test
+	public void testEscapeEverywhere() throws Exception {
+		running = new CountDownLatch(0);
+		assertEquals(0, run(inserts(0, 5) + "\\dt\n" + inserts(5, 10)));
+		Collections.sort(tablesListed);
+		assertEquals("[0, 1, 2]", tablesListed.toString());
+		assertEquals(10, executed.size());
+	}
+
+	@Test
+	public void testContinue() throws Exception {
+		running = new CountDownLatch(0);
+		failTables = true;
+		assertEquals(3, run(inserts(0, 5) + "insert bad 1;\n" + "\\dt\n" +
+			inserts(5, 10) + "insert bad 2;\n"));
+		// The failed escape still went to the other connections
+		Collections.sort(tablesListed);
+		assertEquals("[0, 1, 2]", tablesListed.toString());
+		assertEquals(10, count("values("));
+		assertEquals(2, count("bad"));
+		assertEquals(3, runner.getErrorCount());
+		assertEquals(3, errors.size());
+	}
+
+	@Test
+	public void testFailFastOnEscape() throws Exception {
+		running = new CountDownLatch(0);
+		failTables = true;
+		runner.setFailFast(true);
+		assertEquals(1, run(inserts(0, 5) + "\\dt\n" + inserts(5, 10)));
+		// The first connection fails, so no others are tried, and nothing after is run
+		assertEquals("[0]", tablesListed.toString());
+		assertEquals(5, executed.size());
+		assertEquals(1, errors.size());
+	}
+
+	@Test
+	public void testFailFastOnStatement() throws Exception {
+		running = new CountDownLatch(0);
+		runner.setFailFast(true);
+		run("insert bad 1;\n" + "\\dt\n" + inserts(0, 10));
+		assertEquals(1, runner.getErrorCount());
+		assertTrue(tablesListed.isEmpty());
+		assertEquals(0, count("values("));
+		assertFalse(errors.isEmpty());
+	}
+
+	@Test
+	public void testSettingsPassedOn() throws Exception {
+		running = new CountDownLatch(0);
+		runner.setQueryTimeout(7);
+		assertEquals(null, runner.getStats());
+		runner.setStatsEnabled(true);
+		assertEquals(0, run(inserts(0, 30)));
+		assertTrue(timeouts.containsAll(Arrays.asList("0: 7", "1: 7", "2: 7")));
+		// The statistics of all the Connections are added together
+		StatementStats stats = runner.getStats();
+		assertEquals(1, stats.getEntries().size());
+		assertEquals(30, stats.getEntries().get(0).getTotal().getCount());
+		runner.setStatsEnabled(false);
+		assertEquals(null, runner.getStats());
+	}
+}
@@ -0,0 +1,52 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PreparedStatementCacheTest {
+
+	PreparedStatementCache cache;
+	final List<String> noValues = Collections.emptyList();
+
+	@Before
+	public void setUp() {
+		MockJDBCConnection conn = new MockJDBCConnection() {
+			@Override
+			public PreparedStatement prepareStatement(String sql) {
+				return (PreparedStatement) Proxy.newProxyInstance(
+					getClass().getClassLoader(),
+					new Class<?>[] { PreparedStatement.class },
+					(proxy, method, args) -> null);
+			}
+		};
+		cache = new PreparedStatementCache(conn, 2);
+	}
+
+	@Test
+	public void testNormalize() {
+		assertEquals("select * from t where a = ' x  y '",
+			PreparedStatementCache.normalize("  select *\n\tfrom t  where a = ' x  y ' "));
+	}
+
+	@Test
+	public void testHitsAndEviction() throws Exception {
+		PreparedStatement p1 = cache.prepare("select 1", noValues);
+		assertSame(p1, cache.prepare("select  1", noValues));
+		cache.prepare("select 2", noValues);
+		cache.prepare("select 3", noValues);	// evicts "select 1"
+		assertNotSame(p1, cache.prepare("select 1", noValues));
+		assertEquals(1, cache.getHits());
+		assertEquals(4, cache.getMisses());
+		assertEquals(2, cache.getEvictions());
+		assertEquals(2, cache.size());
+	}
+}
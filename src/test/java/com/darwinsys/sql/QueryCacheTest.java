@@ -0,0 +1,337 @@
+package com.darwinsys.sql;
+
+import static com.darwinsys.sql.MockProxies.none;
+import static com.darwinsys.sql.MockProxies.proxy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.darwinsys.util.Verbosity;
+
+public class QueryCacheTest {
+
+	static final List<String> NONE = Collections.emptyList();
+
+	QueryCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new QueryCache();
+	}
+
+	static ResultSet people() throws Exception {
+		return MockResultSets.create("person", new String[] { "id", "name", "salary" },
+			new int[] { Types.INTEGER, Types.VARCHAR, Types.DECIMAL },
+			new Object[][] {
+				{ 1, "Ian", new BigDecimal("10.50") },
+				{ 2, null, null },
+			});
+	}
+
+	/** Read a ResultSet to the end, as a decorator would */
+	static int drain(ResultSet rs) throws Exception {
+		int n = 0;
+		while (rs.next()) {
+			rs.getString(2);
+			n++;
+		}
+		return n;
+	}
+
+	@Test
+	public void testCaptureAndReplay() throws Exception {
+		String sql = "select * from person";
+		assertNull(cache.get(sql, NONE));
+		assertEquals(2, drain(cache.capture(sql, NONE, people())));
+		assertEquals(1, cache.size());
+
+		ResultSet rs = cache.get("select *\n\tfrom   person", NONE);
+		assertNotNull(rs);
+		assertEquals(3, rs.getMetaData().getColumnCount());
+		assertEquals("name", rs.getMetaData().getColumnLabel(2));
+		assertEquals(Types.DECIMAL, rs.getMetaData().getColumnType(3));
+		assertTrue(rs.next());
+		assertEquals(1, rs.getInt("id"));
+		assertEquals(1L, rs.getLong(1));
+		assertEquals("1", rs.getString(1));
+		assertEquals("Ian", rs.getString("NAME"));
+		assertEquals(new BigDecimal("10.50"), rs.getBigDecimal(3));
+		assertEquals(10.5, rs.getDouble(3), 0.0);
+		assertFalse(rs.wasNull());
+		assertTrue(rs.next());
+		assertNull(rs.getString(2));
+		assertTrue(rs.wasNull());
+		assertEquals(0, rs.getInt(3));
+		assertFalse(rs.next());
+
+		// Scrolling, for the JTable
+		assertTrue(rs.absolute(1));
+		assertEquals("Ian", rs.getString(2));
+		rs.beforeFirst();
+		assertEquals(2, drain(rs));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testParametersAreInKey() throws Exception {
+		String sql = "select * from person where id = ?";
+		drain(cache.capture(sql, Arrays.asList("1"), people()));
+		assertNotNull(cache.get(sql, Arrays.asList("1")));
+		assertNull(cache.get(sql, Arrays.asList("2")));
+	}
+
+	@Test
+	public void testIncompleteNotCached() throws Exception {
+		ResultSet rs = cache.capture("select * from person", NONE, people());
+		rs.next();
+		rs.close();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testTTL() throws Exception {
+		cache.setTTL(1);
+		drain(cache.capture("select 1", NONE, people()));
+		Thread.sleep(5);
+		assertNull(cache.get("select 1", NONE));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		drain(cache.capture("select 1", NONE, people()));
+		long each = cache.getBytes();
+		cache.setMaxBytes(each * 4);
+		drain(cache.capture("select 2", NONE, people()));
+		cache.get("select 1", NONE);		// so 2 is least recently used
+		drain(cache.capture("select 3", NONE, people()));
+		drain(cache.capture("select 4", NONE, people()));
+		drain(cache.capture("select 5", NONE, people()));
+		assertEquals(4, cache.size());
+		assertNull(cache.get("select 2", NONE));
+		assertNotNull(cache.get("select 1", NONE));
+		assertEquals(1, cache.getEvictions());
+		assertTrue(cache.getBytes() <= cache.getMaxBytes());
+	}
+
+	@Test
+	public void testTooBig() throws Exception {
+		cache.setMaxBytes(100);
+		drain(cache.capture("select 1", NONE, people()));
+		assertEquals(0, cache.size());
+		assertTrue(cache.toString(), cache.toString().contains("1 too big"));
+	}
+
+	@Test
+	public void testClear() throws Exception {
+		drain(cache.capture("select 1", NONE, people()));
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+	}
+
+	@Test
+	public void testHints() {
+		assertTrue(QueryCache.isQuery("select * from foo"));
+		assertTrue(QueryCache.isQuery("WITH x AS (select 1) select * from x"));
+		assertFalse(QueryCache.isQuery("update foo set x = 1"));
+		assertFalse(QueryCache.isQuery("selected"));
+		assertTrue(QueryCache.hasHint("select /*+ cache */ * from foo"));
+		assertTrue(QueryCache.hasHint("SELECT/*+CACHE*/ count(*) from foo"));
+		assertFalse(QueryCache.hasHint("select /* cache */ * from foo"));
+		assertFalse(QueryCache.hasHint("select * from foo /*+ cache */"));
+	}
+
+	@Test
+	public void testHitInSQLRunner() throws Exception {
+		final int[] executed = new int[1];
+		Connection conn = proxy(Connection.class, new InvocationHandler() {
+			public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+				switch (m.getName()) {
+				case "getMetaData":
+					return proxy(DatabaseMetaData.class, (p2, m2, a2) ->
+						m2.getName().equals("getDatabaseProductName") ? "Mock" : none(m2));
+				case "createStatement":
+					return proxy(Statement.class, (p2, m2, a2) -> {
+						switch (m2.getName()) {
+						case "execute":
+							++executed[0];
+							return true;
+						case "getResultSet":
+							return people();
+						default:
+							return none(m2);
+						}
+					});
+				default:
+					return none(m);
+				}
+			}
+		});
+		SQLRunner runner = new SQLRunner(conn, null, "t");
+		StringWriter sw = new StringWriter();
+		runner.setOutputFile(new PrintWriter(sw));
+		runner.setQueryCache(cache, true);
+		final List<Long> progress = Collections.synchronizedList(new ArrayList<Long>());
+		QueryListener listener = new QueryListener() {
+			public void progress(QueryHandle handle, long rowsFetched) {
+				progress.add(rowsFetched);
+			}
+		};
+		SQLRunner.setVerbosity(Verbosity.VERBOSE);
+		try {
+			assertEquals(2, (int) runner.submit("select * from person", listener).getFuture().get());
+			assertEquals(2, (int) runner.submit("select * from person", listener).getFuture().get());
+		} finally {
+			SQLRunner.setVerbosity(Verbosity.QUIET);
+			runner.close();
+		}
+		assertEquals(1, executed[0]);
+		// The hit is reported just as the miss was
+		assertEquals("[2, 2]", progress.toString());
+		assertEquals(sw.toString(), 2, sw.toString().split("Rows: 2").length - 1);
+	}
+
+	/**
+	 * A ResultSet that behaves like a driver's: getString() formats
+	 * values its own way, not with toString(), and the LONG column
+	 * can only be read once per row.
+	 */
+	static ResultSet driver() throws Exception {
+		final ResultSetMetaData md = MockResultSets.create("t",
+			new String[] { "id", "ts", "amount", "flag", "notes", "data" },
+			new int[] { Types.INTEGER, Types.TIMESTAMP, Types.DECIMAL, Types.BIT,
+				Types.LONGVARCHAR, Types.VARBINARY }, new Object[0][]).getMetaData();
+		final Object[][] rows = {
+			{ 1, Timestamp.valueOf("2024-01-02 03:04:05"), new BigDecimal("1E-8"), true,
+				"long\ntext", new byte[] { 1, 2, (byte) 0xff } },
+			{ 2, null, null, null, null, null },
+		};
+		return proxy(ResultSet.class, new InvocationHandler() {
+			int row = -1;
+			Set<Integer> read = new HashSet<>();
+			Object last;
+
+			public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+				switch (m.getName()) {
+				case "next":
+					read.clear();
+					return ++row < rows.length;
+				case "getMetaData":
+					return md;
+				case "wasNull":
+					return last == null;
+				case "findColumn":
+					for (int i = 1; i <= md.getColumnCount(); i++) {
+						if (md.getColumnLabel(i).equalsIgnoreCase((String) args[0])) {
+							return i;
+						}
+					}
+					throw new SQLException("No column " + args[0]);
+				}
+				if (!m.getName().startsWith("get") || args == null) {
+					return none(m);
+				}
+				int col = (Integer) args[0];
+				if (col == 5 && !read.add(col)) {
+					throw new SQLException("Stream has already been closed");
+				}
+				Object o = last = rows[row][col - 1];
+				switch (m.getName()) {
+				case "getString":
+					return o == null ? null : o instanceof Timestamp ?
+						o.toString().replaceAll("\\.0$", "") :
+						o instanceof BigDecimal ? ((BigDecimal) o).toPlainString() :
+						o instanceof Boolean ? ((Boolean) o ? "1" : "0") :
+						o instanceof byte[] ? "0102ff" : o.toString();
+				case "getBoolean":
+					return Boolean.TRUE.equals(o);
+				case "getInt":
+					return o == null ? 0 : (Integer) o;
+				case "getCharacterStream":
+					return o == null ? null : new StringReader((String) o);
+				default:		// getObject, getTimestamp, getBytes, getBigDecimal
+					return o;
+				}
+			}
+		});
+	}
+
+	/** Write the results with a new decorator, and return what it wrote */
+	static String write(ResultSet rs, boolean json) throws Exception {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		ResultsDecorator d = json ? new ResultsDecoratorJSON(pw, Verbosity.QUIET) :
+			new ResultsDecoratorText(pw, Verbosity.QUIET);
+		assertEquals(2, d.write(rs));
+		d.flush();
+		pw.flush();
+		return sw.toString();
+	}
+
+	/** A hit must print what the miss did, as the driver formatted it */
+	@Test
+	public void testHitPrintsAsMiss() throws Exception {
+		for (boolean json : new boolean[] { false, true }) {
+			String mode = json ? "j" : "t";
+			String miss = write(cache.capture("select * from t", NONE, mode, driver()), json);
+			assertTrue(miss, miss.contains("0.00000001"));
+			assertFalse(miss, miss.contains("E-8"));
+			assertTrue(miss, json ? miss.contains("\"2024-01-02T03:04:05\"") :
+				miss.contains("2024-01-02 03:04:05\t"));
+			ResultSet hit = cache.get("select * from t", NONE, mode);
+			assertNotNull(mode, hit);
+			assertEquals(miss, write(hit, json));
+		}
+		// Each output mode has its own copy
+		assertEquals(2, cache.size());
+		assertNull(cache.get("select * from t", NONE, "x"));
+	}
+
+	/** Columns the reader skipped are read before moving on, once only */
+	@Test
+	public void testUnreadColumns() throws Exception {
+		ResultSet rs = cache.capture("select * from t", NONE, driver());
+		rs.next();
+		assertEquals("long\ntext", rs.getString(5));
+		rs.next();
+		rs.next();
+		rs = cache.get("select * from t", NONE);
+		assertNotNull(rs);
+		rs.next();
+		assertEquals("long\ntext", rs.getString(5));
+		assertEquals(Timestamp.valueOf("2024-01-02 03:04:05"), rs.getObject(2));
+		assertEquals(new BigDecimal("1E-8"), rs.getBigDecimal(3));
+		rs.next();
+		assertNull(rs.getObject(2));
+		assertTrue(rs.wasNull());
+	}
+}
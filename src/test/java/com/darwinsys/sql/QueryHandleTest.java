@@ -0,0 +1,69 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+public class QueryHandleTest {
+
+	private ResultSet getData(int rows) throws Exception {
+		Object[][] data = new Object[rows][];
+		for (int i = 0; i < rows; i++) {
+			data[i] = new Object[] { i };
+		}
+		return MockResultSets.create("t", new String[] { "id" },
+			new int[] { Types.INTEGER }, data);
+	}
+
+	@Test
+	public void testProgress() throws Exception {
+		final List<Long> reports = new ArrayList<>();
+		QueryHandle h = new QueryHandle("select id from t", new QueryListener() {
+			public void progress(QueryHandle handle, long rowsFetched) {
+				reports.add(rowsFetched);
+			}
+		});
+		h.setProgressInterval(2);
+		ResultSet rs = h.wrap(getData(5));
+		while (rs.next()) {
+			rs.getInt(1);
+		}
+		assertEquals(5, h.getRowsFetched());
+		assertEquals("[2, 4, 5]", reports.toString());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		QueryHandle h = new QueryHandle("select id from t", null);
+		ResultSet rs = h.wrap(getData(5));
+		assertTrue(rs.next());
+		assertTrue(h.cancel());
+		// The worker is still reading, so the future must not be done yet
+		assertFalse(h.getFuture().isDone());
+		try {
+			rs.next();
+			fail("Did not stop after cancel");
+		} catch (SQLException e) {
+			assertEquals(QueryHandle.SQLSTATE_CANCELED, e.getSQLState());
+			h.fail(e);		// as the worker does
+		}
+		assertTrue(h.getFuture().isCancelled());
+		try {
+			h.getFuture().get();
+			fail("get() did not throw");
+		} catch (CancellationException e) {
+			assertEquals(QueryHandle.SQLSTATE_CANCELED, ((SQLException) e.getCause()).getSQLState());
+		}
+		assertFalse("second cancel", h.cancel());
+	}
+}
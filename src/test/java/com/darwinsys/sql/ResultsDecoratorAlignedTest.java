@@ -0,0 +1,104 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Types;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.darwinsys.util.Verbosity;
+
+public class ResultsDecoratorAlignedTest {
+
+	StringWriter sw;
+	PrintWriter out;
+	ResultsDecoratorAligned target;
+
+	@Before
+	public void setUp() {
+		sw = new StringWriter();
+		out = new PrintWriter(sw);
+		target = new ResultsDecoratorAligned(out, Verbosity.QUIET);
+	}
+
+	private ResultSet getData() throws Exception {
+		return MockResultSets.create("people",
+			new String[] { "id", "name", "salary" },
+			new int[] { Types.INTEGER, Types.VARCHAR, Types.DECIMAL },
+			new Object[][] {
+				{ 1, "Ian", new BigDecimal("10.50") },
+				{ 2, null, null },
+				{ 300, "Some\tone with a long name", new BigDecimal("7") },
+			});
+	}
+
+	@Test
+	public void testWrite() throws Exception {
+		assertEquals(3, target.write(getData()));
+		out.flush();
+		assertEquals(
+			" id  |           name            | salary\n" +
+			"-----+---------------------------+--------\n" +
+			"   1 | Ian                       |  10.50\n" +
+			"   2 |                           |\n" +
+			" 300 | Some one with a long name |      7\n",
+			sw.toString().replace(System.lineSeparator(), "\n"));
+	}
+
+	@Test
+	public void testSample() throws Exception {
+		target.setSampleRows(2);
+		target.write(getData());
+		out.flush();
+		assertEquals(
+			" id | name | salary\n" +
+			"----+------+--------\n" +
+			"  1 | Ian  |  10.50\n" +
+			"  2 |      |\n" +
+			" 300 | Some |      7\n",
+			sw.toString().replace(System.lineSeparator(), "\n"));
+	}
+
+	@Test
+	public void testWrap() throws Exception {
+		target.setMaxWidth(10);
+		target.setWrap(true);
+		target.write(getData());
+		out.flush();
+		assertEquals(
+			" id  |    name    | salary\n" +
+			"-----+------------+--------\n" +
+			"   1 | Ian        |  10.50\n" +
+			"   2 |            |\n" +
+			" 300 | Some one w |      7\n" +
+			"     | ith a long |\n" +
+			"     |  name      |\n",
+			sw.toString().replace(System.lineSeparator(), "\n"));
+	}
+
+	@Test
+	public void testWrapOverflowingNumber() throws Exception {
+		target.setSampleRows(2);
+		target.setWrap(true);
+		target.write(getData());
+		out.flush();
+		assertEquals(
+			" id | name | salary\n" +
+			"----+------+--------\n" +
+			"  1 | Ian  |  10.50\n" +
+			"  2 |      |\n" +
+			" 300 | Some |      7\n" +
+			"    |  one |\n" +
+			"    |  wit |\n" +
+			"    | h a  |\n" +
+			"    | long |\n" +
+			"    |  nam |\n" +
+			"    | e    |\n",
+			sw.toString().replace(System.lineSeparator(), "\n"));
+	}
+}
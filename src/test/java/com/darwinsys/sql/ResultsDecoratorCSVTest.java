@@ -0,0 +1,62 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.time.format.DateTimeFormatter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.darwinsys.util.Verbosity;
+
+public class ResultsDecoratorCSVTest {
+
+	StringWriter sw;
+	PrintWriter out;
+
+	@Before
+	public void setUp() {
+		sw = new StringWriter();
+		out = new PrintWriter(sw);
+	}
+
+	private ResultSet getData() throws Exception {
+		return MockResultSets.create("people",
+			new String[] { "id", "name", "born" },
+			new int[] { Types.INTEGER, Types.VARCHAR, Types.DATE },
+			new Object[][] {
+				{ 1, "Darwin, Ian", Date.valueOf("1970-01-02") },
+				{ 2, "Say \"hi\"", null },
+				{ 3, null, Date.valueOf("2001-02-03") },
+			});
+	}
+
+	@Test
+	public void testCSV() throws Exception {
+		ResultsDecoratorCSV target = new ResultsDecoratorCSV(out, Verbosity.QUIET);
+		target.setDateFormats(DateTimeFormatter.BASIC_ISO_DATE, null, null);
+		assertEquals(3, target.write(getData()));
+		out.flush();
+		assertEquals("id,name,born\r\n" +
+			"1,\"Darwin, Ian\",19700102\r\n" +
+			"2,\"Say \"\"hi\"\"\",\r\n" +
+			"3,,20010203\r\n", sw.toString());
+	}
+
+	@Test
+	public void testTSV() throws Exception {
+		ResultsDecoratorCSV target = new ResultsDecoratorCSV(out, Verbosity.QUIET, '\t');
+		target.setHeader(false);
+		target.setNullValue("\\N");
+		target.write(getData());
+		out.flush();
+		assertEquals("1\tDarwin, Ian\t1970-01-02\n" +
+			"2\t\"Say \"\"hi\"\"\"\t\\N\n" +
+			"3\t\\N\t2001-02-03\n", sw.toString());
+	}
+}
@@ -0,0 +1,87 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Types;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.darwinsys.util.Verbosity;
+
+public class ResultsDecoratorJSONTest {
+
+	StringWriter sw;
+	PrintWriter out;
+
+	@Before
+	public void setUp() {
+		sw = new StringWriter();
+		out = new PrintWriter(sw);
+	}
+
+	private ResultSet getData() throws Exception {
+		return MockResultSets.create("people",
+			new String[] { "id", "name", "born", "photo" },
+			new int[] { Types.INTEGER, Types.VARCHAR, Types.DATE, Types.VARBINARY },
+			new Object[][] {
+				{ 1, "Ian \"the\" Darwin", Date.valueOf("1970-01-02"), new byte[] { 1, 2, 3 } },
+				{ 2, "tab\there", null, null },
+			});
+	}
+
+	@Test
+	public void testJSON() throws Exception {
+		ResultsDecoratorJSON target = new ResultsDecoratorJSON(out, Verbosity.QUIET);
+		assertEquals(2, target.write(getData()));
+		out.flush();
+		assertEquals("[\n" +
+			"{\"id\":1,\"name\":\"Ian \\\"the\\\" Darwin\",\"born\":\"1970-01-02\",\"photo\":\"AQID\"},\n" +
+			"{\"id\":2,\"name\":\"tab\\there\",\"born\":null,\"photo\":null}\n" +
+			"]\n", sw.toString());
+	}
+
+	@Test
+	public void testNDJSON() throws Exception {
+		ResultsDecoratorJSON target = new ResultsDecoratorJSON(out, Verbosity.QUIET, true);
+		target.write(getData());
+		out.flush();
+		assertEquals(
+			"{\"id\":1,\"name\":\"Ian \\\"the\\\" Darwin\",\"born\":\"1970-01-02\",\"photo\":\"AQID\"}\n" +
+			"{\"id\":2,\"name\":\"tab\\there\",\"born\":null,\"photo\":null}\n",
+			sw.toString());
+	}
+
+	@Test
+	public void testIsJSONNumber() {
+		assertTrue(ResultsDecoratorJSON.isJSONNumber("-12.5E+3"));
+		assertFalse(ResultsDecoratorJSON.isJSONNumber("NaN"));
+		assertFalse(ResultsDecoratorJSON.isJSONNumber("-Infinity"));
+		assertFalse(ResultsDecoratorJSON.isJSONNumber("1."));
+		assertTrue(ResultsDecoratorJSON.isJSONNumber("0"));
+		assertTrue(ResultsDecoratorJSON.isJSONNumber("-0.25e-7"));
+		assertFalse(ResultsDecoratorJSON.isJSONNumber(""));
+		assertFalse(ResultsDecoratorJSON.isJSONNumber("-"));
+		assertFalse(ResultsDecoratorJSON.isJSONNumber("1-2"));
+		assertFalse(ResultsDecoratorJSON.isJSONNumber("01"));
+		assertFalse(ResultsDecoratorJSON.isJSONNumber("1e+-2"));
+		assertFalse(ResultsDecoratorJSON.isJSONNumber("1e"));
+		assertFalse(ResultsDecoratorJSON.isJSONNumber("+1"));
+	}
+
+	@Test
+	public void testToJSONNumber() {
+		assertEquals("0.5", ResultsDecoratorJSON.toJSONNumber(".5"));
+		assertEquals("-0.5", ResultsDecoratorJSON.toJSONNumber("-.5"));
+		assertEquals("12", ResultsDecoratorJSON.toJSONNumber("12"));
+		assertNull(ResultsDecoratorJSON.toJSONNumber("."));
+		assertNull(ResultsDecoratorJSON.toJSONNumber("NaN"));
+	}
+}
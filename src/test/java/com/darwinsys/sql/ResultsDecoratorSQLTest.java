@@ -0,0 +1,77 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Types;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.darwinsys.util.Verbosity;
+
+public class ResultsDecoratorSQLTest {
+
+	StringWriter sw;
+	PrintWriter out;
+	ResultsDecoratorSQL target;
+
+	@Before
+	public void setUp() {
+		sw = new StringWriter();
+		out = new PrintWriter(sw);
+		target = new ResultsDecoratorSQL(out, Verbosity.QUIET);
+	}
+
+	private ResultSet getData() throws Exception {
+		return MockResultSets.create("people",
+			new String[] { "id", "name", "born" },
+			new int[] { Types.INTEGER, Types.VARCHAR, Types.DATE },
+			new Object[][] {
+				{ 1, "O'Darwin", Date.valueOf("1970-01-02") },
+				{ 2, "Ian", null },
+				{ 3, null, Date.valueOf("2001-02-03") },
+			});
+	}
+
+	@Test
+	public void testOneRowPerStatement() throws Exception {
+		assertEquals(3, target.write(getData()));
+		out.flush();
+		assertEquals(String.format(
+			"insert into people(id, name, born) values (%n" +
+			"1, 'O''Darwin', '1970-01-02');%n" +
+			"insert into people(id, name, born) values (%n" +
+			"2, 'Ian', null);%n" +
+			"insert into people(id, name, born) values (%n" +
+			"3, null, '2001-02-03');%n"), sw.toString());
+	}
+
+	@Test
+	public void testMultiRowWithTransactions() throws Exception {
+		target.setRowsPerStatement(2);
+		target.setTransactionSize(2);
+		target.write(getData());
+		out.flush();
+		assertEquals(String.format(
+			"START TRANSACTION;%n" +
+			"insert into people(id, name, born) values%n" +
+			"(1, 'O''Darwin', '1970-01-02'),%n" +
+			"(2, 'Ian', null);%n" +
+			"COMMIT;%n" +
+			"START TRANSACTION;%n" +
+			"insert into people(id, name, born) values%n" +
+			"(3, null, '2001-02-03');%n" +
+			"COMMIT;%n"), sw.toString());
+	}
+
+	@Test
+	public void testAppendQuoted() {
+		StringBuilder sb = new StringBuilder();
+		ResultsDecoratorSQL.appendQuoted(sb, "'it''s'");
+		assertEquals("'''it''''s'''", sb.toString());
+	}
+}
@@ -0,0 +1,130 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.Base64;
+
+import javax.sql.rowset.RowSetProvider;
+import javax.sql.rowset.WebRowSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.darwinsys.util.Verbosity;
+
+public class ResultsDecoratorXMLTest {
+
+	StringWriter sw;
+	PrintWriter out;
+
+	@Before
+	public void setUp() {
+		sw = new StringWriter();
+		out = new PrintWriter(sw);
+	}
+
+	private ResultSet getData() throws Exception {
+		return MockResultSets.create("people",
+			new String[] { "id", "name", "born", "first name" },
+			new int[] { Types.INTEGER, Types.VARCHAR, Types.DATE, Types.VARCHAR },
+			new Object[][] {
+				{ 1, "Ian <&> Darwin", Date.valueOf("1970-01-02"), "Ian" },
+				{ 2, null, null, "bell\u0007" },
+			});
+	}
+
+	@Test
+	public void testWebRowSetReadsBack() throws Exception {
+		ResultsDecoratorXML target = new ResultsDecoratorXML(out, Verbosity.QUIET);
+		assertEquals(2, target.write(getData()));
+		out.flush();
+		WebRowSet wrs = RowSetProvider.newFactory().createWebRowSet();
+		wrs.readXml(new StringReader(sw.toString()));
+		assertEquals(4, wrs.getMetaData().getColumnCount());
+		assertEquals("name", wrs.getMetaData().getColumnLabel(2));
+		assertTrue(wrs.next());
+		assertEquals(1, wrs.getInt(1));
+		assertEquals("Ian <&> Darwin", wrs.getString(2));
+		assertEquals(Date.valueOf("1970-01-02"), wrs.getDate(3));
+		assertTrue(wrs.next());
+		assertNull(wrs.getString(2));
+		assertNull(wrs.getDate(3));
+		assertEquals("bell\ufffd", wrs.getString(4));
+	}
+
+	@Test
+	public void testWebRowSetBinary() throws Exception {
+		ResultsDecoratorXML target = new ResultsDecoratorXML(out, Verbosity.QUIET);
+		target.write(MockResultSets.create("t", new String[] { "id", "data" },
+			new int[] { Types.INTEGER, Types.VARBINARY },
+			new Object[][] { { 1, new byte[] { 0, 1, (byte) 0xff } }, { 2, null } }));
+		out.flush();
+		String xml = sw.toString();
+		assertTrue(xml, xml.contains("<columnValue>AAH/</columnValue>"));
+		WebRowSet wrs = RowSetProvider.newFactory().createWebRowSet();
+		wrs.readXml(new StringReader(xml));
+		assertTrue(wrs.next());
+		// WebRowSet has no encoding for binary data, so it reads back the base64 text
+		assertArrayEquals(new byte[] { 0, 1, (byte) 0xff },
+			Base64.getDecoder().decode(wrs.getBytes(2)));
+		assertTrue(wrs.next());
+		assertNull(wrs.getBytes(2));
+	}
+
+	@Test
+	public void testElements() throws Exception {
+		ResultsDecoratorXML target = new ResultsDecoratorXML(out, Verbosity.QUIET,
+			ResultsDecoratorXML.Layout.ELEMENTS);
+		target.setElementNames("people", "person");
+		target.write(getData());
+		out.flush();
+		String xml = sw.toString();
+		assertTrue(xml, xml.contains("<people>\n  <person>\n    <id>1</id>\n" +
+			"    <name>Ian &lt;&amp;&gt; Darwin</name>\n    <born>1970-01-02</born>\n" +
+			"    <first_name>Ian</first_name>\n  </person>\n"));
+		// Nulls are left out
+		assertTrue(xml, xml.contains("<person>\n    <id>2</id>\n    <first_name>"));
+		assertTrue(xml, xml.endsWith("</people>\n"));
+	}
+
+	@Test
+	public void testAttributes() throws Exception {
+		ResultsDecoratorXML target = new ResultsDecoratorXML(out, Verbosity.QUIET,
+			ResultsDecoratorXML.Layout.ATTRIBUTES);
+		target.write(getData());
+		out.flush();
+		String xml = sw.toString();
+		assertTrue(xml, xml.contains("<row id=\"1\" name=\"Ian &lt;&amp;&gt; Darwin\" " +
+			"born=\"1970-01-02\" first_name=\"Ian\"/>"));
+		assertTrue(xml, xml.contains("<row id=\"2\" first_name="));
+	}
+
+	@Test
+	public void testDuplicateAttributes() throws Exception {
+		ResultsDecoratorXML target = new ResultsDecoratorXML(out, Verbosity.QUIET,
+			ResultsDecoratorXML.Layout.ATTRIBUTES);
+		target.write(MockResultSets.create("t", new String[] { "id", "id", "id_2", "id" },
+			new int[] { Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER },
+			new Object[][] { { 1, 2, 3, 4 } }));
+		out.flush();
+		String xml = sw.toString();
+		assertTrue(xml, xml.contains("<row id=\"1\" id_3=\"2\" id_2=\"3\" id_4=\"4\"/>"));
+	}
+
+	@Test
+	public void testToXMLName() {
+		assertEquals("id", ResultsDecoratorXML.toXMLName("id"));
+		assertEquals("first_name", ResultsDecoratorXML.toXMLName("first name"));
+		assertEquals("_1st", ResultsDecoratorXML.toXMLName("1st"));
+		assertEquals("count___", ResultsDecoratorXML.toXMLName("count(*)"));
+	}
+}
@@ -0,0 +1,19 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SQLRunnerTest {
+
+	@Test
+	public void testIsBatchable() {
+		assertTrue(SQLRunner.isBatchable("insert into foo values(1)"));
+		assertTrue(SQLRunner.isBatchable("UPDATE foo set x = 1"));
+		assertTrue(SQLRunner.isBatchable("Delete from foo"));
+		assertFalse(SQLRunner.isBatchable("select * from foo"));
+		assertFalse(SQLRunner.isBatchable("create table inserts(i int)"));
+		assertFalse(SQLRunner.isBatchable("inserted"));
+	}
+}
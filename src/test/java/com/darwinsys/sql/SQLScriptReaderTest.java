@@ -0,0 +1,140 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class SQLScriptReaderTest {
+
+	/** Split a script, using a tiny buffer to exercise the refills */
+	private List<String> split(String script) throws IOException {
+		List<String> list = new ArrayList<>();
+		try (SQLScriptReader r = new SQLScriptReader(new StringReader(script), 3)) {
+			ScriptStatement st;
+			while ((st = r.readStatement()) != null) {
+				list.add(st.getText());
+			}
+		}
+		return list;
+	}
+
+	@Test
+	public void testSimple() throws Exception {
+		assertEquals("[select 1, select\n*]",
+			split("select 1;\n-- comment\nselect\n# a comment\n*;\n").toString());
+		assertEquals("last statement needs no delimiter",
+			"[select 1, select 2]", split("select 1; select 2").toString());
+		assertEquals("[]", split("-- just a comment\n;;\n").toString());
+	}
+
+	@Test
+	public void testQuotes() throws Exception {
+		List<String> l = split("insert into t values('a;b', 'it''s;', \"c;d\", `e;f`);\nselect 2;");
+		assertEquals(2, l.size());
+		assertEquals("insert into t values('a;b', 'it''s;', \"c;d\", `e;f`)", l.get(0));
+
+		l = split("create function f() returns int as $body$ begin return 1; end; $body$ language plpgsql;\n" +
+			"select $1, $$a;b$$;");
+		assertEquals(2, l.size());
+		assertEquals("select $1, $$a;b$$", l.get(1));
+	}
+
+	@Test
+	public void testBackslashEscapes() throws Exception {
+		SQLScriptReader r = new SQLScriptReader(new StringReader("select 'it\\';s'; select 2;"));
+		r.setBackslashEscapes(true);
+		assertEquals("select 'it\\';s'", r.readStatement().getText());
+		assertEquals("select 2", r.readStatement().getText());
+		assertNull(r.readStatement());
+	}
+
+	@Test
+	public void testDelimiter() throws Exception {
+		List<String> l = split("DELIMITER //\n" +
+			"create procedure p() begin select 1; select 2; end//\n" +
+			"DELIMITER ;;\n" +
+			"select 3;;\n" +
+			"delimiter ;\n" +
+			"select 4;");
+		assertEquals("[create procedure p() begin select 1; select 2; end, select 3, select 4]",
+			l.toString());
+	}
+
+	@Test
+	public void testBeginEnd() throws Exception {
+		List<String> l = split("create trigger t after insert on a for each row begin\n" +
+			"  update b set n = case when n > 0 then n + 1 else 1 end;\n" +
+			"  if x then delete from c; end if;\n" +
+			"end;\n" +
+			"begin;\ncommit;");
+		assertEquals(3, l.size());
+		assertEquals("begin", l.get(1));
+	}
+
+	@Test
+	public void testBeginAsName() throws Exception {
+		assertEquals("[create table t (begin int, \"case\" int), select 13]",
+			split("create table t (begin int, \"case\" int); select 13;").toString());
+		assertEquals("[create view begin as select a from t, select 14]",
+			split("create view begin as select a from t; select 14;").toString());
+		// In a body, a CASE in parentheses has its END in them too
+		assertEquals(2, split("create procedure p(x int) begin\n" +
+			"  set x = (case when x > 0 then 1 else 2 end);\n" +
+			"  select x;\n" +
+			"end;\nselect 15;").size());
+	}
+
+	/** Oracle packages end at a / line, as do other statements in SQL*Plus scripts */
+	@Test
+	public void testPackage() throws Exception {
+		List<String> l = split("create package p as\n  procedure x;\nend p;\n/\n" +
+			"create or replace package body p as\n" +
+			"  procedure x is begin null; end x;\n" +
+			"  procedure y is begin\n    if 1 = 1 then null; end if;\n  end;\n" +
+			"begin\n  x;\nend p;\n/\n" +
+			"create procedure q is begin null; end;\n/\n" +
+			"select 16 from dual\n  /  \n" +
+			"select 17 from dual;\n/");
+		assertEquals(5, l.size());
+		assertEquals("create package p as\n  procedure x;\nend p;", l.get(0));
+		assertEquals("begin\n  x;\nend p;", l.get(1).substring(l.get(1).lastIndexOf("begin")));
+		assertEquals("create procedure q is begin null; end", l.get(2));
+		assertEquals("select 16 from dual", l.get(3));
+		assertEquals("select 17 from dual", l.get(4));
+		// With a delimiter of its own, a package ends there
+		assertEquals("[create package p as procedure x; end p, select 18]",
+			split("delimiter //\ncreate package p as procedure x; end p//\n" +
+				"delimiter ;\nselect 18;").toString());
+	}
+
+	@Test
+	public void testEscapesAndComments() throws Exception {
+		List<String> l = split("/* header\n comment */\n\\m csv\n\\o out.csv;\n" +
+			"select /*+ index(t) */ * from t;");
+		assertEquals("[\\m csv, \\o out.csv, select /*+ index(t) */ * from t]", l.toString());
+	}
+
+	@Test
+	public void testLineNumbers() throws Exception {
+		SQLScriptReader r = new SQLScriptReader(new StringReader(
+			"-- one\nselect 1;\n\n\nselect\n2;\n"));
+		assertEquals(2, r.next().getLineNumber());
+		assertEquals(5, r.next().getLineNumber());
+		assertFalse(r.hasNext());
+	}
+
+	@Test
+	public void testStream() throws Exception {
+		SQLScriptReader r = new SQLScriptReader(new StringReader("select 1; \\q\nselect 2;"));
+		assertEquals("select 1|\\q|select 2",
+			r.stream().map(ScriptStatement::getText).collect(Collectors.joining("|")));
+	}
+}
@@ -0,0 +1,72 @@
+package com.darwinsys.sql;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.sql.ResultSet;
+import java.sql.Types;
+
+import org.junit.Test;
+
+public class StatementStatsTest {
+
+	@Test
+	public void testFingerprint() {
+		assertEquals("select * from emp where id in (?...) and name = ?",
+			StatementStats.fingerprint(
+				"SELECT *  FROM emp\n WHERE id IN (1, 2, 3) AND name = 'O''Darwin'"));
+		assertEquals("update t2 set a = a-? where \"Key\" = ?",
+			StatementStats.fingerprint("update t2 set a = a-1 where \"Key\" = -42.5"));
+		assertEquals("insert into t(a, b) values (?...)",
+			StatementStats.fingerprint("insert into t(a, b) values ('x',2)"));
+	}
+
+	@Test
+	public void testHistogram() {
+		StatementStats.Histogram h = new StatementStats.Histogram();
+		for (int i = 0; i < 99; i++) {
+			h.add(3_000_000);		// 3 ms
+		}
+		h.add(300_000_000);			// 300 ms
+		assertEquals(100, h.getCount());
+		assertEquals(3_000_000, h.getMinNanos());
+		assertEquals(300_000_000, h.getMaxNanos());
+		// 3000us falls in the bucket up to 4096us
+		assertEquals(4_096_000, h.getPercentileNanos(50));
+		assertEquals(4_096_000, h.getPercentileNanos(99));
+		assertEquals(300_000_000, h.getPercentileNanos(100));
+	}
+
+	@Test
+	public void testRecord() throws Exception {
+		StatementStats stats = new StatementStats();
+		stats.record("select * from t where id = 1", 1000, 2000, 500, 700, 1);
+		stats.record("select * from t where id = 2", 1000, -1, 500, 700, 0);
+		stats.record("delete from t", 3000, -1, 0, 0, 10);
+		assertEquals(2, stats.getEntries().size());
+		StatementStats.Entry e = stats.getEntries().get(0);
+		assertEquals("select * from t where id = ?", e.getFingerprint());
+		assertEquals(2, e.getTotal().getCount());
+		assertEquals(1, e.getFirstRow().getCount());
+		assertEquals(4400, e.getTotal().getTotalNanos());
+		StringWriter sw = new StringWriter();
+		stats.print(new PrintWriter(sw));
+		assertEquals(3, sw.toString().split("\n").length);
+	}
+
+	@Test
+	public void testFetchTimer() throws Exception {
+		ResultSet rs = MockResultSets.create("t", new String[] { "id" },
+			new int[] { Types.INTEGER }, new Object[][] { { 1 }, { 2 } });
+		StatementStats.FetchTimer timer = new StatementStats.FetchTimer(rs, System.nanoTime());
+		ResultSet timed = timer.getResultSet();
+		int n = 0;
+		while (timed.next()) {
+			n += timed.getInt(1);
+		}
+		assertEquals(3, n);
+		assertEquals(true, timer.firstRowNanos >= 0);
+		assertEquals(true, timer.fetchNanos > 0);
+	}
+}
@@ -0,0 +1,242 @@
+package com.darwinsys.sql;
+
+import static com.darwinsys.sql.MockProxies.proxy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import javax.sql.RowSetMetaData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test TableComparer between two fake Connections, each holding
+ * a table "t" (id, name) in a TreeMap.
+ */
+public class TableComparerTest {
+
+	static final int ROWS = 10000;
+
+	Map<Long, String> sourceRows, targetRows;
+	List<String> rowQueries;
+	/** The type and scale the key column reports */
+	int keyType = Types.INTEGER, keyScale;
+	TableComparer comparer;
+
+	@Before
+	public void setUp() {
+		sourceRows = new TreeMap<>();
+		for (long id = 1; id <= ROWS; id++) {
+			sourceRows.put(id, id % 10 == 0 ? null : "name " + id);
+		}
+		targetRows = new TreeMap<>(sourceRows);
+		rowQueries = Collections.synchronizedList(new ArrayList<String>());
+		comparer = new TableComparer(new TableCopier.ConnectionSource() {
+			public Connection getConnection() {
+				return proxy(Connection.class, new FakeConnection(sourceRows));
+			}
+		}, new TableCopier.ConnectionSource() {
+			public Connection getConnection() {
+				return proxy(Connection.class, new FakeConnection(targetRows));
+			}
+		});
+		comparer.setChunksPerTable(10);
+		comparer.setFanout(4);
+		comparer.setLeafKeys(100);
+		comparer.setProgress(null);
+	}
+
+	@After
+	public void tearDown() {
+		comparer.close();
+	}
+
+	class FakeConnection implements InvocationHandler {
+		final Map<Long, String> rows;
+
+		FakeConnection(Map<Long, String> rows) {
+			this.rows = rows;
+		}
+
+		public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+			switch (m.getName()) {
+			case "createStatement":
+				return proxy(Statement.class, new InvocationHandler() {
+					public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+						if (!m.getName().equals("executeQuery")) {
+							return null;
+						}
+						String sql = (String) args[0];
+						if (sql.startsWith("SELECT MIN(id), MAX(id)")) {
+							Object[][] data = rows.isEmpty() ? new Object[][] { { null, null } } :
+								new Object[][] { { ((TreeMap<Long, String>) rows).firstKey(),
+									((TreeMap<Long, String>) rows).lastKey() } };
+							return MockResultSets.create("t", new String[] { "min", "max" },
+								new int[] { Types.BIGINT, Types.BIGINT }, data);
+						}
+						ResultSet rs = MockResultSets.create("t", new String[] { "id", "name" },
+							new int[] { keyType, Types.VARCHAR }, new Object[0][]);
+						((RowSetMetaData) rs.getMetaData()).setScale(1, keyScale);
+						return rs;
+					}
+				});
+			case "getMetaData":
+				return proxy(DatabaseMetaData.class, new InvocationHandler() {
+					public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+						if (m.getName().equals("getDatabaseProductName")) {
+							return "MockDB";
+						}
+						return MockResultSets.create("keys", new String[] { "COLUMN_NAME" },
+							new int[] { Types.VARCHAR }, new Object[][] { { "id" } });
+					}
+				});
+			case "prepareStatement":
+				final String sql = (String) args[0];
+				final long[] params = new long[2];
+				return proxy(PreparedStatement.class, new InvocationHandler() {
+					public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+						switch (m.getName()) {
+						case "setLong":
+							params[(Integer) args[0] - 1] = (Long) args[1];
+							return null;
+						case "executeQuery":
+							return getRows(sql, params);
+						default:
+							return null;
+						}
+					}
+				});
+			case "getAutoCommit":
+				return true;
+			default:
+				return null;
+			}
+		}
+
+		ResultSet getRows(String sql, long[] params) throws SQLException {
+			assertTrue(sql, sql.endsWith("FROM t WHERE id BETWEEN ? AND ?") ||
+				sql.endsWith("ORDER BY id"));
+			boolean withKey = sql.startsWith("SELECT id, id, name");
+			if (withKey) {
+				rowQueries.add(params[0] + ".." + params[1]);
+			}
+			List<Object[]> data = new ArrayList<>();
+			for (Map.Entry<Long, String> e :
+					((TreeMap<Long, String>) rows).subMap(params[0], true, params[1], true).entrySet()) {
+				int id = (int) (long) e.getKey();
+				data.add(withKey ? new Object[] { id, id, e.getValue() } :
+					new Object[] { id, e.getValue() });
+			}
+			return withKey ?
+				MockResultSets.create("t", new String[] { "id", "id", "name" },
+					new int[] { Types.INTEGER, Types.INTEGER, Types.VARCHAR },
+					data.toArray(new Object[0][])) :
+				MockResultSets.create("t", new String[] { "id", "name" },
+					new int[] { Types.INTEGER, Types.VARCHAR }, data.toArray(new Object[0][]));
+		}
+	}
+
+	@Test
+	public void testSame() throws Exception {
+		TableComparer.Result r = comparer.compare("t");
+		assertTrue(r.toString(), r.isMatch());
+		assertFalse(r.isServerHashing());
+		assertEquals(10, r.getChunks());
+		assertTrue(rowQueries.isEmpty());
+	}
+
+	@Test
+	public void testDifferences() throws Exception {
+		targetRows.remove(500L);
+		targetRows.put(4242L, "changed");
+		targetRows.put(4243L, null);
+		targetRows.put(ROWS + 1L, "extra");
+		TableComparer.Result r = comparer.compare("t");
+		assertFalse(r.isMatch());
+		assertEquals(Arrays.asList(500L), r.getOnlyInSource());
+		assertEquals(Arrays.asList(ROWS + 1L), r.getOnlyInTarget());
+		assertEquals(Arrays.asList(4242L, 4243L), r.getChanged());
+		assertEquals(3, r.getMismatchedChunks());
+		// Only the small chunks around the differences were read row by row
+		assertEquals(rowQueries.toString(), 6, rowQueries.size());
+	}
+
+	@Test
+	public void testMaxDifferences() throws Exception {
+		for (long id = 1; id <= 50; id++) {
+			targetRows.put(id, "x");
+		}
+		comparer.setMaxDifferences(20);
+		TableComparer.Result r = comparer.compare("t");
+		assertEquals(20, r.getChanged().size());
+		assertTrue(r.isTruncated());
+	}
+
+	@Test
+	public void testDecimalKey() throws Exception {
+		keyType = Types.DECIMAL;
+		assertTrue(comparer.compare("t").isMatch());
+		// With a fractional key, rows such as 10.5 would fall between the chunks
+		keyScale = 2;
+		try {
+			comparer.compare("t");
+			fail("Compared on a fractional key");
+		} catch (SQLException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("integer primary key"));
+		}
+	}
+
+	@Test
+	public void testSplit() {
+		List<TableComparer.Chunk> chunks = TableComparer.split(new TableComparer.Chunk(1, 100), 4);
+		assertEquals("[[1..25], [26..50], [51..75], [76..100]]", chunks.toString());
+		assertEquals("[[7..7]]", TableComparer.split(new TableComparer.Chunk(7, 7), 4).toString());
+	}
+
+	@Test
+	public void testRowHash() throws Exception {
+		ResultSet a = MockResultSets.create("t", new String[] { "n", "s" },
+			new int[] { Types.INTEGER, Types.VARCHAR }, new Object[][] { { 42, "x" }, { 1, null } });
+		ResultSet b = MockResultSets.create("t", new String[] { "n", "s" },
+			new int[] { Types.DECIMAL, Types.VARCHAR },
+			new Object[][] { { new BigDecimal("42.00"), "x" }, { 1, "" } });
+		CRC32 crc = new CRC32();
+		a.next();
+		b.next();
+		assertEquals(TableComparer.rowHash(a, 1, 2, crc), TableComparer.rowHash(b, 1, 2, crc));
+		a.next();
+		b.next();
+		assertFalse(TableComparer.rowHash(a, 1, 2, crc) == TableComparer.rowHash(b, 1, 2, crc));
+	}
+
+	@Test
+	public void testAggregate() {
+		String[] cols = { "id", "name" };
+		assertNull(TableComparer.getAggregate("MockDB", cols));
+		assertEquals("SUM(CRC32(CONCAT_WS('#', COALESCE(CONCAT('v', id), 'n'), " +
+			"COALESCE(CONCAT('v', name), 'n'))))", TableComparer.getAggregate("MySQL", cols));
+		assertTrue(TableComparer.getAggregate("PostgreSQL", cols).contains("MD5(ROW(id, name)"));
+	}
+}
@@ -0,0 +1,207 @@
+package com.darwinsys.sql;
+
+import static com.darwinsys.sql.MockProxies.proxy;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test TableCopier between two fake Connections: the source
+ * holds a table "t" (id, name) and the target records the inserts.
+ */
+public class TableCopierTest {
+
+	static final int ROWS = 1000;
+
+	List<Object[]> inserted;
+	List<String> queries;
+	volatile boolean failInsert;
+	TableCopier copier;
+
+	@Before
+	public void setUp() {
+		inserted = Collections.synchronizedList(new ArrayList<Object[]>());
+		queries = Collections.synchronizedList(new ArrayList<String>());
+		copier = new TableCopier(new TableCopier.ConnectionSource() {
+			public Connection getConnection() {
+				return proxy(Connection.class, new SourceConnection());
+			}
+		}, new TableCopier.ConnectionSource() {
+			public Connection getConnection() {
+				return proxy(Connection.class, new TargetConnection());
+			}
+		});
+		copier.setBatchSize(7);
+		copier.setQueueSize(2);
+		copier.setProgress(null);
+	}
+
+	class SourceConnection implements InvocationHandler {
+		public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+			switch (m.getName()) {
+			case "createStatement":
+				return proxy(Statement.class, new InvocationHandler() {
+					public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+						if (!m.getName().equals("executeQuery")) {
+							return null;
+						}
+						String sql = (String) args[0];
+						if (sql.startsWith("SELECT MIN(id), MAX(id)")) {
+							return MockResultSets.create("t", new String[] { "min", "max" },
+								new int[] { Types.BIGINT, Types.BIGINT },
+								new Object[][] { { 1L, (long) ROWS } });
+						}
+						return getRows(sql, new long[0]);
+					}
+				});
+			case "getMetaData":
+				return proxy(DatabaseMetaData.class, new InvocationHandler() {
+					public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+						return MockResultSets.create("keys", new String[] { "COLUMN_NAME" },
+							new int[] { Types.VARCHAR }, new Object[][] { { "id" } });
+					}
+				});
+			case "prepareStatement":
+				final String sql = (String) args[0];
+				final long[] params = new long[2];
+				return proxy(PreparedStatement.class, new InvocationHandler() {
+					public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+						switch (m.getName()) {
+						case "setLong":
+							params[(Integer) args[0] - 1] = (Long) args[1];
+							return null;
+						case "executeQuery":
+							queries.add(sql);
+							return getRows(sql, params);
+						default:
+							return null;
+						}
+					}
+				});
+			case "getAutoCommit":
+				return true;
+			default:
+				return null;
+			}
+		}
+
+		java.sql.ResultSet getRows(String sql, long[] params) throws SQLException {
+			List<Object[]> rows = new ArrayList<>();
+			if (!sql.endsWith("1 = 0")) {
+				for (long id = 1; id <= ROWS; id++) {
+					boolean wanted;
+					if (sql.endsWith("id >= ? AND id < ?")) {
+						wanted = id >= params[0] && id < params[1];
+					} else if (sql.endsWith("id < ?")) {
+						wanted = id < params[0];
+					} else if (sql.endsWith("id >= ?")) {
+						wanted = id >= params[0];
+					} else {
+						wanted = true;
+					}
+					if (wanted) {
+						rows.add(new Object[] { (int) id, id % 10 == 0 ? null : "name " + id });
+					}
+				}
+			}
+			return MockResultSets.create("t", new String[] { "id", "name" },
+				new int[] { Types.INTEGER, Types.VARCHAR }, rows.toArray(new Object[0][]));
+		}
+	}
+
+	class TargetConnection implements InvocationHandler {
+		public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+			switch (m.getName()) {
+			case "prepareStatement":
+				assertEquals("INSERT INTO t (id, name) VALUES (?, ?)", args[0]);
+				final Object[] row = new Object[2];
+				final List<Object[]> batch = new ArrayList<>();
+				return proxy(PreparedStatement.class, new InvocationHandler() {
+					public Object invoke(Object p, Method m, Object[] args) throws Throwable {
+						switch (m.getName()) {
+						case "setObject":
+							row[(Integer) args[0] - 1] = args[1];
+							return null;
+						case "setNull":
+							row[(Integer) args[0] - 1] = null;
+							return null;
+						case "addBatch":
+							batch.add(row.clone());
+							return null;
+						case "executeBatch":
+							if (failInsert) {
+								throw new SQLException("Duplicate key");
+							}
+							inserted.addAll(batch);
+							batch.clear();
+							return new int[0];
+						default:
+							return null;
+						}
+					}
+				});
+			case "getAutoCommit":
+				return true;
+			default:
+				return null;
+			}
+		}
+	}
+
+	@Test
+	public void testCopy() throws Exception {
+		copier.setParallelism(3, 2);
+		TableCopier.Result r = copier.copy("t");
+		copier.close();
+		assertEquals(ROWS, r.getRows());
+		assertEquals(3, r.getRanges());
+		assertEquals(3, queries.size());
+		assertEquals(ROWS, inserted.size());
+		Set<Object> ids = new HashSet<>();
+		for (Object[] row : inserted) {
+			ids.add(row[0]);
+			int id = (Integer) row[0];
+			assertEquals(id % 10 == 0 ? null : "name " + id, row[1]);
+		}
+		assertEquals(ROWS, ids.size());
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		failInsert = true;
+		try {
+			copier.copy("t");
+			fail("Did not throw");
+		} catch (SQLException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Duplicate key"));
+		} finally {
+			copier.close();
+		}
+	}
+
+	@Test
+	public void testSplit() {
+		assertArrayEquals(new long[] { 26, 51, 76 }, TableCopier.split(1, 100, 4));
+		assertArrayEquals(new long[] { 2, 3 }, TableCopier.split(1, 3, 4));
+		assertArrayEquals(new long[0], TableCopier.split(5, 5, 4));
+		assertArrayEquals(new long[] { 0 }, TableCopier.split(-10, 9, 2));
+	}
+}